@@ -1,5 +1,8 @@
 package it.polimi.ingsw;
 
+import it.polimi.ingsw.monitoring.Log;
+import it.polimi.ingsw.network.AdminServer;
+import it.polimi.ingsw.network.NetworkHandler;
 import it.polimi.ingsw.network.RMI.ServerRMI;
 import it.polimi.ingsw.network.socket.NetworkServerSocket;
 
@@ -9,12 +12,16 @@ public class ServerMain {
     public static void main(String[] args) throws IOException {
         ServerRMI obj = new ServerRMI();
         NetworkServerSocket networkServerSocket = new NetworkServerSocket(0);
+        // the game is saved and the clients are notified when the server is stopped
+        NetworkHandler.getInstance().installShutdownHook();
+        // the status endpoint for the operators, if "codex.admin.port" is set
+        AdminServer.startIfEnabled();
 
         new Thread(()-> {
             try {
                 networkServerSocket.start();
             } catch (IOException e) {
-                System.out.println("Cannot start the socket server. Please restart the server.");
+                Log.error("Cannot start the socket server. Please restart the server.");
             }
         }).start();
     }
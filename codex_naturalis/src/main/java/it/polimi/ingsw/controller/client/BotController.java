@@ -0,0 +1,801 @@
+package it.polimi.ingsw.controller.client;
+
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameState;
+import it.polimi.ingsw.model.Kingdom;
+import it.polimi.ingsw.model.RankingEntry;
+import it.polimi.ingsw.model.ResumeSnapshot;
+import it.polimi.ingsw.model.TurnChange;
+import it.polimi.ingsw.model.Sign;
+import it.polimi.ingsw.network.NetworkClient;
+import it.polimi.ingsw.network.RMI.ClientRMI;
+import it.polimi.ingsw.network.RoundTrip;
+import it.polimi.ingsw.network.loopback.LoopbackServer;
+import it.polimi.ingsw.network.socket.ClientSocket;
+import javafx.util.Pair;
+
+import java.awt.*;
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The BotController plays one session of a bot of the {@link LoadGenerator}: it connects to the server through a real
+ * {@link ClientSocket} or {@link ClientRMI}, or through the loopback transport, logs in and plays a whole legal game,
+ * without any view.
+ *
+ * Every update of the view is replaced by the little state a bot needs: its hand, the positions of its board, the
+ * turn and the choices it is asked for. An update never acts on the thread that received it: it only asks the
+ * generator to run {@link #think()}, which sends the next action, so the reader of the socket and the callbacks of
+ * RMI are never blocked by a call to the server. A bot has one action in flight at a time, and the latency of an
+ * action is the time until the update that confirms it, or the error that refuses it, comes back.
+ *
+ * The cards are always placed on their back, which has no requirements, next to a card of the board; a position
+ * refused by the server is not tried again. The session ends when the game ends, when the server refuses the bot or
+ * stops the game, or when the connection is lost.
+ *
+ * The client Controller keeps the nickname and the phase in static fields, shared by all the bots of the JVM, so
+ * the bot overrides every method the connections call and never relies on them.
+ */
+public class BotController extends Controller {
+    /**
+     * The actions of a bot, whose latency is measured.
+     */
+    public enum Action {
+        LOGIN, NUMBER_OF_PLAYERS, COLOR, STARTING_SIDE, OBJECTIVE, PLACE, DRAW
+    }
+
+    /**
+     * The ways a session can end.
+     */
+    public enum Outcome {
+        /**
+         * The game has been played until its ranking.
+         */
+        COMPLETED,
+        /**
+         * The server did not let the bot play, for example because the lobby was full.
+         */
+        REJECTED,
+        /**
+         * The session ended with an error.
+         */
+        FAILED,
+        /**
+         * The load test is over.
+         */
+        STOPPED
+    }
+
+    /**
+     * The places a card can be drawn from: 1 for gold, and -1 for the deck or the position on the table.
+     */
+    private static final int[][] DRAWS = {{0, -1}, {1, -1}, {0, 0}, {0, 1}, {1, 0}, {1, 1}};
+    /**
+     * The offsets of the positions next to a card.
+     */
+    private static final int[][] NEIGHBOURS = {{0, 1}, {1, 0}, {-1, 0}, {0, -1}};
+    /**
+     * The most errors in a row before the session is given up.
+     */
+    private static final int MAX_ERRORS_IN_A_ROW = 50;
+
+    /**
+     * The generator running the bot.
+     */
+    private final LoadGenerator generator;
+    /**
+     * The number of the bot in the generator.
+     */
+    private final int index;
+    /**
+     * The nickname of the bot.
+     */
+    private final String nickname;
+    /**
+     * True if the bot uses RMI, false if it uses a socket.
+     */
+    private final boolean rmi;
+    /**
+     * True while a call to think() is waiting to run.
+     */
+    private final AtomicBoolean thinking = new AtomicBoolean(false);
+    /**
+     * The connection to the server, null until it is open.
+     */
+    private volatile NetworkClient connection;
+    /**
+     * The last time the game went on for the bot, as given by System.nanoTime().
+     */
+    private volatile long lastProgressNanos = System.nanoTime();
+
+    // the state of the bot, guarded by this
+    /**
+     * The action waiting for its answer, or null.
+     */
+    private Action pending;
+    /**
+     * The time the pending action has been sent, as given by System.nanoTime().
+     */
+    private long pendingStart;
+    /**
+     * The number of turns seen when the pending action has been sent.
+     */
+    private long pendingTurns;
+    /**
+     * The number of turns seen, counting every update of the turn.
+     */
+    private long turns;
+    /**
+     * True once the session has ended.
+     */
+    private boolean finished;
+    /**
+     * True if the bot is the first player, who chooses the number of players.
+     */
+    private boolean first;
+    /**
+     * True once the number of players has been sent.
+     */
+    private boolean numberSent;
+    /**
+     * True once the lobby is complete and the colors can be chosen.
+     */
+    private boolean lobbyReady;
+    /**
+     * The colors taken by the players.
+     */
+    private final Set<Color> taken = new HashSet<>();
+    /**
+     * The number of colors tried.
+     */
+    private int colorAttempts;
+    /**
+     * True once the color of the bot has been accepted.
+     */
+    private boolean colorChosen;
+    /**
+     * True once the starting card has been given to the bot.
+     */
+    private boolean startingCardGiven;
+    /**
+     * True once the starting card has been placed.
+     */
+    private boolean startingChosen;
+    /**
+     * True once the secret objectives to choose from have been given to the bot.
+     */
+    private boolean objectivesGiven;
+    /**
+     * True once the secret objective has been chosen.
+     */
+    private boolean objectiveChosen;
+    /**
+     * The player whose turn it is.
+     */
+    private String currentPlayer;
+    /**
+     * The state of the game.
+     */
+    private GameState state;
+    /**
+     * True once the bot has placed a card in its turn.
+     */
+    private boolean placed;
+    /**
+     * The cards in the hand of the bot, null where there is no card.
+     */
+    private final Integer[] hand = new Integer[3];
+    /**
+     * The positions of the cards on the board of the bot.
+     */
+    private final Set<Point> board = new HashSet<>();
+    /**
+     * The positions the server refused.
+     */
+    private final Set<Point> refused = new HashSet<>();
+    /**
+     * The position of the card being placed.
+     */
+    private Point placing;
+    /**
+     * The place the next card is drawn from, in DRAWS.
+     */
+    private int drawAttempt;
+    /**
+     * The number of errors received since the last action answered.
+     */
+    private int errorsInARow;
+
+    /**
+     * Creates a new BotController.
+     *
+     * @param generator The generator running the bot.
+     * @param index     The number of the bot in the generator, which gives its nickname with the name of the run.
+     * @param rmi       True if the bot uses RMI, false if it uses a socket.
+     */
+    public BotController(LoadGenerator generator, int index, boolean rmi) {
+        this.generator = generator;
+        this.index = index;
+        this.nickname = "bot" + index + "-" + generator.getRun();
+        this.rmi = rmi;
+    }
+
+    /**
+     * Getter of the number of the bot in the generator.
+     *
+     * @return The number of the bot.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Tells if the bot uses RMI.
+     *
+     * @return True if the bot uses RMI, false if it uses a socket.
+     */
+    public boolean isRmi() {
+        return rmi;
+    }
+
+    /**
+     * Gives the time since the game last went on for the bot.
+     *
+     * @return The time, in nanoseconds.
+     */
+    public long getIdleNanos() {
+        return System.nanoTime() - lastProgressNanos;
+    }
+
+    /**
+     * Connects to the server and logs in. It blocks while the connection is opened.
+     *
+     * @param host The address of the server.
+     * @param port The port of the socket server, or of the registry of the RMI server.
+     */
+    public void connect(String host, int port) {
+        long start = System.nanoTime();
+        try {
+            if (rmi) {
+                connection = new ClientRMI(this, host, port);
+            } else {
+                ClientSocket socket = new ClientSocket(this, host, port);
+                connection = socket;
+                Thread reader = new Thread(socket, nickname + "-reader");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException | NotBoundException e) {
+            end(Outcome.FAILED, "cannot connect");
+            return;
+        }
+        opened(start);
+    }
+
+    /**
+     * Connects to a server of the same JVM, through the loopback transport, and logs in.
+     *
+     * @param server The server.
+     */
+    public void connect(LoopbackServer server) {
+        long start = System.nanoTime();
+        connection = server.connect(this);
+        opened(start);
+    }
+
+    /**
+     * Logs in, once the connection is open.
+     *
+     * @param start The time the connection started to be opened, as given by System.nanoTime().
+     */
+    private void opened(long start) {
+        generator.getStatistics().connected(System.nanoTime() - start);
+        lastProgressNanos = System.nanoTime();
+        synchronized (this) {
+            if (finished) {
+                // stopped while connecting
+                disconnectNow();
+                return;
+            }
+            pending = Action.LOGIN;
+            pendingStart = System.nanoTime();
+        }
+        connection.login(nickname);
+    }
+
+    /**
+     * Ends the session because the load test is over.
+     */
+    public void stop() {
+        end(Outcome.STOPPED, null);
+    }
+
+    /**
+     * Sends the next action of the bot, if it has something to do and no action in flight.
+     */
+    public void think() {
+        thinking.set(false);
+        Runnable call;
+        synchronized (this) {
+            if (finished || pending != null || connection == null) {
+                return;
+            }
+            call = nextAction();
+            if (call == null) {
+                return;
+            }
+            pendingStart = System.nanoTime();
+            pendingTurns = turns;
+        }
+        // the call is made without the lock, since the updates it causes can come back on other threads
+        call.run();
+    }
+
+    /**
+     * Chooses the next action and marks it as pending.
+     *
+     * @return The call sending the action, or null if the bot has nothing to do.
+     */
+    private Runnable nextAction() {
+        NetworkClient client = connection;
+        if (first && !numberSent) {
+            numberSent = true;
+            pending = Action.NUMBER_OF_PLAYERS;
+            int players = generator.getPlayers();
+            return () -> client.insertNumberOfPlayers(players);
+        }
+        if (lobbyReady && !colorChosen) {
+            Color[] colors = Color.values();
+            Color color = null;
+            for (int i = 0; i < colors.length && color == null; i++) {
+                Color candidate = colors[(index + colorAttempts + i) % colors.length];
+                if (!taken.contains(candidate)) {
+                    color = candidate;
+                }
+            }
+            if (color == null) {
+                return null;
+            }
+            colorAttempts++;
+            pending = Action.COLOR;
+            Color chosen = color;
+            return () -> client.chooseColor(chosen);
+        }
+        // the starting card and the objective are chosen in turn
+        boolean myTurn = currentPlayer == null || nickname.equals(currentPlayer);
+        if (startingCardGiven && !startingChosen && myTurn) {
+            pending = Action.STARTING_SIDE;
+            boolean side = ThreadLocalRandom.current().nextBoolean();
+            return () -> client.chooseSideStartingCard(side);
+        }
+        if (objectivesGiven && !objectiveChosen && myTurn) {
+            pending = Action.OBJECTIVE;
+            int card = ThreadLocalRandom.current().nextInt(2);
+            return () -> client.chooseSecretObjectiveCard(card);
+        }
+        if (!nickname.equals(currentPlayer)) {
+            return null;
+        }
+        if (state == GameState.PLACING_PHASE && !placed) {
+            List<Integer> cards = new ArrayList<>();
+            for (int i = 0; i < hand.length; i++) {
+                if (hand[i] != null) {
+                    cards.add(i);
+                }
+            }
+            List<Point> positions = freePositions();
+            if (cards.isEmpty() || positions.isEmpty()) {
+                return null;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int card = cards.get(random.nextInt(cards.size()));
+            Point position = positions.get(random.nextInt(positions.size()));
+            placing = position;
+            pending = Action.PLACE;
+            // the back of a card has no requirements and four empty corners
+            return () -> client.playCard(card, position, false);
+        }
+        if (state == GameState.DRAWING_PHASE && hasEmptySlot()) {
+            int[] draw = DRAWS[drawAttempt % DRAWS.length];
+            pending = Action.DRAW;
+            return () -> client.drawCard(nickname, draw[0] == 1, draw[1]);
+        }
+        return null;
+    }
+
+    /**
+     * Gives the positions next to the cards of the board, not taken and not refused by the server.
+     *
+     * @return The free positions.
+     */
+    private List<Point> freePositions() {
+        List<Point> positions = new ArrayList<>();
+        for (Point card : board) {
+            for (int[] offset : NEIGHBOURS) {
+                Point position = new Point(card.x + offset[0], card.y + offset[1]);
+                if (!board.contains(position) && !refused.contains(position) && !positions.contains(position)) {
+                    positions.add(position);
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Tells if the hand of the bot has room for a card.
+     *
+     * @return True if a card can be drawn.
+     */
+    private boolean hasEmptySlot() {
+        for (Integer card : hand) {
+            if (card == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs think() on the generator, unless it is already waiting to run.
+     */
+    private void schedule() {
+        if (thinking.compareAndSet(false, true)) {
+            generator.execute(this::think);
+        }
+    }
+
+    /**
+     * Records the answer to an action, if it is the pending one, and looks for the next action.
+     *
+     * @param action The action answered.
+     */
+    private void answered(Action action) {
+        if (pending != action) {
+            return;
+        }
+        generator.getStatistics().answered(action, System.nanoTime() - pendingStart);
+        pending = null;
+        errorsInARow = 0;
+        lastProgressNanos = System.nanoTime();
+        schedule();
+    }
+
+    /**
+     * Records an error sent by the server, which answers the pending action.
+     *
+     * @param error The name of the error.
+     * @param retry True if the next action can be chosen at once, false if the bot has to wait for the next turn.
+     */
+    private void failed(String error, boolean retry) {
+        boolean giveUp;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            generator.getStatistics().error(error);
+            // the turn may have changed while the action was refused
+            retry |= turns != pendingTurns;
+            pending = null;
+            giveUp = ++errorsInARow >= MAX_ERRORS_IN_A_ROW;
+        }
+        if (giveUp) {
+            end(Outcome.FAILED, "too many errors");
+        } else if (retry) {
+            schedule();
+        }
+    }
+
+    /**
+     * Ends the session, closes the connection and tells the generator.
+     *
+     * @param outcome The way the session ends.
+     * @param reason  The reason of the end, counted by the generator, or null.
+     */
+    private void end(Outcome outcome, String reason) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+        }
+        disconnectNow();
+        generator.ended(this, outcome, reason);
+    }
+
+    /**
+     * Closes the connection, if it is open.
+     */
+    private void disconnectNow() {
+        NetworkClient client = connection;
+        if (client instanceof ClientSocket) {
+            ((ClientSocket) client).disconnect();
+        } else if (client instanceof ClientRMI) {
+            ((ClientRMI) client).leave();
+        }
+    }
+
+    @Override
+    public String getNickname() {
+        return nickname;
+    }
+
+    // the updates of the lobby
+
+    @Override
+    public synchronized void askNumberOfPlayer() {
+        first = true;
+        answered(Action.LOGIN);
+        schedule();
+    }
+
+    @Override
+    public synchronized void waitLobby() {
+        answered(Action.LOGIN);
+    }
+
+    @Override
+    public synchronized void stopWaiting() {
+        lobbyReady = true;
+        answered(Action.LOGIN);
+        answered(Action.NUMBER_OF_PLAYERS);
+        schedule();
+    }
+
+    @Override
+    public synchronized void refreshUsers(HashMap<String, Color> playersAndPins) {
+        taken.clear();
+        for (Color color : playersAndPins.values()) {
+            if (color != null) {
+                taken.add(color);
+            }
+        }
+        if (playersAndPins.containsKey(nickname)) {
+            answered(Action.LOGIN);
+            answered(Action.NUMBER_OF_PLAYERS);
+            if (playersAndPins.get(nickname) != null) {
+                colorChosen = true;
+                answered(Action.COLOR);
+            }
+        }
+    }
+
+    @Override
+    public void correctNumberOfPlayers(int numberOfPlayers) {
+        // the number is confirmed by the users refreshed by the server
+    }
+
+    // the updates of the start of the game
+
+    @Override
+    public synchronized void updateAndShowStartingCard(int startingCardId) {
+        startingCardGiven = true;
+        lastProgressNanos = System.nanoTime();
+        schedule();
+    }
+
+    @Override
+    public void cardsOnTable(Integer[] resourceCards, Integer[] goldCard, Kingdom resourceCardOnDeck,
+            Kingdom goldCardOnDeck) {
+    }
+
+    @Override
+    public void showCommonObjectiveCards(Integer[] objectiveCardIds) {
+    }
+
+    @Override
+    public synchronized void showSecretObjectiveCardsToChoose(Integer[] objectiveCardIds) {
+        objectivesGiven = true;
+        lastProgressNanos = System.nanoTime();
+        schedule();
+    }
+
+    @Override
+    public synchronized void updateAndShowSecretObjectiveCard(int indexCard) {
+        objectiveChosen = true;
+        answered(Action.OBJECTIVE);
+    }
+
+    @Override
+    public void showSecretObjectiveCard(int indexCard) {
+    }
+
+    @Override
+    public synchronized void showIsFirst(String firstPlayer) {
+        // the game flow starts with the first player placing a card, unless a turn of the flow came first: the start
+        // is queued by the last objective chosen, which can be later than a place of the first player
+        if (state != GameState.PLACING_PHASE && state != GameState.DRAWING_PHASE) {
+            turnInfo(firstPlayer, GameState.PLACING_PHASE);
+        }
+    }
+
+    // the updates of the game
+
+    @Override
+    public synchronized void turnInfo(String currentPlayer, GameState gameState) {
+        if (!currentPlayer.equals(this.currentPlayer)) {
+            placed = false;
+        }
+        this.currentPlayer = currentPlayer;
+        this.state = gameState;
+        turns++;
+        lastProgressNanos = System.nanoTime();
+        schedule();
+    }
+
+    @Override
+    public synchronized void updatePlaceCard(String nickname, int id, Point position, boolean side, int turn) {
+        if (!nickname.equals(this.nickname)) {
+            return;
+        }
+        board.add(new Point(position));
+        if (position.x == 0 && position.y == 0) {
+            startingChosen = true;
+            answered(Action.STARTING_SIDE);
+            return;
+        }
+        for (int i = 0; i < hand.length; i++) {
+            if (hand[i] != null && hand[i] == id) {
+                hand[i] = null;
+                break;
+            }
+        }
+        placed = true;
+        drawAttempt = ThreadLocalRandom.current().nextInt(DRAWS.length);
+        answered(Action.PLACE);
+    }
+
+    @Override
+    public synchronized void applyTurnDelta(TurnChange delta) {
+        if (delta.isPlacement()) {
+            updatePlaceCard(delta.getNickname(), delta.getPlacedCardId(), delta.getPosition(), delta.getSide(),
+                    delta.getTurn());
+        }
+        turnInfo(delta.getCurrentPlayer(), delta.getState());
+    }
+
+    @Override
+    public synchronized void updateHand(Integer[] hand) {
+        for (int i = 0; i < this.hand.length; i++) {
+            this.hand[i] = i < hand.length ? hand[i] : null;
+        }
+        answered(Action.DRAW);
+        schedule();
+    }
+
+    @Override
+    public void updateResources(String nickname, HashMap<Sign, Integer> resources) {
+    }
+
+    @Override
+    public void updateScore(String nickname, int points) {
+    }
+
+    @Override
+    public void updateAndShowCommonTable(Integer newCardId, boolean gold, int onTableOrDeck, Kingdom headDeck) {
+    }
+
+    @Override
+    public void updateHiddenHand(String nickname, Pair<Kingdom, Boolean>[] hand) {
+    }
+
+    @Override
+    public void receiveChatMessage(String sender, String message, boolean broadcast) {
+    }
+
+    @Override
+    public void logRoundTrip(RoundTrip roundTrip) {
+    }
+
+    @Override
+    public synchronized void setModel(ResumeSnapshot snapshot) {
+        // a saved game of the same bots has been loaded: the bot goes on from it
+        numberSent = colorChosen = startingCardGiven = startingChosen = objectivesGiven = objectiveChosen = true;
+        answered(Action.LOGIN);
+        Integer[] saved = snapshot.getHand();
+        for (int i = 0; i < hand.length; i++) {
+            hand[i] = saved != null && i < saved.length ? saved[i] : null;
+        }
+        if (snapshot.getBoards().get(nickname) != null) {
+            for (ResumeSnapshot.BoardCard card : snapshot.getBoards().get(nickname)) {
+                board.add(card.getPosition());
+            }
+        }
+        turnInfo(snapshot.getCurrentPlayer(), snapshot.getGameState());
+    }
+
+    // the end of the game
+
+    @Override
+    public void showExtraPoints(HashMap<String, Integer> extraPoints) {
+    }
+
+    @Override
+    public void showRanking(ArrayList<RankingEntry> ranking) {
+        // the game is counted once, by the bot ranked first
+        if (!ranking.isEmpty() && nickname.equals(ranking.get(0).getName())) {
+            generator.getStatistics().gameCompleted();
+        }
+        end(Outcome.COMPLETED, null);
+    }
+
+    @Override
+    public void stopGaming() {
+        end(Outcome.FAILED, "game stopped by the server");
+    }
+
+    @Override
+    public void noConnection() {
+        end(Outcome.FAILED, "connection lost");
+    }
+
+    @Override
+    public void disconnect() {
+        end(Outcome.REJECTED, "not in the game");
+    }
+
+    @Override
+    public void lobbyComplete() {
+        end(Outcome.REJECTED, "lobby full");
+    }
+
+    @Override
+    public void sameName(String name) {
+        end(Outcome.REJECTED, "name in use");
+    }
+
+    // the errors of the actions
+
+    @Override
+    public void closingLobbyError() {
+        failed("closingLobby", false);
+    }
+
+    @Override
+    public void colorAlreadyTaken() {
+        failed("colorAlreadyTaken", true);
+    }
+
+    @Override
+    public void cardPositionError() {
+        synchronized (this) {
+            if (pending == Action.PLACE && placing != null) {
+                refused.add(placing);
+            } else if (pending == Action.DRAW) {
+                drawAttempt++;
+            }
+        }
+        failed("cardPosition", true);
+    }
+
+    @Override
+    public void notEnoughResources() {
+        failed("notEnoughResources", true);
+    }
+
+    @Override
+    public void noTurn() {
+        failed("noTurn", false);
+    }
+
+    @Override
+    public void wrongPhase() {
+        failed("wrongPhase", false);
+    }
+
+    @Override
+    public void noName() {
+        failed("noName", false);
+    }
+
+    @Override
+    public void NoName() {
+        failed("noName", false);
+    }
+}
@@ -8,6 +8,7 @@ import it.polimi.ingsw.network.RMI.ClientRMI;
 import it.polimi.ingsw.network.RMI.RMIClientInterface;
 import it.polimi.ingsw.network.socket.ClientSocket;
 import it.polimi.ingsw.network.NetworkClient;
+import it.polimi.ingsw.network.RoundTrip;
 import it.polimi.ingsw.view.*;
 import it.polimi.ingsw.view.model.CardClient;
 import it.polimi.ingsw.view.model.LittleModel;
@@ -367,7 +368,7 @@ public class Controller {
      * @param ranking A HashMap where the keys are the nicknames of the players and
      *                the values are their associated scores.
      */
-    public void showRanking(ArrayList<Player> ranking) {
+    public void showRanking(ArrayList<RankingEntry> ranking) {
         view.showRanking(ranking);
     }
 
@@ -548,6 +549,42 @@ public class Controller {
         view.showHiddenHand(nickname);
     }
 
+    /**
+     * Applies all the changes made by a command of a player, received in a single
+     * message.
+     * 
+     * After a placement, the card is placed on the board of the player and the
+     * changed resources and points are added to the model. After a draw, the
+     * table and the hidden hand of the player are updated. In both cases the
+     * turn information is refreshed.
+     *
+     * @param delta The changes made by the command.
+     */
+    public void applyTurnDelta(TurnChange delta) {
+        String player = delta.getNickname();
+        if (delta.isPlacement()) {
+            updatePlaceCard(player, delta.getPlacedCardId(), delta.getPosition(), delta.getSide(), delta.getTurn());
+            if (!delta.getChangedResources().isEmpty()) {
+                HashMap<Sign, Integer> resources = new HashMap<>();
+                if (model.getResources().get(player) != null) {
+                    resources.putAll(model.getResources().get(player));
+                }
+                resources.putAll(delta.getChangedResources());
+                updateResources(player, resources);
+            }
+            if (delta.getPointsDelta() != 0) {
+                updateScore(player, model.getPoints().getOrDefault(player, 0) + delta.getPointsDelta());
+            }
+        } else {
+            if (delta.getHiddenHand() != null) {
+                updateHiddenHand(player, delta.getHiddenHand());
+            }
+            updateAndShowCommonTable(delta.getNewCardId(), delta.isGold(), delta.getOnTableOrDeck(),
+                    delta.getHeadDeck());
+        }
+        turnInfo(delta.getCurrentPlayer(), delta.getState());
+    }
+
     /**
      * Triggers the view to display the first player in the game.
      * 
@@ -798,6 +835,34 @@ public class Controller {
 
     }
 
+    /**
+     * Logs where the time of a traced command has gone, from the moment it has
+     * been sent to the moment the server has reported its timing. The commands
+     * are traced only when the "codex.trace" property is true.
+     *
+     * @param roundTrip The timing of the command.
+     */
+    public void logRoundTrip(RoundTrip roundTrip) {
+        String firstAnswer = roundTrip.getFirstAnswerNanos() < 0 ? "no answer matched"
+                : "first answer after " + millis(roundTrip.getFirstAnswerNanos());
+        System.out.println("Round trip of " + roundTrip.getCommand() + ": " + millis(roundTrip.getTotalNanos())
+                + " = server queue " + millis(roundTrip.getQueueNanos())
+                + " + processing " + millis(roundTrip.getProcessingNanos())
+                + " + fan-out " + millis(roundTrip.getFanOutNanos())
+                + " + network and client " + millis(roundTrip.getNetworkNanos())
+                + " (" + firstAnswer + ")");
+    }
+
+    /**
+     * Formats a time in milliseconds.
+     *
+     * @param nanos The time, in nanoseconds.
+     * @return The time, in milliseconds.
+     */
+    private static String millis(long nanos) {
+        return String.format("%.2f ms", nanos / 1_000_000.0);
+    }
+
     /**
      * Triggers the view to display the end of the game, since a player has been
      * disconnected.
@@ -843,94 +908,26 @@ public class Controller {
     /**
      * Sets the model for the game. And triggers the view to display.
      * 
-     * @param game The GameMaster object containing all the information about the
-     *             game.
+     * @param snapshot The state of the saved game, as seen by this client.
      */
-    public synchronized void setModel(GameMaster game) {
-        HashMap<String, Integer> points = new HashMap<>();
-        HashMap<String, HashMap<Sign, Integer>> resources = new HashMap<>();
-        Integer[] myCards = new Integer[3];
-        Integer[] resourceCardsOnTable = new Integer[2];
-        Integer[] goldCardsOnTable = new Integer[2];
-        Integer[] commonObjectiveCards = new Integer[2];
-        HashMap<String, Pair<Kingdom, Boolean>[]> otherPlayersCards = new HashMap<>();
-        Integer[] secretObjectiveCardsToChoose = new Integer[2];
-
-        for (Player player : game.getLobby().getPlayers()) {
-            points.put(player.getName(), player.getPoints());
-            resources.put(player.getName(), player.getResources());
-
-            if (player.getName().equals(nickname)) {
-                // update personal cards
-                ResourceCard[] hand = player.getHand();
-                for (int i = 0; i < 3; i++) {
-                    try {
-                        myCards[i] = hand[i].getId();
-                    } catch (Exception e) {
-                        myCards[i] = null;
-                    }
-                }
-            } else {
-                otherPlayersCards.put(player.getName(), new Pair[3]);
-                Pair<Kingdom, Boolean>[] cards = otherPlayersCards.get(player.getName());
-                for (int i = 0; i < 3; i++) {
-                    try {
-                        cards[i] = new Pair<>(player.getHand()[i].getKingdom(), player.getHand()[i] instanceof GoldCard);
-                    } catch (Exception e) {
-                        cards[i] = new Pair<>(null, false);
-                    }
-                }
-            }
-        }
-
-        for (int i = 0; i < 2; i++) {
-            try {
-                resourceCardsOnTable[i] = game.getResourceCard(i).getId();
-            } catch (Exception e) {
-                resourceCardsOnTable[i] = null;
-            }
-            try {
-                goldCardsOnTable[i] = game.getGoldCard(i).getId();
-            } catch (Exception e) {
-                goldCardsOnTable[i] = null;
-            }
-            commonObjectiveCards[i] = game.getObjectiveCard(i).getId();
-        }
-
-        int playerPosition;
-
-        try {
-            playerPosition = game.getOrderPlayer(nickname);
-        } catch (NoNameException e) {
-            System.out.println("No player with this name");
-            playerPosition = -1;
-        }
-        // secret objective cards to choose
-        for (int i = 0; i < 2; i++) {
-            secretObjectiveCardsToChoose[i] = game.getObjectiveCardToChoose(playerPosition, i).getId();
-        }
-
-        Player player = null;
-        try {
-            player = game.getLobby().getPlayerFromName(nickname);
-        } catch (NoNameException e) {
-            System.out.println("No player with this name");
-        }
-
+    public synchronized void setModel(ResumeSnapshot snapshot) {
         HashMap<String, CardClient> table = new HashMap<>();
 
-        model = new LittleModel(points, resources, myCards, otherPlayersCards, table , resourceCardsOnTable,
-                goldCardsOnTable,
-                game.getHeadDeck(true),
-                game.getHeadDeck(false), secretObjectiveCardsToChoose, commonObjectiveCards,
-                player.getSecretObjective().getId());
-
-        for(int i  = 0; i < game.getLobby().getPlayers().length; i++){
-            model.updatePlaceCard(game.getLobby().getPlayers()[i].getName(),
-                    game.getLobby().getPlayers()[i].getRootCard().getCard().getId(), new Point(0, 0),  game.getLobby().getPlayers()[i].getRootCard().isFacingUp(), 0);
+        model = new LittleModel(snapshot.getPoints(), snapshot.getResources(), snapshot.getHand(),
+                snapshot.getOtherPlayersCards(), table, snapshot.getResourceCardsOnTable(),
+                snapshot.getGoldCardsOnTable(),
+                snapshot.getHeadDeckGold(),
+                snapshot.getHeadDeckResource(), snapshot.getSecretObjectiveCardsToChoose(),
+                snapshot.getCommonObjectiveCards(),
+                snapshot.getSecretObjectiveCard());
+
+        // the first card of every board is the starting card
+        for (String player : snapshot.getBoards().keySet()) {
+            ResumeSnapshot.BoardCard rootCard = snapshot.getBoards().get(player).get(0);
+            model.updatePlaceCard(player, rootCard.getCardId(), new Point(0, 0), rootCard.isFacingUp(), 0);
         }
 
-        buildView(game);
+        buildView(snapshot);
     }
 
     /**
@@ -940,14 +937,13 @@ public class Controller {
      * The view will display the hands, points, resources, table, and other
      * information about the game.
      *
-     * @param game The GameMaster object containing all the information about the
-     *             game.
+     * @param snapshot The state of the saved game, as seen by this client.
      */
-    private void buildView(GameMaster game) {
+    private void buildView(ResumeSnapshot snapshot) {
         if (view instanceof TUI) {
             ((TUI) view).setModel(model);
 
-            view.refreshUsers(game.getLobby().getPlayersAndPins());
+            view.refreshUsers(snapshot.getPlayersAndPins());
             // print all hands
             view.showHand();
             for (String nickname : model.getOtherPlayersCards().keySet()) {
@@ -962,22 +958,20 @@ public class Controller {
             view.showCommonObjectives(model.getCommonObjectiveCards());
             view.showSecretObjectiveCard(model.getSecretObjectiveCard());
 
-            for (Player player : game.getLobby().getPlayers()) {
-                ArrayList<PlayedCard> playedCards = game.getPlayersCards(player);
-
-                Collections.sort(playedCards,
-                        (card1, card2) -> Integer.compare(card1.getTurnOfPositioning(), card2.getTurnOfPositioning()));
-                for (PlayedCard playedCard : playedCards) {
-                    if(!(playedCard.getPosition().x == 0 && playedCard.getPosition().y == 0)){
-                        model.updatePlaceCard(player.getName(), playedCard.getCard().getId(), playedCard.getPosition(),
-                                playedCard.isFacingUp(), playedCard.getTurnOfPositioning());
+            for (String player : snapshot.getBoards().keySet()) {
+                // cards are already sorted by turn of positioning
+                for (ResumeSnapshot.BoardCard playedCard : snapshot.getBoards().get(player)) {
+                    Point position = playedCard.getPosition();
+                    if(!(position.x == 0 && position.y == 0)){
+                        model.updatePlaceCard(player, playedCard.getCardId(), position,
+                                playedCard.isFacingUp(), playedCard.getTurn());
                     }
                 }
-                view.showTableOfPlayer(player.getName());
+                view.showTableOfPlayer(player);
             }
             Controller.setPhase(Phase.GAME_FLOW);
 
-            view.showTurnInfo(game.getCurrentPlayer().getName(), game.getGameState());
+            view.showTurnInfo(snapshot.getCurrentPlayer(), snapshot.getGameState());
         } else {
             try {
                 view = GUI.getInstance();
@@ -988,7 +982,7 @@ public class Controller {
             ((GUI) view).setModel(model);
 
             //mandatory order code for setup
-            view.refreshUsers(game.getLobby().getPlayersAndPins());
+            view.refreshUsers(snapshot.getPlayersAndPins());
             view.showCommonTable();
 
             // show all hands
@@ -1005,15 +999,13 @@ public class Controller {
             view.showSecretObjectiveCard(model.getSecretObjectiveCard());
 
 
-            for (Player player : game.getLobby().getPlayers()) {
-                ArrayList<PlayedCard> playedCards = game.getPlayersCards(player);
-                Collections.sort(playedCards,
-                        (card1, card2) -> Integer.compare(card1.getTurnOfPositioning(), card2.getTurnOfPositioning()));
-
-                for (PlayedCard playedCard : playedCards) {
-                    if(!(playedCard.getPosition().x == 0 && playedCard.getPosition().y == 0)){
-                        model.updatePlaceCard(player.getName(), playedCard.getCard().getId(), playedCard.getPosition(),
-                                playedCard.isFacingUp(), playedCard.getTurnOfPositioning());
+            for (String player : snapshot.getBoards().keySet()) {
+                // cards are already sorted by turn of positioning
+                for (ResumeSnapshot.BoardCard playedCard : snapshot.getBoards().get(player)) {
+                    Point position = playedCard.getPosition();
+                    if(!(position.x == 0 && position.y == 0)){
+                        model.updatePlaceCard(player, playedCard.getCardId(), position,
+                                playedCard.isFacingUp(), playedCard.getTurn());
 
                     }
                     HashMap<Corner, CardClient> hashOfCards = new HashMap<Corner, CardClient>();
@@ -1021,15 +1013,15 @@ public class Controller {
                         hashOfCards.put(corner, null);
                     }
 
-                    CardClient card = new CardClient(playedCard.getCard().getId(), playedCard.isFacingUp(),
-                            playedCard.getPosition(), playedCard.getTurnOfPositioning(), hashOfCards);
-                    ((GUI) view).rebuildBoard(player.getName(), card);
+                    CardClient card = new CardClient(playedCard.getCardId(), playedCard.isFacingUp(),
+                            position, playedCard.getTurn(), hashOfCards);
+                    ((GUI) view).rebuildBoard(player, card);
 
                 }
             }
 
             view.showCommonTable();
-            view.showTurnInfo(game.getCurrentPlayer().getName(), game.getGameState());
+            view.showTurnInfo(snapshot.getCurrentPlayer(), snapshot.getGameState());
 
         }
     }
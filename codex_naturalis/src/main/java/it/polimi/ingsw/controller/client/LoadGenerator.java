@@ -0,0 +1,477 @@
+package it.polimi.ingsw.controller.client;
+
+import it.polimi.ingsw.monitoring.LatencyHistogram;
+import it.polimi.ingsw.network.loopback.LoopbackServer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LoadGenerator plays many games against a running server with bots, to measure how the server behaves under
+ * load. Its arguments are {@code LoadGenerator [-c clients] [-p players] [-d seconds] [-r rmiPercent] [-t thinkMillis]
+ * host socketPort rmiPort}: it runs the given number of {@link BotController}s, 4 by default, for the given time, 60
+ * seconds by default, in games of the given number of players, 2 by default. The given percentage of the bots, 0 by
+ * default, uses RMI and the others use the socket; a port of 0 leaves out its transport. Every bot waits the given
+ * time, 20 milliseconds by default, before each action. With {@code LoadGenerator -l [options]}, the server runs in the
+ * generator and the bots reach it through the loopback transport, so the cost of the network is left out.
+ *
+ * A bot plays one session after the other: when its game ends, or the server refuses it, it connects again with a
+ * new session. The server hosts one game at a time, so the bots left out of the game are refused and try again,
+ * which keeps the login of the server under load too.
+ *
+ * All the bots share a few threads, which send their actions; a bot using the socket also has the thread reading
+ * its messages. Every 10 seconds, and at the end, the generator prints the time to connect, the percentiles of the
+ * latency of every action, the games completed per minute and the errors received. It exits with 1 if no game has
+ * been completed.
+ */
+public class LoadGenerator {
+    /**
+     * The time between two reports, in seconds.
+     */
+    private static final int REPORT_SECONDS = 10;
+
+    /**
+     * The statistics of the run.
+     */
+    private final Statistics statistics = new Statistics();
+    /**
+     * The threads running the actions of the bots.
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * The bots playing a session, by number.
+     */
+    private final Map<Integer, BotController> active = new ConcurrentHashMap<>();
+    /**
+     * The address of the server.
+     */
+    private final String host;
+    /**
+     * The port of the socket server, 0 if the socket is not used.
+     */
+    private final int socketPort;
+    /**
+     * The port of the RMI registry, 0 if RMI is not used.
+     */
+    private final int rmiPort;
+    /**
+     * The server of the same JVM, reached through the loopback transport, or null.
+     */
+    private final LoopbackServer loopback;
+    /**
+     * The name of the run, in the nicknames of the bots, so a game saved by an earlier run is not loaded for them.
+     */
+    private final String run = Integer.toString(ThreadLocalRandom.current().nextInt(36 * 36 * 36), 36);
+    /**
+     * The number of players of a game.
+     */
+    private final int players;
+    /**
+     * The percentage of the bots using RMI.
+     */
+    private final int rmiPercent;
+    /**
+     * The time a bot waits before each action, in milliseconds.
+     */
+    private final long thinkMillis;
+    /**
+     * The time after which a bot that does not go on is given up, in seconds.
+     */
+    private final long stallSeconds;
+    /**
+     * False once the run is over.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new LoadGenerator.
+     *
+     * @param host        The address of the server.
+     * @param socketPort  The port of the socket server, 0 if the socket is not used.
+     * @param rmiPort     The port of the RMI registry, 0 if RMI is not used.
+     * @param players     The number of players of a game.
+     * @param rmiPercent  The percentage of the bots using RMI.
+     * @param thinkMillis The time a bot waits before each action, in milliseconds.
+     */
+    public LoadGenerator(String host, int socketPort, int rmiPort, int players, int rmiPercent, long thinkMillis) {
+        this(host, socketPort, rmiPort, null, players, rmiPercent, thinkMillis);
+    }
+
+    /**
+     * Creates a new LoadGenerator whose bots play on a server of the same JVM, through the loopback transport.
+     *
+     * @param loopback    The server.
+     * @param players     The number of players of a game.
+     * @param thinkMillis The time a bot waits before each action, in milliseconds.
+     */
+    public LoadGenerator(LoopbackServer loopback, int players, long thinkMillis) {
+        this(null, 0, 0, loopback, players, 0, thinkMillis);
+    }
+
+    /**
+     * Creates a new LoadGenerator.
+     *
+     * @param host        The address of the server.
+     * @param socketPort  The port of the socket server, 0 if the socket is not used.
+     * @param rmiPort     The port of the RMI registry, 0 if RMI is not used.
+     * @param loopback    The server of the same JVM, or null.
+     * @param players     The number of players of a game.
+     * @param rmiPercent  The percentage of the bots using RMI.
+     * @param thinkMillis The time a bot waits before each action, in milliseconds.
+     */
+    private LoadGenerator(String host, int socketPort, int rmiPort, LoopbackServer loopback, int players,
+            int rmiPercent, long thinkMillis) {
+        this.host = host;
+        this.socketPort = socketPort;
+        this.rmiPort = rmiPort;
+        this.loopback = loopback;
+        this.players = players;
+        this.rmiPercent = socketPort == 0 ? 100 : rmiPort == 0 ? 0 : rmiPercent;
+        this.thinkMillis = thinkMillis;
+        this.stallSeconds = Long.getLong("codex.load.stallSeconds", 120);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Getter of the statistics of the run.
+     *
+     * @return The statistics.
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Getter of the name of the run.
+     *
+     * @return The name of the run.
+     */
+    public String getRun() {
+        return run;
+    }
+
+    /**
+     * Getter of the number of players of a game.
+     *
+     * @return The number of players.
+     */
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * Runs an action of a bot after the think time.
+     *
+     * @param action The action.
+     */
+    public void execute(Runnable action) {
+        if (running) {
+            executor.schedule(action, thinkMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts the sessions of the bots, spread over the first second.
+     *
+     * @param clients The number of bots.
+     */
+    public void start(int clients) {
+        for (int i = 0; i < clients; i++) {
+            // the bots using RMI are spread evenly among the others
+            boolean rmi = (i + 1) * rmiPercent / 100 > i * rmiPercent / 100;
+            int index = i;
+            executor.schedule(() -> startSession(index, rmi), i * 1000L / clients, TimeUnit.MILLISECONDS);
+        }
+        executor.scheduleAtFixedRate(this::abortStalled, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a new session of a bot.
+     *
+     * @param index The number of the bot.
+     * @param rmi   True if the bot uses RMI.
+     */
+    private void startSession(int index, boolean rmi) {
+        if (!running) {
+            return;
+        }
+        BotController bot = new BotController(this, index, rmi);
+        active.put(index, bot);
+        statistics.sessions.increment();
+        if (loopback != null) {
+            bot.connect(loopback);
+        } else {
+            bot.connect(host, rmi ? rmiPort : socketPort);
+        }
+    }
+
+    /**
+     * Called by a bot when its session ends: a new session is started after a while, longer if the server did not
+     * let the bot play.
+     *
+     * @param bot     The bot.
+     * @param outcome The way the session ended.
+     * @param reason  The reason of the end, or null.
+     */
+    public void ended(BotController bot, BotController.Outcome outcome, String reason) {
+        active.remove(bot.getIndex(), bot);
+        if (reason != null && outcome != BotController.Outcome.STOPPED) {
+            statistics.count(outcome == BotController.Outcome.REJECTED ? statistics.rejections : statistics.errors,
+                    reason);
+        }
+        if (!running || outcome == BotController.Outcome.STOPPED) {
+            return;
+        }
+        long delay = outcome == BotController.Outcome.COMPLETED
+                ? ThreadLocalRandom.current().nextLong(100)
+                : 200 + ThreadLocalRandom.current().nextLong(800);
+        try {
+            executor.schedule(() -> startSession(bot.getIndex(), bot.isRmi()), delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // the run is over
+        }
+    }
+
+    /**
+     * Gives up the bots that have not gone on for too long, so a lost message does not stop them forever.
+     */
+    private void abortStalled() {
+        for (BotController bot : active.values()) {
+            if (bot.getIdleNanos() > TimeUnit.SECONDS.toNanos(stallSeconds)) {
+                statistics.count(statistics.errors, "stalled");
+                bot.stop();
+            }
+        }
+    }
+
+    /**
+     * Stops the run and the sessions of all the bots.
+     */
+    public void stop() {
+        running = false;
+        for (BotController bot : new ArrayList<>(active.values())) {
+            bot.stop();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * The main method of the generator.
+     *
+     * @param args The options, the address of the server and its ports.
+     * @throws InterruptedException If the generator is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int clients = 4;
+        int players = 2;
+        int seconds = 60;
+        int rmiPercent = 0;
+        long thinkMillis = 20;
+        boolean inProcess = false;
+        List<String> positional = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-c" -> clients = Integer.parseInt(args[++i]);
+                    case "-p" -> players = Integer.parseInt(args[++i]);
+                    case "-d" -> seconds = Integer.parseInt(args[++i]);
+                    case "-r" -> rmiPercent = Integer.parseInt(args[++i]);
+                    case "-t" -> thinkMillis = Long.parseLong(args[++i]);
+                    case "-l" -> inProcess = true;
+                    default -> positional.add(args[i]);
+                }
+            }
+            if (positional.size() != (inProcess ? 0 : 3) || clients < 1 || players < 2 || players > 4 || rmiPercent < 0
+                    || rmiPercent > 100) {
+                throw new IllegalArgumentException();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: LoadGenerator [-c clients] [-p players] [-d seconds] [-r rmiPercent] "
+                    + "[-t thinkMillis] host socketPort rmiPort");
+            System.out.println("       LoadGenerator -l [-c clients] [-p players] [-d seconds] [-t thinkMillis]");
+            System.exit(2);
+            return;
+        }
+        LoadGenerator generator;
+        if (inProcess) {
+            generator = new LoadGenerator(new LoopbackServer(), players, thinkMillis);
+        } else {
+            int socketPort = Integer.parseInt(positional.get(1));
+            int rmiPort = Integer.parseInt(positional.get(2));
+            if (socketPort == 0 && rmiPort == 0) {
+                System.out.println("At least one of the ports must be given");
+                System.exit(2);
+            }
+            generator = new LoadGenerator(positional.get(0), socketPort, rmiPort, players, rmiPercent, thinkMillis);
+        }
+        System.out.println("Running " + clients + " bots in games of " + players + " players for " + seconds
+                + " seconds");
+        long start = System.nanoTime();
+        generator.start(clients);
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            long left = end - System.nanoTime();
+            TimeUnit.NANOSECONDS.sleep(Math.min(left, TimeUnit.SECONDS.toNanos(REPORT_SECONDS)));
+            if (System.nanoTime() < end) {
+                generator.getStatistics().report(System.nanoTime() - start);
+            }
+        }
+        generator.stop();
+        System.out.println("Final report:");
+        generator.getStatistics().report(System.nanoTime() - start);
+        System.exit(generator.getStatistics().games.sum() == 0 ? 1 : 0);
+    }
+
+    /**
+     * The Statistics class collects the measures of a run. It can be updated by many bots at once.
+     */
+    public static class Statistics {
+        /**
+         * The time to open a connection.
+         */
+        private final LatencyHistogram connect = new LatencyHistogram();
+        /**
+         * The latency of each action.
+         */
+        private final Map<BotController.Action, LatencyHistogram> actions =
+                new EnumMap<>(BotController.Action.class);
+        /**
+         * The number of games completed.
+         */
+        private final LongAdder games = new LongAdder();
+        /**
+         * The number of sessions started.
+         */
+        private final LongAdder sessions = new LongAdder();
+        /**
+         * The errors, by name.
+         */
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        /**
+         * The sessions refused by the server, by reason.
+         */
+        private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+
+        /**
+         * Creates new Statistics.
+         */
+        public Statistics() {
+            for (BotController.Action action : BotController.Action.values()) {
+                actions.put(action, new LatencyHistogram());
+            }
+        }
+
+        /**
+         * Records the time to open a connection.
+         *
+         * @param nanos The time, in nanoseconds.
+         */
+        public void connected(long nanos) {
+            connect.record(nanos);
+        }
+
+        /**
+         * Records the latency of an action.
+         *
+         * @param action The action.
+         * @param nanos  The latency, in nanoseconds.
+         */
+        public void answered(BotController.Action action, long nanos) {
+            actions.get(action).record(nanos);
+        }
+
+        /**
+         * Records an error sent by the server.
+         *
+         * @param error The name of the error.
+         */
+        public void error(String error) {
+            count(errors, error);
+        }
+
+        /**
+         * Records a completed game.
+         */
+        public void gameCompleted() {
+            games.increment();
+        }
+
+        /**
+         * Getter of the number of games completed.
+         *
+         * @return The number of games.
+         */
+        public long getGames() {
+            return games.sum();
+        }
+
+        /**
+         * Adds one to a counter by name.
+         *
+         * @param counters The counters.
+         * @param name     The name of the counter.
+         */
+        private void count(Map<String, LongAdder> counters, String name) {
+            counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+        }
+
+        /**
+         * Prints the statistics.
+         *
+         * @param elapsedNanos The time since the start of the run, in nanoseconds.
+         */
+        public void report(long elapsedNanos) {
+            double minutes = elapsedNanos / 60e9;
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("%-18s %8s %10s %10s %10s%n", "", "count", "p50 ms", "p99 ms", "max ms"));
+            line(report, "connect", connect);
+            for (Map.Entry<BotController.Action, LatencyHistogram> action : actions.entrySet()) {
+                line(report, action.getKey().name().toLowerCase(), action.getValue());
+            }
+            report.append(String.format("games: %d in %.1f s, %.2f per minute; sessions: %d%n", games.sum(),
+                    elapsedNanos / 1e9, minutes > 0 ? games.sum() / minutes : 0, sessions.sum()));
+            report.append("errors: ").append(sorted(errors)).append(System.lineSeparator());
+            report.append("rejections: ").append(sorted(rejections));
+            System.out.println(report);
+        }
+
+        /**
+         * Appends the line of a histogram to the report.
+         *
+         * @param report    The report.
+         * @param name      The name of the line.
+         * @param histogram The histogram.
+         */
+        private static void line(StringBuilder report, String name, LatencyHistogram histogram) {
+            report.append(String.format("%-18s %8d %10.2f %10.2f %10.2f%n", name, histogram.getCount(),
+                    histogram.getP50Micros() / 1000, histogram.getP99Micros() / 1000,
+                    histogram.getMaxMicros() / 1000));
+        }
+
+        /**
+         * Gives the counters sorted by name.
+         *
+         * @param counters The counters.
+         * @return The counters, sorted.
+         */
+        private static Map<String, Long> sorted(Map<String, LongAdder> counters) {
+            Map<String, Long> sorted = new TreeMap<>();
+            counters.forEach((name, counter) -> sorted.put(name, counter.sum()));
+            return sorted;
+        }
+    }
+}
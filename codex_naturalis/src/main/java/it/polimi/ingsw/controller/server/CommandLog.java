@@ -0,0 +1,428 @@
+package it.polimi.ingsw.controller.server;
+
+import it.polimi.ingsw.model.GameMaster;
+import it.polimi.ingsw.model.exception.*;
+import it.polimi.ingsw.monitoring.Log;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents the write-ahead log of the commands of a game.
+ *
+ * Saving the whole GameMaster after every move is expensive, so the moves are appended to this log as small binary
+ * records, and the GameMaster is saved only every few commands (the snapshot). Once a snapshot is on the disk, the
+ * commands it includes are discarded from the log. When a game is loaded, the commands logged after the snapshot
+ * are replayed on top of it. Since the decks are saved in the snapshot, the replay gives
+ * back exactly the same game.
+ *
+ * Every record is made of its length, its body and the CRC32 of the body. The body contains the type of the
+ * command, its sequence number, the nickname of the player and the arguments of the command. A record cut by a
+ * crash is detected by its length or its checksum, and the log is truncated before it.
+ *
+ * The records are written to the file as soon as they are appended, but the file is forced to the disk by a
+ * background thread at most every "codex.commandLog.syncMillis" milliseconds (100 by default), so the moves made
+ * in the same interval share a single fsync.
+ */
+public class CommandLog {
+    /**
+     * The type of the record of a placed card.
+     */
+    private static final byte PLACE = 1;
+    /**
+     * The type of the record of a drawn card.
+     */
+    private static final byte DRAW = 2;
+    /**
+     * The maximum length of the body of a record, longer lengths mean that the log is corrupted.
+     */
+    private static final int MAX_RECORD_LENGTH = 1024;
+
+    /**
+     * The path of the log.
+     */
+    private final String path;
+    /**
+     * The interval between two fsyncs, in milliseconds.
+     */
+    private final long syncMillis;
+    /**
+     * The stream of the log, null if the log is not open.
+     */
+    private FileOutputStream file;
+    /**
+     * The buffered stream used to write the records.
+     */
+    private DataOutputStream out;
+    /**
+     * The sequence number of the last command, it grows for the whole life of the game.
+     */
+    private long lastSequence = 0;
+    /**
+     * The number of records in the log.
+     */
+    private int records = 0;
+    /**
+     * True if some records have been written but not yet forced to the disk.
+     */
+    private boolean dirty = false;
+    /**
+     * The thread that forces the log to the disk.
+     */
+    private Thread syncer;
+
+    /**
+     * Creates a new CommandLog. The file is not opened until the first record is appended.
+     *
+     * @param path The path of the log.
+     */
+    public CommandLog(String path) {
+        this.path = path;
+        this.syncMillis = Long.getLong("codex.commandLog.syncMillis", 100);
+    }
+
+    /**
+     * Appends the record of a placed card.
+     *
+     * @param player    The nickname of the player.
+     * @param indexHand The index of the card in the hand of the player.
+     * @param position  The position of the card.
+     * @param side      The side of the card.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void appendPlace(String player, int indexHand, Point position, boolean side)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(32);
+        DataOutputStream body = new DataOutputStream(buffer);
+        body.writeByte(PLACE);
+        body.writeLong(lastSequence + 1);
+        body.writeUTF(player);
+        body.writeByte(indexHand);
+        body.writeInt(position.x);
+        body.writeInt(position.y);
+        body.writeBoolean(side);
+        append(buffer.toByteArray());
+    }
+
+    /**
+     * Appends the record of a drawn card.
+     *
+     * @param player        The nickname of the player.
+     * @param gold          Whether the card has been drawn from the gold cards.
+     * @param onTableOrDeck Where the card has been drawn from: -1 for the deck, 0 or 1 for the table.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void appendDraw(String player, boolean gold, int onTableOrDeck) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(24);
+        DataOutputStream body = new DataOutputStream(buffer);
+        body.writeByte(DRAW);
+        body.writeLong(lastSequence + 1);
+        body.writeUTF(player);
+        body.writeBoolean(gold);
+        body.writeByte(onTableOrDeck);
+        append(buffer.toByteArray());
+    }
+
+    /**
+     * Writes a record at the end of the log, and wakes up the thread that forces it to the disk.
+     *
+     * @param body The body of the record.
+     * @throws IOException If the record cannot be written.
+     */
+    private void append(byte[] body) throws IOException {
+        open();
+        writeRecord(out, body);
+        out.flush();
+
+        lastSequence++;
+        records++;
+        dirty = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes a record: its length, its body and the checksum of the body.
+     *
+     * @param out  The stream of the log.
+     * @param body The body of the record.
+     * @throws IOException If the record cannot be written.
+     */
+    private static void writeRecord(DataOutputStream out, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Opens the log for appending, and starts the thread that forces it to the disk.
+     *
+     * @throws IOException If the log cannot be opened.
+     */
+    private void open() throws IOException {
+        if (file != null) {
+            return;
+        }
+        file = new FileOutputStream(path, true);
+        out = new DataOutputStream(new BufferedOutputStream(file));
+        if (syncer == null) {
+            syncer = new Thread(this::syncLoop, "command-log-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+    }
+
+    /**
+     * The loop of the thread that forces the log to the disk. It waits for new records, forces them, then waits for
+     * the sync interval, so the records appended in the meanwhile are forced together.
+     */
+    private void syncLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (!dirty && syncer == Thread.currentThread()) {
+                        wait();
+                    }
+                    if (syncer != Thread.currentThread()) {
+                        return;
+                    }
+                    force();
+                }
+                Thread.sleep(syncMillis);
+            }
+        } catch (InterruptedException e) {
+            // the log has been closed
+        }
+    }
+
+    /**
+     * Forces the records written so far to the disk.
+     */
+    private synchronized void force() {
+        if (!dirty || file == null) {
+            return;
+        }
+        try {
+            file.getChannel().force(false);
+            dirty = false;
+        } catch (IOException e) {
+            Log.warn("Cannot sync the command log: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes from the log the commands included in a snapshot, once the snapshot is safely on the disk.
+     * The commands logged after the snapshot was taken are kept. The log is rewritten to a temporary file which
+     * then replaces it, so a crash leaves either the old or the new log.
+     * If the log is not open, for example because the game has been closed in the meanwhile, nothing is done: the
+     * commands included in the snapshot are skipped by the replay anyway.
+     *
+     * @param sequence The sequence number of the last command included in the snapshot.
+     */
+    public synchronized void discardThrough(long sequence) {
+        if (file == null) {
+            return;
+        }
+        closeFile();
+        File logFile = new File(path);
+        File temp = new File(path + ".tmp");
+        try {
+            int kept = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+                 FileOutputStream tempFile = new FileOutputStream(temp)) {
+                DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(tempFile));
+                byte[] body;
+                while ((body = readRecord(in)) != null) {
+                    if (new DataInputStream(new ByteArrayInputStream(body, 1, Long.BYTES)).readLong() > sequence) {
+                        writeRecord(tempOut, body);
+                        kept++;
+                    }
+                }
+                tempOut.flush();
+                tempFile.getFD().sync();
+            }
+            Files.move(temp.toPath(), logFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            records = kept;
+        } catch (IOException e) {
+            Log.warn("Cannot compact the command log: {}", e.getMessage());
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            Log.warn("Cannot open the command log: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Replays on a game the commands logged after a snapshot.
+     * The replay stops at the first record which is cut, corrupted or cannot be applied, and the log is truncated
+     * there, so that the next commands are appended after the last valid one.
+     *
+     * @param game          The game loaded from the snapshot.
+     * @param afterSequence The sequence number of the last command included in the snapshot.
+     * @return The number of commands replayed.
+     * @throws IOException If the log cannot be read.
+     */
+    public synchronized int replay(GameMaster game, long afterSequence) throws IOException {
+        closeFile();
+        lastSequence = afterSequence;
+        records = 0;
+        File logFile = new File(path);
+        if (!logFile.exists()) {
+            return 0;
+        }
+
+        int replayed = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                byte[] body = readRecord(in);
+                if (body == null) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte type = record.readByte();
+                long sequence = record.readLong();
+                String player = record.readUTF();
+
+                if (sequence > afterSequence) {
+                    if (sequence != lastSequence + 1 || !apply(game, type, player, record)) {
+                        Log.warn("Command log: cannot replay command {}, replay stopped.", sequence);
+                        break;
+                    }
+                    lastSequence = sequence;
+                    replayed++;
+                }
+                records++;
+                validLength += body.length + 2L * Integer.BYTES;
+            }
+        }
+
+        // drop what follows the last valid record
+        try (FileChannel channel = new FileOutputStream(logFile, true).getChannel()) {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Reads the body of the next record, checking its length and its checksum.
+     *
+     * @param in The stream of the log.
+     * @return The body of the record, or null at the end of the log or if the record is cut or corrupted.
+     * @throws IOException If the log cannot be read.
+     */
+    private byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            int checksum = in.readInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            return (int) crc.getValue() == checksum ? body : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies a command on a game.
+     *
+     * @param game   The game.
+     * @param type   The type of the command.
+     * @param player The nickname of the player.
+     * @param record The arguments of the command.
+     * @return True if the command has been applied.
+     * @throws IOException If the record cannot be read.
+     */
+    private boolean apply(GameMaster game, byte type, String player, DataInputStream record) throws IOException {
+        try {
+            if (type == PLACE) {
+                int indexHand = record.readByte();
+                Point position = new Point(record.readInt(), record.readInt());
+                game.placeCard(player, indexHand, position, record.readBoolean());
+                return true;
+            } else if (type == DRAW) {
+                boolean gold = record.readBoolean();
+                game.drawCard(player, gold, record.readByte());
+                return true;
+            }
+        } catch (WrongGamePhaseException | NoTurnException | NotEnoughResourcesException | NoNameException
+                 | CardPositionException e) {
+            Log.warn("Command log: {} replaying a command of {}", e.getClass().getSimpleName(), player);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the sequence number of the last command.
+     *
+     * @return The sequence number, 0 if no command has been logged.
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the number of commands in the log, which are the commands since the last snapshot.
+     *
+     * @return The number of records.
+     */
+    public synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Forces the log to the disk and closes it. The log is opened again by the next append.
+     */
+    public synchronized void close() {
+        closeFile();
+        if (syncer != null) {
+            syncer.interrupt();
+            syncer = null;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Closes the log and deletes its file.
+     */
+    public synchronized void delete() {
+        close();
+        new File(path).delete();
+        lastSequence = 0;
+        records = 0;
+    }
+
+    /**
+     * Forces the log to the disk and closes the file.
+     */
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            out.flush();
+            force();
+            out.close();
+        } catch (IOException e) {
+            Log.warn("Cannot close the command log: {}", e.getMessage());
+        }
+        file = null;
+        out = null;
+        dirty = false;
+    }
+}
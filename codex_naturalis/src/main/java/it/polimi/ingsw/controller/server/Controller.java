@@ -3,15 +3,19 @@ package it.polimi.ingsw.controller.server;
 import it.polimi.ingsw.model.*;
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.exception.*;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.EngineEvent;
+import it.polimi.ingsw.monitoring.Log;
+import it.polimi.ingsw.monitoring.SaveEvent;
+import it.polimi.ingsw.monitoring.TrafficMetrics;
 import javafx.util.Pair;
 import org.json.simple.parser.ParseException;
 
 import java.awt.*;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 /**
  * This class represents the main controller of the game.
@@ -32,7 +36,7 @@ public class Controller {
     /**
      * The instance of the controller.
      */
-    private static Controller INSTANCE = null;
+    private static volatile Controller INSTANCE = null;
     /**
      * The lobby of the game.
      */
@@ -42,10 +46,70 @@ public class Controller {
      */
     GameMaster game = null;
 
+    /**
+     * The store of the saved games.
+     */
+    private final SavedGameStore savedGames = SavedGameStore.getInstance();
+    /**
+     * The key of the game in the store of the saved games, null until the game is
+     * started or loaded.
+     */
+    private String saveKey = null;
     /**
      * The path to save the game state.
      */
-    private final String savePath = "SavedGame.data";
+    private String savePath = null;
+    /**
+     * The log of the commands played since the last save of the game state.
+     */
+    private CommandLog commandLog = null;
+    /**
+     * The number of logged commands after which the whole game state is saved
+     * again.
+     */
+    private static final int SNAPSHOT_EVERY = Integer.getInteger("codex.save.snapshotEvery", 50);
+    /**
+     * The sequence number of the last command included in the last saved game
+     * state.
+     */
+    private long lastSnapshotSequence = 0;
+    /**
+     * The recorder of the replay of the game, null if the game is not recorded.
+     */
+    private ReplayRecorder replay = null;
+    /**
+     * True when the game has been saved and released from memory because nobody
+     * was playing it. It is read again from its save on the next access.
+     */
+    private boolean passivated = false;
+    /**
+     * The last time the game has been accessed, as given by System.nanoTime().
+     */
+    private volatile long lastActivity = System.nanoTime();
+    /**
+     * The id of the game in the monitoring events, the seed of its decks, 0 if
+     * the game has not started.
+     */
+    private volatile long gameId = 0;
+    /**
+     * The status of the game, taken after every change so the monitoring can read
+     * it without locking the controller.
+     */
+    private volatile GameStatus status = new GameStatus(0, "LOBBY", new String[0], false, null, -1);
+
+    /**
+     * A command written to the replay of the game.
+     */
+    @FunctionalInterface
+    private interface ReplayCommand {
+        /**
+         * Writes the command to the replay.
+         *
+         * @param replay The recorder of the replay.
+         * @throws IOException If the command cannot be written.
+         */
+        void recordOn(ReplayRecorder replay) throws IOException;
+    }
 
     /**
      * The base path of the decks of cards.
@@ -56,14 +120,40 @@ public class Controller {
     String objectivePath = "/decksJSON/objectiveCardsDeck.json";
 
     /**
-     * Gets the instance of the controller.
+     * The resource counters changed by the last placed card, with their new values.
+     */
+    private HashMap<Sign, Integer> lastChangedResources = new HashMap<>();
+    /**
+     * The points gained with the last placed card.
+     */
+    private int lastPointsDelta = 0;
+
+    /**
+     * Gets the instance of the controller. The first players can log in at the same
+     * time, so the instance is created under a lock, while reading it is not locked.
      *
      * @return The instance of the controller.
      */
     public static Controller getInstance() {
-        if (INSTANCE == null) {
-            INSTANCE = new Controller();
+        Controller instance = INSTANCE;
+        if (instance == null) {
+            synchronized (Controller.class) {
+                instance = INSTANCE;
+                if (instance == null) {
+                    instance = new Controller();
+                    INSTANCE = instance;
+                }
+            }
         }
+        return instance;
+    }
+
+    /**
+     * Gets the instance of the controller, without creating it.
+     *
+     * @return The instance of the controller, or null if there is none.
+     */
+    static Controller current() {
         return INSTANCE;
     }
 
@@ -74,6 +164,14 @@ public class Controller {
      * the controller.
      */
     public void reset() {
+        if (commandLog != null) {
+            commandLog.close();
+        }
+        if (replay != null) {
+            replay.close();
+        }
+        // the traffic of the next game is counted apart
+        TrafficMetrics.getInstance().closeGame(gameId);
         INSTANCE = null;
     }
 
@@ -86,13 +184,16 @@ public class Controller {
     }
 
     /**
-     * Initializes the lobby with a maximum number of players.
+     * Initializes the lobby with a maximum number of players. The lobby is
+     * changed under the lock of the controller, since the players log in at the
+     * same time.
      *
      * @param nPlayers The maximum number of players.
      * @throws ClosingLobbyException If the lobby is already closed.
      */
-    public void initializeLobby(int nPlayers) throws ClosingLobbyException {
-        lobby.setMaxSize(nPlayers);
+    public synchronized void initializeLobby(int nPlayers) throws ClosingLobbyException {
+        activeLobby().setMaxSize(nPlayers);
+        publishStatus();
     }
 
     /**
@@ -105,50 +206,284 @@ public class Controller {
      *
      */
     public void start() {
+        // a new game replaces the saved game of the same players, if any
+        openSaveSlot(SavedGameStore.keyOf(lobby));
+        SnapshotWriter.getInstance().cancel(savePath);
+        GameMaster.cancelFile(savePath);
+        commandLog.delete();
         try {
+            // the seed can be forced to reproduce a game
+            long seed = Long.getLong("codex.game.seed", new Random().nextLong());
             game = new GameMaster(lobby,
                     getClass().getResourceAsStream(resourcePath),
                     getClass().getResourceAsStream(goldPath),
                     getClass().getResourceAsStream(objectivePath),
-                    getClass().getResourceAsStream(startingPath));
+                    getClass().getResourceAsStream(startingPath),
+                    seed);
+            gameId = seed;
+            publishStatus();
+            startReplay(ReplayRecorder.create(ReplayRecorder.pathOf(seed), seed, lobby));
+            // the game is released from memory when nobody plays it
+            GameLifecycle.getInstance();
         } catch (IOException e) {
-            System.out.println("the file is not found");
+            Log.warn("the file is not found");
         } catch (ParseException e) {
-            System.out.println("the file is not valid");
+            Log.warn("the file is not valid");
+        }
+    }
+
+    /**
+     * Opens the files of a game in the store of the saved games, adding the game to
+     * the index if it is not there.
+     *
+     * @param key The key of the game.
+     */
+    private void openSaveSlot(String key) {
+        if (commandLog != null) {
+            commandLog.close();
         }
+        String name = savedGames.register(key);
+        saveKey = key;
+        savePath = savedGames.getSavePath(name);
+        commandLog = new CommandLog(savedGames.getLogPath(name));
+        lastSnapshotSequence = 0;
     }
 
     /**
-     * Tries to load a game from a file.
+     * Starts recording the replay of the game, closing the previous one.
+     *
+     * @param recorder The recorder of the replay, null to stop recording.
+     */
+    private void startReplay(ReplayRecorder recorder) {
+        if (replay != null) {
+            replay.close();
+        }
+        replay = recorder;
+    }
+
+    /**
+     * Writes a command to the replay of the game, and the final ranking if the
+     * command ended the game. If the replay cannot be written, the recording is
+     * stopped, but the game goes on.
+     *
+     * @param command The command to write.
+     */
+    private void record(ReplayCommand command) {
+        if (replay == null) {
+            return;
+        }
+        try {
+            command.recordOn(replay);
+            if (activeGame().getGameState() == GameState.END) {
+                replay.recordEnd(activeGame().getRanking());
+                replay = null;
+            }
+        } catch (IOException e) {
+            Log.warn("Cannot record the replay, the recording is stopped.");
+            replay.close();
+            replay = null;
+        }
+    }
+
+    /**
+     * Tries to load the saved game of the players of the lobby.
+     * The game is found in the index of the saved games, so no file is read if
+     * these players have no saved game.
+     * The commands logged after the saved game state are replayed on it.
      * 
-     * @throws IOException            If the file is not found.
+     * @throws IOException            If there is no saved game for these players,
+     *                                or it cannot be read.
      * @throws ClassNotFoundException If the file is not valid.
      *
      * @return The GameMaster object loaded from the file.
      */
     public GameMaster tryLoadingGame() throws IOException, ClassNotFoundException {
-        return GameMaster.tryLoadingGameMaster(savePath);
+        String key = SavedGameStore.keyOf(lobby);
+        if (savedGames.lookup(key) == null) {
+            throw new FileNotFoundException("No saved game for these players");
+        }
+        openSaveSlot(key);
+
+        GameMaster savedGame = readSavedGame();
+        startReplay(ReplayRecorder.resume(ReplayRecorder.pathOf(savedGame.getSeed())));
+        GameLifecycle.getInstance();
+        return savedGame;
+    }
+
+    /**
+     * Reads the saved game of the open save slot, and replays on it the commands
+     * logged after the saved game state.
+     *
+     * @return The GameMaster object loaded from the file.
+     * @throws IOException If the saved game cannot be read.
+     */
+    private GameMaster readSavedGame() throws IOException {
+        GameMaster savedGame;
+        long lastSequence;
+        try (DataInputStream save = new DataInputStream(new BufferedInputStream(new FileInputStream(savePath)))) {
+            lastSequence = save.readLong();
+            savedGame = GameMaster.readSnapshot(save);
+        }
+
+        int replayed = commandLog.replay(savedGame, lastSequence);
+        lastSnapshotSequence = lastSequence;
+        if (replayed > 0) {
+            Log.info("{} commands replayed on the saved game.", replayed);
+        }
+        return savedGame;
+    }
+
+    /**
+     * Reads the saved game of the open save slot without replaying the commands
+     * or changing the controller, to check that the game can be read again.
+     *
+     * @throws IOException If the saved game cannot be read.
+     */
+    private void checkSavedGame() throws IOException {
+        try (DataInputStream save = new DataInputStream(new BufferedInputStream(new FileInputStream(savePath)))) {
+            save.readLong();
+            GameMaster.readSnapshot(save);
+        }
+    }
+
+    /**
+     * Gives the GameMaster of the game, reading it again from its save if it has
+     * been passivated. Every access to the game goes through this method, so the
+     * game is never passivated while it is being played.
+     *
+     * @return The GameMaster, or null if the game has not started.
+     * @throws IllegalStateException If the game is passivated and its save cannot
+     *                               be read any more. The game stays passivated,
+     *                               so the next access tries again.
+     */
+    private synchronized GameMaster activeGame() {
+        lastActivity = System.nanoTime();
+        if (passivated) {
+            try {
+                GameMaster saved = readSavedGame();
+                game = saved;
+                lobby = saved.getLobby();
+                passivated = false;
+                publishStatus();
+                GameLifecycle.getInstance().reactivated();
+                Log.info("Game of {} reactivated.", saveKey.replace('\n', ','));
+            } catch (IOException e) {
+                Log.error("Cannot reactivate the game: {}", e.getMessage());
+                throw new IllegalStateException("The game cannot be read from its save", e);
+            }
+        }
+        return game;
+    }
+
+    /**
+     * Gives the lobby of the game, reading the game again from its save if it has
+     * been passivated.
+     *
+     * @return The lobby of the game.
+     */
+    private Lobby activeLobby() {
+        activeGame();
+        return lobby;
+    }
+
+    /**
+     * Saves the game and releases it from memory if it has not been accessed for
+     * the given time. The game is read again from its save on the next access.
+     * A game that is not started, not saved or already ended is kept in memory.
+     *
+     * The save is written and read back without the lock of the controller, so
+     * the commands are not kept waiting by the disk. A game accessed meanwhile is
+     * kept, and so is a game whose save cannot be read back, since it could not
+     * be reactivated.
+     *
+     * @param idleMillis The time without accesses after which the game is
+     *                   passivated, in milliseconds.
+     * @return true if the game has been passivated.
+     */
+    public boolean passivateIfIdle(long idleMillis) {
+        long saved;
+        synchronized (this) {
+            if (game == null || passivated || savePath == null || game.getGameState() == GameState.END) {
+                return false;
+            }
+            if (System.nanoTime() - lastActivity < idleMillis * 1_000_000L) {
+                return false;
+            }
+            saveGame();
+            saved = lastActivity;
+        }
+        // the game can be released only once its save is on the disk, and can be read from it
+        if (!SnapshotWriter.getInstance().flush(10000)) {
+            Log.warn("Cannot passivate the game: its save is not written yet.");
+            return false;
+        }
+        try {
+            checkSavedGame();
+        } catch (IOException e) {
+            Log.warn("Cannot passivate the game: its save cannot be read back: {}", e.getMessage());
+            return false;
+        }
+        return release(saved);
+    }
+
+    /**
+     * Releases the game from memory, once its save has been written and read
+     * back, unless the game has been accessed since it was saved.
+     *
+     * @param saved The time of the last access when the game was saved.
+     * @return true if the game has been passivated.
+     */
+    private synchronized boolean release(long saved) {
+        if (game == null || passivated || lastActivity != saved) {
+            return false;
+        }
+        game = null;
+        lobby = null;
+        lastChangedResources = new HashMap<>();
+        passivated = true;
+        publishStatus();
+        Log.info("Game of {} passivated after {} ms without commands.", saveKey.replace('\n', ','),
+                (System.nanoTime() - saved) / 1_000_000L);
+        return true;
+    }
+
+    /**
+     * Tells if the game is passivated: saved and released from memory.
+     *
+     * @return true if the game is passivated.
+     */
+    public synchronized boolean isPassivated() {
+        return passivated;
     }
 
     /**
      * This method is used to delete a saved game file from the file system.
      * It calls the static method `cancelFile` from the `GameMaster` class with the path of the saved game file.
      * The actual deletion of the file is handled by the `GameMaster` class.
+     * The game is also removed from the index of the saved games.
      */
     public void cancelFile() {
+        if (savePath == null) {
+            return;
+        }
+        // a save still waiting to be written would create the file again
+        SnapshotWriter.getInstance().cancel(savePath);
         GameMaster.cancelFile(savePath);
+        commandLog.delete();
+        savedGames.remove(saveKey);
     }
 
     /**
-     * Adds a player to the lobby.
+     * Adds a player to the lobby, under the lock of the controller.
      *
      * @param nickname The nickname of the player.
      * @throws SameNameException      If a player with the same nickname already
      *                                exists.
      * @throws LobbyCompleteException If the lobby is already full.
      */
-    public void addPlayer(String nickname) throws SameNameException, LobbyCompleteException {
-        lobby.addPlayer(nickname);
+    public synchronized void addPlayer(String nickname) throws SameNameException, LobbyCompleteException {
+        activeLobby().addPlayer(nickname);
+        publishStatus();
     }
 
     /**
@@ -164,7 +499,16 @@ public class Controller {
      */
     public int placeRootCard(String player, boolean side)
             throws WrongGamePhaseException, NoTurnException, NoNameException {
-        return game.placeRootCard(player, side);
+        EngineEvent event = EngineEvent.start();
+        int id;
+        try {
+            id = activeGame().placeRootCard(player, side);
+        } finally {
+            event.finish(gameId, player, "placeRootCard");
+            publishStatus();
+        }
+        record(replay -> replay.recordRootCard(player, side));
+        return id;
     }
 
     /**
@@ -178,7 +522,14 @@ public class Controller {
      */
     public void chooseObjectiveCard(String player, int whichCard)
             throws WrongGamePhaseException, NoTurnException, NoNameException {
-        game.chooseObjectiveCard(player, whichCard);
+        EngineEvent event = EngineEvent.start();
+        try {
+            activeGame().chooseObjectiveCard(player, whichCard);
+        } finally {
+            event.finish(gameId, player, "chooseObjectiveCard");
+            publishStatus();
+        }
+        record(replay -> replay.recordObjective(player, whichCard));
 
         if (areAllSecretObjectiveCardChosen()) {
             saveGame();
@@ -202,11 +553,60 @@ public class Controller {
      */
     public int placeCard(String player, int indexHand, Point position, boolean side) throws WrongGamePhaseException,
             NoTurnException, NotEnoughResourcesException, NoNameException, CardPositionException {
-        int id = game.placeCard(player, indexHand, position, side);
-        saveGame();
+        HashMap<Sign, Integer> resourcesBefore = new HashMap<>(getPlayerResources(player));
+        int pointsBefore = getPlayerPoints(player);
+
+        EngineEvent event = EngineEvent.start();
+        int id;
+        try {
+            id = activeGame().placeCard(player, indexHand, position, side);
+        } finally {
+            event.finish(gameId, player, "placeCard");
+            publishStatus();
+        }
+
+        // keep track of what the card has changed, so the clients receive only the
+        // difference
+        HashMap<Sign, Integer> changedResources = new HashMap<>();
+        for (Sign sign : getPlayerResources(player).keySet()) {
+            Integer value = getPlayerResources(player).get(sign);
+            if (!value.equals(resourcesBefore.get(sign))) {
+                changedResources.put(sign, value);
+            }
+        }
+        lastChangedResources = changedResources;
+        lastPointsDelta = getPlayerPoints(player) - pointsBefore;
+        record(replay -> replay.recordPlace(player, indexHand, position, side));
+
+        try {
+            commandLog.appendPlace(player, indexHand, position, side);
+            saveGameIfLogIsLong();
+        } catch (IOException e) {
+            Log.warn("Cannot log the command, saving the whole game.");
+            saveGame();
+        }
         return id;
     }
 
+    /**
+     * Returns the resource counters changed by the last placed card.
+     *
+     * @return A HashMap with the new value of each changed resource.
+     */
+    public HashMap<Sign, Integer> getLastChangedResources() {
+        return lastChangedResources;
+    }
+
+    /**
+     * Returns the points gained with the last placed card.
+     *
+     * @return The difference between the points after and before the last
+     *         placement.
+     */
+    public int getLastPointsDelta() {
+        return lastPointsDelta;
+    }
+
     /**
      * Allows a player to draw a card.
      *
@@ -221,8 +621,22 @@ public class Controller {
      */
     public int drawCard(String player, boolean gold, int onTableOrDeck)
             throws WrongGamePhaseException, NoTurnException, NoNameException, CardPositionException {
-        int id = game.drawCard(player, gold, onTableOrDeck);
-        saveGame();
+        EngineEvent event = EngineEvent.start();
+        int id;
+        try {
+            id = activeGame().drawCard(player, gold, onTableOrDeck);
+        } finally {
+            event.finish(gameId, player, "drawCard");
+            publishStatus();
+        }
+        record(replay -> replay.recordDraw(player, gold, onTableOrDeck));
+        try {
+            commandLog.appendDraw(player, gold, onTableOrDeck);
+            saveGameIfLogIsLong();
+        } catch (IOException e) {
+            Log.warn("Cannot log the command, saving the whole game.");
+            saveGame();
+        }
         return id;
     }
 
@@ -234,7 +648,7 @@ public class Controller {
      * @return The player's points.
      */
     public int getPlayerPoints(String player) throws NoNameException {
-        return lobby.getPlayerFromName(player).getPoints();
+        return activeLobby().getPlayerFromName(player).getPoints();
     }
 
     /**
@@ -245,7 +659,7 @@ public class Controller {
      * @return A map of the player's resources.
      */
     public HashMap<Sign, Integer> getPlayerResources(String player) throws NoNameException {
-        return lobby.getPlayerFromName(player).getResources();
+        return activeLobby().getPlayerFromName(player).getResources();
     }
 
     /**
@@ -254,7 +668,7 @@ public class Controller {
      * @return The name of the current player.
      */
     public String getCurrentPlayer() {
-        return game.getCurrentPlayer().getName();
+        return activeGame().getCurrentPlayer().getName();
     }
 
     /**
@@ -265,7 +679,7 @@ public class Controller {
      * @return The id of the starting card.
      */
     public int getStartingCard(String nickname) throws NoNameException {
-        return game.getStartingCardToPosition(nickname).getId();
+        return activeGame().getStartingCardToPosition(nickname).getId();
     }
 
     /**
@@ -276,11 +690,12 @@ public class Controller {
      * @return The player.
      */
     public Player getPlayer(String nickname) throws NoNameException {
-        return lobby.getPlayerFromName(nickname);
+        return activeLobby().getPlayerFromName(nickname);
     }
 
     /**
-     * Sets the color for a player.
+     * Sets the color for a player, under the lock of the controller, so two
+     * players cannot take the same color or both start the game.
      *
      * @param name   The player's name.
      * @param colour The color to set.
@@ -288,18 +703,19 @@ public class Controller {
      * @throws ColorAlreadyTakenException If the color is already taken.
      * @return Whether all players have chosen a color.
      */
-    public boolean setColourAndGameIsReadyToStart(String name, Color colour)
+    public synchronized boolean setColourAndGameIsReadyToStart(String name, Color colour)
             throws ColorAlreadyTakenException, NoNameException {
-        for (Player player : lobby.getPlayers()) {
+        for (Player player : activeLobby().getPlayers()) {
             if (player.getColor() == colour) {
                 throw new ColorAlreadyTakenException();
             }
         }
         // set the color
-        lobby.getPlayerFromName(name).setColour(colour);
+        activeLobby().getPlayerFromName(name).setColour(colour);
+        publishStatus();
 
         // check if all players have chosen a color
-        for (Player player : lobby.getPlayers()) {
+        for (Player player : activeLobby().getPlayers()) {
             if (player.getColor() == null) {
                 return false;
             }
@@ -318,7 +734,7 @@ public class Controller {
      * @return A map of players and their pins.
      */
     public HashMap<String, Color> getPlayersAndPins() {
-        return lobby.getPlayersAndPins();
+        return activeLobby().getPlayersAndPins();
     }
 
     /**
@@ -328,7 +744,7 @@ public class Controller {
      * @return Whether the player is the first player.
      */
     public boolean isFirst(String nickname) {
-        return lobby.getPlayers()[0].getName().equals(nickname);
+        return activeLobby().isFirst(nickname);
     }
 
     /**
@@ -345,7 +761,7 @@ public class Controller {
             return -1;
         } else {
             // can be null, correct to manage it
-            return game.getCard(gold, onTableOrDeck);
+            return activeGame().getCard(gold, onTableOrDeck);
         }
     }
 
@@ -355,7 +771,7 @@ public class Controller {
      * @return Whether all root cards are placed.
      */
     public boolean areAllRootCardPlaced() {
-        for (Player player : lobby.getPlayers()) {
+        for (Player player : activeLobby().getPlayers()) {
             if (player.getRootCard() == null) {
                 return false;
             }
@@ -374,8 +790,8 @@ public class Controller {
      */
     public Integer[] getCommonObjectiveCards() {
         Integer[] objectiveCards = new Integer[2];
-        objectiveCards[0] = game.getObjectiveCard(0).getId();
-        objectiveCards[1] = game.getObjectiveCard(1).getId();
+        objectiveCards[0] = activeGame().getObjectiveCard(0).getId();
+        objectiveCards[1] = activeGame().getObjectiveCard(1).getId();
 
         return objectiveCards;
     }
@@ -395,9 +811,9 @@ public class Controller {
      */
     public Integer[] getSecretObjectiveCardsToChoose(String name) throws NoNameException {
         Integer[] secretObjectiveCards = new Integer[2];
-        int position = game.getOrderPlayer(name);
-        secretObjectiveCards[0] = game.getObjectiveCardToChoose(position, 0).getId();
-        secretObjectiveCards[1] = game.getObjectiveCardToChoose(position, 1).getId();
+        int position = activeGame().getOrderPlayer(name);
+        secretObjectiveCards[0] = activeGame().getObjectiveCardToChoose(position, 0).getId();
+        secretObjectiveCards[1] = activeGame().getObjectiveCardToChoose(position, 1).getId();
 
         return secretObjectiveCards;
     }
@@ -409,7 +825,7 @@ public class Controller {
      * @return The head of the deck.
      */
     public Kingdom getHeadDeck(boolean gold) {
-        return game.getHeadDeck(gold);
+        return activeGame().getHeadDeck(gold);
     }
 
     /**
@@ -418,7 +834,7 @@ public class Controller {
      * @return Whether all secret objective cards are chosen.
      */
     public boolean areAllSecretObjectiveCardChosen() {
-        for (Player player : lobby.getPlayers()) {
+        for (Player player : activeLobby().getPlayers()) {
             if (player.getSecretObjective() == null) {
                 return false;
             }
@@ -434,7 +850,7 @@ public class Controller {
      * @return The hand of the player.
      */
     public Integer[] getHand(String nickname) throws NoNameException {
-        Player player = lobby.getPlayerFromName(nickname);
+        Player player = activeLobby().getPlayerFromName(nickname);
         int i;
         Integer[] hand = new Integer[3];
 
@@ -452,7 +868,7 @@ public class Controller {
      * @return The hidden hand of the player.
      */
     public Pair<Kingdom, Boolean>[] getHiddenHand(String nickname) throws NoNameException {
-        Player player = lobby.getPlayerFromName(nickname);
+        Player player = activeLobby().getPlayerFromName(nickname);
         Pair<Kingdom, Boolean>[] hiddenHand = new Pair[3];
         int i;
 
@@ -474,7 +890,7 @@ public class Controller {
      * @return The game state.
      */
     public GameState getGameState() {
-        return game.getGameState();
+        return activeGame().getGameState();
     }
 
     /**
@@ -484,7 +900,7 @@ public class Controller {
      */
     public HashMap<String, Integer> getExtraPoints() {
         HashMap<String, Integer> extraPoints = new HashMap<>();
-        for (Player player : lobby.getPlayers()) {
+        for (Player player : activeLobby().getPlayers()) {
             extraPoints.put(player.getName(), player.getObjectivePoints());
         }
         return extraPoints;
@@ -492,11 +908,17 @@ public class Controller {
 
     /**
      * Returns the ranking of players.
+     * Only the name, the color and the points of each player are returned, since
+     * it is what is sent to the clients.
      *
-     * @return An ArrayList of players sorted by their ranking.
+     * @return An ArrayList of ranking entries sorted by the ranking of the players.
      */
-    public ArrayList<Player> getRanking() {
-        return game.getRanking();
+    public ArrayList<RankingEntry> getRanking() {
+        ArrayList<RankingEntry> ranking = new ArrayList<>();
+        for (Player player : activeGame().getRanking()) {
+            ranking.add(RankingEntry.of(player));
+        }
+        return ranking;
     }
 
     /**
@@ -505,7 +927,7 @@ public class Controller {
      * @return true if the game state is END, false otherwise.
      */
     public boolean isEndGame() {
-        GameState state = game.getGameState();
+        GameState state = activeGame().getGameState();
         return state == GameState.END;
     }
 
@@ -515,7 +937,7 @@ public class Controller {
      * @return The name of the first player.
      */
     public String getFirstPlayer() {
-        return lobby.getPlayers()[0].getName();
+        return activeLobby().getPlayers()[0].getName();
     }
 
     /**
@@ -524,7 +946,7 @@ public class Controller {
      * @return true if the lobby is locked, false otherwise.
      */
     public boolean isLobbyLocked() {
-        return lobby.getLock();
+        return activeLobby().getLock();
     }
 
     /**
@@ -534,7 +956,7 @@ public class Controller {
      * @return The ID of the resource card at the specified position.
      */
     public Integer getResourceCards(int position) {
-        return game.getResourceCard(position).getId();
+        return activeGame().getResourceCard(position).getId();
     }
 
     /**
@@ -544,7 +966,7 @@ public class Controller {
      * @return The ID of the gold card at the specified position.
      */
     public Integer getGoldCard(int position) {
-        return game.getGoldCard(position).getId();
+        return activeGame().getGoldCard(position).getId();
     }
 
     /**
@@ -554,16 +976,17 @@ public class Controller {
      * @return true if the player is admitted, false otherwise.
      */
     public boolean isAdmitted(String nickname) {
-        return lobby.isAdmitted(nickname);
+        return activeLobby().isAdmitted(nickname);
     }
 
     /**
-     * Checks if the lobby is ready.
+     * Checks if the lobby is ready, under the lock of the controller: the first
+     * check finding it ready shuffles its players.
      *
      * @return true if the lobby is ready, false otherwise.
      */
-    public boolean lobbyIsReady() {
-        return lobby.isReady();
+    public synchronized boolean lobbyIsReady() {
+        return activeLobby().isReady();
     }
 
     /**
@@ -572,7 +995,7 @@ public class Controller {
      * @return The current turn of the game.
      */
     public int getTurn() {
-        return game.getTurn();
+        return activeGame().getTurn();
     }
 
     /**
@@ -581,26 +1004,89 @@ public class Controller {
      * @return The lobby of the game.
      */
     public Lobby getLobby() {
-        return lobby;
+        return activeLobby();
     }
 
     /**
      * Saves the game state to a file. This implements the game saving advanced
      * functionality.
+     * The game state is serialized here, but it is written to the disk by the
+     * SnapshotWriter, so the command of the player does not wait for the disk.
+     * The file starts with the sequence number of the last logged command, so the
+     * commands logged later can be replayed on it, followed by the compact
+     * snapshot of the game (see {@link GameMaster#writeSnapshot(DataOutput)}). Once the file is on the disk,
+     * the commands it includes are removed from the command log.
      */
     public void saveGame() {
+        long start = System.nanoTime();
+        SaveEvent event = SaveEvent.start();
+        int size = 0;
         try {
-            FileOutputStream saveFile = new FileOutputStream(savePath);
-            ObjectOutputStream save = new ObjectOutputStream(saveFile);
-            save.writeObject(game);
-
+            long sequence = commandLog.getLastSequence();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(4 * 1024);
+            DataOutputStream save = new DataOutputStream(buffer);
+            save.writeLong(sequence);
+            activeGame().writeSnapshot(save);
             save.close();
-            saveFile.close();
+
+            size = buffer.size();
+            lastSnapshotSequence = sequence;
+            CommandLog log = commandLog;
+            SnapshotWriter.getInstance().submit(savePath, buffer.toByteArray(), () -> log.discardThrough(sequence));
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.warn("Cannot save the game: {}", e.getMessage());
+        } finally {
+            CommandMetrics.getInstance().record(CommandMetrics.Command.SAVE_GAME, CommandMetrics.Transport.SERVER, start);
+            event.finish(gameId, savePath, false, size);
+        }
+    }
+
+    /**
+     * Takes the final snapshot of the game when the server shuts down, and waits
+     * for it to be on the disk. A passivated game is already saved, and a game
+     * that is not started or already ended has nothing to save.
+     *
+     * @param timeoutMillis The longest time to wait for the disk, in milliseconds.
+     * @return true if every save is on the disk.
+     */
+    public synchronized boolean checkpoint(long timeoutMillis) {
+        if (game != null && !passivated && savePath != null && game.getGameState() != GameState.END) {
+            saveGame();
+            Log.info("Final snapshot of the game of {} taken.", saveKey.replace('\n', ','));
+        }
+        return SnapshotWriter.getInstance().flush(timeoutMillis);
+    }
+
+    /**
+     * Saves the game state if enough commands have been logged since the last
+     * save, so that the replay of a loaded game stays short.
+     */
+    private void saveGameIfLogIsLong() {
+        if (commandLog.getLastSequence() - lastSnapshotSequence >= SNAPSHOT_EVERY) {
+            saveGame();
         }
     }
 
+    /**
+     * Retrieves the GameMaster of the current game, used to send the whole game
+     * to a client that comes back after a lost connection.
+     *
+     * @return The GameMaster, or null if the game has not started.
+     */
+    public GameMaster getGameMaster() {
+        return activeGame();
+    }
+
+    /**
+     * Gets the id of the game in the monitoring events, without reactivating a
+     * passivated game.
+     *
+     * @return The seed of the decks of the game, 0 if the game has not started.
+     */
+    public long getGameId() {
+        return gameId;
+    }
+
     /**
      * Sets the GameMaster for the current game.
      * This method is used when loading a saved game state. It sets the GameMaster
@@ -611,5 +1097,43 @@ public class Controller {
     public void setGameMaster(GameMaster savedGame) {
         lobby = savedGame.getLobby();
         game = savedGame;
+        gameId = savedGame.getSeed();
+        publishStatus();
+    }
+
+    /**
+     * Gets the status of the game, without locking the controller and without
+     * reactivating a passivated game.
+     *
+     * @return The status of the game after its last change.
+     */
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Takes the status of the game after a change. It is called by the thread
+     * that changed the game, so it reads the game without going through
+     * {@link #activeGame()}.
+     */
+    private void publishStatus() {
+        GameMaster current = game;
+        Lobby currentLobby = lobby;
+        if (passivated || currentLobby == null) {
+            GameStatus last = status;
+            status = new GameStatus(gameId, "PASSIVATED", last.getPlayers(), true, null, -1);
+            return;
+        }
+        Player[] lobbyPlayers = currentLobby.getPlayers();
+        String[] players = new String[lobbyPlayers.length];
+        for (int i = 0; i < lobbyPlayers.length; i++) {
+            players[i] = lobbyPlayers[i].getName();
+        }
+        if (current == null) {
+            status = new GameStatus(gameId, "LOBBY", players, currentLobby.getLock(), null, -1);
+        } else {
+            status = new GameStatus(gameId, current.getGameState().name(), players, currentLobby.getLock(),
+                    current.getCurrentPlayer().getName(), current.getTurn());
+        }
     }
 }
\ No newline at end of file
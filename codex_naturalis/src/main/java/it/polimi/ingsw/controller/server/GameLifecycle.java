@@ -0,0 +1,128 @@
+package it.polimi.ingsw.controller.server;
+
+import it.polimi.ingsw.monitoring.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The GameLifecycle releases the memory of the games nobody is playing.
+ *
+ * A game that receives no command for longer than the idle time is passivated: it is saved in the store of the
+ * saved games and its GameMaster is released, so only the name of its files stays in memory. The game is
+ * reactivated from its save, transparently, by the first access to it, for example a command of a player or a
+ * player coming back after a lost connection. The memory of the server so follows the games being played, not the
+ * games started.
+ *
+ * The idle time, in milliseconds, is given by the system property "codex.game.idleMillis" (600000 by default); a
+ * value of 0 disables the passivation.
+ */
+public class GameLifecycle {
+    /**
+     * The instance of the lifecycle.
+     */
+    private static GameLifecycle instance;
+
+    /**
+     * The time after which a game without commands is passivated, in milliseconds.
+     */
+    private final long idleMillis;
+    /**
+     * The thread checking the games, null if the passivation is disabled.
+     */
+    private final ScheduledExecutorService checker;
+    /**
+     * The number of games passivated.
+     */
+    private final AtomicLong passivations = new AtomicLong();
+    /**
+     * The number of games reactivated.
+     */
+    private final AtomicLong reactivations = new AtomicLong();
+
+    /**
+     * Creates a new GameLifecycle and starts checking the games.
+     *
+     * @param idleMillis the time after which a game without commands is passivated, in milliseconds, 0 to never
+     *                   passivate the games
+     */
+    public GameLifecycle(long idleMillis) {
+        this.idleMillis = idleMillis;
+        if (idleMillis <= 0) {
+            checker = null;
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-lifecycle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a game stays in memory at most a quarter of the idle time longer than needed
+        long period = Math.max(1, idleMillis / 4);
+        checker.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Getter of the instance of the lifecycle, created on the first call with the idle time given by the system
+     * property.
+     *
+     * @return the instance of the lifecycle
+     */
+    public static synchronized GameLifecycle getInstance() {
+        if (instance == null) {
+            instance = new GameLifecycle(Long.getLong("codex.game.idleMillis", 600000));
+        }
+        return instance;
+    }
+
+    /**
+     * Passivates the game of the server if it has been idle for too long.
+     */
+    private void check() {
+        try {
+            Controller controller = Controller.current();
+            if (controller != null && controller.passivateIfIdle(idleMillis)) {
+                passivations.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            // the checks must go on
+            Log.warn("Game lifecycle: cannot passivate the game: {}", e);
+        }
+    }
+
+    /**
+     * Notifies that a passivated game has been reactivated.
+     */
+    void reactivated() {
+        reactivations.incrementAndGet();
+    }
+
+    /**
+     * Getter of the idle time.
+     *
+     * @return the time after which a game without commands is passivated, in milliseconds
+     */
+    public long getIdleMillis() {
+        return idleMillis;
+    }
+
+    /**
+     * Getter of the number of games passivated.
+     *
+     * @return the number of passivations
+     */
+    public long getPassivations() {
+        return passivations.get();
+    }
+
+    /**
+     * Getter of the number of games reactivated.
+     *
+     * @return the number of reactivations
+     */
+    public long getReactivations() {
+        return reactivations.get();
+    }
+}
@@ -0,0 +1,122 @@
+package it.polimi.ingsw.controller.server;
+
+/**
+ * The GameStatus is a picture of the game taken by the controller after every change, to be read by the monitoring.
+ *
+ * It is immutable and published through a volatile field, so reading it never locks the controller and never
+ * reactivates a passivated game.
+ */
+public class GameStatus {
+    /**
+     * The id of the game, 0 if the game has not started.
+     */
+    private final long gameId;
+    /**
+     * The state of the game: "LOBBY" before the game starts, "PASSIVATED" when it is released from memory, the
+     * name of its {@link it.polimi.ingsw.model.GameState} otherwise.
+     */
+    private final String state;
+    /**
+     * The nicknames of the players in the lobby.
+     */
+    private final String[] players;
+    /**
+     * True if the lobby is locked.
+     */
+    private final boolean lobbyLocked;
+    /**
+     * The nickname of the current player, null if the game has not started.
+     */
+    private final String currentPlayer;
+    /**
+     * The turn of the game, -1 if the game has not started.
+     */
+    private final int turn;
+    /**
+     * The time the status has been taken, as given by System.currentTimeMillis().
+     */
+    private final long takenAtMillis;
+
+    /**
+     * Creates a new GameStatus.
+     *
+     * @param gameId        the id of the game
+     * @param state         the state of the game
+     * @param players       the nicknames of the players in the lobby
+     * @param lobbyLocked   true if the lobby is locked
+     * @param currentPlayer the nickname of the current player, or null
+     * @param turn          the turn of the game, or -1
+     */
+    GameStatus(long gameId, String state, String[] players, boolean lobbyLocked, String currentPlayer, int turn) {
+        this.gameId = gameId;
+        this.state = state;
+        this.players = players.clone();
+        this.lobbyLocked = lobbyLocked;
+        this.currentPlayer = currentPlayer;
+        this.turn = turn;
+        this.takenAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Getter of the id of the game.
+     *
+     * @return the id of the game, 0 if the game has not started
+     */
+    public long getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Getter of the state of the game.
+     *
+     * @return "LOBBY", "PASSIVATED" or the name of the state of the game
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Getter of the players in the lobby.
+     *
+     * @return the nicknames of the players
+     */
+    public String[] getPlayers() {
+        return players.clone();
+    }
+
+    /**
+     * Tells if the lobby is locked.
+     *
+     * @return true if the lobby is locked
+     */
+    public boolean isLobbyLocked() {
+        return lobbyLocked;
+    }
+
+    /**
+     * Getter of the current player.
+     *
+     * @return the nickname of the current player, null if the game has not started
+     */
+    public String getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Getter of the turn of the game.
+     *
+     * @return the turn, -1 if the game has not started
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Getter of the time the status has been taken.
+     *
+     * @return the time, as given by System.currentTimeMillis()
+     */
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+}
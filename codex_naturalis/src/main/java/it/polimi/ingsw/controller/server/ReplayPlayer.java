@@ -0,0 +1,317 @@
+package it.polimi.ingsw.controller.server;
+
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameMaster;
+import it.polimi.ingsw.model.Lobby;
+import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.exception.*;
+import org.json.simple.parser.ParseException;
+
+import java.awt.Point;
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * The ReplayPlayer plays again a replay written by the {@link ReplayRecorder}, without any client or network: the
+ * commands are executed on a GameMaster as fast as possible, and the final ranking is compared with the recorded one.
+ *
+ * It is used to reproduce a game seen on the server, and as a benchmark of the model with real games. From the
+ * command line, it takes the paths of the replays and an optional number of repetitions:
+ * {@code ReplayPlayer [-n repetitions] replay...}.
+ */
+public class ReplayPlayer {
+    /**
+     * The decks of the game, in the resources of the application.
+     */
+    private static final String RESOURCE_DECK = "/decksJSON/resourceCardsDeck.json";
+    private static final String GOLD_DECK = "/decksJSON/goldCardsDeck.json";
+    private static final String OBJECTIVE_DECK = "/decksJSON/objectiveCardsDeck.json";
+    private static final String STARTING_DECK = "/decksJSON/startingCardsDeck.json";
+
+    /**
+     * The result of a played replay.
+     */
+    public static class Result {
+        /**
+         * The game at the end of the replay.
+         */
+        private final GameMaster game;
+        /**
+         * The number of commands executed.
+         */
+        private final int commands;
+        /**
+         * The time spent executing the commands, in nanoseconds.
+         */
+        private final long nanos;
+        /**
+         * True if the replay contains the final ranking.
+         */
+        private final boolean complete;
+        /**
+         * The first difference found, or null if the replay gave the same game.
+         */
+        private final String error;
+
+        /**
+         * Creates a new Result.
+         *
+         * @param game     The game at the end of the replay.
+         * @param commands The number of commands executed.
+         * @param nanos    The time spent executing the commands.
+         * @param complete True if the replay contains the final ranking.
+         * @param error    The first difference found, or null.
+         */
+        private Result(GameMaster game, int commands, long nanos, boolean complete, String error) {
+            this.game = game;
+            this.commands = commands;
+            this.nanos = nanos;
+            this.complete = complete;
+            this.error = error;
+        }
+
+        /**
+         * Getter of the game at the end of the replay.
+         *
+         * @return The game.
+         */
+        public GameMaster getGame() {
+            return game;
+        }
+
+        /**
+         * Getter of the number of commands executed.
+         *
+         * @return The number of commands.
+         */
+        public int getCommands() {
+            return commands;
+        }
+
+        /**
+         * Getter of the time spent executing the commands.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Tells if the replay reached the end of the game, so its ranking has been checked.
+         *
+         * @return True if the replay contains the final ranking.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Getter of the first difference between the replay and the played game.
+         *
+         * @return The difference, or null if the game is the same.
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * This class only has static methods.
+     */
+    private ReplayPlayer() {
+    }
+
+    /**
+     * Plays a replay.
+     *
+     * @param path The path of the replay.
+     * @return The result of the replay.
+     * @throws IOException If the replay cannot be read.
+     */
+    public static Result play(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            return play(in);
+        }
+    }
+
+    /**
+     * Plays a replay.
+     *
+     * @param in The replay.
+     * @return The result of the replay.
+     * @throws IOException If the replay cannot be read.
+     */
+    public static Result play(DataInputStream in) throws IOException {
+        if (in.readInt() != ReplayRecorder.MAGIC) {
+            throw new StreamCorruptedException("Not a replay");
+        }
+        short version = in.readShort();
+        if (version != ReplayRecorder.VERSION) {
+            throw new InvalidObjectException("Unknown replay version: " + version);
+        }
+        long seed = in.readLong();
+        GameMaster game = createGame(in, seed);
+
+        int commands = 0;
+        long nanos = 0;
+        while (true) {
+            int type = in.read();
+            if (type == -1) {
+                return new Result(game, commands, nanos, false, null);
+            }
+            if (type == ReplayRecorder.END) {
+                return new Result(game, commands, nanos, true, checkRanking(in, game));
+            }
+            String player;
+            try {
+                player = in.readUTF();
+            } catch (EOFException e) {
+                // the last record has been cut
+                return new Result(game, commands, nanos, false, null);
+            }
+            try {
+                long start;
+                switch (type) {
+                    case ReplayRecorder.ROOT:
+                        boolean side = in.readBoolean();
+                        start = System.nanoTime();
+                        game.placeRootCard(player, side);
+                        break;
+                    case ReplayRecorder.OBJECTIVE:
+                        int whichCard = in.readByte();
+                        start = System.nanoTime();
+                        game.chooseObjectiveCard(player, whichCard);
+                        break;
+                    case ReplayRecorder.PLACE:
+                        int indexHand = in.readByte();
+                        Point position = new Point(in.readInt(), in.readInt());
+                        boolean facingUp = in.readBoolean();
+                        start = System.nanoTime();
+                        game.placeCard(player, indexHand, position, facingUp);
+                        break;
+                    case ReplayRecorder.DRAW:
+                        boolean gold = in.readBoolean();
+                        int onTableOrDeck = in.readByte();
+                        start = System.nanoTime();
+                        game.drawCard(player, gold, onTableOrDeck);
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Unknown record type: " + type);
+                }
+                nanos += System.nanoTime() - start;
+            } catch (EOFException e) {
+                return new Result(game, commands, nanos, false, null);
+            } catch (WrongGamePhaseException | NoTurnException | NoNameException | NotEnoughResourcesException
+                     | CardPositionException e) {
+                return new Result(game, commands, nanos, false,
+                        "command " + (commands + 1) + " of " + player + " failed: " + e.getClass().getSimpleName());
+            }
+            commands++;
+        }
+    }
+
+    /**
+     * Creates the game of a replay from its players and seed.
+     *
+     * @param in   The replay, after the seed.
+     * @param seed The seed of the decks.
+     * @return The new game.
+     * @throws IOException If the replay or the decks cannot be read.
+     */
+    private static GameMaster createGame(DataInputStream in, long seed) throws IOException {
+        Lobby lobby = new Lobby();
+        int size = in.readByte();
+        try {
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                int color = in.readByte();
+                lobby.addPlayer(name);
+                if (color >= 0) {
+                    lobby.getPlayerFromName(name).setColour(Color.values()[color]);
+                }
+            }
+            lobby.setMaxSize(size);
+        } catch (LobbyCompleteException | SameNameException | NoNameException | ClosingLobbyException e) {
+            throw new InvalidObjectException("Invalid players in the replay");
+        }
+
+        try (InputStream resource = ReplayPlayer.class.getResourceAsStream(RESOURCE_DECK);
+             InputStream gold = ReplayPlayer.class.getResourceAsStream(GOLD_DECK);
+             InputStream objective = ReplayPlayer.class.getResourceAsStream(OBJECTIVE_DECK);
+             InputStream starting = ReplayPlayer.class.getResourceAsStream(STARTING_DECK)) {
+            return new GameMaster(lobby, resource, gold, objective, starting, seed);
+        } catch (ParseException e) {
+            throw new IOException("Invalid decks", e);
+        }
+    }
+
+    /**
+     * Compares the recorded ranking with the ranking of the played game.
+     *
+     * @param in   The replay, after the type of the record of the ranking.
+     * @param game The played game.
+     * @return The first difference, or null if the rankings are the same.
+     * @throws IOException If the replay cannot be read.
+     */
+    private static String checkRanking(DataInputStream in, GameMaster game) throws IOException {
+        ArrayList<Player> ranking = game.getRanking();
+        int size = in.readByte();
+        if (size != ranking.size()) {
+            return "the ranking has " + ranking.size() + " players instead of " + size;
+        }
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            int points = in.readInt();
+            int objectivePoints = in.readInt();
+            Player player = ranking.get(i);
+            if (!player.getName().equals(name) || player.getPoints() != points
+                    || player.getObjectivePoints() != objectivePoints) {
+                return "position " + (i + 1) + " is " + player.getName() + " with " + player.getPoints() + "+"
+                        + player.getObjectivePoints() + " points instead of " + name + " with " + points + "+"
+                        + objectivePoints;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Plays the replays given on the command line and prints their results.
+     *
+     * @param args The optional number of repetitions ("-n count") and the paths of the replays.
+     */
+    public static void main(String[] args) {
+        int repetitions = 1;
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-n")) {
+            repetitions = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        boolean failed = false;
+        for (int i = first; i < args.length; i++) {
+            try {
+                long totalNanos = 0;
+                Result result = null;
+                for (int r = 0; r < repetitions; r++) {
+                    result = play(args[i]);
+                    totalNanos += result.getNanos();
+                }
+                String outcome;
+                if (result.getError() != null) {
+                    outcome = "DIFFERENT: " + result.getError();
+                    failed = true;
+                } else if (result.isComplete()) {
+                    outcome = "same ranking";
+                } else {
+                    outcome = "game not finished";
+                }
+                System.out.println(args[i] + ": " + result.getCommands() + " commands, "
+                        + String.format("%.1f", totalNanos / 1e3 / repetitions) + " us per game, " + outcome);
+            } catch (IOException e) {
+                System.out.println(args[i] + ": cannot be read: " + e.getMessage());
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
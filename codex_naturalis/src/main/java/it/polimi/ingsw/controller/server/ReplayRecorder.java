@@ -0,0 +1,243 @@
+package it.polimi.ingsw.controller.server;
+
+import it.polimi.ingsw.model.Lobby;
+import it.polimi.ingsw.model.Player;
+
+import java.awt.*;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The ReplayRecorder writes the replay of a game: the seed of the decks, the players and every command played, in
+ * order. Playing the same commands on a GameMaster created with the same seed gives back exactly the same game, so a
+ * replay can reproduce a bug seen on the server, or be played again by the {@link ReplayPlayer} as a benchmark.
+ *
+ * The file starts with a magic number, the version of the format, the seed and the players (nickname and color) in
+ * the order of the lobby. Then every command is a record made of its type and its arguments. When the game ends, the
+ * final ranking is written, so the ReplayPlayer can check that it gets the same result.
+ *
+ * Every record is flushed as soon as it is written, but not forced to the disk: a replay is a debugging aid, not
+ * the saved game. The saved game (the snapshot and the {@link CommandLog}) is the only record a game is loaded from:
+ * the command log forces its records to the disk in batches, so after a crash the replay can hold a few commands
+ * more, or less, than the loaded game, and a replay resumed by that game no longer matches it.
+ *
+ * Only the last replays are kept: when a game starts, the oldest replays are deleted so that at most
+ * "codex.replay.keep" of them (50 by default) are left in the directory. With 0, no replay is recorded.
+ */
+public class ReplayRecorder {
+    /**
+     * The first bytes of a replay.
+     */
+    static final int MAGIC = 0x434E5250;
+    /**
+     * The version of the format of the replays.
+     */
+    static final short VERSION = 1;
+    /**
+     * The type of the record of a placed root card.
+     */
+    static final byte ROOT = 1;
+    /**
+     * The type of the record of a chosen objective card.
+     */
+    static final byte OBJECTIVE = 2;
+    /**
+     * The type of the record of a placed card.
+     */
+    static final byte PLACE = 3;
+    /**
+     * The type of the record of a drawn card.
+     */
+    static final byte DRAW = 4;
+    /**
+     * The type of the record of the final ranking.
+     */
+    static final byte END = 5;
+
+    /**
+     * The extension of the replays.
+     */
+    private static final String EXTENSION = ".replay";
+
+    /**
+     * The stream of the replay.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * Creates a new ReplayRecorder on an open stream.
+     *
+     * @param out The stream of the replay.
+     */
+    private ReplayRecorder(DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Gives the path of the replay of a game, in the directory given by the "codex.replay.dir" property ("replays"
+     * by default). The replay is named after the seed of the game, so a loaded game finds its replay again.
+     *
+     * @param seed The seed of the game.
+     * @return The path of the replay.
+     */
+    public static String pathOf(long seed) {
+        File directory = new File(System.getProperty("codex.replay.dir", "replays"));
+        return new File(directory, Long.toHexString(seed) + EXTENSION).getPath();
+    }
+
+    /**
+     * Creates a new replay and writes its header, deleting the oldest replays beyond the ones to keep.
+     *
+     * @param path  The path of the replay, an existing file is replaced.
+     * @param seed  The seed of the decks of the game.
+     * @param lobby The lobby of the game.
+     * @return The recorder of the replay, or null if the replays are not recorded.
+     * @throws IOException If the replay cannot be created.
+     */
+    public static ReplayRecorder create(String path, long seed, Lobby lobby) throws IOException {
+        int keep = Integer.getInteger("codex.replay.keep", 50);
+        if (keep <= 0) {
+            return null;
+        }
+        File file = new File(path);
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        deleteOldest(file, keep - 1);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+        out.writeByte(lobby.getPlayers().length);
+        for (Player player : lobby.getPlayers()) {
+            out.writeUTF(player.getName());
+            out.writeByte(player.getColor() == null ? -1 : player.getColor().ordinal());
+        }
+        out.flush();
+        return new ReplayRecorder(out);
+    }
+
+    /**
+     * Deletes the oldest replays in the directory of a new replay, so that only the given number is left besides it.
+     *
+     * @param replay The new replay, which is not counted.
+     * @param left   The number of replays to leave.
+     */
+    private static void deleteOldest(File replay, int left) {
+        File[] replays = replay.getAbsoluteFile().getParentFile()
+                .listFiles((directory, name) -> name.endsWith(EXTENSION) && !name.equals(replay.getName()));
+        if (replays == null || replays.length <= left) {
+            return;
+        }
+        Arrays.sort(replays, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = left; i < replays.length; i++) {
+            replays[i].delete();
+        }
+    }
+
+    /**
+     * Opens an existing replay to record the commands of a loaded game after the ones already in it.
+     *
+     * @param path The path of the replay.
+     * @return The recorder of the replay, or null if the replay does not exist.
+     * @throws IOException If the replay cannot be opened.
+     */
+    public static ReplayRecorder resume(String path) throws IOException {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        return new ReplayRecorder(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true))));
+    }
+
+    /**
+     * Records a placed root card.
+     *
+     * @param player The nickname of the player.
+     * @param side   The side of the card.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void recordRootCard(String player, boolean side) throws IOException {
+        out.writeByte(ROOT);
+        out.writeUTF(player);
+        out.writeBoolean(side);
+        out.flush();
+    }
+
+    /**
+     * Records a chosen objective card.
+     *
+     * @param player    The nickname of the player.
+     * @param whichCard The index of the chosen card.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void recordObjective(String player, int whichCard) throws IOException {
+        out.writeByte(OBJECTIVE);
+        out.writeUTF(player);
+        out.writeByte(whichCard);
+        out.flush();
+    }
+
+    /**
+     * Records a placed card.
+     *
+     * @param player    The nickname of the player.
+     * @param indexHand The index of the card in the hand of the player.
+     * @param position  The position of the card.
+     * @param side      The side of the card.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void recordPlace(String player, int indexHand, Point position, boolean side)
+            throws IOException {
+        out.writeByte(PLACE);
+        out.writeUTF(player);
+        out.writeByte(indexHand);
+        out.writeInt(position.x);
+        out.writeInt(position.y);
+        out.writeBoolean(side);
+        out.flush();
+    }
+
+    /**
+     * Records a drawn card.
+     *
+     * @param player        The nickname of the player.
+     * @param gold          Whether the card is gold or not.
+     * @param onTableOrDeck The index of the card on the table, or -1 for the deck.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void recordDraw(String player, boolean gold, int onTableOrDeck) throws IOException {
+        out.writeByte(DRAW);
+        out.writeUTF(player);
+        out.writeBoolean(gold);
+        out.writeByte(onTableOrDeck);
+        out.flush();
+    }
+
+    /**
+     * Records the final ranking and closes the replay.
+     *
+     * @param ranking The players, from the first to the last.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void recordEnd(List<Player> ranking) throws IOException {
+        out.writeByte(END);
+        out.writeByte(ranking.size());
+        for (Player player : ranking) {
+            out.writeUTF(player.getName());
+            out.writeInt(player.getPoints());
+            out.writeInt(player.getObjectivePoints());
+        }
+        out.close();
+    }
+
+    /**
+     * Closes the replay.
+     */
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // nothing to do, the replay is already closed
+        }
+    }
+}
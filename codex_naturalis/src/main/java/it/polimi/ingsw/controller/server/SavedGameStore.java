@@ -0,0 +1,198 @@
+package it.polimi.ingsw.controller.server;
+
+import it.polimi.ingsw.model.Lobby;
+import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.monitoring.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * The SavedGameStore keeps the saved games in a directory, so that many paused games can be saved at the same time.
+ *
+ * Every game is saved in its own files (the snapshot and the command log), and a small index maps the key of a game
+ * to the name of its files. The key of a game is the set of the nicknames of its players, so a lobby can find its
+ * saved game with a lookup in the index, without reading any saved game.
+ *
+ * The index is a properties file, written to a temporary file and renamed over the old one, so a crash never leaves
+ * a half-written index. The directory is given by the "codex.save.dir" property ("saves" by default).
+ */
+public class SavedGameStore {
+    /**
+     * The instance of the store.
+     */
+    private static SavedGameStore instance;
+    /**
+     * The name of the index in the directory.
+     */
+    private static final String INDEX_FILE = "index.properties";
+
+    /**
+     * The directory of the saved games.
+     */
+    private final File directory;
+    /**
+     * The index: the key is the key of a game, the value the name of its files.
+     */
+    private final Properties index = new Properties();
+
+    /**
+     * Creates a new SavedGameStore and reads its index, if it exists.
+     *
+     * @param directory the directory of the saved games, it is created with the first saved game
+     */
+    public SavedGameStore(String directory) {
+        this.directory = new File(directory);
+        File file = new File(this.directory, INDEX_FILE);
+        if (file.exists()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                index.load(in);
+            } catch (IOException e) {
+                Log.warn("Saved games: cannot read the index: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Getter of the instance of the store.
+     *
+     * @return the instance of the store
+     */
+    public static synchronized SavedGameStore getInstance() {
+        if (instance == null) {
+            instance = new SavedGameStore(System.getProperty("codex.save.dir", "saves"));
+        }
+        return instance;
+    }
+
+    /**
+     * Forgets the instance of the store, so the next one reads the "codex.save.dir" property again. The controllers
+     * created later use the new store.
+     */
+    public static synchronized void reset() {
+        instance = null;
+    }
+
+    /**
+     * Computes the key of the game of a lobby: the sorted nicknames of its players. The nicknames are read from a
+     * single line, so the new line cannot be part of a nickname and is used as separator.
+     *
+     * @param lobby the lobby of the game
+     * @return the key of the game
+     */
+    public static String keyOf(Lobby lobby) {
+        ArrayList<String> names = new ArrayList<>();
+        for (Player player : lobby.getPlayers()) {
+            names.add(player.getName());
+        }
+        Collections.sort(names);
+        return String.join("\n", names);
+    }
+
+    /**
+     * Finds the saved game of a key.
+     *
+     * @param key the key of the game
+     * @return the name of the files of the game, or null if there is no saved game with that key
+     */
+    public synchronized String lookup(String key) {
+        String name = index.getProperty(key);
+        if (name == null || !new File(getSavePath(name)).exists()) {
+            return null;
+        }
+        return name;
+    }
+
+    /**
+     * Gives the files of a game, adding the game to the index if it is not there.
+     *
+     * @param key the key of the game
+     * @return the name of the files of the game
+     */
+    public synchronized String register(String key) {
+        String name = index.getProperty(key);
+        if (name != null) {
+            return name;
+        }
+        int number = 1;
+        while (index.containsValue("game-" + number)) {
+            number++;
+        }
+        name = "game-" + number;
+        index.setProperty(key, name);
+        writeIndex();
+        return name;
+    }
+
+    /**
+     * Removes a game from the index. Its files are deleted by the caller.
+     *
+     * @param key the key of the game
+     */
+    public synchronized void remove(String key) {
+        if (index.remove(key) != null) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Getter of the number of games in the index.
+     *
+     * @return the number of games
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Getter of the path of the snapshot of a game.
+     *
+     * @param name the name of the files of the game
+     * @return the path of the snapshot
+     */
+    public String getSavePath(String name) {
+        return new File(directory, name + ".data").getPath();
+    }
+
+    /**
+     * Getter of the path of the command log of a game.
+     *
+     * @param name the name of the files of the game
+     * @return the path of the command log
+     */
+    public String getLogPath(String name) {
+        return new File(directory, name + ".log").getPath();
+    }
+
+    /**
+     * Writes the index to a temporary file and renames it over the old index. The index is written before the
+     * files of a new game, so the directory is created here.
+     */
+    private void writeIndex() {
+        directory.mkdirs();
+        File target = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                index.store(out, "Saved games, by sorted nicknames");
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Log.warn("Saved games: cannot write the index: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package it.polimi.ingsw.controller.server;
+
+import it.polimi.ingsw.monitoring.Log;
+import it.polimi.ingsw.monitoring.SaveEvent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The SnapshotWriter writes the saved games to the disk on a background thread, so the commands of the players
+ * never wait for the disk.
+ *
+ * A snapshot is written to a temporary file, forced to the disk and then renamed over the save file, so a crash
+ * leaves either the old save or the new one, never a half-written file. If a game is saved again while its
+ * previous snapshot is still waiting to be written, only the newest one is written.
+ *
+ * The writer keeps some metrics about the saves: how many have been written, coalesced or failed, and how long
+ * they took. They are also published as a {@link Status}, which the monitoring reads without locking the writer.
+ */
+public class SnapshotWriter {
+    /**
+     * The instance of the writer.
+     */
+    private static SnapshotWriter instance;
+
+    /**
+     * A snapshot waiting to be written.
+     */
+    private static class Pending {
+        /**
+         * The content of the file.
+         */
+        private final byte[] data;
+        /**
+         * The task run once the snapshot is on the disk, it can be null.
+         */
+        private final Runnable onWritten;
+        /**
+         * The time the oldest snapshot of the file not yet written was submitted, as given by System.nanoTime().
+         */
+        private final long submittedNanos;
+
+        /**
+         * Creates a new Pending snapshot.
+         *
+         * @param data           the content of the file
+         * @param onWritten      the task run once the snapshot is on the disk
+         * @param submittedNanos the time the oldest snapshot of the file not yet written was submitted
+         */
+        private Pending(byte[] data, Runnable onWritten, long submittedNanos) {
+            this.data = data;
+            this.onWritten = onWritten;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    /**
+     * The state of the writer, taken after every change.
+     */
+    public static class Status {
+        /**
+         * The number of snapshots waiting to be written, or being written.
+         */
+        private final int pending;
+        /**
+         * The time the oldest snapshot not yet written was submitted, 0 if every snapshot is written.
+         */
+        private final long waitingSinceNanos;
+        /**
+         * The number of snapshots written.
+         */
+        private final long written;
+        /**
+         * The number of snapshots that could not be written.
+         */
+        private final long failed;
+        /**
+         * The time spent writing the last snapshot, in nanoseconds.
+         */
+        private final long lastNanos;
+
+        /**
+         * Creates a new Status.
+         *
+         * @param pending           the number of snapshots not yet written
+         * @param waitingSinceNanos the time the oldest snapshot not yet written was submitted, 0 if none
+         * @param written           the number of snapshots written
+         * @param failed            the number of snapshots that could not be written
+         * @param lastNanos         the time spent writing the last snapshot
+         */
+        private Status(int pending, long waitingSinceNanos, long written, long failed, long lastNanos) {
+            this.pending = pending;
+            this.waitingSinceNanos = waitingSinceNanos;
+            this.written = written;
+            this.failed = failed;
+            this.lastNanos = lastNanos;
+        }
+
+        /**
+         * Getter of the number of snapshots not yet written.
+         *
+         * @return the number of snapshots waiting to be written, or being written
+         */
+        public int getPending() {
+            return pending;
+        }
+
+        /**
+         * Getter of the lag of the saves: how long the oldest snapshot not yet written has been waiting.
+         *
+         * @return the lag, in milliseconds, 0 if every snapshot is written
+         */
+        public double getLagMillis() {
+            return waitingSinceNanos == 0 ? 0 : (System.nanoTime() - waitingSinceNanos) / 1e6;
+        }
+
+        /**
+         * Getter of the number of snapshots written.
+         *
+         * @return the number of snapshots written
+         */
+        public long getWritten() {
+            return written;
+        }
+
+        /**
+         * Getter of the number of snapshots that could not be written.
+         *
+         * @return the number of failed snapshots
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Getter of the time spent writing the last snapshot.
+         *
+         * @return the time, in milliseconds
+         */
+        public double getLastSaveMillis() {
+            return lastNanos / 1e6;
+        }
+    }
+
+    /**
+     * The snapshots waiting to be written, the key is the path of the save file. At most one snapshot per file is
+     * kept, the newest.
+     */
+    private final HashMap<String, Pending> pending = new HashMap<>();
+    /**
+     * The paths of the pending snapshots, in the order they have been submitted.
+     */
+    private final LinkedHashSet<String> queue = new LinkedHashSet<>();
+    /**
+     * The path of the snapshot being written, null if the writer is idle.
+     */
+    private String writing = null;
+    /**
+     * The time the snapshot being written was submitted.
+     */
+    private long writingSinceNanos = 0;
+
+    /**
+     * The number of snapshots written.
+     */
+    private long written = 0;
+    /**
+     * The number of snapshots replaced by a newer one before being written.
+     */
+    private long coalesced = 0;
+    /**
+     * The number of snapshots that could not be written.
+     */
+    private long failed = 0;
+    /**
+     * The total time spent writing snapshots, in nanoseconds.
+     */
+    private long totalNanos = 0;
+    /**
+     * The time spent writing the last snapshot, in nanoseconds.
+     */
+    private long lastNanos = 0;
+    /**
+     * The longest time spent writing a snapshot, in nanoseconds.
+     */
+    private long maxNanos = 0;
+    /**
+     * The state of the writer after its last change.
+     */
+    private volatile Status status = new Status(0, 0, 0, 0, 0);
+
+    /**
+     * Creates a new SnapshotWriter and starts its thread.
+     */
+    public SnapshotWriter() {
+        Thread thread = new Thread(this::writeLoop, "snapshot-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Getter of the instance of the writer.
+     *
+     * @return the instance of the writer
+     */
+    public static synchronized SnapshotWriter getInstance() {
+        if (instance == null) {
+            instance = new SnapshotWriter();
+        }
+        return instance;
+    }
+
+    /**
+     * Submits a snapshot to be written. If a snapshot of the same file is still waiting, it is replaced.
+     *
+     * @param path      the path of the save file
+     * @param data      the content of the file
+     * @param onWritten the task run on the thread of the writer once the snapshot is on the disk, it can be null
+     */
+    public synchronized void submit(String path, byte[] data, Runnable onWritten) {
+        Pending previous = pending.get(path);
+        long submittedNanos = previous == null ? System.nanoTime() : previous.submittedNanos;
+        if (pending.put(path, new Pending(data, onWritten, submittedNanos)) != null) {
+            coalesced++;
+        }
+        queue.add(path);
+        publish();
+        notifyAll();
+    }
+
+    /**
+     * Discards the snapshot of a file waiting to be written, and waits for the end of the write of that file if it
+     * is in progress. It is used before deleting a save file, so that it is not written again.
+     *
+     * @param path the path of the save file
+     */
+    public synchronized void cancel(String path) {
+        pending.remove(path);
+        queue.remove(path);
+        publish();
+        while (path.equals(writing)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until all the submitted snapshots are written.
+     *
+     * @param timeoutMillis the maximum time to wait, in milliseconds
+     * @return true if all the snapshots have been written
+     */
+    public synchronized boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!queue.isEmpty() || writing != null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The loop of the thread of the writer: it takes the oldest pending snapshot and writes it.
+     */
+    private void writeLoop() {
+        while (true) {
+            String path;
+            Pending snapshot;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                Iterator<String> iterator = queue.iterator();
+                path = iterator.next();
+                iterator.remove();
+                snapshot = pending.remove(path);
+                writing = path;
+                writingSinceNanos = snapshot.submittedNanos;
+            }
+
+            long start = System.nanoTime();
+            boolean success = write(path, snapshot.data);
+            long elapsed = System.nanoTime() - start;
+
+            if (success && snapshot.onWritten != null) {
+                try {
+                    snapshot.onWritten.run();
+                } catch (RuntimeException e) {
+                    Log.warn("Snapshot: task after the save failed: {}", e);
+                }
+            }
+
+            synchronized (this) {
+                if (success) {
+                    written++;
+                    totalNanos += elapsed;
+                    lastNanos = elapsed;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                } else {
+                    failed++;
+                }
+                writing = null;
+                writingSinceNanos = 0;
+                publish();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Takes the state of the writer after a change. It is called with the lock of the writer held.
+     */
+    private void publish() {
+        long waitingSince = writingSinceNanos;
+        for (Pending snapshot : pending.values()) {
+            if (waitingSince == 0 || snapshot.submittedNanos - waitingSince < 0) {
+                waitingSince = snapshot.submittedNanos;
+            }
+        }
+        status = new Status(queue.size() + (writing == null ? 0 : 1), waitingSince, written, failed, lastNanos);
+    }
+
+    /**
+     * Getter of the state of the writer, which never waits for the writer.
+     *
+     * @return the state of the writer after its last change
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, forces it to the disk and renames it over the save file.
+     *
+     * @param path the path of the save file
+     * @param data the content of the file
+     * @return true if the snapshot has been written
+     */
+    private boolean write(String path, byte[] data) {
+        Path target = new File(path).getAbsoluteFile().toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        SaveEvent event = SaveEvent.start();
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                out.write(data);
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(target.getParent());
+            return true;
+        } catch (IOException e) {
+            Log.warn("Snapshot: cannot save {}: {}", path, e.getMessage());
+            return false;
+        } finally {
+            event.finish(0, path, true, data.length);
+        }
+    }
+
+    /**
+     * Forces the directory to the disk, so that the rename survives a crash. Not every platform allows it, so
+     * errors are ignored.
+     *
+     * @param directory the directory of the save file
+     */
+    private void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on this platform
+        }
+    }
+
+    /**
+     * Getter of the number of snapshots written.
+     *
+     * @return the number of snapshots written
+     */
+    public synchronized long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Getter of the number of snapshots replaced by a newer one before being written.
+     *
+     * @return the number of coalesced snapshots
+     */
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * Getter of the number of snapshots that could not be written.
+     *
+     * @return the number of failed snapshots
+     */
+    public synchronized long getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Getter of the number of snapshots waiting to be written.
+     *
+     * @return the number of pending snapshots
+     */
+    public synchronized int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Getter of the time spent writing the last snapshot.
+     *
+     * @return the time, in milliseconds
+     */
+    public synchronized double getLastSaveMillis() {
+        return lastNanos / 1e6;
+    }
+
+    /**
+     * Getter of the longest time spent writing a snapshot.
+     *
+     * @return the time, in milliseconds
+     */
+    public synchronized double getMaxSaveMillis() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Getter of the average time spent writing a snapshot.
+     *
+     * @return the time, in milliseconds
+     */
+    public synchronized double getAverageSaveMillis() {
+        return written == 0 ? 0 : totalNanos / 1e6 / written;
+    }
+}
@@ -0,0 +1,110 @@
+package it.polimi.ingsw.model;
+
+import org.json.simple.parser.ParseException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+
+/**
+ * The CardCatalog contains every card of the game, indexed by id.
+ *
+ * The cards never change during a game, so the compact snapshots of a game store only the ids of its cards, and the
+ * cards are taken back from the catalog when the snapshot is loaded. The catalog is built once, from the same JSON
+ * files used to create the decks.
+ */
+public class CardCatalog {
+    /**
+     * The id written in place of a missing card.
+     */
+    static final short NO_CARD = -1;
+    /**
+     * The files of the decks, in the resources of the application.
+     */
+    private static final String[] DECK_FILES = {
+            "/decksJSON/resourceCardsDeck.json",
+            "/decksJSON/goldCardsDeck.json",
+            "/decksJSON/objectiveCardsDeck.json",
+            "/decksJSON/startingCardsDeck.json"
+    };
+
+    /**
+     * The cards, the key is the id of the card.
+     */
+    private static HashMap<Integer, Card> cards;
+
+    /**
+     * This class only has static methods.
+     */
+    private CardCatalog() {
+    }
+
+    /**
+     * Gets a card from its id. The catalog is loaded on the first call.
+     *
+     * @param id the id of the card
+     * @return the card
+     * @throws IOException if the decks cannot be read, or a StreamCorruptedException if the id is unknown
+     */
+    public static synchronized Card getCard(int id) throws IOException {
+        if (cards == null) {
+            cards = load();
+        }
+        Card card = cards.get(id);
+        if (card == null) {
+            throw new StreamCorruptedException("Unknown card id: " + id);
+        }
+        return card;
+    }
+
+    /**
+     * Loads every card of the decks.
+     *
+     * @return the cards indexed by id
+     * @throws IOException if the decks cannot be read
+     */
+    private static HashMap<Integer, Card> load() throws IOException {
+        HashMap<Integer, Card> catalog = new HashMap<>();
+        for (String file : DECK_FILES) {
+            try (InputStream stream = CardCatalog.class.getResourceAsStream(file)) {
+                if (stream == null) {
+                    throw new IOException("Deck not found: " + file);
+                }
+                Deck deck = new Deck(stream, true);
+                for (int i = 0; i < deck.size(); i++) {
+                    Card card = deck.getCard(i);
+                    catalog.put(card.getId(), card);
+                }
+            } catch (ParseException e) {
+                throw new IOException("Invalid deck: " + file, e);
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Writes the id of a card, or NO_CARD if the card is missing.
+     *
+     * @param out  the output
+     * @param card the card, it can be null
+     * @throws IOException if the id cannot be written
+     */
+    static void writeCard(DataOutput out, Card card) throws IOException {
+        out.writeShort(card == null ? NO_CARD : card.getId());
+    }
+
+    /**
+     * Reads the id of a card written by {@link #writeCard(DataOutput, Card)} and gets the card from the catalog.
+     *
+     * @param in the input
+     * @return the card, or null if the card was missing
+     * @throws IOException if the id cannot be read or is unknown
+     */
+    static Card readCard(DataInput in) throws IOException {
+        short id = in.readShort();
+        return id == NO_CARD ? null : getCard(id);
+    }
+}
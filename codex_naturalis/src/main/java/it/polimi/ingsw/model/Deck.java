@@ -5,6 +5,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Random;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -42,6 +43,40 @@ public class Deck implements Serializable {
         this.shuffle();
     }
 
+    /**
+     * This constructor generates the deck of cards from a JSON file and shuffles
+     * it with the given source of randomness, so that the same seed always gives
+     * the same deck.
+     *
+     * @param cardsFile the JSON file containing the cards.
+     * @param random    the source of randomness of the shuffle.
+     * @throws IOException              if an I/O error occurs.
+     * @throws ParseException           if the JSON file is not valid.
+     * @throws IllegalArgumentException if the card prototype is invalid.
+     */
+    public Deck(InputStream cardsFile, Random random) throws IOException, ParseException, IllegalArgumentException {
+        cards = new ArrayList<Card>();
+        this.generateDeck(cardsFile);
+        Collections.shuffle(cards, random);
+    }
+
+    /**
+     * This constructor generates the deck of cards from a JSON file and shuffles
+     * it with the given source of randomness, so that the same seed always gives
+     * the same deck.
+     *
+     * @param cardsFile the path of the JSON file containing the cards.
+     * @param random    the source of randomness of the shuffle.
+     * @throws IOException              if an I/O error occurs.
+     * @throws ParseException           if the JSON file is not valid.
+     * @throws IllegalArgumentException if the card prototype is invalid.
+     */
+    public Deck(String cardsFile, Random random) throws IOException, ParseException, IllegalArgumentException {
+        cards = new ArrayList<Card>();
+        this.generateDeck(cardsFile);
+        Collections.shuffle(cards, random);
+    }
+
     private void generateDeck(String cardsFile)
             throws IOException, ParseException, IllegalArgumentException {
         JSONParser parser = new JSONParser();
@@ -108,6 +143,16 @@ public class Deck implements Serializable {
         this.generateDeck(cardsFile);
     }
 
+    /**
+     * This constructor creates a deck with the given cards, in the given order.
+     * It is used to load a deck from a snapshot.
+     *
+     * @param cards the cards of the deck, the first one is drawn first.
+     */
+    private Deck(ArrayList<Card> cards) {
+        this.cards = cards;
+    }
+
     /**
      * This method generates the deck of cards from a JSON file.
      * 
@@ -337,6 +382,45 @@ public class Deck implements Serializable {
         }
     }
 
+    /**
+     * This method returns the number of cards left in the deck.
+     *
+     * @return the number of cards in the deck.
+     */
+    public int size() {
+        return cards.size();
+    }
+
+    /**
+     * This method writes the deck to a compact snapshot: the number of cards and
+     * their ids, in order.
+     *
+     * @param out the output of the snapshot.
+     * @throws IOException if the deck cannot be written.
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeShort(cards.size());
+        for (Card card : cards) {
+            CardCatalog.writeCard(out, card);
+        }
+    }
+
+    /**
+     * This method reads a deck written by {@link #writeSnapshot(DataOutput)}.
+     *
+     * @param in the input of the snapshot.
+     * @return the deck, with the cards in the same order.
+     * @throws IOException if the deck cannot be read.
+     */
+    static Deck readSnapshot(DataInput in) throws IOException {
+        int size = Snapshots.readShortCount(in);
+        ArrayList<Card> cards = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            cards.add(CardCatalog.readCard(in));
+        }
+        return new Deck(cards);
+    }
+
     /**
      * This method adds a {@link Card} to the deck.
      * 
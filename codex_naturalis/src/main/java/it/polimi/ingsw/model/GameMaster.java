@@ -79,6 +79,20 @@ public class GameMaster implements Serializable {
      * The ranking of players.
      */
     private ArrayList<Player> ranking;
+    /**
+     * The seed of the shuffles of the decks: the same seed and the same commands
+     * always give the same game.
+     */
+    private long seed;
+
+    /**
+     * The first bytes of a compact snapshot of a GameMaster.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x434E5347;
+    /**
+     * The version of the format of the compact snapshots.
+     */
+    private static final short SNAPSHOT_VERSION = 2;
 
 
     /**
@@ -97,6 +111,31 @@ public class GameMaster implements Serializable {
     public GameMaster(Lobby lobby, InputStream jsonResourceCardFileName, InputStream jsonGoldCardFileName,
                       InputStream jsonObjectiveCardFileName,
                       InputStream jsonStartingCardFileName) throws IOException, ParseException {
+        this(lobby, jsonResourceCardFileName, jsonGoldCardFileName, jsonObjectiveCardFileName,
+                jsonStartingCardFileName, new Random().nextLong());
+    }
+
+    /**
+     * The general functionalities of the game representing the peer point of the
+     * Model, the object is going to speak with the Controller.
+     * The decks are shuffled with the given seed, so the game can be reproduced
+     * by playing the same commands on a GameMaster with the same seed.
+     *
+     * @param lobby                      Lobby of user that are going to play
+     * @param jsonResourceCardFileName   json file name to create the resource deck
+     * @param jsonGoldCardFileName       json file name to create the gold deck
+     * @param jsonObjectiveCardFileName  json file name to create the objective deck
+     * @param jsonStartingCardFileName json file name to create the starting deck
+     * @param seed                       seed of the shuffles of the decks
+     *
+     * @throws IOException    if the file is not found or can't be read
+     * @throws ParseException if the file is not a valid JSON file
+     */
+    public GameMaster(Lobby lobby, InputStream jsonResourceCardFileName, InputStream jsonGoldCardFileName,
+                      InputStream jsonObjectiveCardFileName,
+                      InputStream jsonStartingCardFileName, long seed) throws IOException, ParseException {
+        this.seed = seed;
+        Random random = new Random(seed);
         this.globalTurn = 0;
         this.turnType = TurnType.PLAYING;
         this.onTableResourceCards = new ResourceCard[2];
@@ -109,10 +148,10 @@ public class GameMaster implements Serializable {
         this.lobby.setLock();
         this.gameState = GameState.CHOOSING_ROOT_CARD;
 
-        this.resourceDeck = new Deck(jsonResourceCardFileName);
-        this.goldDeck = new Deck(jsonGoldCardFileName);
-        this.objectiveDeck = new Deck(jsonObjectiveCardFileName);
-        this.startingDeck = new Deck(jsonStartingCardFileName);
+        this.resourceDeck = new Deck(jsonResourceCardFileName, random);
+        this.goldDeck = new Deck(jsonGoldCardFileName, random);
+        this.objectiveDeck = new Deck(jsonObjectiveCardFileName, random);
+        this.startingDeck = new Deck(jsonStartingCardFileName, random);
 
         // Set up of the table
         setOnTableResourceCard((ResourceCard) resourceDeck.draw(), 0);
@@ -156,6 +195,8 @@ public class GameMaster implements Serializable {
     public GameMaster(Lobby lobby, String jsonResourceCardFileName, String jsonGoldCardFileName,
                       String jsonObjectiveCardFileName,
                       String jsonStartingCardFileName) throws IOException, ParseException {
+        this.seed = new Random().nextLong();
+        Random random = new Random(seed);
         this.globalTurn = 0;
         this.turnType = TurnType.PLAYING;
         this.onTableResourceCards = new ResourceCard[2];
@@ -168,10 +209,10 @@ public class GameMaster implements Serializable {
         this.lobby.setLock();
         this.gameState = GameState.CHOOSING_ROOT_CARD;
 
-        this.resourceDeck = new Deck(jsonResourceCardFileName);
-        this.goldDeck = new Deck(jsonGoldCardFileName);
-        this.objectiveDeck = new Deck(jsonObjectiveCardFileName);
-        this.startingDeck = new Deck(jsonStartingCardFileName);
+        this.resourceDeck = new Deck(jsonResourceCardFileName, random);
+        this.goldDeck = new Deck(jsonGoldCardFileName, random);
+        this.objectiveDeck = new Deck(jsonObjectiveCardFileName, random);
+        this.startingDeck = new Deck(jsonStartingCardFileName, random);
 
         // Set up of the table
         setOnTableResourceCard((ResourceCard) resourceDeck.draw(), 0);
@@ -201,23 +242,136 @@ public class GameMaster implements Serializable {
     }
 
     /**
-     * Creates a new instance from a saved GameMaster on file.
-     * 
-     * @param path path of the file to load.
-     * @return the loaded GameMaster.
-     * @throws IOException            if the file is not found or can't be read.
-     * @throws ClassNotFoundException if the class is not found.
+     * This constructor is used to load a GameMaster from a compact snapshot.
      */
-    public static GameMaster tryLoadingGameMaster(String path) throws IOException, ClassNotFoundException {
-        FileInputStream saveFile = new FileInputStream(path);
-        ObjectInputStream save = new ObjectInputStream(saveFile);
+    private GameMaster() {
+    }
 
-        GameMaster gameMaster = (GameMaster) save.readObject();
+    /**
+     * Writes the game to a compact snapshot.
+     *
+     * The snapshot contains only what cannot be computed again: the counters, the
+     * ids of the cards (the cards themselves are in the {@link CardCatalog}), the
+     * order of the decks and the positions of the cards on the boards. It starts
+     * with a magic number and the version of the format.
+     *
+     * @param out the output of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeShort(SNAPSHOT_VERSION);
+        out.writeLong(seed);
+
+        out.writeInt(globalTurn);
+        out.writeByte(turnType.ordinal());
+        out.writeByte(gameState.ordinal());
+
+        resourceDeck.writeSnapshot(out);
+        goldDeck.writeSnapshot(out);
+        startingDeck.writeSnapshot(out);
+        objectiveDeck.writeSnapshot(out);
+
+        writeCards(out, onTableResourceCards);
+        writeCards(out, onTableGoldCards);
+        writeCards(out, onTableObjectiveCards);
+        writeCards(out, startingCardToPosition);
+        out.writeByte(objectiveCardToChoose.length);
+        for (ObjectiveCard[] cards : objectiveCardToChoose) {
+            writeCards(out, cards);
+        }
 
-        save.close();
-        saveFile.close();
+        lobby.writeSnapshot(out);
+        out.writeByte(ranking.size());
+        for (Player player : ranking) {
+            out.writeUTF(player.getName());
+        }
+    }
+
+    /**
+     * Reads a game written by {@link #writeSnapshot(DataOutput)}.
+     *
+     * @param in the input of the snapshot
+     * @return the loaded GameMaster
+     * @throws IOException if the snapshot cannot be read, or it is not a
+     *                     snapshot of a known version
+     */
+    public static GameMaster readSnapshot(DataInput in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new StreamCorruptedException("Not a snapshot of a GameMaster");
+        }
+        short version = in.readShort();
+        if (version < 1 || version > SNAPSHOT_VERSION) {
+            throw new InvalidObjectException("Unknown snapshot version: " + version);
+        }
 
-        return gameMaster;
+        GameMaster game = new GameMaster();
+        // the seed is saved since version 2
+        game.seed = version >= 2 ? in.readLong() : 0;
+        game.globalTurn = in.readInt();
+        game.turnType = Snapshots.constant(in.readByte(), TurnType.values());
+        game.gameState = Snapshots.constant(in.readByte(), GameState.values());
+
+        game.resourceDeck = Deck.readSnapshot(in);
+        game.goldDeck = Deck.readSnapshot(in);
+        game.startingDeck = Deck.readSnapshot(in);
+        game.objectiveDeck = Deck.readSnapshot(in);
+
+        game.onTableResourceCards = readCards(in, new ResourceCard[Snapshots.readCount(in)]);
+        game.onTableGoldCards = readCards(in, new GoldCard[Snapshots.readCount(in)]);
+        game.onTableObjectiveCards = readCards(in, new ObjectiveCard[Snapshots.readCount(in)]);
+        game.startingCardToPosition = readCards(in, new StartingCard[Snapshots.readCount(in)]);
+        game.objectiveCardToChoose = new ObjectiveCard[Snapshots.readCount(in)][];
+        for (int i = 0; i < game.objectiveCardToChoose.length; i++) {
+            game.objectiveCardToChoose[i] = readCards(in, new ObjectiveCard[Snapshots.readCount(in)]);
+        }
+
+        game.lobby = Lobby.readSnapshot(in);
+        int rankingSize = Snapshots.readCount(in);
+        game.ranking = new ArrayList<>();
+        for (int i = 0; i < rankingSize; i++) {
+            try {
+                game.ranking.add(game.lobby.getPlayerFromName(in.readUTF()));
+            } catch (NoNameException e) {
+                throw new InvalidObjectException("Unknown player in the ranking");
+            }
+        }
+        return game;
+    }
+
+    /**
+     * Writes an array of cards to a compact snapshot: its length and the ids of
+     * the cards.
+     *
+     * @param out   the output of the snapshot
+     * @param cards the cards, some of them can be null
+     * @throws IOException if the cards cannot be written
+     */
+    private static void writeCards(DataOutput out, Card[] cards) throws IOException {
+        out.writeByte(cards.length);
+        for (Card card : cards) {
+            CardCatalog.writeCard(out, card);
+        }
+    }
+
+    /**
+     * Reads the cards written by {@link #writeCards(DataOutput, Card[])}, after
+     * their length.
+     *
+     * @param in    the input of the snapshot
+     * @param cards the array to fill, of the length read from the snapshot
+     * @param <T>   the type of the cards
+     * @return the filled array
+     * @throws IOException if the cards cannot be read, or a card is unknown or
+     *                     of another type than the array
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Card> T[] readCards(DataInput in, T[] cards) throws IOException {
+        Class<T> type = (Class<T>) cards.getClass().getComponentType();
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = Snapshots.readCard(in, type);
+        }
+        return cards;
     }
 
     /**
@@ -1239,6 +1393,15 @@ public class GameMaster implements Serializable {
         return onTableResourceCards[position];
     }
 
+    /**
+     * Getter of the seed of the shuffles of the decks.
+     *
+     * @return the seed of the game
+     */
+    public long getSeed() {
+        return seed;
+    }
+
     /**
      * Retrieves the gold card at the specified position on the table.
      *
@@ -5,6 +5,9 @@ import it.polimi.ingsw.model.exception.LobbyCompleteException;
 import it.polimi.ingsw.model.exception.SameNameException;
 import it.polimi.ingsw.model.exception.NoNameException;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -34,6 +37,16 @@ public class Lobby implements Serializable {
      * The lock status of the lobby.
      */
     boolean complete;
+    /**
+     * The nickname of the player who opened the lobby. The players are shuffled
+     * once the lobby is ready, so the first of the list is not always this one.
+     */
+    private transient String first;
+    /**
+     * True once the players have been shuffled: the game goes through them in
+     * this order, so they are shuffled only once.
+     */
+    private transient boolean shuffled;
 
     /**
      * It's a holder for the players that permits to check and limit access
@@ -60,6 +73,9 @@ public class Lobby implements Serializable {
             }
         }
         Player newPlayer = new Player(nickname);
+        if (players.isEmpty()) {
+            first = nickname;
+        }
         players.add(newPlayer);
 
         // max size is always more than zero when we check here.
@@ -165,6 +181,20 @@ public class Lobby implements Serializable {
         return false;
     }
 
+    /**
+     * It checks if a player is the one who opened the lobby, who chooses its size
+     *
+     * @param nickname nickname of the player
+     * @return true if the player opened the lobby
+     */
+    public boolean isFirst(String nickname) {
+        // a lobby read from a save has no opener, its players are in the order of the game
+        if (first == null) {
+            return !players.isEmpty() && players.get(0).getName().equals(nickname);
+        }
+        return first.equals(nickname);
+    }
+
     /**
      * It checks if the lobby is ready to start
      *
@@ -172,12 +202,48 @@ public class Lobby implements Serializable {
      */
     public boolean isReady() {
         // if ready to start, I shuffle the players.
-        if (maxSize == players.size()) {
+        if (maxSize == players.size() && !shuffled) {
             Collections.shuffle(players);
+            shuffled = true;
         }
         return maxSize == players.size();
     }
 
+    /**
+     * It writes the lobby to a compact snapshot: its size, its lock and its
+     * players, in order.
+     *
+     * @param out the output of the snapshot
+     * @throws IOException if the lobby cannot be written
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeByte(maxSize);
+        out.writeBoolean(complete);
+        out.writeByte(players.size());
+        for (Player player : players) {
+            player.writeSnapshot(out);
+        }
+    }
+
+    /**
+     * It reads a lobby written by {@link #writeSnapshot(DataOutput)}.
+     *
+     * @param in the input of the snapshot
+     * @return the lobby, with the players in the same order
+     * @throws IOException if the lobby cannot be read
+     */
+    static Lobby readSnapshot(DataInput in) throws IOException {
+        Lobby lobby = new Lobby();
+        lobby.shuffled = true;
+        lobby.maxSize = in.readByte();
+        lobby.complete = in.readBoolean();
+        int size = Snapshots.readCount(in);
+        for (int i = 0; i < size; i++) {
+            lobby.players.add(Player.readSnapshot(in));
+        }
+        return lobby;
+    }
+
     /**
      * Two lobbies are equal if they have the same number of players with the same
      * name.
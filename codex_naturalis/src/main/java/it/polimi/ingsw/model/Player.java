@@ -1,6 +1,14 @@
 package it.polimi.ingsw.model;
 
+import java.awt.Point;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.lang.Math;
 
 /**
@@ -214,4 +222,141 @@ public class Player implements java.io.Serializable{
     public void setColour(Color colour) {
         this.color = colour;
     }
+
+    /**
+     * This method writes the player to a compact snapshot: the counters, the ids of the cards and the board.
+     * The board is written as a list of cards sorted by turn, each one with its position: the links between the
+     * cards are not written, they are rebuilt from the positions.
+     *
+     * @param out the output of the snapshot
+     * @throws IOException if the player cannot be written
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeByte(color == null ? -1 : color.ordinal());
+        out.writeInt(points);
+        out.writeInt(objectivePoints);
+        out.writeByte(resources.size());
+        for (Sign sign : resources.keySet()) {
+            out.writeByte(sign.ordinal());
+            out.writeInt(resources.get(sign));
+        }
+        CardCatalog.writeCard(out, secretObjective);
+        out.writeByte(hand.length);
+        for (ResourceCard card : hand) {
+            CardCatalog.writeCard(out, card);
+        }
+
+        ArrayList<PlayedCard> board = getBoard();
+        out.writeShort(board.size());
+        for (PlayedCard playedCard : board) {
+            Point position = playedCard.getPosition();
+            CardCatalog.writeCard(out, playedCard.getCard());
+            out.writeShort(position.x);
+            out.writeShort(position.y);
+            out.writeShort(playedCard.getTurnOfPositioning());
+            out.writeBoolean(playedCard.isFacingUp());
+            out.writeBoolean(playedCard.isFlagCountedForObjective());
+        }
+    }
+
+    /**
+     * This method collects the cards placed by the player, visiting the graph of the cards without recursion.
+     *
+     * @return the cards placed by the player, sorted by turn, the root card first
+     */
+    private ArrayList<PlayedCard> getBoard() {
+        ArrayList<PlayedCard> board = new ArrayList<>();
+        if (rootCard == null) {
+            return board;
+        }
+        HashSet<PlayedCard> visited = new HashSet<>();
+        ArrayDeque<PlayedCard> toVisit = new ArrayDeque<>();
+        toVisit.add(rootCard);
+        visited.add(rootCard);
+        while (!toVisit.isEmpty()) {
+            PlayedCard card = toVisit.poll();
+            board.add(card);
+            for (Corner corner : Corner.values()) {
+                PlayedCard attached = card.getAttached(corner);
+                if (attached != null && visited.add(attached)) {
+                    toVisit.add(attached);
+                }
+            }
+        }
+        board.sort(Comparator.comparingInt(PlayedCard::getTurnOfPositioning));
+        return board;
+    }
+
+    /**
+     * This method reads a player written by {@link #writeSnapshot(DataOutput)}.
+     * The cards of the board are placed again in the order of their turns, and every card is linked to the cards
+     * already placed at its corners, as it happened during the game.
+     *
+     * @param in the input of the snapshot
+     * @return the player
+     * @throws IOException if the player cannot be read
+     */
+    static Player readSnapshot(DataInput in) throws IOException {
+        Player player = new Player(in.readUTF());
+        int color = in.readByte();
+        player.color = color < 0 ? null : Snapshots.constant(color, Color.values());
+        player.points = in.readInt();
+        player.objectivePoints = in.readInt();
+        int signs = Snapshots.readCount(in);
+        for (int i = 0; i < signs; i++) {
+            Sign sign = Snapshots.constant(in.readByte(), Sign.values());
+            player.resources.put(sign, in.readInt());
+        }
+        player.secretObjective = Snapshots.readCard(in, ObjectiveCard.class);
+        ResourceCard[] hand = new ResourceCard[Snapshots.readCount(in)];
+        for (int i = 0; i < hand.length; i++) {
+            hand[i] = Snapshots.readCard(in, ResourceCard.class);
+        }
+        player.hand = hand;
+
+        int boardSize = Snapshots.readShortCount(in);
+        HashMap<Point, PlayedCard> board = new HashMap<>();
+        for (int i = 0; i < boardSize; i++) {
+            PlayableCard card = Snapshots.readCard(in, PlayableCard.class);
+            Point position = new Point(in.readShort(), in.readShort());
+            int turn = in.readShort();
+            boolean facingUp = in.readBoolean();
+            boolean countedForObjective = in.readBoolean();
+
+            HashMap<Corner, PlayedCard> attachments = new HashMap<>();
+            for (Corner corner : Corner.values()) {
+                attachments.put(corner, board.get(cornerPosition(position, corner)));
+            }
+            PlayedCard playedCard = new PlayedCard(card, attachments, facingUp, turn, position);
+            if (countedForObjective) {
+                playedCard.flagWasCountedForObjective();
+            }
+            board.put(position, playedCard);
+            if (i == 0) {
+                player.rootCard = playedCard;
+            }
+        }
+        return player;
+    }
+
+    /**
+     * This method returns the position of the card which would be attached to a corner of a card.
+     *
+     * @param position the position of the card
+     * @param corner   the corner of the card
+     * @return the position of the card attached to the corner
+     */
+    private static Point cornerPosition(Point position, Corner corner) {
+        switch (corner) {
+            case TOP_LEFT:
+                return new Point(position.x, position.y + 1);
+            case TOP_RIGHT:
+                return new Point(position.x + 1, position.y);
+            case BOTTOM_LEFT:
+                return new Point(position.x - 1, position.y);
+            default:
+                return new Point(position.x, position.y - 1);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package it.polimi.ingsw.model;
+
+/**
+ * This is a row of the final ranking, sent to the clients at the end of the game.
+ * It contains only what the clients need to show the results: the name and the color of the player,
+ * the points gained on the board and the points gained from the objective cards.
+ * Unlike Player, it does not reference the board, the hand or the secret objective of the player.
+ */
+public class RankingEntry implements java.io.Serializable {
+    private final String name;
+    private final Color color;
+    private final int points;
+    private final int objectivePoints;
+
+    /**
+     * It is the constructor of RankingEntry.
+     *
+     * @param name            the name of the player
+     * @param color           the color of the pin of the player
+     * @param points          the points of the player on the board
+     * @param objectivePoints the points of the player from the objective cards
+     */
+    public RankingEntry(String name, Color color, int points, int objectivePoints) {
+        this.name = name;
+        this.color = color;
+        this.points = points;
+        this.objectivePoints = objectivePoints;
+    }
+
+    /**
+     * It creates the row of the ranking of the given player.
+     *
+     * @param player the player
+     * @return the row of the ranking
+     */
+    public static RankingEntry of(Player player) {
+        return new RankingEntry(player.getName(), player.getColor(), player.getPoints(), player.getObjectivePoints());
+    }
+
+    /**
+     * getter of player's name
+     *
+     * @return the name of the player
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * getter of the color of the pin
+     *
+     * @return the color of the pin
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * getter of player's points
+     *
+     * @return the points of the player
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * getter of the points from the objective cards
+     *
+     * @return the objective points of the player
+     */
+    public int getObjectivePoints() {
+        return objectivePoints;
+    }
+}
@@ -0,0 +1,351 @@
+package it.polimi.ingsw.model;
+
+import it.polimi.ingsw.model.exception.NoNameException;
+import javafx.util.Pair;
+
+import java.awt.Point;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * This is the state of a saved game as seen by one of its players, sent to the client when the game is resumed.
+ * It is a projection of the GameMaster: the boards are flat lists of placed cards, the cards are referenced by id,
+ * and the hands of the other players are hidden (only the kingdom and the type of each card is known).
+ * The secret objective and the hand of the recipient are the only private information it contains.
+ */
+public class ResumeSnapshot implements Serializable {
+    /**
+     * A card placed on the board of a player.
+     */
+    public static class BoardCard implements Serializable {
+        private final int cardId;
+        private final int x;
+        private final int y;
+        private final boolean side;
+        private final int turn;
+
+        /**
+         * It is the constructor of BoardCard.
+         *
+         * @param cardId the id of the card
+         * @param x      the x coordinate of the card on the board
+         * @param y      the y coordinate of the card on the board
+         * @param side   the side of the card
+         * @param turn   the turn in which the card has been placed
+         */
+        public BoardCard(int cardId, int x, int y, boolean side, int turn) {
+            this.cardId = cardId;
+            this.x = x;
+            this.y = y;
+            this.side = side;
+            this.turn = turn;
+        }
+
+        /**
+         * getter of the id of the card
+         *
+         * @return the id of the card
+         */
+        public int getCardId() {
+            return cardId;
+        }
+
+        /**
+         * getter of the position of the card
+         *
+         * @return a new point with the coordinates of the card
+         */
+        public Point getPosition() {
+            return new Point(x, y);
+        }
+
+        /**
+         * getter of the side of the card
+         *
+         * @return true if the card is facing up
+         */
+        public boolean isFacingUp() {
+            return side;
+        }
+
+        /**
+         * getter of the turn of positioning
+         *
+         * @return the turn in which the card has been placed
+         */
+        public int getTurn() {
+            return turn;
+        }
+    }
+
+    private final String recipient;
+    private final LinkedHashMap<String, Color> playersAndPins;
+    private final HashMap<String, Integer> points;
+    private final HashMap<String, HashMap<Sign, Integer>> resources;
+    private final LinkedHashMap<String, ArrayList<BoardCard>> boards;
+    private final Integer[] hand;
+    private final HashMap<String, Pair<Kingdom, Boolean>[]> otherPlayersCards;
+    private final Integer[] resourceCardsOnTable;
+    private final Integer[] goldCardsOnTable;
+    private final Kingdom headDeckGold;
+    private final Kingdom headDeckResource;
+    private final Integer[] commonObjectiveCards;
+    private final Integer[] secretObjectiveCardsToChoose;
+    private final Integer secretObjectiveCard;
+    private final String currentPlayer;
+    private final GameState gameState;
+
+    /**
+     * It builds the snapshot of the game for the given player.
+     *
+     * @param game      the game to be projected
+     * @param recipient the name of the player who will receive the snapshot
+     * @throws NoNameException if the player is not in the game
+     */
+    public ResumeSnapshot(GameMaster game, String recipient) throws NoNameException {
+        this.recipient = recipient;
+        Player[] players = game.getLobby().getPlayers();
+        Player me = game.getLobby().getPlayerFromName(recipient);
+
+        playersAndPins = new LinkedHashMap<>();
+        points = new HashMap<>();
+        resources = new HashMap<>();
+        boards = new LinkedHashMap<>();
+        otherPlayersCards = new HashMap<>();
+        for (Player player : players) {
+            playersAndPins.put(player.getName(), player.getColor());
+            points.put(player.getName(), player.getPoints());
+            resources.put(player.getName(), new HashMap<>(player.getResources()));
+            boards.put(player.getName(), flattenBoard(player.getRootCard()));
+            if (player != me) {
+                otherPlayersCards.put(player.getName(), hideHand(player.getHand()));
+            }
+        }
+
+        hand = new Integer[3];
+        for (int i = 0; i < 3; i++) {
+            hand[i] = me.getHand()[i] == null ? null : me.getHand()[i].getId();
+        }
+
+        resourceCardsOnTable = new Integer[2];
+        goldCardsOnTable = new Integer[2];
+        commonObjectiveCards = new Integer[2];
+        secretObjectiveCardsToChoose = new Integer[2];
+        int order = game.getOrderPlayer(recipient);
+        for (int i = 0; i < 2; i++) {
+            resourceCardsOnTable[i] = idOf(game.getResourceCard(i));
+            goldCardsOnTable[i] = idOf(game.getGoldCard(i));
+            commonObjectiveCards[i] = idOf(game.getObjectiveCard(i));
+            secretObjectiveCardsToChoose[i] = idOf(game.getObjectiveCardToChoose(order, i));
+        }
+        headDeckGold = game.getHeadDeck(true);
+        headDeckResource = game.getHeadDeck(false);
+        secretObjectiveCard = idOf(me.getSecretObjective());
+        currentPlayer = game.getCurrentPlayer().getName();
+        gameState = game.getGameState();
+    }
+
+    /**
+     * It walks the board of a player once and returns its cards sorted by turn of positioning,
+     * so the starting card is the first one.
+     *
+     * @param rootCard the starting card of the player
+     * @return the placed cards of the player
+     */
+    private static ArrayList<BoardCard> flattenBoard(PlayedCard rootCard) {
+        ArrayList<BoardCard> cards = new ArrayList<>();
+        if (rootCard == null) {
+            return cards;
+        }
+        HashSet<Point> visited = new HashSet<>();
+        ArrayDeque<PlayedCard> toVisit = new ArrayDeque<>();
+        toVisit.push(rootCard);
+        visited.add(rootCard.getPosition());
+        while (!toVisit.isEmpty()) {
+            PlayedCard card = toVisit.pop();
+            Point position = card.getPosition();
+            cards.add(new BoardCard(card.getCard().getId(), position.x, position.y, card.isFacingUp(),
+                    card.getTurnOfPositioning()));
+            for (Corner corner : Corner.values()) {
+                PlayedCard attached = card.getAttached(corner);
+                if (attached != null && visited.add(attached.getPosition())) {
+                    toVisit.push(attached);
+                }
+            }
+        }
+        cards.sort(Comparator.comparingInt(BoardCard::getTurn)
+                .thenComparingInt(card -> card.x + card.y));
+        return cards;
+    }
+
+    /**
+     * It hides the hand of a player, keeping only the kingdom and the type of each card.
+     *
+     * @param hand the hand of the player
+     * @return the hidden hand
+     */
+    private static Pair<Kingdom, Boolean>[] hideHand(ResourceCard[] hand) {
+        @SuppressWarnings("unchecked")
+        Pair<Kingdom, Boolean>[] hiddenHand = (Pair<Kingdom, Boolean>[]) new Pair<?, ?>[3];
+        for (int i = 0; i < 3; i++) {
+            if (hand[i] == null) {
+                hiddenHand[i] = new Pair<>(null, false);
+            } else {
+                hiddenHand[i] = new Pair<>(hand[i].getKingdom(), hand[i] instanceof GoldCard);
+            }
+        }
+        return hiddenHand;
+    }
+
+    /**
+     * @param card a card, possibly null
+     * @return the id of the card, or null if there is no card
+     */
+    private static Integer idOf(Card card) {
+        return card == null ? null : card.getId();
+    }
+
+    /**
+     * getter of the name of the player who receives the snapshot
+     *
+     * @return the name of the recipient
+     */
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * getter of the players and their pins, in the order of the game
+     *
+     * @return the players and their colors
+     */
+    public LinkedHashMap<String, Color> getPlayersAndPins() {
+        return playersAndPins;
+    }
+
+    /**
+     * getter of the points of the players
+     *
+     * @return the points of each player
+     */
+    public HashMap<String, Integer> getPoints() {
+        return points;
+    }
+
+    /**
+     * getter of the resources of the players
+     *
+     * @return the resources of each player
+     */
+    public HashMap<String, HashMap<Sign, Integer>> getResources() {
+        return resources;
+    }
+
+    /**
+     * getter of the boards of the players, in the order of the game
+     *
+     * @return the placed cards of each player, sorted by turn of positioning
+     */
+    public LinkedHashMap<String, ArrayList<BoardCard>> getBoards() {
+        return boards;
+    }
+
+    /**
+     * getter of the hand of the recipient
+     *
+     * @return the ids of the cards in the hand
+     */
+    public Integer[] getHand() {
+        return hand;
+    }
+
+    /**
+     * getter of the hidden hands of the other players
+     *
+     * @return the kingdom and the type of the cards of each other player
+     */
+    public HashMap<String, Pair<Kingdom, Boolean>[]> getOtherPlayersCards() {
+        return otherPlayersCards;
+    }
+
+    /**
+     * getter of the resource cards on the table
+     *
+     * @return the ids of the resource cards on the table
+     */
+    public Integer[] getResourceCardsOnTable() {
+        return resourceCardsOnTable;
+    }
+
+    /**
+     * getter of the gold cards on the table
+     *
+     * @return the ids of the gold cards on the table
+     */
+    public Integer[] getGoldCardsOnTable() {
+        return goldCardsOnTable;
+    }
+
+    /**
+     * getter of the kingdom of the head of the gold deck
+     *
+     * @return the kingdom, or null if the deck is empty
+     */
+    public Kingdom getHeadDeckGold() {
+        return headDeckGold;
+    }
+
+    /**
+     * getter of the kingdom of the head of the resource deck
+     *
+     * @return the kingdom, or null if the deck is empty
+     */
+    public Kingdom getHeadDeckResource() {
+        return headDeckResource;
+    }
+
+    /**
+     * getter of the common objective cards
+     *
+     * @return the ids of the common objective cards
+     */
+    public Integer[] getCommonObjectiveCards() {
+        return commonObjectiveCards;
+    }
+
+    /**
+     * getter of the objective cards the recipient could choose from
+     *
+     * @return the ids of the objective cards
+     */
+    public Integer[] getSecretObjectiveCardsToChoose() {
+        return secretObjectiveCardsToChoose;
+    }
+
+    /**
+     * getter of the secret objective card of the recipient
+     *
+     * @return the id of the secret objective card
+     */
+    public Integer getSecretObjectiveCard() {
+        return secretObjectiveCard;
+    }
+
+    /**
+     * getter of the player who is playing
+     *
+     * @return the name of the current player
+     */
+    public String getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * getter of the state of the game
+     *
+     * @return the state of the game
+     */
+    public GameState getGameState() {
+        return gameState;
+    }
+}
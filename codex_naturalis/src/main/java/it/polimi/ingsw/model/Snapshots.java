@@ -0,0 +1,88 @@
+package it.polimi.ingsw.model;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * The checks of the values read from a compact snapshot.
+ *
+ * A damaged or forged snapshot must fail with a {@link StreamCorruptedException}, as the rest of the snapshot, and not
+ * with the exception of the first array or enum that happens to use a wrong value.
+ */
+final class Snapshots {
+    /**
+     * This class only has static methods.
+     */
+    private Snapshots() {
+    }
+
+    /**
+     * Reads a number of elements written as a byte.
+     *
+     * @param in the input of the snapshot
+     * @return the number of elements
+     * @throws IOException if the number cannot be read or it is negative
+     */
+    static int readCount(DataInput in) throws IOException {
+        return checkCount(in.readByte());
+    }
+
+    /**
+     * Reads a number of elements written as a short.
+     *
+     * @param in the input of the snapshot
+     * @return the number of elements
+     * @throws IOException if the number cannot be read or it is negative
+     */
+    static int readShortCount(DataInput in) throws IOException {
+        return checkCount(in.readShort());
+    }
+
+    /**
+     * Gets a constant of an enum from its ordinal.
+     *
+     * @param ordinal the ordinal read from the snapshot
+     * @param values  the constants of the enum
+     * @param <E>     the type of the enum
+     * @return the constant
+     * @throws StreamCorruptedException if the ordinal is not one of the constants
+     */
+    static <E extends Enum<E>> E constant(int ordinal, E[] values) throws StreamCorruptedException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new StreamCorruptedException("Invalid ordinal in the snapshot: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Reads the id of a card and gets the card from the {@link CardCatalog}, checking its type.
+     *
+     * @param in   the input of the snapshot
+     * @param type the type the card must have
+     * @param <T>  the type of the card
+     * @return the card, or null if the card was missing
+     * @throws IOException if the id cannot be read, or it is unknown, or the card has another type
+     */
+    static <T extends Card> T readCard(DataInput in, Class<T> type) throws IOException {
+        Card card = CardCatalog.readCard(in);
+        if (card != null && !type.isInstance(card)) {
+            throw new StreamCorruptedException("Card " + card.getId() + " is not a " + type.getSimpleName());
+        }
+        return type.cast(card);
+    }
+
+    /**
+     * Checks a number of elements.
+     *
+     * @param count the number read from the snapshot
+     * @return the number
+     * @throws StreamCorruptedException if the number is negative
+     */
+    private static int checkCount(int count) throws StreamCorruptedException {
+        if (count < 0) {
+            throw new StreamCorruptedException("Negative count in the snapshot: " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,269 @@
+package it.polimi.ingsw.model;
+
+import javafx.util.Pair;
+
+import java.awt.Point;
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * This is everything a command of a player has changed in the game, sent to all the clients after the command.
+ * After a placement it contains the placed card, the resource counters that have changed and the points gained,
+ * after a draw it contains the new card on the table and the hidden hand of the player.
+ * Only the resource counters that have changed are sent, and the points are sent as a difference.
+ * It is the argument of the RMI callback and the content of the TurnDelta message, so both transports share it.
+ */
+public class TurnChange implements Serializable {
+    /**
+     * The nickname of the player who sent the command.
+     */
+    private final String nickname;
+    /**
+     * The id of the placed card, null if the command is a draw.
+     */
+    private final Integer placedCardId;
+    /**
+     * The position of the placed card.
+     */
+    private final Point position;
+    /**
+     * The side of the placed card.
+     */
+    private final boolean side;
+    /**
+     * The turn in which the card has been placed.
+     */
+    private final int turn;
+    /**
+     * The resource counters changed by the placed card, with their new values.
+     */
+    private final HashMap<Sign, Integer> changedResources;
+    /**
+     * The points gained with the placed card.
+     */
+    private final int pointsDelta;
+    /**
+     * The id of the new card on the table, if the command is a draw.
+     */
+    private final Integer newCardId;
+    /**
+     * Whether the card has been drawn from the gold cards.
+     */
+    private final boolean gold;
+    /**
+     * Where the card has been drawn from: -1 for the deck, 0 or 1 for the table.
+     */
+    private final int onTableOrDeck;
+    /**
+     * The kingdom of the head of the deck the card has been drawn from.
+     */
+    private final Kingdom headDeck;
+    /**
+     * The hidden hand of the player after the draw. It is null for the player who drew.
+     */
+    private final Pair<Kingdom, Boolean>[] hiddenHand;
+    /**
+     * The nickname of the player who plays next.
+     */
+    private final String currentPlayer;
+    /**
+     * The state of the game after the command.
+     */
+    private final GameState state;
+
+    /**
+     * Constructor for the TurnChange of a placement.
+     *
+     * @param nickname         The nickname of the player who placed the card.
+     * @param placedCardId     The id of the placed card.
+     * @param position         The position of the placed card.
+     * @param side             The side of the placed card.
+     * @param turn             The turn in which the card has been placed.
+     * @param changedResources The resource counters changed by the card, with their new values.
+     * @param pointsDelta      The points gained with the card.
+     * @param currentPlayer    The nickname of the player who plays next.
+     * @param state            The state of the game after the placement.
+     */
+    public TurnChange(String nickname, int placedCardId, Point position, boolean side, int turn,
+                     HashMap<Sign, Integer> changedResources, int pointsDelta, String currentPlayer, GameState state) {
+        this.nickname = nickname;
+        this.placedCardId = placedCardId;
+        this.position = position;
+        this.side = side;
+        this.turn = turn;
+        this.changedResources = changedResources;
+        this.pointsDelta = pointsDelta;
+        this.newCardId = null;
+        this.gold = false;
+        this.onTableOrDeck = -1;
+        this.headDeck = null;
+        this.hiddenHand = null;
+        this.currentPlayer = currentPlayer;
+        this.state = state;
+    }
+
+    /**
+     * Constructor for the TurnChange of a draw.
+     *
+     * @param nickname      The nickname of the player who drew the card.
+     * @param newCardId     The id of the new card on the table.
+     * @param gold          Whether the card has been drawn from the gold cards.
+     * @param onTableOrDeck Where the card has been drawn from: -1 for the deck, 0 or 1 for the table.
+     * @param headDeck      The kingdom of the head of the deck.
+     * @param hiddenHand    The hidden hand of the player after the draw, null for the player who drew.
+     * @param currentPlayer The nickname of the player who plays next.
+     * @param state         The state of the game after the draw.
+     */
+    public TurnChange(String nickname, Integer newCardId, boolean gold, int onTableOrDeck, Kingdom headDeck,
+                     Pair<Kingdom, Boolean>[] hiddenHand, String currentPlayer, GameState state) {
+        this.nickname = nickname;
+        this.placedCardId = null;
+        this.position = null;
+        this.side = false;
+        this.turn = 0;
+        this.changedResources = new HashMap<>();
+        this.pointsDelta = 0;
+        this.newCardId = newCardId;
+        this.gold = gold;
+        this.onTableOrDeck = onTableOrDeck;
+        this.headDeck = headDeck;
+        this.hiddenHand = hiddenHand;
+        this.currentPlayer = currentPlayer;
+        this.state = state;
+    }
+
+    /**
+     * Gets the nickname of the player who sent the command.
+     *
+     * @return The nickname of the player.
+     */
+    public String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Checks if the command is a placement.
+     *
+     * @return True if a card has been placed, false if a card has been drawn.
+     */
+    public boolean isPlacement() {
+        return placedCardId != null;
+    }
+
+    /**
+     * Gets the id of the placed card.
+     *
+     * @return The id of the placed card, null if the command is a draw.
+     */
+    public Integer getPlacedCardId() {
+        return placedCardId;
+    }
+
+    /**
+     * Gets the position of the placed card.
+     *
+     * @return The position of the placed card.
+     */
+    public Point getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the side of the placed card.
+     *
+     * @return The side of the placed card.
+     */
+    public boolean getSide() {
+        return side;
+    }
+
+    /**
+     * Gets the turn in which the card has been placed.
+     *
+     * @return The turn number.
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Gets the resource counters changed by the placed card.
+     *
+     * @return The new value of each changed resource.
+     */
+    public HashMap<Sign, Integer> getChangedResources() {
+        return changedResources;
+    }
+
+    /**
+     * Gets the points gained with the placed card.
+     *
+     * @return The difference of points.
+     */
+    public int getPointsDelta() {
+        return pointsDelta;
+    }
+
+    /**
+     * Gets the id of the new card on the table.
+     *
+     * @return The id of the card.
+     */
+    public Integer getNewCardId() {
+        return newCardId;
+    }
+
+    /**
+     * Gets the gold status of the drawn card.
+     *
+     * @return True if the card has been drawn from the gold cards.
+     */
+    public boolean isGold() {
+        return gold;
+    }
+
+    /**
+     * Gets where the card has been drawn from.
+     *
+     * @return -1 for the deck, 0 or 1 for the table.
+     */
+    public int getOnTableOrDeck() {
+        return onTableOrDeck;
+    }
+
+    /**
+     * Gets the kingdom of the head of the deck.
+     *
+     * @return The kingdom of the head of the deck.
+     */
+    public Kingdom getHeadDeck() {
+        return headDeck;
+    }
+
+    /**
+     * Gets the hidden hand of the player after the draw.
+     *
+     * @return The hidden hand, null for the player who drew.
+     */
+    public Pair<Kingdom, Boolean>[] getHiddenHand() {
+        return hiddenHand;
+    }
+
+    /**
+     * Gets the nickname of the player who plays next.
+     *
+     * @return The nickname of the current player.
+     */
+    public String getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Gets the state of the game after the command.
+     *
+     * @return The state of the game.
+     */
+    public GameState getState() {
+        return state;
+    }
+}
@@ -0,0 +1,68 @@
+package it.polimi.ingsw.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The BroadcastEvent is the JDK Flight Recorder event of a broadcast of the NetworkHandler, while it is handed to
+ * every transport.
+ *
+ * The time of the broadcast is also added to the fan-out of the command traced by the thread, if any (see
+ * {@link CommandTrace}).
+ */
+@Name("it.polimi.ingsw.Broadcast")
+@Label("Broadcast")
+@Category({"Codex Naturalis", "Network"})
+@Description("A message handed to every transport")
+@StackTrace(false)
+public class BroadcastEvent extends Event {
+    /**
+     * The id of the game, the seed of its decks.
+     */
+    @Label("Game Id")
+    long gameId;
+    /**
+     * The type of the message broadcast.
+     */
+    @Label("Message Type")
+    String messageType;
+    /**
+     * The number of transports the message has been handed to.
+     */
+    @Label("Transports")
+    int transports;
+
+    /**
+     * Creates a new BroadcastEvent and starts its timing.
+     *
+     * @return the started event
+     */
+    public static BroadcastEvent start() {
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        CommandTrace.broadcastStarted();
+        return event;
+    }
+
+    /**
+     * Ends the timing of the event and commits it, if a recording is interested in it.
+     *
+     * @param gameId      the id of the game
+     * @param messageType the type of the message broadcast
+     * @param transports  the number of transports the message has been handed to
+     */
+    public void finish(long gameId, String messageType, int transports) {
+        end();
+        CommandTrace.broadcastEnded();
+        if (shouldCommit()) {
+            this.gameId = gameId;
+            this.messageType = messageType;
+            this.transports = transports;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package it.polimi.ingsw.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The CommandEvent is the JDK Flight Recorder event of a command received from a client, from the moment it is
+ * received to the moment it has been handled, broadcasts included.
+ *
+ * The event costs almost nothing when no recording is running: its fields are set only if the event is going to be
+ * committed.
+ */
+@Name("it.polimi.ingsw.Command")
+@Label("Command")
+@Category({"Codex Naturalis", "Network"})
+@Description("A command received from a client")
+@StackTrace(false)
+public class CommandEvent extends Event {
+    /**
+     * The id of the game, the seed of its decks.
+     */
+    @Label("Game Id")
+    long gameId;
+    /**
+     * The nickname of the player who sent the command.
+     */
+    @Label("Player")
+    String player;
+    /**
+     * The type of the command.
+     */
+    @Label("Message Type")
+    String messageType;
+    /**
+     * The transport the command came from.
+     */
+    @Label("Transport")
+    String transport;
+    /**
+     * The size of the command received, 0 if it is not known.
+     */
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+    /**
+     * Creates a new CommandEvent and starts its timing.
+     *
+     * @return the started event
+     */
+    public static CommandEvent start() {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the timing of the event and commits it, if a recording is interested in it.
+     *
+     * @param gameId      the id of the game
+     * @param player      the nickname of the player, null if not yet known
+     * @param messageType the type of the command
+     * @param transport   the transport the command came from
+     * @param payloadSize the size of the command received, 0 if it is not known
+     */
+    public void finish(long gameId, String player, String messageType, String transport, int payloadSize) {
+        end();
+        if (shouldCommit()) {
+            this.gameId = gameId;
+            this.player = player;
+            this.messageType = messageType;
+            this.transport = transport;
+            this.payloadSize = payloadSize;
+            commit();
+        }
+    }
+}
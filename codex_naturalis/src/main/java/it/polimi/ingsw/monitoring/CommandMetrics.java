@@ -0,0 +1,185 @@
+package it.polimi.ingsw.monitoring;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The CommandMetrics keeps the latency of the commands of the players, by command and by transport, and publishes it
+ * over JMX.
+ *
+ * Every pair of command and transport has its own {@link LatencyHistogram}, created on its first latency and
+ * registered in the platform MBean server as
+ * "it.polimi.ingsw:type=CommandLatency,transport=&lt;transport&gt;,command=&lt;command&gt;", so it can be read with
+ * jconsole or any JMX client. Finding the histogram of a command does not lock, so the commands of different
+ * players are never serialized by their measurement.
+ */
+public class CommandMetrics {
+    /**
+     * The commands whose latency is recorded.
+     */
+    public enum Command {
+        PLACE_ROOT_CARD("placeRootCard"),
+        CHOOSE_OBJECTIVE_CARD("chooseObjectiveCard"),
+        PLACE_CARD("placeCard"),
+        DRAW_CARD("drawCard"),
+        SAVE_GAME("saveGame");
+
+        /**
+         * The name of the command in JMX.
+         */
+        private final String name;
+
+        /**
+         * Creates a new Command.
+         *
+         * @param name the name of the command in JMX
+         */
+        Command(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Getter of the name of the command in JMX.
+         *
+         * @return the name of the command
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The transports a command can come from.
+     */
+    public enum Transport {
+        SOCKET("socket"),
+        RMI("rmi"),
+        /**
+         * The in-process transport of the tests and the benchmarks.
+         */
+        LOOPBACK("loopback"),
+        /**
+         * The commands run by the server itself, such as the saves.
+         */
+        SERVER("server");
+
+        /**
+         * The name of the transport in JMX.
+         */
+        private final String name;
+
+        /**
+         * Creates a new Transport.
+         *
+         * @param name the name of the transport in JMX
+         */
+        Transport(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Getter of the name of the transport in JMX.
+         *
+         * @return the name of the transport
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The number of commands, kept since values() copies the array on every call.
+     */
+    private static final int COMMANDS = Command.values().length;
+
+    /**
+     * The instance of the metrics.
+     */
+    private static final CommandMetrics INSTANCE = new CommandMetrics();
+
+    /**
+     * The histograms, by transport and command.
+     */
+    private final AtomicReferenceArray<LatencyHistogram> histograms =
+            new AtomicReferenceArray<>(Transport.values().length * COMMANDS);
+
+    /**
+     * Getter of the instance of the metrics.
+     *
+     * @return the instance of the metrics
+     */
+    public static CommandMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the latency of a command that has just finished.
+     *
+     * @param command    the command, nothing is recorded if it is null
+     * @param transport  the transport the command came from
+     * @param startNanos the start of the command, as given by System.nanoTime()
+     */
+    public void record(Command command, Transport transport, long startNanos) {
+        if (command != null) {
+            histogram(command, transport).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Gives the histogram of a command and a transport, without creating it.
+     *
+     * @param command   the command
+     * @param transport the transport
+     * @return the histogram of the latencies of the command, or null if none has been recorded
+     */
+    public LatencyHistogram getHistogram(Command command, Transport transport) {
+        return histograms.get(transport.ordinal() * COMMANDS + command.ordinal());
+    }
+
+    /**
+     * Gives the histogram of a command and a transport, creating and publishing it on the first call.
+     *
+     * @param command   the command
+     * @param transport the transport
+     * @return the histogram of the latencies of the command
+     */
+    public LatencyHistogram histogram(Command command, Transport transport) {
+        int index = transport.ordinal() * COMMANDS + command.ordinal();
+        LatencyHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            if (histograms.compareAndSet(index, null, created)) {
+                publish(created, command, transport);
+                histogram = created;
+            } else {
+                histogram = histograms.get(index);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a histogram in the platform MBean server. The latencies are recorded even if it cannot be
+     * registered.
+     *
+     * @param histogram the histogram
+     * @param command   the command it measures
+     * @param transport the transport it measures
+     */
+    private void publish(LatencyHistogram histogram, Command command, Transport transport) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("it.polimi.ingsw:type=CommandLatency,transport=" + transport.name
+                    + ",command=" + command.name);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(histogram, name);
+        } catch (JMException | RuntimeException e) {
+            Log.warn("Cannot publish the latency of {} over JMX: {}", command.name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package it.polimi.ingsw.monitoring;
+
+import it.polimi.ingsw.network.Correlation;
+import it.polimi.ingsw.network.RoundTrip;
+
+/**
+ * The CommandTrace measures, on the server, a command that the client has asked to trace.
+ *
+ * The trace belongs to the thread handling the command, so the code called by the command can find it without
+ * receiving it: the answers sent while the command is handled carry its correlation id, and the broadcasts add their
+ * time to the fan-out of the command (see {@link BroadcastEvent}). The processing time is the time of the command
+ * without its fan-out.
+ */
+public class CommandTrace {
+    /**
+     * The trace of the command handled by each thread.
+     */
+    private static final ThreadLocal<CommandTrace> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The correlation of the command.
+     */
+    private final Correlation correlation;
+    /**
+     * The time the command has been received, as given by System.nanoTime().
+     */
+    private final long receivedNanos;
+    /**
+     * The time the command started to be handled.
+     */
+    private final long startNanos;
+    /**
+     * The time spent in the broadcasts so far.
+     */
+    private long fanOutNanos = 0;
+    /**
+     * The number of broadcasts running, since a broadcast can start another one.
+     */
+    private int broadcasts = 0;
+    /**
+     * The start of the outermost broadcast running.
+     */
+    private long broadcastStartNanos;
+
+    /**
+     * Creates a new CommandTrace.
+     *
+     * @param correlation   the correlation of the command
+     * @param receivedNanos the time the command has been received
+     */
+    private CommandTrace(Correlation correlation, long receivedNanos) {
+        this.correlation = correlation;
+        this.receivedNanos = receivedNanos;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts tracing a command on the current thread.
+     *
+     * @param correlation   the correlation sent by the client, null if the command is not traced
+     * @param receivedNanos the time the command has been received, as given by System.nanoTime()
+     * @return the trace, or null if the command is not traced
+     */
+    public static CommandTrace begin(Correlation correlation, long receivedNanos) {
+        if (correlation == null) {
+            return null;
+        }
+        CommandTrace trace = new CommandTrace(correlation, receivedNanos);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Stops tracing the command.
+     *
+     * @param command the type of the command
+     * @return the timing of the command, to be sent to the client
+     */
+    public RoundTrip end(String command) {
+        CURRENT.remove();
+        long total = System.nanoTime() - startNanos;
+        return new RoundTrip(correlation, command, startNanos - receivedNanos, total - fanOutNanos, fanOutNanos);
+    }
+
+    /**
+     * Gives the correlation id of the command handled by the current thread, to be set in its answers.
+     *
+     * @return the id, or 0 if the thread is not handling a traced command
+     */
+    public static long currentCorrelationId() {
+        CommandTrace trace = CURRENT.get();
+        return trace == null ? 0 : trace.correlation.getId();
+    }
+
+    /**
+     * Notifies that a broadcast starts on the current thread.
+     */
+    static void broadcastStarted() {
+        CommandTrace trace = CURRENT.get();
+        if (trace != null && trace.broadcasts++ == 0) {
+            trace.broadcastStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Notifies that a broadcast has ended on the current thread.
+     */
+    static void broadcastEnded() {
+        CommandTrace trace = CURRENT.get();
+        if (trace != null && trace.broadcasts > 0 && --trace.broadcasts == 0) {
+            trace.fanOutNanos += System.nanoTime() - trace.broadcastStartNanos;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package it.polimi.ingsw.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The EngineEvent is the JDK Flight Recorder event of a call to the rules of the game, in the GameMaster, without the
+ * network around it.
+ */
+@Name("it.polimi.ingsw.Engine")
+@Label("Engine Call")
+@Category({"Codex Naturalis", "Game"})
+@Description("A move applied by the GameMaster")
+@StackTrace(false)
+public class EngineEvent extends Event {
+    /**
+     * The id of the game, the seed of its decks.
+     */
+    @Label("Game Id")
+    long gameId;
+    /**
+     * The nickname of the player who made the move.
+     */
+    @Label("Player")
+    String player;
+    /**
+     * The move, the name of the method of the GameMaster.
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * Creates a new EngineEvent and starts its timing.
+     *
+     * @return the started event
+     */
+    public static EngineEvent start() {
+        EngineEvent event = new EngineEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the timing of the event and commits it, if a recording is interested in it.
+     *
+     * @param gameId    the id of the game
+     * @param player    the nickname of the player
+     * @param operation the move
+     */
+    public void finish(long gameId, String player, String operation) {
+        end();
+        if (shouldCommit()) {
+            this.gameId = gameId;
+            this.player = player;
+            this.operation = operation;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package it.polimi.ingsw.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram records how long an operation takes, so its percentiles can be read while the server runs.
+ *
+ * The latencies are counted in buckets whose width grows with the latency: every power of two is split in
+ * {@value #SUB_BUCKETS} buckets, so a percentile is reported with an error of about 6%, whatever its size, in a
+ * fixed array of counters. Recording a latency only increments a few atomic counters: it never locks and never
+ * allocates, so it can be called on the path it measures. The percentiles are computed when they are read.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    /**
+     * The number of bits of a latency kept, after its highest bit, to choose its bucket.
+     */
+    private static final int SUB_BITS = 4;
+    /**
+     * The number of buckets every power of two is split in.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * The number of buckets, enough for any positive long.
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of latencies in every bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * The number of latencies recorded.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * The sum of the latencies recorded, in nanoseconds.
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * The highest latency recorded, in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency, in nanoseconds; a negative latency is recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gives the bucket of a latency.
+     *
+     * @param value the latency, not negative
+     * @return the position of its bucket
+     */
+    static int bucketOf(long value) {
+        // the values below 2 * SUB_BUCKETS have a bucket each, then the width of the buckets doubles with the value
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - (SUB_BITS + 1));
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Gives the highest latency of a bucket.
+     *
+     * @param bucket the position of the bucket
+     * @return the highest latency counted in the bucket
+     */
+    static long highestOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Gives a percentile of the latencies recorded.
+     *
+     * @param quantile the percentile, between 0 and 1
+     * @return the latency below which the given part of the latencies is, in nanoseconds, 0 if nothing has been
+     * recorded
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // the bucket is never reported above the highest latency seen
+                return Math.min(highestOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : sum.sum() / 1000.0 / recorded;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return percentile(0.999) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
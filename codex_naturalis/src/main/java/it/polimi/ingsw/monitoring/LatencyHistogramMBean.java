@@ -0,0 +1,53 @@
+package it.polimi.ingsw.monitoring;
+
+/**
+ * The management interface of a {@link LatencyHistogram}, published over JMX.
+ */
+public interface LatencyHistogramMBean {
+    /**
+     * Getter of the number of latencies recorded.
+     *
+     * @return the number of latencies
+     */
+    long getCount();
+
+    /**
+     * Getter of the mean latency.
+     *
+     * @return the mean latency, in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Getter of the median latency.
+     *
+     * @return the 50th percentile, in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * Getter of the 99th percentile of the latencies.
+     *
+     * @return the 99th percentile, in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * Getter of the 99.9th percentile of the latencies.
+     *
+     * @return the 99.9th percentile, in microseconds
+     */
+    double getP999Micros();
+
+    /**
+     * Getter of the highest latency.
+     *
+     * @return the highest latency, in microseconds
+     */
+    double getMaxMicros();
+
+    /**
+     * Forgets the latencies recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,559 @@
+package it.polimi.ingsw.monitoring;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Log writes the messages of the server without making the game threads wait for the console.
+ *
+ * A message is put in a ring buffer of entries allocated once, and a background thread formats it and writes it
+ * to the standard output. Putting a message only claims an entry with an atomic counter: it never locks and never
+ * waits, and when the buffer is full the message is dropped and counted, and the writer reports the number of lines
+ * dropped. The arguments of a message are formatted by the writer, replacing every "{}" of the message in order, so a
+ * message below the level costs nothing but the check of the level; the arguments must not be changed after they are
+ * logged.
+ *
+ * The lowest level logged is given by the "codex.log.level" property (INFO by default) and can be changed while the
+ * server runs, over JMX as "it.polimi.ingsw:type=Log". The capacity of the buffer is given by the "codex.log.capacity"
+ * property (8192 by default, rounded down to a power of two).
+ */
+public class Log implements LogMBean {
+    /**
+     * The levels of the messages, from the most verbose.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR,
+        /**
+         * Nothing is logged.
+         */
+        OFF
+    }
+
+    /**
+     * The longest time the writer sleeps when the buffer is empty, in nanoseconds.
+     */
+    private static final long MAX_IDLE_NANOS = 20_000_000L;
+    /**
+     * The format of the time of a line.
+     */
+    private static final DateTimeFormatter TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * The instance of the log.
+     */
+    private static final Log INSTANCE = new Log(System.out,
+            Integer.getInteger("codex.log.capacity", 8192),
+            parseLevel(System.getProperty("codex.log.level", "INFO"), Level.INFO));
+
+    /**
+     * An entry of the buffer, reused for every message written in it.
+     */
+    private static final class Entry {
+        /**
+         * The position of the message in the log, set last, once the entry is filled.
+         */
+        private volatile long published = -1;
+        /**
+         * The level of the message.
+         */
+        private Level level;
+        /**
+         * The time of the message, as given by System.currentTimeMillis().
+         */
+        private long timeMillis;
+        /**
+         * The name of the thread that logged the message.
+         */
+        private String thread;
+        /**
+         * The message, with a "{}" for every argument.
+         */
+        private String template;
+        /**
+         * The number of arguments.
+         */
+        private int count;
+        /**
+         * The first argument.
+         */
+        private Object first;
+        /**
+         * The second argument.
+         */
+        private Object second;
+        /**
+         * All the arguments, when there are more than two.
+         */
+        private Object[] arguments;
+
+        /**
+         * Gives an argument of the message.
+         *
+         * @param index the position of the argument
+         * @return the argument
+         */
+        private Object argument(int index) {
+            if (arguments != null) {
+                return arguments[index];
+            }
+            return index == 0 ? first : second;
+        }
+    }
+
+    /**
+     * The entries of the buffer.
+     */
+    private final Entry[] entries;
+    /**
+     * The mask giving the entry of a position.
+     */
+    private final int mask;
+    /**
+     * The position of the next message.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The position of the next message to be written.
+     */
+    private volatile long tail = 0;
+    /**
+     * The position of the next message whose line is not on the output yet: a message leaves the buffer when it
+     * is formatted, but is flushed only once its batch is written.
+     */
+    private volatile long written = 0;
+    /**
+     * The number of messages dropped because the buffer was full.
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * The lowest level logged.
+     */
+    private volatile Level level;
+    /**
+     * The stream the lines are written to.
+     */
+    private final PrintStream out;
+    /**
+     * The thread writing the lines.
+     */
+    private final Thread writer;
+
+    /**
+     * Creates a new Log and starts its writer.
+     *
+     * @param out      the stream the lines are written to
+     * @param capacity the number of messages the buffer can hold, rounded down to a power of two
+     * @param level    the lowest level logged
+     */
+    public Log(PrintStream out, int capacity, Level level) {
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        this.entries = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.level = level;
+        writer = new Thread(this::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Getter of the instance of the log.
+     *
+     * @return the instance of the log
+     */
+    public static Log getInstance() {
+        return INSTANCE;
+    }
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("it.polimi.ingsw:type=Log");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException | RuntimeException e) {
+            INSTANCE.log(Level.WARN, "Cannot publish the log over JMX: {}", 1, e.getMessage(), null, null);
+        }
+    }
+
+    /**
+     * Tells if the messages of a level are logged.
+     *
+     * @param level the level
+     * @return true if the messages of the level are logged
+     */
+    public static boolean isEnabled(Level level) {
+        return INSTANCE.enabled(level);
+    }
+
+    /**
+     * Logs a message useful only to find a problem.
+     *
+     * @param message the message
+     */
+    public static void debug(String message) {
+        INSTANCE.log(Level.DEBUG, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs a message useful only to find a problem.
+     *
+     * @param message  the message, with a "{}" for the argument
+     * @param argument the argument
+     */
+    public static void debug(String message, Object argument) {
+        INSTANCE.log(Level.DEBUG, message, 1, argument, null, null);
+    }
+
+    /**
+     * Logs a message useful only to find a problem.
+     *
+     * @param message the message, with a "{}" for every argument
+     * @param first   the first argument
+     * @param second  the second argument
+     */
+    public static void debug(String message, Object first, Object second) {
+        INSTANCE.log(Level.DEBUG, message, 2, first, second, null);
+    }
+
+    /**
+     * Logs a message useful only to find a problem.
+     *
+     * @param message   the message, with a "{}" for every argument
+     * @param arguments the arguments
+     */
+    public static void debug(String message, Object... arguments) {
+        INSTANCE.log(Level.DEBUG, message, arguments.length, null, null, arguments);
+    }
+
+    /**
+     * Logs a message about the normal work of the server.
+     *
+     * @param message the message
+     */
+    public static void info(String message) {
+        INSTANCE.log(Level.INFO, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs a message about the normal work of the server.
+     *
+     * @param message  the message, with a "{}" for the argument
+     * @param argument the argument
+     */
+    public static void info(String message, Object argument) {
+        INSTANCE.log(Level.INFO, message, 1, argument, null, null);
+    }
+
+    /**
+     * Logs a message about the normal work of the server.
+     *
+     * @param message the message, with a "{}" for every argument
+     * @param first   the first argument
+     * @param second  the second argument
+     */
+    public static void info(String message, Object first, Object second) {
+        INSTANCE.log(Level.INFO, message, 2, first, second, null);
+    }
+
+    /**
+     * Logs a message about the normal work of the server.
+     *
+     * @param message   the message, with a "{}" for every argument
+     * @param arguments the arguments
+     */
+    public static void info(String message, Object... arguments) {
+        INSTANCE.log(Level.INFO, message, arguments.length, null, null, arguments);
+    }
+
+    /**
+     * Logs a problem the server recovers from.
+     *
+     * @param message the message
+     */
+    public static void warn(String message) {
+        INSTANCE.log(Level.WARN, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs a problem the server recovers from.
+     *
+     * @param message  the message, with a "{}" for the argument
+     * @param argument the argument
+     */
+    public static void warn(String message, Object argument) {
+        INSTANCE.log(Level.WARN, message, 1, argument, null, null);
+    }
+
+    /**
+     * Logs a problem the server recovers from.
+     *
+     * @param message the message, with a "{}" for every argument
+     * @param first   the first argument
+     * @param second  the second argument
+     */
+    public static void warn(String message, Object first, Object second) {
+        INSTANCE.log(Level.WARN, message, 2, first, second, null);
+    }
+
+    /**
+     * Logs a problem the server recovers from.
+     *
+     * @param message   the message, with a "{}" for every argument
+     * @param arguments the arguments
+     */
+    public static void warn(String message, Object... arguments) {
+        INSTANCE.log(Level.WARN, message, arguments.length, null, null, arguments);
+    }
+
+    /**
+     * Logs an error that should never happen.
+     *
+     * @param message the message
+     */
+    public static void error(String message) {
+        INSTANCE.log(Level.ERROR, message, 0, null, null, null);
+    }
+
+    /**
+     * Logs an error that should never happen.
+     *
+     * @param message  the message, with a "{}" for the argument
+     * @param argument the argument
+     */
+    public static void error(String message, Object argument) {
+        INSTANCE.log(Level.ERROR, message, 1, argument, null, null);
+    }
+
+    /**
+     * Logs an error that should never happen.
+     *
+     * @param message the message, with a "{}" for every argument
+     * @param first   the first argument
+     * @param second  the second argument
+     */
+    public static void error(String message, Object first, Object second) {
+        INSTANCE.log(Level.ERROR, message, 2, first, second, null);
+    }
+
+    /**
+     * Logs an error that should never happen.
+     *
+     * @param message   the message, with a "{}" for every argument
+     * @param arguments the arguments
+     */
+    public static void error(String message, Object... arguments) {
+        INSTANCE.log(Level.ERROR, message, arguments.length, null, null, arguments);
+    }
+
+    /**
+     * Tells if the messages of a level are logged by this log.
+     *
+     * @param level the level
+     * @return true if the messages of the level are logged
+     */
+    public boolean enabled(Level level) {
+        return level != Level.OFF && level.ordinal() >= this.level.ordinal();
+    }
+
+    /**
+     * Puts a message in the buffer, or drops it if the buffer is full. It never waits.
+     *
+     * @param level     the level of the message
+     * @param template  the message, with a "{}" for every argument
+     * @param count     the number of arguments
+     * @param first     the first argument, when there are at most two
+     * @param second    the second argument, when there are two
+     * @param arguments all the arguments, when there are more than two, or null
+     */
+    public void log(Level level, String template, int count, Object first, Object second, Object[] arguments) {
+        if (!enabled(level)) {
+            return;
+        }
+        long position;
+        do {
+            position = head.get();
+            if (position - tail >= entries.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(position, position + 1));
+
+        Entry entry = entries[(int) position & mask];
+        entry.level = level;
+        entry.timeMillis = System.currentTimeMillis();
+        entry.thread = Thread.currentThread().getName();
+        entry.template = template;
+        entry.count = count;
+        entry.first = first;
+        entry.second = second;
+        entry.arguments = arguments;
+        // the writer reads the entry only after this write
+        entry.published = position;
+    }
+
+    /**
+     * Waits until the messages logged so far are written, for example before the server stops.
+     *
+     * @param timeoutMillis the longest time to wait, in milliseconds
+     * @return true if the messages have been written
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = head.get();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (written < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000L);
+        }
+        return true;
+    }
+
+    /**
+     * The loop of the writer: it formats the messages in the order they have been logged and writes them in
+     * batches, sleeping longer and longer while the buffer is empty.
+     */
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder(8192);
+        long next = 0;
+        long idleNanos = 100_000L;
+        long reportedDrops = 0;
+        while (true) {
+            Entry entry = entries[(int) next & mask];
+            if (entry.published == next) {
+                format(entry, batch);
+                entry.thread = null;
+                entry.template = null;
+                entry.first = null;
+                entry.second = null;
+                entry.arguments = null;
+                next++;
+                tail = next;
+                idleNanos = 100_000L;
+                if (batch.length() < 8192) {
+                    continue;
+                }
+            }
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                batch.append(TIME.format(Instant.now())).append(" WARN  [log-writer] ")
+                        .append(drops - reportedDrops).append(" log lines dropped, the buffer was full.")
+                        .append(System.lineSeparator());
+                reportedDrops = drops;
+            }
+            if (batch.length() > 0) {
+                out.print(batch);
+                out.flush();
+                batch.setLength(0);
+                written = next;
+                continue;
+            }
+            LockSupport.parkNanos(idleNanos);
+            idleNanos = Math.min(MAX_IDLE_NANOS, idleNanos * 2);
+        }
+    }
+
+    /**
+     * Formats a message as a line.
+     *
+     * @param entry the entry of the message
+     * @param line  the builder the line is appended to
+     */
+    private static void format(Entry entry, StringBuilder line) {
+        line.append(TIME.format(Instant.ofEpochMilli(entry.timeMillis))).append(' ');
+        String name = entry.level.name();
+        line.append(name);
+        for (int i = name.length(); i < 6; i++) {
+            line.append(' ');
+        }
+        line.append('[').append(entry.thread).append("] ");
+        String template = entry.template;
+        int used = 0;
+        int from = 0;
+        while (used < entry.count) {
+            int placeholder = template.indexOf("{}", from);
+            if (placeholder < 0) {
+                break;
+            }
+            line.append(template, from, placeholder).append(entry.argument(used));
+            used++;
+            from = placeholder + 2;
+        }
+        line.append(template, from, template.length());
+        // the arguments without a placeholder are appended, so nothing is lost
+        for (; used < entry.count; used++) {
+            line.append(' ').append(entry.argument(used));
+        }
+        line.append(System.lineSeparator());
+    }
+
+    /**
+     * Reads a level from its name.
+     *
+     * @param name     the name of the level, in any case
+     * @param fallback the level given if the name is not valid
+     * @return the level
+     */
+    private static Level parseLevel(String name, Level fallback) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Changes the lowest level logged.
+     *
+     * @param level the level
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getLevel() {
+        return level.name();
+    }
+
+    @Override
+    public void setLevel(String level) {
+        Level parsed = parseLevel(level, null);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unknown level: " + level);
+        }
+        this.level = parsed;
+        log(Level.INFO, "Log level set to {}", 1, parsed, null, null);
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getBacklog() {
+        return head.get() - tail;
+    }
+
+    @Override
+    public int getCapacity() {
+        return entries.length;
+    }
+}
@@ -0,0 +1,42 @@
+package it.polimi.ingsw.monitoring;
+
+/**
+ * The management interface of the {@link Log}, published over JMX, so the verbosity of a running server can be
+ * changed.
+ */
+public interface LogMBean {
+    /**
+     * Getter of the lowest level logged.
+     *
+     * @return the name of the level
+     */
+    String getLevel();
+
+    /**
+     * Changes the lowest level logged.
+     *
+     * @param level the name of the level: DEBUG, INFO, WARN, ERROR or OFF
+     */
+    void setLevel(String level);
+
+    /**
+     * Getter of the number of lines dropped because the buffer was full.
+     *
+     * @return the number of dropped lines
+     */
+    long getDroppedCount();
+
+    /**
+     * Getter of the number of lines waiting to be written.
+     *
+     * @return the number of lines in the buffer
+     */
+    long getBacklog();
+
+    /**
+     * Getter of the number of lines the buffer can hold.
+     *
+     * @return the capacity of the buffer
+     */
+    int getCapacity();
+}
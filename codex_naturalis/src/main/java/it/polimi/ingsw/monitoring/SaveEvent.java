@@ -0,0 +1,72 @@
+package it.polimi.ingsw.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The SaveEvent is the JDK Flight Recorder event of a save of a game: either the snapshot taken on the thread of the
+ * command, or its write to the disk on the thread of the SnapshotWriter.
+ */
+@Name("it.polimi.ingsw.Save")
+@Label("Save")
+@Category({"Codex Naturalis", "Persistence"})
+@Description("A snapshot of a game taken or written to the disk")
+@StackTrace(false)
+public class SaveEvent extends Event {
+    /**
+     * The id of the game, the seed of its decks, 0 if it is not known.
+     */
+    @Label("Game Id")
+    long gameId;
+    /**
+     * The file of the save.
+     */
+    @Label("Path")
+    String path;
+    /**
+     * True for the write to the disk, false for the snapshot.
+     */
+    @Label("Disk Write")
+    boolean diskWrite;
+    /**
+     * The size of the snapshot.
+     */
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+    /**
+     * Creates a new SaveEvent and starts its timing.
+     *
+     * @return the started event
+     */
+    public static SaveEvent start() {
+        SaveEvent event = new SaveEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the timing of the event and commits it, if a recording is interested in it.
+     *
+     * @param gameId      the id of the game, 0 if it is not known
+     * @param path        the file of the save
+     * @param diskWrite   true for the write to the disk, false for the snapshot
+     * @param payloadSize the size of the snapshot
+     */
+    public void finish(long gameId, String path, boolean diskWrite, int payloadSize) {
+        end();
+        if (shouldCommit()) {
+            this.gameId = gameId;
+            this.path = path;
+            this.diskWrite = diskWrite;
+            this.payloadSize = payloadSize;
+            commit();
+        }
+    }
+}
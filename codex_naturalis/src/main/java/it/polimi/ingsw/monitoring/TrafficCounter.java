@@ -0,0 +1,107 @@
+package it.polimi.ingsw.monitoring;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TrafficCounter counts the messages and the bytes that go through the network, for a message type, a
+ * connection or a game (see {@link TrafficMetrics}).
+ *
+ * Counting a message only increments a few counters: it never locks and never allocates, so it can be called by
+ * the threads reading and writing the connections.
+ */
+public class TrafficCounter implements TrafficCounterMBean {
+    /**
+     * The number of messages received.
+     */
+    private final LongAdder messagesIn = new LongAdder();
+    /**
+     * The number of bytes received.
+     */
+    private final LongAdder bytesIn = new LongAdder();
+    /**
+     * The number of messages sent.
+     */
+    private final LongAdder messagesOut = new LongAdder();
+    /**
+     * The number of bytes sent.
+     */
+    private final LongAdder bytesOut = new LongAdder();
+    /**
+     * The number of messages serialized.
+     */
+    private final LongAdder serializations = new LongAdder();
+    /**
+     * The time spent serializing the messages, in nanoseconds.
+     */
+    private final LongAdder serializationNanos = new LongAdder();
+
+    /**
+     * Counts a message received.
+     *
+     * @param bytes the size of the message, 0 if it is unknown
+     */
+    public void received(int bytes) {
+        messagesIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Counts a message sent.
+     *
+     * @param bytes the size of the message, 0 if it is unknown
+     */
+    public void sent(int bytes) {
+        messagesOut.increment();
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Counts a message serialized.
+     *
+     * @param nanos the time the serialization took, in nanoseconds
+     */
+    public void serialized(long nanos) {
+        serializations.increment();
+        serializationNanos.add(nanos);
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getSerializations() {
+        return serializations.sum();
+    }
+
+    @Override
+    public double getSerializationMicros() {
+        return serializationNanos.sum() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        messagesIn.reset();
+        bytesIn.reset();
+        messagesOut.reset();
+        bytesOut.reset();
+        serializations.reset();
+        serializationNanos.reset();
+    }
+}
@@ -0,0 +1,53 @@
+package it.polimi.ingsw.monitoring;
+
+/**
+ * The management interface of a {@link TrafficCounter}, published over JMX.
+ */
+public interface TrafficCounterMBean {
+    /**
+     * Getter of the number of messages received.
+     *
+     * @return the number of messages received
+     */
+    long getMessagesIn();
+
+    /**
+     * Getter of the number of bytes received.
+     *
+     * @return the number of bytes received
+     */
+    long getBytesIn();
+
+    /**
+     * Getter of the number of messages sent.
+     *
+     * @return the number of messages sent
+     */
+    long getMessagesOut();
+
+    /**
+     * Getter of the number of bytes sent.
+     *
+     * @return the number of bytes sent
+     */
+    long getBytesOut();
+
+    /**
+     * Getter of the number of messages serialized. A broadcast is serialized once, however many clients receive it.
+     *
+     * @return the number of serializations
+     */
+    long getSerializations();
+
+    /**
+     * Getter of the time spent serializing the messages.
+     *
+     * @return the total time of the serializations, in microseconds
+     */
+    double getSerializationMicros();
+
+    /**
+     * Forgets the traffic counted so far.
+     */
+    void reset();
+}
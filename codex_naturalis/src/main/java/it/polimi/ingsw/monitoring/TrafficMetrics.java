@@ -0,0 +1,322 @@
+package it.polimi.ingsw.monitoring;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TrafficMetrics counts the messages and the bytes exchanged with the clients, by message type, by connection
+ * and by game, and publishes them over JMX.
+ *
+ * Every counter is a {@link TrafficCounter} registered in the platform MBean server as
+ * <ul>
+ *     <li>"it.polimi.ingsw:type=Traffic,transport=&lt;transport&gt;,message=&lt;message type&gt;",</li>
+ *     <li>"it.polimi.ingsw:type=ConnectionTraffic,transport=&lt;transport&gt;,connection=&lt;connection&gt;", while
+ *     the connection is open,</li>
+ *     <li>"it.polimi.ingsw:type=GameTraffic,game=&lt;game id&gt;", until the game ends.</li>
+ * </ul>
+ * The time spent serializing is counted by message type only, since a broadcast is serialized once for all its
+ * recipients.
+ *
+ * The sockets count the frames actually read and written. The RMI runtime does not tell the size of a call, so the
+ * calls are counted with no bytes, unless the "codex.traffic.rmiSizes" property is true: then the arguments of
+ * every call are serialized once more to measure them, which costs about as much as the call itself.
+ */
+public class TrafficMetrics {
+    /**
+     * True if the size of the RMI calls is measured.
+     */
+    private static final boolean RMI_SIZES = Boolean.getBoolean("codex.traffic.rmiSizes");
+
+    /**
+     * The instance of the metrics.
+     */
+    private static final TrafficMetrics INSTANCE = new TrafficMetrics();
+
+    /**
+     * The counters of the message types, by transport.
+     */
+    private final List<Map<String, TrafficCounter>> messageTypes = new ArrayList<>();
+    /**
+     * The counters of the open connections, by transport.
+     */
+    private final List<Map<String, TrafficCounter>> connections = new ArrayList<>();
+    /**
+     * The counters of the games.
+     */
+    private final Map<Long, TrafficCounter> games = new ConcurrentHashMap<>();
+    /**
+     * The counter of the last game counted, so the counter of the running game is found without a lookup.
+     */
+    private volatile GameCounter lastGame = new GameCounter(0, null);
+
+    /**
+     * The counter of a game, with the id of the game.
+     */
+    private static class GameCounter {
+        /**
+         * The id of the game.
+         */
+        private final long gameId;
+        /**
+         * The counter of the game.
+         */
+        private final TrafficCounter counter;
+
+        /**
+         * Creates a new GameCounter.
+         *
+         * @param gameId  the id of the game
+         * @param counter the counter of the game
+         */
+        private GameCounter(long gameId, TrafficCounter counter) {
+            this.gameId = gameId;
+            this.counter = counter;
+        }
+    }
+
+    /**
+     * Creates the metrics, with no counter.
+     */
+    private TrafficMetrics() {
+        for (int i = 0; i < CommandMetrics.Transport.values().length; i++) {
+            messageTypes.add(new ConcurrentHashMap<>());
+            connections.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Getter of the instance of the metrics.
+     *
+     * @return the instance of the metrics
+     */
+    public static TrafficMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Tells if the size of the RMI calls is measured.
+     *
+     * @return true if the "codex.traffic.rmiSizes" property is true
+     */
+    public boolean isMeasuringRmiSizes() {
+        return RMI_SIZES;
+    }
+
+    /**
+     * Counts a message received from a client.
+     *
+     * @param transport  the transport of the message
+     * @param gameId     the id of the game, 0 before the game starts
+     * @param connection the counter of the connection, see {@link #openConnection}
+     * @param type       the type of the message
+     * @param bytes      the size of the message, 0 if it is unknown
+     */
+    public void received(CommandMetrics.Transport transport, long gameId, TrafficCounter connection, String type,
+                         int bytes) {
+        messageType(transport, type).received(bytes);
+        connection.received(bytes);
+        game(gameId).received(bytes);
+    }
+
+    /**
+     * Counts a message sent to a client.
+     *
+     * @param transport  the transport of the message
+     * @param gameId     the id of the game, 0 before the game starts
+     * @param connection the counter of the connection, see {@link #openConnection}
+     * @param type       the type of the message
+     * @param bytes      the size of the message, 0 if it is unknown
+     */
+    public void sent(CommandMetrics.Transport transport, long gameId, TrafficCounter connection, String type,
+                     int bytes) {
+        messageType(transport, type).sent(bytes);
+        connection.sent(bytes);
+        game(gameId).sent(bytes);
+    }
+
+    /**
+     * Counts the serialization of a message.
+     *
+     * @param transport the transport of the message
+     * @param type      the type of the message
+     * @param nanos     the time the serialization took, in nanoseconds
+     */
+    public void serialized(CommandMetrics.Transport transport, String type, long nanos) {
+        messageType(transport, type).serialized(nanos);
+    }
+
+    /**
+     * Measures the size of the arguments of an RMI call, by serializing them as the RMI runtime does.
+     *
+     * @param arguments the arguments of the call
+     * @return the size of the arguments, or 0 if the size of the RMI calls is not measured
+     */
+    public int sizeOf(Object... arguments) {
+        if (!RMI_SIZES) {
+            return 0;
+        }
+        CountingStream counting = new CountingStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(counting)) {
+            for (Object argument : arguments) {
+                objectOutputStream.writeObject(argument);
+            }
+        } catch (IOException e) {
+            // an argument cannot be serialized: the bytes counted so far are kept
+        }
+        return counting.count;
+    }
+
+    /**
+     * Gives the counter of a connection that has just been opened, publishing it.
+     * A connection that is opened again keeps its counter.
+     *
+     * @param transport  the transport of the connection
+     * @param connection the name of the connection, such as the address of the client
+     * @return the counter of the connection
+     */
+    public TrafficCounter openConnection(CommandMetrics.Transport transport, String connection) {
+        return connections.get(transport.ordinal()).computeIfAbsent(connection, name -> publish(new TrafficCounter(),
+                "type=ConnectionTraffic,transport=" + transport.getName() + ",connection=" + ObjectName.quote(name)));
+    }
+
+    /**
+     * Gives the counter of a connection that is open, without opening it.
+     *
+     * @param transport  the transport of the connection
+     * @param connection the name of the connection
+     * @return the counter of the connection, or null if the connection is not open
+     */
+    public TrafficCounter findConnection(CommandMetrics.Transport transport, String connection) {
+        return connection == null ? null : connections.get(transport.ordinal()).get(connection);
+    }
+
+    /**
+     * Forgets the counter of a connection that has been closed. Its traffic remains counted by its message types
+     * and its game.
+     *
+     * @param transport  the transport of the connection
+     * @param connection the name of the connection
+     */
+    public void closeConnection(CommandMetrics.Transport transport, String connection) {
+        if (connections.get(transport.ordinal()).remove(connection) != null) {
+            unpublish("type=ConnectionTraffic,transport=" + transport.getName() + ",connection="
+                    + ObjectName.quote(connection));
+        }
+    }
+
+    /**
+     * Gives the counter of a message type, creating and publishing it on the first call.
+     *
+     * @param transport the transport of the message
+     * @param type      the type of the message
+     * @return the counter of the message type
+     */
+    public TrafficCounter messageType(CommandMetrics.Transport transport, String type) {
+        Map<String, TrafficCounter> counters = messageTypes.get(transport.ordinal());
+        TrafficCounter counter = counters.get(type);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(type, name -> publish(new TrafficCounter(),
+                    "type=Traffic,transport=" + transport.getName() + ",message=" + name));
+        }
+        return counter;
+    }
+
+    /**
+     * Gives the counter of a game, creating and publishing it on the first call.
+     *
+     * @param gameId the id of the game, 0 before the game starts
+     * @return the counter of the game
+     */
+    public TrafficCounter game(long gameId) {
+        GameCounter last = lastGame;
+        if (last.counter != null && last.gameId == gameId) {
+            return last.counter;
+        }
+        TrafficCounter counter = games.computeIfAbsent(gameId, id -> publish(new TrafficCounter(),
+                "type=GameTraffic,game=" + id));
+        lastGame = new GameCounter(gameId, counter);
+        return counter;
+    }
+
+    /**
+     * Forgets the counter of a game that has ended, and removes it from the MBean server, so the counters of the
+     * games played by a long-running server do not pile up. Its traffic remains counted by its message types.
+     *
+     * @param gameId the id of the game
+     */
+    public void closeGame(long gameId) {
+        if (games.remove(gameId) != null) {
+            unpublish("type=GameTraffic,game=" + gameId);
+        }
+        if (lastGame.gameId == gameId) {
+            lastGame = new GameCounter(0, null);
+        }
+    }
+
+    /**
+     * Registers a counter in the platform MBean server. The traffic is counted even if it cannot be registered.
+     *
+     * @param counter the counter
+     * @param name    the name of the counter, after the domain
+     * @return the counter
+     */
+    private static TrafficCounter publish(TrafficCounter counter, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("it.polimi.ingsw:" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(counter, objectName);
+        } catch (JMException | RuntimeException e) {
+            Log.warn("Cannot publish the traffic {} over JMX: {}", name, e.getMessage());
+        }
+        return counter;
+    }
+
+    /**
+     * Removes a counter from the platform MBean server.
+     *
+     * @param name the name of the counter, after the domain
+     */
+    private static void unpublish(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("it.polimi.ingsw:" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            Log.warn("Cannot remove the traffic {} from JMX: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * A stream that only counts the bytes written to it.
+     */
+    private static class CountingStream extends OutputStream {
+        /**
+         * The number of bytes written.
+         */
+        private int count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
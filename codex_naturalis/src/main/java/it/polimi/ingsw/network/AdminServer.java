@@ -0,0 +1,269 @@
+package it.polimi.ingsw.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.controller.server.GameStatus;
+import it.polimi.ingsw.controller.server.SnapshotWriter;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.LatencyHistogram;
+import it.polimi.ingsw.monitoring.Log;
+import org.json.simple.JSONValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The AdminServer is a small HTTP endpoint that reports the status of the server as JSON, for the operators.
+ *
+ * "GET /status" gives the game and its lobby, the connections and the queues of every transport, the latency
+ * percentiles of the commands, the lag of the saves and the heap. Everything is read from the snapshots published
+ * by the game ({@link GameStatus}, {@link SnapshotWriter.Status}) and from concurrent counters, so polling the
+ * endpoint never locks the game nor reactivates a passivated game.
+ *
+ * The endpoint is started only if the "codex.admin.port" property is set. It is bound to the address given by the
+ * "codex.admin.host" property, 127.0.0.1 by default, so it is not reachable from other hosts unless asked to.
+ */
+public class AdminServer {
+    /**
+     * The endpoint started from the properties, null if it is not running.
+     */
+    private static AdminServer instance;
+
+    /**
+     * The HTTP server of the endpoint.
+     */
+    private final HttpServer server;
+    /**
+     * The thread answering the requests.
+     */
+    private final ExecutorService executor;
+    /**
+     * The time the endpoint has been started, as given by System.currentTimeMillis().
+     */
+    private final long startedAtMillis = System.currentTimeMillis();
+
+    /**
+     * Creates the endpoint and starts it.
+     *
+     * @param address the address to bind
+     * @throws IOException if the address cannot be bound
+     */
+    private AdminServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/status", this::handleStatus);
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "admin-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Starts an endpoint on the given address.
+     *
+     * @param host the host to bind
+     * @param port the port to bind, 0 for any free port
+     * @return the endpoint
+     * @throws IOException if the address cannot be bound
+     */
+    public static AdminServer start(String host, int port) throws IOException {
+        return new AdminServer(new InetSocketAddress(host, port));
+    }
+
+    /**
+     * Starts the endpoint if the "codex.admin.port" property is set. It does nothing if the endpoint is already
+     * running.
+     */
+    public static synchronized void startIfEnabled() {
+        int port = Integer.getInteger("codex.admin.port", 0);
+        if (port <= 0 || instance != null) {
+            return;
+        }
+        String host = System.getProperty("codex.admin.host", "127.0.0.1");
+        try {
+            instance = start(host, port);
+            Log.info("Admin endpoint on http://{}:{}/status", host, port);
+        } catch (IOException e) {
+            Log.warn("Cannot start the admin endpoint: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the endpoint started from the properties, if it is running.
+     */
+    public static synchronized void stopIfRunning() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    /**
+     * Getter of the port of the endpoint.
+     *
+     * @return the port the endpoint is bound to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the endpoint.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answers a request of the status.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = JSONValue.toJSONString(status()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Gives the status of the server.
+     *
+     * @return the status, as a tree of maps, lists, strings and numbers
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("uptimeMillis", System.currentTimeMillis() - startedAtMillis);
+        status.put("game", game());
+        status.put("transports", transports());
+        status.put("latency", latency());
+        status.put("saves", saves());
+        status.put("heap", heap());
+        return status;
+    }
+
+    /**
+     * Gives the status of the game and of its lobby. The server runs one game at a time.
+     *
+     * @return the status of the game
+     */
+    private Map<String, Object> game() {
+        GameStatus game = Controller.getInstance().getStatus();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", game.getGameId());
+        status.put("state", game.getState());
+        status.put("players", Arrays.asList(game.getPlayers()));
+        status.put("lobbyLocked", game.isLobbyLocked());
+        status.put("currentPlayer", game.getCurrentPlayer());
+        status.put("turn", game.getTurn());
+        status.put("ageMillis", System.currentTimeMillis() - game.getTakenAtMillis());
+        return status;
+    }
+
+    /**
+     * Gives the connections and the queues of every transport.
+     *
+     * @return the status of the transports, by name
+     */
+    private Map<String, Object> transports() {
+        Map<String, Object> transports = new LinkedHashMap<>();
+        for (Map.Entry<String, NetworkPlug> entry : NetworkHandler.getInstance().getNetworkPlugs().entrySet()) {
+            Map<String, Integer> depths = entry.getValue().getQueueDepths();
+            int total = 0;
+            for (int depth : depths.values()) {
+                total += depth;
+            }
+            Map<String, Object> transport = new LinkedHashMap<>();
+            transport.put("connections", entry.getValue().getConnectionCount());
+            transport.put("queuedMessages", total);
+            transport.put("queueDepths", depths);
+            transports.put(entry.getKey(), transport);
+        }
+        return transports;
+    }
+
+    /**
+     * Gives the latency percentiles of the commands that have been recorded.
+     *
+     * @return the latencies, by transport and command, in microseconds
+     */
+    private Map<String, Object> latency() {
+        CommandMetrics metrics = CommandMetrics.getInstance();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        for (CommandMetrics.Transport transport : CommandMetrics.Transport.values()) {
+            Map<String, Object> commands = new LinkedHashMap<>();
+            for (CommandMetrics.Command command : CommandMetrics.Command.values()) {
+                LatencyHistogram histogram = metrics.getHistogram(command, transport);
+                if (histogram == null || histogram.getCount() == 0) {
+                    continue;
+                }
+                Map<String, Object> percentiles = new LinkedHashMap<>();
+                percentiles.put("count", histogram.getCount());
+                percentiles.put("meanMicros", histogram.getMeanMicros());
+                percentiles.put("p50Micros", histogram.getP50Micros());
+                percentiles.put("p99Micros", histogram.getP99Micros());
+                percentiles.put("p999Micros", histogram.getP999Micros());
+                percentiles.put("maxMicros", histogram.getMaxMicros());
+                commands.put(command.getName(), percentiles);
+            }
+            if (!commands.isEmpty()) {
+                latency.put(transport.getName(), commands);
+            }
+        }
+        return latency;
+    }
+
+    /**
+     * Gives the status of the queue of the saves.
+     *
+     * @return the status of the saves
+     */
+    private Map<String, Object> saves() {
+        SnapshotWriter.Status writer = SnapshotWriter.getInstance().getStatus();
+        Map<String, Object> saves = new LinkedHashMap<>();
+        saves.put("pending", writer.getPending());
+        saves.put("lagMillis", writer.getLagMillis());
+        saves.put("written", writer.getWritten());
+        saves.put("failed", writer.getFailed());
+        saves.put("lastSaveMillis", writer.getLastSaveMillis());
+        return saves;
+    }
+
+    /**
+     * Gives the usage of the heap.
+     *
+     * @return the usage of the heap, in bytes
+     */
+    private Map<String, Object> heap() {
+        MemoryUsage usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("usedBytes", usage.getUsed());
+        heap.put("committedBytes", usage.getCommitted());
+        heap.put("maxBytes", usage.getMax());
+        return heap;
+    }
+}
@@ -0,0 +1,196 @@
+package it.polimi.ingsw.network;
+
+import it.polimi.ingsw.monitoring.Log;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ChatRouter decides who receives the chat messages of the players, for every transport at once.
+ *
+ * A message is read once: every word starting with "@" is looked up, ignoring the case and the punctuation that
+ * follows it, in the index of the nicknames of the game, which is filled at login and emptied when the game ends. A
+ * message mentioning some players is sent to them and to its sender, any other message to everyone.
+ *
+ * Only the players in the index can send: the transports pass the nickname their client logged in with, never the one
+ * written in the message, so a client cannot spend the messages of another player or fill the router with buckets of
+ * made up names. Every sender has a token bucket: it can send a burst of messages at once, and then a message every so
+ * often. The messages beyond that are dropped before they are read, so a flood of chat costs the server almost nothing.
+ * The size of the burst is given by the system property "codex.chat.burst" (5 by default) and the messages per second
+ * by "codex.chat.perSecond" (1 by default).
+ */
+public class ChatRouter {
+    /**
+     * The instance of the router.
+     */
+    private static ChatRouter instance;
+
+    /**
+     * The largest number of messages a sender can send at once.
+     */
+    private final int burst;
+    /**
+     * The nanoseconds it takes to earn a message.
+     */
+    private final long nanosPerMessage;
+    /**
+     * The nicknames of the players of the game, by their lower case.
+     */
+    private final Map<String, String> nicknames = new ConcurrentHashMap<>();
+    /**
+     * The buckets of the senders, by nickname. Only the players in the index have one.
+     */
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * The token bucket of a sender.
+     */
+    private class Bucket {
+        /**
+         * The time the bucket will be full again, as given by System.nanoTime().
+         */
+        private long fullAt = System.nanoTime();
+
+        /**
+         * Takes a message from the bucket.
+         *
+         * @return true if the sender can send the message
+         */
+        private synchronized boolean take() {
+            long now = System.nanoTime();
+            // the bucket is empty when it takes a whole burst to fill it
+            long start = Math.max(fullAt, now);
+            if (start - now > (burst - 1) * nanosPerMessage) {
+                return false;
+            }
+            fullAt = start + nanosPerMessage;
+            return true;
+        }
+    }
+
+    /**
+     * Creates a new ChatRouter.
+     *
+     * @param burst      the largest number of messages a sender can send at once
+     * @param perSecond  the messages a sender can send every second after the burst
+     */
+    public ChatRouter(int burst, double perSecond) {
+        if (burst < 1 || perSecond <= 0) {
+            throw new IllegalArgumentException("The chat must let at least a message through");
+        }
+        this.burst = burst;
+        this.nanosPerMessage = (long) (1_000_000_000L / perSecond);
+    }
+
+    /**
+     * Getter of the instance of the router, created on the first call with the limits given by the system
+     * properties.
+     *
+     * @return the instance of the router
+     */
+    public static synchronized ChatRouter getInstance() {
+        if (instance == null) {
+            instance = new ChatRouter(Integer.getInteger("codex.chat.burst", 5),
+                    Double.parseDouble(System.getProperty("codex.chat.perSecond", "1")));
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a player that has just logged in to the index of the nicknames.
+     *
+     * @param nickname the nickname of the player
+     */
+    public void join(String nickname) {
+        nicknames.put(nickname.toLowerCase(Locale.ROOT), nickname);
+    }
+
+    /**
+     * Removes a player that has left the game from the index of the nicknames, with its bucket.
+     *
+     * @param nickname the nickname of the player
+     */
+    public void leave(String nickname) {
+        nicknames.remove(nickname.toLowerCase(Locale.ROOT), nickname);
+        buckets.remove(nickname);
+    }
+
+    /**
+     * Forgets the players and the senders, when the game ends.
+     */
+    public void clear() {
+        nicknames.clear();
+        buckets.clear();
+    }
+
+    /**
+     * Takes a message of a sender from its bucket.
+     *
+     * @param sender the nickname the sender logged in with
+     * @return true if the message can be sent, false if it has to be dropped
+     */
+    public boolean tryAcquire(String sender) {
+        if (sender == null || !sender.equals(nicknames.get(sender.toLowerCase(Locale.ROOT)))) {
+            Log.debug("Chat: message of {} dropped, it is not a player of the game.", sender);
+            return false;
+        }
+        if (buckets.computeIfAbsent(sender, key -> new Bucket()).take()) {
+            return true;
+        }
+        Log.debug("Chat: message of {} dropped, it is sending too fast.", sender);
+        return false;
+    }
+
+    /**
+     * Gives the receivers of a message.
+     *
+     * @param sender  the nickname of the sender
+     * @param message the message
+     * @return the nicknames of the mentioned players and of the sender, or an empty set if the message is for
+     *         everyone
+     */
+    public Set<String> receivers(String sender, String message) {
+        Set<String> receivers = new HashSet<>();
+        int length = message.length();
+        int i = message.indexOf('@');
+        while (i >= 0) {
+            int end = i + 1;
+            while (end < length && !Character.isWhitespace(message.charAt(end))) {
+                end++;
+            }
+            // an "@" inside a word, as in an address, is not a mention
+            if (i == 0 || Character.isWhitespace(message.charAt(i - 1))) {
+                String nickname = mentioned(message.substring(i + 1, end).toLowerCase(Locale.ROOT));
+                if (nickname != null) {
+                    receivers.add(nickname);
+                }
+            }
+            i = message.indexOf('@', end);
+        }
+        if (!receivers.isEmpty()) {
+            receivers.add(sender);
+        }
+        return receivers;
+    }
+
+    /**
+     * Looks up a mention in the index, first whole and then without the punctuation at its end.
+     *
+     * @param word the word following the "@", in lower case
+     * @return the nickname of the mentioned player, or null if it mentions no player
+     */
+    private String mentioned(String word) {
+        int end = word.length();
+        while (end > 0) {
+            String nickname = nicknames.get(word.substring(0, end));
+            if (nickname != null || Character.isLetterOrDigit(word.charAt(end - 1))) {
+                return nickname;
+            }
+            end--;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package it.polimi.ingsw.network;
+
+/**
+ * The CommandGate lets the server stop taking commands from the clients without cutting the commands already being
+ * executed.
+ *
+ * Every command received from a client enters the gate before it is executed and leaves it afterwards. Once the gate
+ * is closed, new commands are refused, and {@link #close(long)} waits for the commands inside to finish, so the state
+ * of the game is complete when it is saved for the last time.
+ */
+public class CommandGate {
+    /**
+     * The number of commands being executed.
+     */
+    private int inside = 0;
+    /**
+     * True once the gate is closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Lets a command in.
+     *
+     * @return true if the command can be executed, false if the gate is closed and the command has to be dropped
+     */
+    public synchronized boolean enter() {
+        if (closed) {
+            return false;
+        }
+        inside++;
+        return true;
+    }
+
+    /**
+     * Notifies that a command let in by {@link #enter()} has been executed.
+     */
+    public synchronized void exit() {
+        inside--;
+        if (inside == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes the gate and waits for the commands inside to finish.
+     *
+     * @param timeoutMillis the longest time to wait, in milliseconds
+     * @return true if all the commands have finished, false if the time is over
+     */
+    public synchronized boolean close(long timeoutMillis) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inside > 0) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
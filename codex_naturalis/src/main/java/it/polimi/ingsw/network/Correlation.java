@@ -0,0 +1,75 @@
+package it.polimi.ingsw.network;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The Correlation identifies a command sent by a client, so the answers of the server can be matched with it and the
+ * time the client waits for them can be measured.
+ *
+ * The id is random, so the commands of different clients never share it without any coordination. The time the
+ * command has been sent is read on the clock of the client, and it is only compared with the same clock when the
+ * server reports the timing of the command back.
+ *
+ * The client attaches a correlation to its commands only when the system property "codex.trace" is true.
+ */
+public class Correlation implements Serializable {
+    /**
+     * True when the client traces its commands.
+     */
+    private static final boolean ENABLED = Boolean.getBoolean("codex.trace");
+
+    /**
+     * The id of the command, never 0.
+     */
+    private final long id;
+    /**
+     * The time the command has been sent, as given by System.nanoTime() on the client.
+     */
+    private final long sentAtNanos;
+
+    /**
+     * Creates a new Correlation.
+     *
+     * @param id          the id of the command, never 0
+     * @param sentAtNanos the time the command has been sent, on the clock of the client
+     */
+    public Correlation(long id, long sentAtNanos) {
+        this.id = id;
+        this.sentAtNanos = sentAtNanos;
+    }
+
+    /**
+     * Creates the correlation of a command that is being sent.
+     *
+     * @return the correlation, or null if the client does not trace its commands
+     */
+    public static Correlation next() {
+        if (!ENABLED) {
+            return null;
+        }
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return new Correlation(id, System.nanoTime());
+    }
+
+    /**
+     * Getter of the id of the command.
+     *
+     * @return the id, never 0
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Getter of the time the command has been sent.
+     *
+     * @return the time, as given by System.nanoTime() on the client
+     */
+    public long getSentAtNanos() {
+        return sentAtNanos;
+    }
+}
@@ -0,0 +1,226 @@
+package it.polimi.ingsw.network;
+
+import it.polimi.ingsw.monitoring.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The HashedWheelTimer runs delayed tasks on a single thread.
+ *
+ * The timeouts are stored in a circular array of buckets (the wheel). Every tick the thread advances by one bucket
+ * and runs the timeouts of that bucket whose deadline has been reached, so scheduling and cancelling a timeout cost
+ * O(1), and a single thread serves any number of connections. The precision is one tick, which is more than enough
+ * for heartbeats.
+ *
+ * The tasks run on the thread of the timer: they must be short and must not block. Blocking work must be handed
+ * to another executor.
+ */
+public class HashedWheelTimer {
+    /**
+     * The duration of a tick, in nanoseconds.
+     */
+    private final long tickNanos;
+    /**
+     * The buckets of the wheel. They are only accessed by the thread of the timer.
+     */
+    private final List<ArrayDeque<Timeout>> wheel;
+    /**
+     * The mask used to find the bucket of a tick, the size of the wheel is a power of two.
+     */
+    private final int mask;
+    /**
+     * The timeouts scheduled since the last tick, not yet in the wheel.
+     */
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * The instant the timer has been started, the ticks are counted from it.
+     */
+    private final long startTime;
+    /**
+     * The thread of the timer.
+     */
+    private final Thread worker;
+    /**
+     * The number of ticks elapsed. It is only accessed by the thread of the timer.
+     */
+    private long tick = 0;
+    /**
+     * True when the timer has been stopped.
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * A task scheduled on the timer.
+     */
+    public static class Timeout {
+        /**
+         * The task to be run.
+         */
+        private final Runnable task;
+        /**
+         * The instant the task must be run, as given by System.nanoTime().
+         */
+        private final long deadline;
+        /**
+         * The number of turns of the wheel left before the task is run.
+         */
+        private long rounds;
+        /**
+         * True if the timeout has been cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Creates a new Timeout.
+         *
+         * @param task     the task to be run
+         * @param deadline the instant the task must be run
+         */
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout. The task is not run if it has not started yet.
+         * The timeout is removed from the wheel when its bucket is reached.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Checks if the timeout has been cancelled.
+         *
+         * @return true if the timeout has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Creates and starts a new HashedWheelTimer.
+     *
+     * @param name      the name of the thread of the timer
+     * @param tick      the duration of a tick
+     * @param unit      the unit of the duration of a tick
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tick, TimeUnit unit, int wheelSize) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("The tick must be positive: " + tick);
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        tickNanos = unit.toNanos(tick);
+        wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        mask = size - 1;
+        startTime = System.nanoTime();
+
+        worker = new Thread(this::work, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task to be run once, after the given delay.
+     *
+     * @param task  the task to be run, it must not block
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the timeout, which can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        if (!stopped) {
+            pending.add(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Stops the timer. The timeouts not yet run are discarded.
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    /**
+     * The loop of the thread of the timer: it waits for the next tick, moves the new timeouts into the wheel and
+     * runs the expired timeouts of the current bucket.
+     */
+    private void work() {
+        while (!stopped) {
+            waitForNextTick();
+            if (stopped) {
+                break;
+            }
+            transferPending();
+            expire(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+        pending.clear();
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     */
+    private void waitForNextTick() {
+        long deadline = startTime + (tick + 1) * tickNanos;
+        long remaining;
+        while (!stopped && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Moves the timeouts scheduled since the last tick into their bucket.
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // rounded up, so that a timeout never runs before its deadline
+            long ticks = (timeout.deadline - startTime + tickNanos - 1) / tickNanos - 1;
+            timeout.rounds = (ticks - tick) / wheel.size();
+            // a timeout already expired goes in the current bucket
+            wheel.get((int) (Math.max(ticks, tick) & mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Runs the timeouts of a bucket whose last round has come, and removes the cancelled ones.
+     *
+     * @param bucket the bucket of the current tick
+     */
+    private void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.rounds <= 0) {
+                iterator.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    Log.warn("Timer: task failed: {}", e);
+                }
+            } else {
+                timeout.rounds--;
+            }
+        }
+    }
+}
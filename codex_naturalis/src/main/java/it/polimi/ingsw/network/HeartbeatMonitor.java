@@ -0,0 +1,209 @@
+package it.polimi.ingsw.network;
+
+import it.polimi.ingsw.monitoring.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The HeartbeatMonitor checks that the peers of the connections of this process are still alive.
+ *
+ * There is one monitor per process, shared by all the connections of both transports. Every connection registers
+ * a {@link Peer} and notifies it whenever something is received from the other side: any traffic counts as a
+ * heartbeat, so a ping is sent only to the peers that have been silent for a whole interval. A peer silent for
+ * longer than the timeout is considered dead.
+ *
+ * The checks run on a single {@link HashedWheelTimer}. The pings and the dead-peer handlers, which can block
+ * (for example on an RMI call), run on a separate pool, with at most one ping in flight per peer, so the peers are
+ * pinged in parallel and a slow peer does not delay the others.
+ *
+ * The interval and the timeout, in milliseconds, can be configured with the system properties
+ * "codex.heartbeat.interval" (10000 by default) and "codex.heartbeat.timeout" (30000 by default).
+ */
+public class HeartbeatMonitor {
+    /**
+     * The instance of the monitor.
+     */
+    private static HeartbeatMonitor instance;
+
+    /**
+     * The time after which a silent peer is pinged, in nanoseconds.
+     */
+    private final long intervalNanos;
+    /**
+     * The time after which a silent peer is considered dead, in nanoseconds.
+     */
+    private final long timeoutNanos;
+    /**
+     * The timer of the checks.
+     */
+    private final HashedWheelTimer timer;
+    /**
+     * The pool running the pings and the dead-peer handlers.
+     */
+    private final ExecutorService pingers;
+
+    /**
+     * A peer monitored by the HeartbeatMonitor.
+     */
+    public class Peer {
+        /**
+         * The name of the peer, used in the logs.
+         */
+        private final String name;
+        /**
+         * The task that sends a ping to the peer. It can block, and it must call {@link #touch()} when the peer
+         * answers synchronously.
+         */
+        private final Runnable ping;
+        /**
+         * The task run once when the peer is considered dead.
+         */
+        private final Runnable onDead;
+        /**
+         * The last time something has been received from the peer, as given by System.nanoTime().
+         */
+        private volatile long lastSeen;
+        /**
+         * True if a ping is waiting to be completed.
+         */
+        private final AtomicBoolean pinging = new AtomicBoolean(false);
+        /**
+         * True when the peer is no longer monitored.
+         */
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        /**
+         * The next check of the peer.
+         */
+        private volatile HashedWheelTimer.Timeout check;
+
+        /**
+         * Creates a new Peer, seen now.
+         *
+         * @param name   the name of the peer
+         * @param ping   the task that sends a ping to the peer
+         * @param onDead the task run when the peer is considered dead
+         */
+        private Peer(String name, Runnable ping, Runnable onDead) {
+            this.name = name;
+            this.ping = ping;
+            this.onDead = onDead;
+            this.lastSeen = System.nanoTime();
+        }
+
+        /**
+         * Notifies that something has been received from the peer.
+         */
+        public void touch() {
+            lastSeen = System.nanoTime();
+        }
+
+        /**
+         * Stops monitoring the peer.
+         */
+        public void cancel() {
+            cancelled.set(true);
+            HashedWheelTimer.Timeout timeout = check;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        /**
+         * Getter of the time elapsed since something has been received from the peer.
+         *
+         * @return the silence of the peer, in milliseconds
+         */
+        public long getSilenceMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSeen);
+        }
+
+        /**
+         * Schedules the next check of the peer.
+         */
+        private void scheduleCheck() {
+            if (!cancelled.get()) {
+                check = timer.schedule(this::check, intervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Checks the peer: it runs on the thread of the timer, so it only hands work to the pool.
+         */
+        private void check() {
+            if (cancelled.get()) {
+                return;
+            }
+            long silence = System.nanoTime() - lastSeen;
+            if (silence >= timeoutNanos) {
+                if (cancelled.compareAndSet(false, true)) {
+                    Log.warn("Heartbeat: {} silent for {} ms, considered dead.", name, TimeUnit.NANOSECONDS.toMillis(silence));
+                    pingers.execute(onDead);
+                }
+                return;
+            }
+            if (silence >= intervalNanos && pinging.compareAndSet(false, true)) {
+                pingers.execute(() -> {
+                    try {
+                        ping.run();
+                    } finally {
+                        pinging.set(false);
+                    }
+                });
+            }
+            scheduleCheck();
+        }
+    }
+
+    /**
+     * Creates a new HeartbeatMonitor.
+     *
+     * @param interval the time after which a silent peer is pinged, in milliseconds
+     * @param timeout  the time after which a silent peer is considered dead, in milliseconds
+     */
+    public HeartbeatMonitor(long interval, long timeout) {
+        intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, interval));
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(interval, timeout));
+        // a tick of a tenth of the interval is precise enough, and a wheel of 512 ticks holds the whole timeout
+        timer = new HashedWheelTimer("heartbeat-timer", Math.max(1, interval / 10), TimeUnit.MILLISECONDS, 512);
+
+        AtomicInteger counter = new AtomicInteger();
+        pingers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-ping-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Getter of the instance of the monitor, created on the first call with the interval and the timeout given by
+     * the system properties.
+     *
+     * @return the instance of the monitor
+     */
+    public static synchronized HeartbeatMonitor getInstance() {
+        if (instance == null) {
+            instance = new HeartbeatMonitor(Long.getLong("codex.heartbeat.interval", 10000),
+                    Long.getLong("codex.heartbeat.timeout", 30000));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts monitoring a peer.
+     *
+     * @param name   the name of the peer, used in the logs
+     * @param ping   the task that sends a ping to the peer, it can block. If the peer answers synchronously, the
+     *               task must call {@link Peer#touch()}
+     * @param onDead the task run once when the peer is considered dead
+     * @return the peer, which must be touched whenever something is received from it
+     */
+    public Peer register(String name, Runnable ping, Runnable onDead) {
+        Peer peer = new Peer(name, ping, onDead);
+        peer.scheduleCheck();
+        return peer;
+    }
+}
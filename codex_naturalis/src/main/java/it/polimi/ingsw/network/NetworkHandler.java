@@ -3,9 +3,12 @@ package it.polimi.ingsw.network;
 import it.polimi.ingsw.controller.server.Controller;
 import it.polimi.ingsw.model.GameMaster;
 import it.polimi.ingsw.model.Kingdom;
+import it.polimi.ingsw.model.Lobby;
 import it.polimi.ingsw.model.exception.LobbyCompleteException;
 import it.polimi.ingsw.model.exception.NoNameException;
 import it.polimi.ingsw.model.exception.SameNameException;
+import it.polimi.ingsw.monitoring.BroadcastEvent;
+import it.polimi.ingsw.monitoring.Log;
 import it.polimi.ingsw.network.RMI.ServerRMI;
 import it.polimi.ingsw.network.socket.NetworkServerSocket;
 
@@ -13,8 +16,8 @@ import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.IOException;
 import java.rmi.RemoteException;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
 
 /**
  * This class is the controller of the network part of the server.
@@ -58,6 +61,12 @@ public class NetworkHandler {
      */
     private static NetworkServerSocket networkServerSocket;
 
+    /**
+     * The last lobby whose number of players has been finalized, so a lobby
+     * completed by two commands at the same time starts its game only once.
+     */
+    private Lobby finalizedLobby;
+
     /**
      * The main method of the server.
      * @param args The arguments of the main method.
@@ -66,11 +75,13 @@ public class NetworkHandler {
     public static void main(String[] args) throws IOException {
         serverRMI = new ServerRMI();
         networkServerSocket = new NetworkServerSocket(0);
+        getInstance().installShutdownHook();
+        AdminServer.startIfEnabled();
         new Thread(() -> {
             try {
                 networkServerSocket.start();
             } catch (IOException e) {
-                System.out.println("Cannot start the socket server. Please restart the server.");
+                Log.error("Cannot start the socket server. Please restart the server.");
             }
         }).start();
     }
@@ -95,6 +106,26 @@ public class NetworkHandler {
         networkInterfacesAndConnections.put(nameNetworkPlug, networkPlug);
     }
 
+    /**
+     * Removes a protocol from the networkInterfacesAndConnections HashMap, so it
+     * no longer receives the broadcasts.
+     *
+     * @param nameNetworkPlug The name of the protocol.
+     */
+    public void removeNetworkPlug(String nameNetworkPlug) {
+        networkInterfacesAndConnections.remove(nameNetworkPlug);
+    }
+
+    /**
+     * Gives the network interfaces, used by the monitoring to read their
+     * connections.
+     *
+     * @return A map from the name of each protocol to the protocol itself.
+     */
+    public HashMap<String, NetworkPlug> getNetworkPlugs() {
+        return new HashMap<>(networkInterfacesAndConnections);
+    }
+
     /**
      * This method is responsible for broadcasting a message to all connected
      * clients when the number of players in the game has been finalized.
@@ -102,13 +133,19 @@ public class NetworkHandler {
      * `Controller.getInstance().lobbyIsReady()`. If the lobby is ready, it iterates
      * over all the network interfaces and calls their respective
      * `finalizingNumberOfPlayers` method.
+     * If the players of the lobby have a saved game, found in the index of the
+     * saved games, that game is loaded instead.
      * This method is only called when all players are ready, so the number of
-     * players is chosen and all players have entered the lobby.
+     * players is chosen and all players have entered the lobby. A lobby is
+     * finalized once, even if its last player and its number of players arrive
+     * at the same time.
      *
      */
     public void finalizingNumberOfPlayersBroadcast() {
+        BroadcastEvent event = BroadcastEvent.start();
         // Filter players if lobby.size() > maxSize
-        boolean lobbyIsReady = Controller.getInstance().lobbyIsReady();
+        boolean lobbyIsReady = Controller.getInstance().lobbyIsReady()
+                && claimFinalizing(Controller.getInstance().getLobby());
         // only done when all players are ready, so the number of players is chosen, and
         // all players have entered the lobby.
         if (lobbyIsReady) {
@@ -116,7 +153,7 @@ public class NetworkHandler {
             try {
                 saved_game = Controller.getInstance().tryLoadingGame();
             } catch (Exception e) {
-                System.out.println("No saved game found");
+                Log.info("No saved game found");
             }
 
             if (saved_game != null && saved_game.getLobby().equals(Controller.getInstance().getLobby())) {
@@ -130,6 +167,22 @@ public class NetworkHandler {
                 }
             }
         }
+        event.finish(Controller.getInstance().getGameId(), "finalizingNumberOfPlayers",
+                networkInterfacesAndConnections.size());
+    }
+
+    /**
+     * Marks a lobby as finalized.
+     *
+     * @param lobby The lobby that is ready.
+     * @return true if the lobby had not been finalized yet.
+     */
+    private synchronized boolean claimFinalizing(Lobby lobby) {
+        if (lobby == finalizedLobby) {
+            return false;
+        }
+        finalizedLobby = lobby;
+        return true;
     }
 
     /**
@@ -139,9 +192,12 @@ public class NetworkHandler {
      * 
      */
     public void gameIsStartingBroadcast() {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.gameIsStarting();
         }
+        event.finish(Controller.getInstance().getGameId(), "gameIsStarting",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -151,9 +207,12 @@ public class NetworkHandler {
      *
      */
     public void refreshUsersBroadcast() {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.refreshUsers();
         }
+        event.finish(Controller.getInstance().getGameId(), "refreshUsers",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -175,10 +234,13 @@ public class NetworkHandler {
      */
     public void sendingPlacedRootCardAndWhenCompleteObjectiveCardsBroadcast(String nickname, boolean side, int cardId,
             boolean allWithRootCardPlaced) throws NoNameException {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.sendingPlacedRootCardAndWhenCompleteObjectiveCards(nickname, side, cardId,
                     allWithRootCardPlaced);
         }
+        event.finish(Controller.getInstance().getGameId(), "sendingPlacedRootCardAndWhenCompleteObjectiveCards",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -194,10 +256,13 @@ public class NetworkHandler {
      */
     public void sendingHandsAndWhenSecretObjectiveCardsCompleteStartGameFlowBroadcast(String nickname,
             boolean allWithSecretObjectiveCardChosen) throws NoNameException {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.sendingHandsAndWhenSecretObjectiveCardsCompleteStartGameFlow(nickname,
                     allWithSecretObjectiveCardChosen);
         }
+        event.finish(Controller.getInstance().getGameId(), "sendingHandsAndWhenSecretObjectiveCardsCompleteStartGameFlow",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -215,9 +280,12 @@ public class NetworkHandler {
      */
     public void sendPlacedCardBroadcast(String nickname, int cardId, Point position, boolean side)
             throws NoNameException {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.sendPlacedCard(nickname, cardId, position, side);
         }
+        event.finish(Controller.getInstance().getGameId(), "sendPlacedCard",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -234,9 +302,12 @@ public class NetworkHandler {
      */
     public void sendDrawnCardBroadcast(String nickname, Integer newCardId, Kingdom headDeck, boolean gold,
             int onTableOrDeck) throws NoNameException {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.sendDrawnCard(nickname, newCardId, headDeck, gold, onTableOrDeck);
         }
+        event.finish(Controller.getInstance().getGameId(), "sendDrawnCard",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -244,30 +315,41 @@ public class NetworkHandler {
      * The message is sent to all the different protocols.
      */
     public void sendEndGameBroadcast() {
+        BroadcastEvent event = BroadcastEvent.start();
+        // the players can leave as soon as they have the end, and the controller be reset for the next game,
+        // so the save of this game is deleted first
+        Controller ended = Controller.getInstance();
+        ended.cancelFile();
+        // a finished game has nothing to come back to, so the players leaving it are not waited for
+        SessionManager.getInstance().clear();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.sendEndGame();
         }
-        // reset the lobby to null and the controller to null
-        Controller.getInstance().cancelFile();
+        event.finish(ended.getGameId(), "sendEndGame", networkInterfacesAndConnections.size());
     }
 
     /**
      * Broadcasts a chat message to all connected clients across all network
      * interfaces.
-     * The message is sent to all the different protocols.
+     * The message is sent to all the different protocols, to the players the
+     * {@link ChatRouter} finds in it. It is dropped if its sender is sending too fast.
      *
      * @param sender  The nickname of the client sending the message.
      * @param message The message to be sent.
      */
     public void sendChatMessageBroadcast(String sender, String message) {
-        ArrayList<String> receivers = new ArrayList<>();// need to know globally if the list is empty and then send
-                                                        // broadcast or not
-        for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
-            receivers.addAll(networkPlug.fetchReceivers(message));
+        ChatRouter router = ChatRouter.getInstance();
+        if (!router.tryAcquire(sender)) {
+            return;
         }
+        BroadcastEvent event = BroadcastEvent.start();
+        // the receivers are the same for every protocol, an empty set means everyone
+        Set<String> receivers = router.receivers(sender, message);
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.sendingChatMessage(sender, message, receivers);
         }
+        event.finish(Controller.getInstance().getGameId(), "sendChatMessage",
+                networkInterfacesAndConnections.size());
     }
 
     /**
@@ -276,10 +358,61 @@ public class NetworkHandler {
      * disconnectAll method.
      */
     public void disconnectBroadcast() {
+        BroadcastEvent event = BroadcastEvent.start();
+        Controller ended = Controller.getInstance();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.disconnectAll();
         }
+        // the socket server resets the controller itself, without it the next game needs a new one all the same
+        if (Controller.getInstance() == ended) {
+            ended.reset();
+        }
+        // the game is over: the players cannot come back to it
+        SessionManager.getInstance().clear();
+        ChatRouter.getInstance().clear();
         // reset the lobby to null and the controller to null
+        event.finish(Controller.getInstance().getGameId(), "disconnect",
+                networkInterfacesAndConnections.size());
+    }
+
+    /**
+     * Registers the shutdown of the server to be run when the process is stopped,
+     * for example by a deploy. The longest time the shutdown can take, in
+     * milliseconds, is given by the system property "codex.shutdown.timeoutMillis"
+     * (10000 by default).
+     */
+    public void installShutdownHook() {
+        long timeoutMillis = Long.getLong("codex.shutdown.timeoutMillis", 10000);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(timeoutMillis), "server-shutdown"));
+    }
+
+    /**
+     * Shuts down the server without losing the game.
+     * No new connection and no new command is accepted, and the commands being
+     * executed are waited for. Then the final snapshot of the game is written to
+     * the disk, so the players can load it again from a new server, and only then
+     * the clients are told that the game is stopped.
+     *
+     * @param timeoutMillis The longest time the shutdown can take, in
+     *                      milliseconds.
+     */
+    public void shutdown(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Log.info("Shutting down the server.");
+        for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
+            networkPlug.stopAccepting(Math.max(0, deadline - System.currentTimeMillis()));
+        }
+        if (!Controller.getInstance().checkpoint(Math.max(0, deadline - System.currentTimeMillis()))) {
+            Log.warn("The final snapshot of the game is not on the disk.");
+        }
+        disconnectBroadcast();
+        for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
+            networkPlug.awaitDisconnection(Math.max(0, deadline - System.currentTimeMillis()));
+        }
+        AdminServer.stopIfRunning();
+        Log.info("Server stopped.");
+        // the last lines are worth a short wait even when the deadline has passed
+        Log.getInstance().flush(Math.max(500, deadline - System.currentTimeMillis()));
     }
 
     /**
@@ -292,8 +425,11 @@ public class NetworkHandler {
      * interface.
      */
     public void notifyTurnBroadcast() {
+        BroadcastEvent event = BroadcastEvent.start();
         for (NetworkPlug networkPlug : networkInterfacesAndConnections.values()) {
             networkPlug.notifyTurn();
         }
+        event.finish(Controller.getInstance().getGameId(), "notifyTurn",
+                networkInterfacesAndConnections.size());
     }
 }
@@ -4,7 +4,8 @@ import it.polimi.ingsw.model.GameMaster;
 import it.polimi.ingsw.model.Kingdom;
 
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The NetworkPlug interface defines the methods that are used for network
@@ -56,24 +57,14 @@ public interface NetworkPlug {
         void gameIsStarting();
 
         /**
-         * Fetches the receivers of the message.
-         *
-         * @param message The message to send.
-         * @return The list of nicknames of the players across connections who should
-         *         receive the message.
-         *
-         */
-        ArrayList<String> fetchReceivers(String message);
-
-        /**
-         * Sends a chat message to players checking tags.
+         * Sends a chat message to the players it is for.
          *
          * @param sender    The nickname of the player who sent the message.
          * @param message   The message sent by the player.
-         * @param receivers The list of nicknames of the players across connectios who
-         *                  should receive the message.
+         * @param receivers The nicknames of the players across connections who
+         *                  should receive the message, empty if it is for everyone.
          */
-        void sendingChatMessage(String sender, String message, ArrayList<String> receivers);
+        void sendingChatMessage(String sender, String message, Set<String> receivers);
 
         /**
          * Sends the placed root card broadcast to all client.
@@ -160,4 +151,41 @@ public interface NetworkPlug {
          * @param game The game to load.
          */
         void loadGame(GameMaster game);
+
+        /**
+         * This method is used to stop accepting new connections and new commands,
+         * when the server shuts down. The commands already being executed are
+         * waited for.
+         * It should be implemented by each network interface to close its endpoint
+         * according to its specific protocol.
+         *
+         * @param timeoutMillis The longest time to wait for the commands, in
+         *                      milliseconds.
+         */
+        void stopAccepting(long timeoutMillis);
+
+        /**
+         * This method is used to wait, when the server shuts down, until the clients
+         * have received the messages sent to them by {@link #disconnectAll()}.
+         *
+         * @param timeoutMillis The longest time to wait, in milliseconds.
+         */
+        void awaitDisconnection(long timeoutMillis);
+
+        /**
+         * This method is used by the monitoring to know how many clients are
+         * connected through this network interface. It must not lock the game.
+         *
+         * @return The number of connected clients.
+         */
+        int getConnectionCount();
+
+        /**
+         * This method is used by the monitoring to know how many messages are
+         * waiting to be sent to each client. It must not lock the game.
+         *
+         * @return A map from the name of the client to the number of messages
+         *         waiting to be sent to it.
+         */
+        Map<String, Integer> getQueueDepths();
 }
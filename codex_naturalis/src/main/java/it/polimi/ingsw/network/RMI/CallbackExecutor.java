@@ -0,0 +1,365 @@
+package it.polimi.ingsw.network.RMI;
+
+import it.polimi.ingsw.monitoring.Log;
+import it.polimi.ingsw.network.HashedWheelTimer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The CallbackExecutor runs the callbacks of the server to the RMI clients.
+ *
+ * Every client has its own queue of callbacks, which are executed one at a time and in the order they were
+ * submitted, so two consecutive updates never reach a client out of order. The queues are drained by a shared
+ * pool with a fixed number of threads, so the number of threads does not grow with the number of clients or
+ * with the number of updates.
+ *
+ * A callback holds its thread until the client answers, so a client that stops answering without closing its
+ * connection would hold one thread of the pool after the other. Every callback has a deadline instead: a client
+ * whose callback is still running at the deadline is evicted, its queue is discarded, the callbacks submitted to
+ * it are dropped until its queue is removed, and the stuck thread is replaced in the pool until its call returns.
+ * The client is then handed to the handler given to the constructor, which treats it as lost.
+ *
+ * The number of threads and the deadline, in milliseconds, can be configured with the system properties
+ * "codex.rmi.callbackThreads" (4 by default) and "codex.rmi.callbackTimeout" (10000 by default).
+ *
+ * An executor created by {@link #manual()} has no thread at all: the callbacks wait in their queues until
+ * {@link #drain()} runs them on the thread of the caller, so a test knows exactly which updates have been delivered.
+ */
+public class CallbackExecutor {
+    /**
+     * The maximum number of callbacks of the same client executed before the thread is given back to the pool.
+     * It avoids that a client with a long queue monopolizes a thread.
+     */
+    private static final int BATCH_SIZE = 16;
+
+    /**
+     * The pool shared by all the clients, null if the callbacks are run by {@link #drain()}.
+     */
+    private final ThreadPoolExecutor pool;
+    /**
+     * The queues of the clients, the key is the nickname of the client.
+     */
+    private final ConcurrentHashMap<String, ClientQueue> queues = new ConcurrentHashMap<>();
+    /**
+     * The clients evicted because a callback missed its deadline, whose callbacks are dropped.
+     */
+    private final Set<String> evicted = ConcurrentHashMap.newKeySet();
+    /**
+     * The deadline of a callback, in milliseconds.
+     */
+    private final long timeoutMillis;
+    /**
+     * The timer of the deadlines, null if the callbacks are run by {@link #drain()}.
+     */
+    private final HashedWheelTimer timer;
+    /**
+     * The handler of the evicted clients.
+     */
+    private final Consumer<String> onStuck;
+
+    /**
+     * The queue of callbacks of a single client.
+     */
+    private class ClientQueue implements Runnable {
+        /**
+         * The nickname of the client.
+         */
+        private final String client;
+        /**
+         * The callbacks waiting to be executed.
+         */
+        private final ConcurrentLinkedQueue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+        /**
+         * The number of callbacks waiting to be executed.
+         */
+        private final AtomicInteger depth = new AtomicInteger();
+        /**
+         * True if the queue has been given to the pool and is not yet drained.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /**
+         * Creates the queue of a client.
+         *
+         * @param client the nickname of the client
+         */
+        private ClientQueue(String client) {
+            this.client = client;
+        }
+
+        /**
+         * Adds a callback to the queue, and gives the queue to the pool if nobody is draining it.
+         *
+         * @param callback the callback to be executed
+         */
+        private void add(Runnable callback) {
+            callbacks.add(callback);
+            depth.incrementAndGet();
+            schedule();
+        }
+
+        /**
+         * Gives the queue to the pool, unless it is already there.
+         */
+        private void schedule() {
+            if (pool != null && !callbacks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                pool.execute(this);
+            }
+        }
+
+        /**
+         * Executes at most BATCH_SIZE callbacks, then gives the queue back to the pool if it is not empty. It stops
+         * at once if a callback missed its deadline, since the queue has been evicted meanwhile.
+         */
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    Runnable callback = callbacks.poll();
+                    if (callback == null) {
+                        break;
+                    }
+                    depth.decrementAndGet();
+                    // whoever sets it first, the callback returning or its deadline, decides if the client is evicted
+                    AtomicBoolean done = new AtomicBoolean(false);
+                    HashedWheelTimer.Timeout deadline = timer.schedule(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            evict(this);
+                        }
+                    }, timeoutMillis, TimeUnit.MILLISECONDS);
+                    execute(callback);
+                    if (!done.compareAndSet(false, true)) {
+                        // the thread has been replaced when the queue was evicted
+                        pool.setCorePoolSize(pool.getCorePoolSize() - 1);
+                        return;
+                    }
+                    deadline.cancel();
+                }
+            } finally {
+                scheduled.set(false);
+                // a callback could have been added after the last poll
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Creates a new CallbackExecutor with the number of threads and the deadline given by the system properties
+     * "codex.rmi.callbackThreads" (4 by default) and "codex.rmi.callbackTimeout" (10000 milliseconds by default).
+     *
+     * @param onStuck the handler of the clients evicted because a callback missed its deadline, it is run on the
+     *                pool
+     */
+    public CallbackExecutor(Consumer<String> onStuck) {
+        this(Integer.getInteger("codex.rmi.callbackThreads", 4), Long.getLong("codex.rmi.callbackTimeout", 10000),
+                onStuck);
+    }
+
+    /**
+     * Creates a new CallbackExecutor.
+     *
+     * @param threads       the number of threads of the pool
+     * @param timeoutMillis the deadline of a callback, in milliseconds
+     * @param onStuck       the handler of the clients evicted because a callback missed its deadline, it is run on
+     *                      the pool
+     */
+    public CallbackExecutor(int threads, long timeoutMillis, Consumer<String> onStuck) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "rmi-callback-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // the core size grows while stuck threads are replaced, the queue of the pool is never full so the
+        // maximum size is never reached
+        pool = new ThreadPoolExecutor(Math.max(1, threads), Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.onStuck = onStuck;
+        timer = new HashedWheelTimer("rmi-callback-timer", Math.max(1, this.timeoutMillis / 100),
+                TimeUnit.MILLISECONDS, 128);
+    }
+
+    /**
+     * Creates a CallbackExecutor with no thread and no deadline, whose callbacks are run by {@link #drain()}.
+     */
+    private CallbackExecutor() {
+        pool = null;
+        timer = null;
+        timeoutMillis = 0;
+        onStuck = client -> {
+        };
+    }
+
+    /**
+     * Creates a CallbackExecutor whose callbacks wait in their queues until {@link #drain()} is called.
+     *
+     * @return the executor
+     */
+    public static CallbackExecutor manual() {
+        return new CallbackExecutor();
+    }
+
+    /**
+     * Runs a callback. A failing callback does not stop the queue of its client.
+     *
+     * @param callback the callback
+     */
+    private static void execute(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            Log.warn("RMI: callback failed: {}", e);
+        }
+    }
+
+    /**
+     * Runs the callbacks of an executor created by {@link #manual()} on the thread of the caller, until no callback
+     * is left, including the ones submitted meanwhile. The clients are served in the order of their nicknames, and
+     * the callbacks of a client in the order they were submitted, so the same commands always deliver the same
+     * updates in the same order.
+     *
+     * @return the number of callbacks run
+     * @throws IllegalStateException if the callbacks of the executor run on its pool
+     */
+    public int drain() {
+        if (pool != null) {
+            throw new IllegalStateException("The callbacks of this executor run on its pool.");
+        }
+        int executed = 0;
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (String client : new TreeSet<>(queues.keySet())) {
+                ClientQueue queue = queues.get(client);
+                Runnable callback;
+                while (queue != null && (callback = queue.callbacks.poll()) != null) {
+                    queue.depth.decrementAndGet();
+                    execute(callback);
+                    executed++;
+                    found = true;
+                }
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * Evicts the queue of a client whose callback missed its deadline: its callbacks are discarded, another
+     * thread takes the place of the stuck one, and the client is handed to the handler.
+     *
+     * @param queue the queue of the client
+     */
+    private void evict(ClientQueue queue) {
+        if (!queues.remove(queue.client, queue)) {
+            // the queue has been removed meanwhile, so the client is already gone
+            pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+            return;
+        }
+        evicted.add(queue.client);
+        while (queue.callbacks.poll() != null) {
+            queue.depth.decrementAndGet();
+        }
+        Log.warn("RMI: {} did not answer a callback in {} ms, it is evicted", queue.client, timeoutMillis);
+        pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+        pool.execute(() -> onStuck.accept(queue.client));
+    }
+
+    /**
+     * Submits a callback to a client. It is executed after all the callbacks previously submitted to the same
+     * client. It is dropped if the client has been evicted and its queue not yet removed.
+     *
+     * @param client   the nickname of the client
+     * @param callback the callback, it should handle its own RemoteException
+     */
+    public void submit(String client, Runnable callback) {
+        if (evicted.contains(client)) {
+            return;
+        }
+        queues.computeIfAbsent(client, ClientQueue::new).add(callback);
+    }
+
+    /**
+     * Getter of the number of threads of the pool, including the ones replacing the stuck threads.
+     *
+     * @return the number of threads of the pool, 0 if the callbacks are run by {@link #drain()}
+     */
+    public int getThreads() {
+        return pool == null ? 0 : pool.getCorePoolSize();
+    }
+
+    /**
+     * Getter of the number of callbacks waiting to be sent to a client.
+     *
+     * @param client the nickname of the client
+     * @return the depth of the queue of the client
+     */
+    public int getQueueDepth(String client) {
+        ClientQueue queue = queues.get(client);
+        return queue == null ? 0 : queue.depth.get();
+    }
+
+    /**
+     * Getter of the number of callbacks waiting to be sent to each client.
+     *
+     * @return a map from the nickname of each client to the depth of its queue
+     */
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        for (Map.Entry<String, ClientQueue> entry : queues.entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().depth.get());
+        }
+        return depths;
+    }
+
+    /**
+     * Getter of the number of callbacks waiting to be sent to all the clients.
+     *
+     * @return the sum of the depths of the queues
+     */
+    public int getTotalQueueDepth() {
+        int total = 0;
+        for (ClientQueue queue : queues.values()) {
+            total += queue.depth.get();
+        }
+        return total;
+    }
+
+    /**
+     * Removes the queue of a client. The callbacks not yet executed are discarded. If the client had been
+     * evicted, the callbacks submitted to it are accepted again.
+     *
+     * @param client the nickname of the client
+     */
+    public void remove(String client) {
+        evicted.remove(client);
+        ClientQueue queue = queues.remove(client);
+        if (queue != null) {
+            while (queue.callbacks.poll() != null) {
+                queue.depth.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the queues of all the clients. The callbacks not yet executed are discarded.
+     */
+    public void clear() {
+        for (String client : queues.keySet()) {
+            remove(client);
+        }
+        evicted.clear();
+    }
+}
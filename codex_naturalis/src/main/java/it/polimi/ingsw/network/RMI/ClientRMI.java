@@ -4,11 +4,15 @@ import it.polimi.ingsw.controller.client.Controller;
 import it.polimi.ingsw.model.*;
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.exception.*;
+import it.polimi.ingsw.network.Correlation;
+import it.polimi.ingsw.network.HeartbeatMonitor;
 import it.polimi.ingsw.network.NetworkClient;
+import it.polimi.ingsw.network.RoundTrip;
 import it.polimi.ingsw.view.model.Phase;
 import javafx.util.Pair;
 
 import java.awt.*;
+import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -16,9 +20,9 @@ import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The ClientRMI class implements the RMIClientInterface and NetworkClient
@@ -44,15 +48,39 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
     /**
      * The remote server interface.
      */
-    RMIServerInterface stub;
+    volatile RMIServerInterface stub;
     /**
      * The RMI registry.
      */
     Registry registry;
     /**
-     * The scheduler for checking the connection.
+     * The address of the server.
      */
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final String ip;
+    /**
+     * The port of the registry of the server.
+     */
+    private final Integer port;
+    /**
+     * The token of the session, received at login. It is used to come back to the
+     * game after a lost connection, and it is null when there is no game to come
+     * back to.
+     */
+    private volatile String token;
+    /**
+     * True while the client is trying to come back to the game.
+     */
+    private final AtomicBoolean recovering = new AtomicBoolean(false);
+    /**
+     * The traced commands waiting for their timings, by correlation id, with the
+     * time their call returned, 0 until it returns.
+     */
+    private final Map<Long, Long> traced = new ConcurrentHashMap<>();
+    /**
+     * The liveness of the server. The calls received from the server count as
+     * heartbeats.
+     */
+    private HeartbeatMonitor.Peer heartbeat;
     /**
      * The lock object for synchronization.
      */
@@ -70,6 +98,8 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
     public ClientRMI(Controller controller, String ip, Integer port) throws RemoteException, NotBoundException {
         this.controller = controller;
         this.loadGame = false;
+        this.ip = ip;
+        this.port = port;
 
         // Exporting the ClientRMI object as a remote object
         exportedClient = (RMIClientInterface) UnicastRemoteObject.exportObject(this, 0);
@@ -81,7 +111,25 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
         stub = (RMIServerInterface) registry.lookup("Loggable");
 
         // periodically check if the client is still connected to the server
-        new Thread(this::isClientConnectedToServer).start();
+        isClientConnectedToServer();
+    }
+
+    /**
+     * Constructor for a ClientRMI calling a server of the same JVM directly, with
+     * no registry and without exporting the client. It is used by the loopback
+     * transport.
+     *
+     * @param controller The controller that handles the client's view.
+     * @param server     The server to call.
+     */
+    protected ClientRMI(Controller controller, RMIServerInterface server) {
+        this.controller = controller;
+        this.loadGame = false;
+        this.ip = null;
+        this.port = null;
+        exportedClient = this;
+        stub = server;
+        isClientConnectedToServer();
     }
 
     /**
@@ -105,7 +153,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
             isFirst = stub.loginAndIsFirst(exportedClient, name);
             login = true;
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (LobbyCompleteException e) {
             controller.lobbyComplete();
         } catch (SameNameException e) {
@@ -133,7 +181,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
                         controller.waitLobby();
                     }
                 } catch (RemoteException e) {
-                    controller.noConnection();
+                    connectionLost();
                 }
             }
         }else if(loadGame){
@@ -159,7 +207,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
             // just show the number of players chosen
             controller.correctNumberOfPlayers(numberOfPlayers);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (ClosingLobbyException e) {
             controller.closingLobbyError();
         } catch (SameNameException e) {
@@ -186,7 +234,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
             // call remote method chooseColor
             stub.chooseColor(controller.getNickname(), color);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (ColorAlreadyTakenException e) {
             // if the color is already taken, set FSM to COLOR and ask for color
             Controller.phase = Phase.COLOR;
@@ -211,7 +259,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
         try {
             stub.sendChatMessage(nickname, message);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         }
     }
 
@@ -229,9 +277,11 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
             // wait that all players have chosen their side
             Controller.phase = Phase.WAIT;
             // call remote method chooseSideStartingCard
-            stub.chooseSideStartingCard(controller.getNickname(), side);
+            Correlation correlation = trace();
+            stub.chooseSideStartingCard(controller.getNickname(), side, correlation);
+            answered(correlation);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (WrongGamePhaseException e) {
             // if the game phase is wrong, set FSM to CHOOSE_SIDE_STARTING_CARD and show the
             // error message
@@ -262,11 +312,13 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
             // wait that all players have chosen their secret objective card
             Controller.phase = Phase.WAIT;
             // call remote method chooseSecretObjectiveCard
-            stub.chooseSecretObjectiveCard(controller.getNickname(), indexCard);
+            Correlation correlation = trace();
+            stub.chooseSecretObjectiveCard(controller.getNickname(), indexCard, correlation);
+            answered(correlation);
             // just show the secret objective card chosen
             controller.updateAndShowSecretObjectiveCard(indexCard);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (WrongGamePhaseException e) {
             // if the game phase is wrong, set FSM to CHOOSE_SECRET_OBJECTIVE_CARD and show
             // the error message
@@ -298,9 +350,11 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
      */
     public void playCard(int indexHand, Point position, boolean side) {
         try {
-            stub.placeCard(controller.getNickname(), indexHand, position, side);
+            Correlation correlation = trace();
+            stub.placeCard(controller.getNickname(), indexHand, position, side, correlation);
+            answered(correlation);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (WrongGamePhaseException e) {
             controller.wrongPhase();
         } catch (NoTurnException e) {
@@ -332,10 +386,12 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
     public void drawCard(String nickname, boolean gold, int onTableOrDeck) {
         Integer[] newHand;
         try {
-            newHand = stub.drawCard(nickname, gold, onTableOrDeck);
+            Correlation correlation = trace();
+            newHand = stub.drawCard(nickname, gold, onTableOrDeck, correlation);
+            answered(correlation);
             controller.updateHand(newHand);
         } catch (RemoteException e) {
-            controller.noConnection();
+            connectionLost();
         } catch (WrongGamePhaseException e) {
             controller.wrongPhase();
         } catch (NoTurnException e) {
@@ -404,6 +460,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
      */
     @Override
     public void receiveChatMessage(String sender, String message, boolean broadcast) {
+        heartbeat.touch();
         controller.receiveChatMessage(sender, message, broadcast);
     }
 
@@ -477,6 +534,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
      */
     @Override
     public void refreshTurnInfo(String currentPlayer, GameState gameState) {
+        heartbeat.touch();
         controller.turnInfo(currentPlayer, gameState);
     }
 
@@ -518,6 +576,19 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
         controller.updateAndShowCommonTable(newCardId, gold, onTableOrDeck, headDeck);
     }
 
+    /**
+     * Applies the changes made by a command of a player.
+     * This method is used to update the client's view after a card has been placed
+     * or drawn, and to refresh the turn information.
+     *
+     * @param delta The changes made by the command.
+     */
+    @Override
+    public void applyTurnDelta(TurnChange delta) {
+        heartbeat.touch();
+        controller.applyTurnDelta(delta);
+    }
+
     /**
      * Shows the end game information to the client.
      * This method is used to update the client's view of the extra points and the
@@ -528,7 +599,7 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
      *                    order.
      */
     @Override
-    public void showEndGame(HashMap<String, Integer> extraPoints, ArrayList<Player> ranking) {
+    public void showEndGame(HashMap<String, Integer> extraPoints, ArrayList<RankingEntry> ranking) {
         controller.showExtraPoints(extraPoints);
         controller.showRanking(ranking);
     }
@@ -558,7 +629,9 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
     @Override
     public void stopGaming() throws RemoteException {
         synchronized (lock) {
-            scheduler.shutdown();
+            // the game is over, there is nothing to come back to
+            token = null;
+            heartbeat.cancel();
             controller.stopGaming();
         }
     }
@@ -573,34 +646,157 @@ public class ClientRMI implements RMIClientInterface, NetworkClient {
      */
     @Override
     public void isConnected() throws RemoteException {
-        // this method is used to check if the client is still connected. No
-        // implementation needed.
+        // the ping of the server proves that the server is alive
+        heartbeat.touch();
     }
 
     /**
      * This method is used to periodically check if the client is still connected to
      * the server.
-     * It creates a Runnable that calls the isConnected method and schedules it to
-     * run at a fixed rate.
-     * The Runnable is scheduled to run every 30 seconds.
+     * The server is registered on the HeartbeatMonitor: it is pinged only when it
+     * has been silent for a whole heartbeat interval.
      */
     public void isClientConnectedToServer() {
-        final Runnable checker = new Runnable() {
-            public void run() {
+        heartbeat = HeartbeatMonitor.getInstance().register("RMI server", () -> {
+            try {
+                stub.connectToServer();
+                heartbeat.touch();
+            } catch (RemoteException e) {
+                heartbeat.cancel();
+                connectionLost();
+            }
+        }, this::connectionLost);
+    }
+
+    /**
+     * This method is used to receive the token of the session, sent by the server
+     * after the login.
+     *
+     * @param token The token of the session.
+     * @throws RemoteException throws a RemoteException if there is a problem with
+     *                         the connection.
+     */
+    @Override
+    public void setSessionToken(String token) throws RemoteException {
+        this.token = token;
+    }
+
+    /**
+     * This method is used to receive the timings of a traced command, sent by the
+     * server after its updates.
+     *
+     * @param roundTrip The time the command spent in the server.
+     * @throws RemoteException throws a RemoteException if there is a problem with
+     *                         the connection.
+     */
+    @Override
+    public void commandTimed(RoundTrip roundTrip) throws RemoteException {
+        Long returned = traced.remove(roundTrip.getCorrelation().getId());
+        roundTrip.arrived(returned == null ? 0 : returned, System.nanoTime());
+        controller.logRoundTrip(roundTrip);
+    }
+
+    /**
+     * This method is used to give a command a new correlation id, when tracing is
+     * on, so its round trip can be measured.
+     *
+     * @return the correlation id of the command, or null if it is not traced.
+     */
+    private Correlation trace() {
+        Correlation correlation = Correlation.next();
+        if (correlation != null) {
+            traced.put(correlation.getId(), 0L);
+        }
+        return correlation;
+    }
+
+    /**
+     * This method is used to note when the call of a traced command returned. The
+     * updates sent by RMI carry no correlation id, so the return of the call is
+     * the first answer of the command.
+     *
+     * @param correlation the correlation id of the command, or null if it is not
+     *                    traced.
+     */
+    private void answered(Correlation correlation) {
+        if (correlation != null) {
+            traced.replace(correlation.getId(), 0L, System.nanoTime());
+        }
+    }
+
+    /**
+     * This method is used to handle the loss of the connection with the server.
+     * During a game, the client tries to come back to it on a new connection, in
+     * the background; otherwise the connection error is shown.
+     */
+    private void connectionLost() {
+        if (token == null) {
+            controller.noConnection();
+            return;
+        }
+        if (recovering.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::recover, "rmi-reconnect");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * This method is used to come back to the game after the connection to the
+     * server has been lost. The registry is looked up again and the server is asked
+     * to resume the session, until the end of its grace period, given by the
+     * "codex.session.graceMillis" property (60000 by default). The server then
+     * sends the whole game again.
+     */
+    private void recover() {
+        heartbeat.cancel();
+        long deadline = System.currentTimeMillis() + Long.getLong("codex.session.graceMillis", 60000);
+        while (token != null && System.currentTimeMillis() < deadline) {
+            try {
+                Registry newRegistry = LocateRegistry.getRegistry(ip, port);
+                RMIServerInterface newStub = (RMIServerInterface) newRegistry.lookup("Loggable");
+                if (!newStub.reconnect(exportedClient, token)) {
+                    break;
+                }
+                registry = newRegistry;
+                stub = newStub;
+                System.out.println("Connection lost, back to the game.");
+                isClientConnectedToServer();
+                recovering.set(false);
+                return;
+            } catch (RemoteException | NotBoundException e) {
                 try {
-                    stub.connectToServer();
-                } catch (RemoteException e) {
-                    controller.noConnection();
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
-        };
-        scheduler.scheduleAtFixedRate(checker, 30, 30, TimeUnit.SECONDS);
+        }
+        token = null;
+        recovering.set(false);
+        controller.noConnection();
+    }
+
+    /**
+     * This method is used to leave the server: the session is forgotten, the
+     * server is no longer pinged and the client is unexported, so the next ping
+     * of the server finds it gone.
+     */
+    public void leave() {
+        token = null;
+        heartbeat.cancel();
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // already unexported
+        }
     }
 
     @Override
-    public void loadSavedGame(GameMaster game) throws RemoteException {
+    public void loadSavedGame(ResumeSnapshot snapshot) throws RemoteException {
         loadGame = true;
-        controller.setModel(game);
+        controller.setModel(snapshot);
     }
 
 }
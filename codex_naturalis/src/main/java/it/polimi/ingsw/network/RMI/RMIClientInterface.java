@@ -1,11 +1,13 @@
 package it.polimi.ingsw.network.RMI;
 
 import it.polimi.ingsw.model.Color;
-import it.polimi.ingsw.model.GameMaster;
 import it.polimi.ingsw.model.GameState;
 import it.polimi.ingsw.model.Kingdom;
-import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
+import it.polimi.ingsw.model.ResumeSnapshot;
+import it.polimi.ingsw.model.TurnChange;
 import it.polimi.ingsw.model.Sign;
+import it.polimi.ingsw.network.RoundTrip;
 import javafx.util.Pair;
 
 import java.awt.*;
@@ -141,6 +143,17 @@ public interface RMIClientInterface extends Remote {
      */
     void moveCard(Integer newCardId, Kingdom headDeck, boolean gold, int onTableOrDeck) throws RemoteException;
 
+    /**
+     * This method is used to send to the clients everything a command of a player
+     * has changed: the placed card with the changed resources and points, or the
+     * drawn card with the new table, and the next turn. It is a broadcast call.
+     *
+     * @param delta The changes made by the command.
+     * @throws RemoteException throws a RemoteException if there is a problem with
+     *                         the connection.
+     */
+    void applyTurnDelta(TurnChange delta) throws RemoteException;
+
     /**
      * This method is used to show the end game to the clients. It is a broadcast
      * call.
@@ -150,7 +163,7 @@ public interface RMIClientInterface extends Remote {
      * @throws RemoteException throws a RemoteException if there is a problem with
      *                         the connection.
      */
-    void showEndGame(HashMap<String, Integer> extraPoints, ArrayList<Player> ranking) throws RemoteException;
+    void showEndGame(HashMap<String, Integer> extraPoints, ArrayList<RankingEntry> ranking) throws RemoteException;
 
     /**
      * This method sends the first player information. When this call arrives, the
@@ -218,9 +231,25 @@ public interface RMIClientInterface extends Remote {
     /**
      * Loads a saved game.
      * 
-     * @param game The game to load.
+     * @param snapshot The state of the game to load, as seen by this client.
      * @throws RemoteException throws a RemoteException if there is a problem with
      *                         the connection.
      */
-    void loadSavedGame(GameMaster game) throws RemoteException;
+    void loadSavedGame(ResumeSnapshot snapshot) throws RemoteException;
+
+    /**
+     * Receives the token of the session of the player, used to come back to the game if the connection drops.
+     *
+     * @param token The token of the session.
+     * @throws RemoteException throws a RemoteException if there is a problem with the connection.
+     */
+    void setSessionToken(String token) throws RemoteException;
+
+    /**
+     * Receives the timings of a traced command of the player, sent after its updates.
+     *
+     * @param roundTrip The time the command spent in the server.
+     * @throws RemoteException throws a RemoteException if there is a problem with the connection.
+     */
+    void commandTimed(RoundTrip roundTrip) throws RemoteException;
 }
@@ -4,6 +4,7 @@ import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.exception.*;
 import it.polimi.ingsw.model.exception.LobbyCompleteException;
 import it.polimi.ingsw.model.exception.SameNameException;
+import it.polimi.ingsw.network.Correlation;
 
 import java.awt.*;
 import java.rmi.Remote;
@@ -94,6 +95,8 @@ public interface RMIServerInterface extends Remote {
      * 
      * @param nickname The nickname of the player.
      * @param side     The side of the card chosen by the player.
+     * @param correlation The correlation id of the command, when it is traced,
+     *                    or null.
      * @throws RemoteException         throws a RemoteException if there is a
      *                                 problem with the connection.
      * @throws WrongGamePhaseException throws a WrongGamePhaseException if the
@@ -105,7 +108,7 @@ public interface RMIServerInterface extends Remote {
      * @throws NoNameException         throws a NoNameException if a player with the
      *                                 given nickname does not exist.
      */
-    void chooseSideStartingCard(String nickname, boolean side)
+    void chooseSideStartingCard(String nickname, boolean side, Correlation correlation)
             throws RemoteException, WrongGamePhaseException, NoTurnException, NoNameException;
 
     /**
@@ -113,6 +116,8 @@ public interface RMIServerInterface extends Remote {
      * 
      * @param nickname  The nickname of the player.
      * @param indexCard The index of the secret objective card chosen by the player.
+     * @param correlation The correlation id of the command, when it is traced,
+     *                    or null.
      * @throws RemoteException         throws a RemoteException if there is a
      *                                 problem with the connection.
      * @throws WrongGamePhaseException throws a WrongGamePhaseException if the
@@ -124,7 +129,7 @@ public interface RMIServerInterface extends Remote {
      * @throws NoNameException         throws a NoNameException if a player with the
      *                                 given nickname does not exist.
      */
-    void chooseSecretObjectiveCard(String nickname, int indexCard)
+    void chooseSecretObjectiveCard(String nickname, int indexCard, Correlation correlation)
             throws RemoteException, WrongGamePhaseException, NoTurnException, NoNameException;
 
     /**
@@ -134,6 +139,8 @@ public interface RMIServerInterface extends Remote {
      * @param indexHand The index of the card in the player's hand.
      * @param position  The position where the card will be placed.
      * @param side      The side of the card that will be placed.
+     * @param correlation The correlation id of the command, when it is traced,
+     *                    or null.
      * @throws RemoteException             throws a RemoteException if there is a
      *                                     problem with the connection.
      * @throws WrongGamePhaseException     throws a WrongGamePhaseException if the
@@ -151,7 +158,7 @@ public interface RMIServerInterface extends Remote {
      *                                     player is trying to place a card in an
      *                                     invalid position.
      */
-    void placeCard(String nickname, int indexHand, Point position, boolean side)
+    void placeCard(String nickname, int indexHand, Point position, boolean side, Correlation correlation)
             throws RemoteException, WrongGamePhaseException, NoTurnException, NotEnoughResourcesException,
             NoNameException, CardPositionException;
 
@@ -163,6 +170,8 @@ public interface RMIServerInterface extends Remote {
      * @param onTableOrDeck An integer indicating whether the card is on the table
      *                      or deck. It is -1, to pick from deck, 0 or 1 to pick
      *                      from table.
+     * @param correlation   The correlation id of the command, when it is traced,
+     *                      or null.
      * @return The id of the card drawn by the player.
      * @throws RemoteException         throws a RemoteException if there is a
      *                                 problem with the connection.
@@ -176,7 +185,7 @@ public interface RMIServerInterface extends Remote {
      *                                 given nickname does not exist.
      * @throws CardPositionException   throws a CardPositionException if the player
      */
-    Integer[] drawCard(String nickname, boolean gold, int onTableOrDeck)
+    Integer[] drawCard(String nickname, boolean gold, int onTableOrDeck, Correlation correlation)
             throws RemoteException, WrongGamePhaseException, NoTurnException, NoNameException, CardPositionException;
 
     /**
@@ -187,4 +196,14 @@ public interface RMIServerInterface extends Remote {
      */
     void connectToServer() throws RemoteException;
 
+
+    /**
+     * This method is used by a client to come back to its game after its connection has been lost.
+     *
+     * @param clientRMI The new stub of the client.
+     * @param token     The token of the session, given at login.
+     * @return True if the client is back in the game, false if the session has expired.
+     * @throws RemoteException throws a RemoteException if there is a problem with the connection.
+     */
+    boolean reconnect(RMIClientInterface clientRMI, String token) throws RemoteException;
 }
@@ -3,26 +3,44 @@ package it.polimi.ingsw.network.RMI;
 import it.polimi.ingsw.controller.server.Controller;
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.GameMaster;
+import it.polimi.ingsw.model.GameState;
 import it.polimi.ingsw.model.Kingdom;
-import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
+import it.polimi.ingsw.model.ResumeSnapshot;
+import it.polimi.ingsw.model.TurnChange;
+import it.polimi.ingsw.model.Sign;
 import it.polimi.ingsw.model.exception.*;
+import it.polimi.ingsw.monitoring.CommandEvent;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.CommandTrace;
+import it.polimi.ingsw.monitoring.Log;
+import it.polimi.ingsw.monitoring.TrafficCounter;
+import it.polimi.ingsw.monitoring.TrafficMetrics;
+import it.polimi.ingsw.network.ChatRouter;
+import it.polimi.ingsw.network.Correlation;
+import it.polimi.ingsw.network.HeartbeatMonitor;
 import it.polimi.ingsw.network.NetworkHandler;
 import it.polimi.ingsw.network.NetworkPlug;
+import it.polimi.ingsw.network.RoundTrip;
+import it.polimi.ingsw.network.SessionManager;
 import it.polimi.ingsw.network.socket.NetworkServerSocket;
+import javafx.util.Pair;
 
 import java.awt.*;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.rmi.AlreadyBoundException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The ServerRMI class implements the RMIServerInterface and NetworkPlug
@@ -44,8 +62,45 @@ import java.util.concurrent.TimeUnit;
  *
  */
 public class ServerRMI implements RMIServerInterface, NetworkPlug {
-    private ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-    HashMap<String, RMIClientInterface> connections = new HashMap<>();
+    /**
+     * The connection counting the calls of the clients that are not logged in.
+     */
+    private static final String UNIDENTIFIED = "unidentified";
+
+    ConcurrentHashMap<String, RMIClientInterface> connections = new ConcurrentHashMap<>();
+    /**
+     * The liveness of the clients, tracked by the HeartbeatMonitor once the game
+     * has started. Any call received from a client counts as a heartbeat.
+     */
+    private final ConcurrentHashMap<String, HeartbeatMonitor.Peer> heartbeats = new ConcurrentHashMap<>();
+    /**
+     * The executor of the callbacks to the clients. Callbacks to the same client
+     * are executed in order, on a bounded pool shared by all the clients, or on
+     * the thread calling {@link #deliverCallbacks()}.
+     */
+    private final CallbackExecutor callbacks;
+    /**
+     * The lock held while the callbacks of a broadcast are queued, so a client
+     * answering an update at once cannot have its next update queued before the
+     * first one reaches the other clients: every client receives the broadcasts
+     * in the same order. The turn sent by a broadcast is read under the lock too,
+     * so an older turn is never queued after a newer one.
+     */
+    private final Object broadcasts = new Object();
+    /**
+     * True once the end of the game has been sent, until the clients are
+     * disconnected.
+     */
+    private volatile boolean gameEnded = false;
+    /**
+     * The registry where the server is bound, null if it cannot be created.
+     */
+    private Registry registry = null;
+    /**
+     * The transport of the server, which names its commands and its traffic in
+     * the metrics.
+     */
+    private final CommandMetrics.Transport transport;
 
     /**
      * The ServerRMI constructor initializes the ServerRMI instance.
@@ -55,56 +110,95 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      *
      */
     public ServerRMI() {
-        NetworkHandler.getInstance().addNetworkPlug("RMI", this);
+        this("RMI", CommandMetrics.Transport.RMI);
         RMIServerInterface serverSkeleton = null;// https://www.baeldung.com/java-rmi
-        Registry registry = null;
 
         try {
             serverSkeleton = (RMIServerInterface) UnicastRemoteObject.exportObject(this, 0);
-            System.out.println("Server skeleton created");
+            Log.info("Server skeleton created");
         } catch (RemoteException e) {
-            System.out.println("Server skeleton not created");
-            System.out.println("Server exception: " + e.toString());
+            Log.error("Server skeleton not created");
+            Log.error("Server exception: {}", e);
             ;
         }
 
         try {
             registry = LocateRegistry.createRegistry(0);
-            System.out.println("Registry created");
+            Log.info("Registry created");
         } catch (RemoteException e) {
-            System.out.println("Registry not created");
-            System.out.println("Registry exception: " + e.toString());
+            Log.error("Registry not created");
+            Log.error("Registry exception: {}", e);
         }
 
         if (registry != null && serverSkeleton != null) {
             try {
                 registry.bind("Loggable", serverSkeleton);
-                System.out.println("Server bound");
-                System.out.println("Server ready");
+                Log.info("Server bound");
+                Log.info("Server ready");
             } catch (RemoteException e) {
-                System.out.println("Rebind exception: " + e.toString());
+                Log.error("Rebind exception: {}", e);
             } catch (AlreadyBoundException e) {
-                System.out.println("Already bound exception: " + e.toString());
+                Log.error("Already bound exception: {}", e);
             }
         } else {
             if (registry == null) {
-                System.out.println("Registry is null, cannot bind the object.");
+                Log.error("Registry is null, cannot bind the object.");
             }
             if (serverSkeleton == null) {
-                System.out.println("serverSkeleton is null, cannot bind the object.");
+                Log.error("serverSkeleton is null, cannot bind the object.");
             }
         }
         try {
             InetAddress inetAddress = InetAddress.getLocalHost();
-            System.out.println("Server RMI is listening on IP: " + inetAddress.getHostAddress());
-            System.out.println("Server RMI is listening on Port: " + registry);
+            Log.info("Server RMI is listening on IP: {}", inetAddress.getHostAddress());
+            Log.info("Server RMI is listening on Port: {}", registry);
 
         } catch (Exception e) {
-            System.out.println("Cannot get the IP address of the server.");
+            Log.warn("Cannot get the IP address of the server.");
         }
 
     }
 
+    /**
+     * This constructor adds the server to the NetworkHandler without exporting it
+     * or creating a registry, so it can only be called by clients of the same
+     * JVM. It is used by the loopback transport.
+     *
+     * @param name      the name of the server in the NetworkHandler
+     * @param transport the transport of the server in the metrics
+     */
+    protected ServerRMI(String name, CommandMetrics.Transport transport) {
+        this(name, transport, false);
+    }
+
+    /**
+     * This constructor adds the server to the NetworkHandler without exporting it
+     * or creating a registry. If the callbacks are delivered manually, they wait
+     * until {@link #deliverCallbacks()} runs them on the thread of the caller.
+     *
+     * @param name           the name of the server in the NetworkHandler
+     * @param transport      the transport of the server in the metrics
+     * @param manualDelivery true if the callbacks are run by
+     *                       {@link #deliverCallbacks()}
+     */
+    protected ServerRMI(String name, CommandMetrics.Transport transport, boolean manualDelivery) {
+        this.transport = transport;
+        callbacks = manualDelivery ? CallbackExecutor.manual() : new CallbackExecutor(this::clientLost);
+        NetworkHandler.getInstance().addNetworkPlug(name, this);
+    }
+
+    /**
+     * This method is used to run the callbacks waiting for the clients, on the
+     * thread of the caller, until none is left. It is only available on a server
+     * whose callbacks are delivered manually.
+     *
+     * @return the number of callbacks run
+     * @throws IllegalStateException if the callbacks run on the pool
+     */
+    protected int deliverCallbacks() {
+        return callbacks.drain();
+    }
+
     /**
      * RMIServerInterface interface method
      * This method is responsible for logging in a client and checking if it's the
@@ -125,23 +219,125 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
     @Override
     public boolean loginAndIsFirst(RMIClientInterface clientRMI, String nickname)
             throws RemoteException, SameNameException, LobbyCompleteException {
-        // Add player to the starting lobby, throws exception if the lobby is already
-        // complete or the nickname is already taken
-        Controller.getInstance().addPlayer(nickname);
-        // Add the player to the connections map
-        connections.put(nickname, clientRMI);
-        NetworkHandler.getInstance().refreshUsersBroadcast();
+        CommandEvent event = CommandEvent.start();
+        boolean loggedIn = false;
+        try {
+            RMIClientInterface client;
+            // the lobby can be finalized by another player as soon as this one is in it,
+            // so the player is added to the connections at the same time, to be told
+            synchronized (broadcasts) {
+                // Add player to the starting lobby, throws exception if the lobby is already
+                // complete or the nickname is already taken
+                Controller.getInstance().addPlayer(nickname);
+                // Add the player to the connections map, counting the calls made to it
+                client = TrafficCountingClient.wrap(clientRMI, nickname, transport);
+                connections.put(nickname, client);
+            }
+            loggedIn = true;
+            // the token lets the client come back to the game if its connection drops
+            String token = SessionManager.getInstance().open(nickname);
+            ChatRouter.getInstance().join(nickname);
+            callbacks.submit(nickname, () -> {
+                try {
+                    client.setSessionToken(token);
+                } catch (RemoteException e) {
+                    clientLost(nickname);
+                }
+            });
+            NetworkHandler.getInstance().refreshUsersBroadcast();
 
-        // We told players if all joined in
-        // before finalizing the number of players, since if lobby is ready we do the
-        // shuffle of the players
-        boolean isFirst = Controller.getInstance().isFirst(nickname);
+            // We told players if all joined in
+            // before finalizing the number of players, since if lobby is ready we do the
+            // shuffle of the players
+            boolean isFirst = Controller.getInstance().isFirst(nickname);
 
-        NetworkHandler.getInstance().refreshUsersBroadcast();
+            NetworkHandler.getInstance().refreshUsersBroadcast();
+
+            NetworkHandler.getInstance().finalizingNumberOfPlayersBroadcast();
+            // Return whether the player is the first one to log in
+            return isFirst;
+        } finally {
+            // a refused login is not counted in the connection of the player already using the nickname
+            int size = received(loggedIn ? nickname : null, "loginAndIsFirst", clientRMI, nickname);
+            event.finish(Controller.getInstance().getGameId(), nickname, "loginAndIsFirst", transport.getName(), size);
+        }
+    }
+
+    /**
+     * RMIServerInterface interface method
+     *
+     * This method is used by a client to come back to its game after its
+     * connection has been lost. The new stub of the client replaces the old one,
+     * the callbacks not yet sent to the old stub are discarded, and the client
+     * receives the whole game as seen by its player.
+     *
+     * @param clientRMI The new stub of the client.
+     * @param token     The token of the session, given at login.
+     * @return true if the client is back in the game, false if the session has
+     *         expired or the game has not started yet.
+     * @throws RemoteException If a communication-related error occurs during the
+     *                         execution of a remote method call.
+     */
+    @Override
+    public boolean reconnect(RMIClientInterface clientRMI, String token) throws RemoteException {
+        CommandEvent event = CommandEvent.start();
+        try {
+            // before the game starts, the missed events cannot be sent again: the grace
+            // period goes on, and ends the game
+            GameMaster game = Controller.getInstance().getGameMaster();
+            if (game == null) {
+                return false;
+            }
+            String nickname = SessionManager.getInstance().resume(token);
+            if (nickname == null) {
+                return false;
+            }
+            RMIClientInterface client = TrafficCountingClient.wrap(clientRMI, nickname, transport);
+            // no broadcast can be queued between the new stub and the game it receives
+            synchronized (broadcasts) {
+                connections.put(nickname, client);
+                resync(nickname, client, game);
+            }
+            Log.info("RMI: {} is back, sending the game.", nickname);
+            startHeartbeat(nickname);
+            return true;
+        } finally {
+            int size = received(null, "reconnect", clientRMI, token);
+            event.finish(Controller.getInstance().getGameId(), null, "reconnect", transport.getName(), size);
+        }
+    }
 
-        NetworkHandler.getInstance().finalizingNumberOfPlayersBroadcast();
-        // Return whether the player is the first one to log in
-        return isFirst;
+    /**
+     * This method is used to send the whole game to a client, as seen by its
+     * player, when it may have missed some updates. The callbacks not yet sent to
+     * the client are discarded, since the game already contains them.
+     *
+     * The game is taken while the broadcasts are held, so it contains the updates
+     * already queued and none of the ones queued after it: the client does not
+     * apply an update twice.
+     *
+     * @param nickname the nickname of the client
+     * @param client   the stub of the client
+     * @param game     the game to send
+     */
+    private void resync(String nickname, RMIClientInterface client, GameMaster game) {
+        synchronized (broadcasts) {
+            ResumeSnapshot snapshot;
+            try {
+                snapshot = new ResumeSnapshot(game, nickname);
+            } catch (NoNameException e) {
+                Log.error("NoNameException. Debugging error, this error should never occur");
+                return;
+            }
+            callbacks.remove(nickname);
+            callbacks.submit(nickname, () -> {
+                try {
+                    client.loadSavedGame(snapshot);
+                } catch (RemoteException e) {
+                    clientLost(nickname);
+                }
+            });
+        }
     }
 
     /**
@@ -174,12 +370,19 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      */
     @Override
     public void insertNumberOfPlayers(int numberOfPlayers) throws RemoteException, ClosingLobbyException {
-        // Deletes all other connections that are not in the lobby
-        Controller.getInstance().initializeLobby(numberOfPlayers);
-        // refresh here since some players can be eliminated
-        NetworkHandler.getInstance().refreshUsersBroadcast();
+        CommandEvent event = CommandEvent.start();
+        try {
+            // Deletes all other connections that are not in the lobby
+            Controller.getInstance().initializeLobby(numberOfPlayers);
+            // refresh here since some players can be eliminated
+            NetworkHandler.getInstance().refreshUsersBroadcast();
 
-        NetworkHandler.getInstance().finalizingNumberOfPlayersBroadcast();
+            NetworkHandler.getInstance().finalizingNumberOfPlayersBroadcast();
+        } finally {
+            int size = received(null, "insertNumberOfPlayers", numberOfPlayers);
+            event.finish(Controller.getInstance().getGameId(), null, "insertNumberOfPlayers",
+                    transport.getName(), size);
+        }
     }
 
     /**
@@ -200,16 +403,23 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
     @Override
     public void chooseColor(String nickname, Color color) throws RemoteException,
             ColorAlreadyTakenException, NoNameException {
-        // Set the color of the player, returns true if the color was set successfully.
-        // If the color was set successfully, the game is starting.
-        // Throws an exception if the color is already taken by another player.
+        CommandEvent event = CommandEvent.start();
+        try {
+            clientSeen(nickname);
+            // Set the color of the player, returns true if the color was set successfully.
+            // If the color was set successfully, the game is starting.
+            // Throws an exception if the color is already taken by another player.
 
-        boolean isGameStarting = Controller.getInstance().setColourAndGameIsReadyToStart(nickname, color);
-        // Refresh the users list for all clients
-        NetworkHandler.getInstance().refreshUsersBroadcast();
-        if (isGameStarting) {
-            NetworkHandler.getInstance().gameIsStartingBroadcast();
-            NetworkHandler.getInstance().notifyTurnBroadcast();
+            boolean isGameStarting = Controller.getInstance().setColourAndGameIsReadyToStart(nickname, color);
+            // Refresh the users list for all clients
+            NetworkHandler.getInstance().refreshUsersBroadcast();
+            if (isGameStarting) {
+                NetworkHandler.getInstance().gameIsStartingBroadcast();
+                NetworkHandler.getInstance().notifyTurnBroadcast();
+            }
+        } finally {
+            int size = received(nickname, "chooseColor", nickname, color);
+            event.finish(Controller.getInstance().getGameId(), nickname, "chooseColor", transport.getName(), size);
         }
     }
 
@@ -219,14 +429,26 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * the message will be sent only to that client. Nicknames are extracted from
      * the connections map, so any non-existent
      * nicknames mentioned in the message will be ignored. The message will be sent
-     * from the connection associated with the sender's nickname.
+     * from the connection associated with the sender's nickname, and dropped if
+     * no client is logged in on this server with that nickname.
      *
      * @param sender  The nickname of the client sending the message.
      * @param message The message to be sent.
      */
     @Override
     public void sendChatMessage(String sender, String message) throws RemoteException {
-        NetworkHandler.getInstance().sendChatMessageBroadcast(sender, message);
+        CommandEvent event = CommandEvent.start();
+        try {
+            if (sender == null || !connections.containsKey(sender)) {
+                Log.warn("RMI: chat message of {} dropped, no client is logged in with that name.", sender);
+                return;
+            }
+            clientSeen(sender);
+            NetworkHandler.getInstance().sendChatMessageBroadcast(sender, message);
+        } finally {
+            int size = received(sender, "sendChatMessage", sender, message);
+            event.finish(Controller.getInstance().getGameId(), sender, "sendChatMessage", transport.getName(), size);
+        }
     }
 
     /**
@@ -237,6 +459,8 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * @param nickname The nickname of the player who is choosing the side.
      * @param side     The side chosen by the player. True for one side, false for
      *                 the other.
+     * @param correlation The correlation id of the command, when it is traced,
+     *                    or null.
      * @throws WrongGamePhaseException If the game is not in the correct phase for
      *                                 this action.
      * @throws NoTurnException         If it's not the turn of the player who is
@@ -245,18 +469,30 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      *                                 exist.
      */
     @Override
-    public void chooseSideStartingCard(String nickname, boolean side)
+    public void chooseSideStartingCard(String nickname, boolean side, Correlation correlation)
             throws WrongGamePhaseException, NoTurnException, NoNameException, RemoteException {
+        clientSeen(nickname);
+        long start = System.nanoTime();
+        CommandEvent event = CommandEvent.start();
+        CommandTrace trace = CommandTrace.begin(correlation, start);
+        try {
+            // The player chooses the side of their starting card
+            int cardId = Controller.getInstance().placeRootCard(nickname, side);
+            // Check if all players have placed their root card
+            boolean allWithRootCardPlaced = Controller.getInstance().areAllRootCardPlaced();
 
-        // The player chooses the side of their starting card
-        int cardId = Controller.getInstance().placeRootCard(nickname, side);
-        // Check if all players have placed their root card
-        boolean allWithRootCardPlaced = Controller.getInstance().areAllRootCardPlaced();
-
-        // Broadcast the information of the side of Starting Card. If all players have
-        // placed their root card, broadcast this information.
-        NetworkHandler.getInstance().sendingPlacedRootCardAndWhenCompleteObjectiveCardsBroadcast(nickname, side, cardId,
-                allWithRootCardPlaced);
+            // Broadcast the information of the side of Starting Card. If all players have
+            // placed their root card, broadcast this information.
+            NetworkHandler.getInstance().sendingPlacedRootCardAndWhenCompleteObjectiveCardsBroadcast(nickname, side,
+                    cardId, allWithRootCardPlaced);
+        } finally {
+            CommandMetrics.getInstance().record(CommandMetrics.Command.PLACE_ROOT_CARD, transport,
+                    start);
+            int size = received(nickname, "chooseSideStartingCard", nickname, side, correlation);
+            event.finish(Controller.getInstance().getGameId(), nickname, "chooseSideStartingCard",
+                    transport.getName(), size);
+            sendTimings(nickname, trace, "chooseSideStartingCard");
+        }
     }
 
     /**
@@ -272,6 +508,8 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * @param nickname  The nickname of the player who is choosing the secret
      *                  objective card.
      * @param indexCard The index of the secret objective card chosen by the player.
+     * @param correlation The correlation id of the command, when it is traced,
+     *                    or null.
      * @throws WrongGamePhaseException If the game is not in the correct phase for
      *                                 this action.
      * @throws NoTurnException         If it's not the turn of the player who is
@@ -279,18 +517,31 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * @throws NoNameException         If a player with the given nickname does not
      *                                 exist.
      */
-    public void chooseSecretObjectiveCard(String nickname, int indexCard)
+    public void chooseSecretObjectiveCard(String nickname, int indexCard, Correlation correlation)
             throws WrongGamePhaseException, NoTurnException, NoNameException, RemoteException {
-        // set the secret objective card for the player. indexCard is the position of
-        // the card in the list of secret objective cards to choose
-        // it can be 0 or 1: the input of client verify this.
-        Controller.getInstance().chooseObjectiveCard(nickname, indexCard);
-        // check if all players have chosen their secret objective card
-        boolean allWithSecretObjectiveCardChosen = Controller.getInstance().areAllSecretObjectiveCardChosen();
-        // broadcast the information of Common and Hidden hands
-        // if all players have chosen their secret objective card.
-        NetworkHandler.getInstance().sendingHandsAndWhenSecretObjectiveCardsCompleteStartGameFlowBroadcast(nickname,
-                allWithSecretObjectiveCardChosen);
+        clientSeen(nickname);
+        long start = System.nanoTime();
+        CommandEvent event = CommandEvent.start();
+        CommandTrace trace = CommandTrace.begin(correlation, start);
+        try {
+            // set the secret objective card for the player. indexCard is the position of
+            // the card in the list of secret objective cards to choose
+            // it can be 0 or 1: the input of client verify this.
+            Controller.getInstance().chooseObjectiveCard(nickname, indexCard);
+            // check if all players have chosen their secret objective card
+            boolean allWithSecretObjectiveCardChosen = Controller.getInstance().areAllSecretObjectiveCardChosen();
+            // broadcast the information of Common and Hidden hands
+            // if all players have chosen their secret objective card.
+            NetworkHandler.getInstance().sendingHandsAndWhenSecretObjectiveCardsCompleteStartGameFlowBroadcast(nickname,
+                    allWithSecretObjectiveCardChosen);
+        } finally {
+            CommandMetrics.getInstance().record(CommandMetrics.Command.CHOOSE_OBJECTIVE_CARD,
+                    transport, start);
+            int size = received(nickname, "chooseSecretObjectiveCard", nickname, indexCard, correlation);
+            event.finish(Controller.getInstance().getGameId(), nickname, "chooseSecretObjectiveCard",
+                    transport.getName(), size);
+            sendTimings(nickname, trace, "chooseSecretObjectiveCard");
+        }
     }
 
     /**
@@ -306,6 +557,8 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * @param position  The position where the card is to be placed.
      * @param side      The side chosen by the player. True for one side, false for
      *                  the other.
+     * @param correlation The correlation id of the command, when it is traced,
+     *                    or null.
      * @throws WrongGamePhaseException     If the game is not in the correct phase
      *                                     for this action.
      * @throws NoTurnException             If it's not the turn of the player who is
@@ -318,22 +571,34 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      *                                     position.
      */
     @Override
-    public void placeCard(String nickname, int indexHand, Point position, boolean side)
+    public void placeCard(String nickname, int indexHand, Point position, boolean side,
+            Correlation correlation)
             throws WrongGamePhaseException, NoTurnException,
             NotEnoughResourcesException, NoNameException, CardPositionException, RemoteException {
+        clientSeen(nickname);
+        long start = System.nanoTime();
+        CommandEvent event = CommandEvent.start();
+        CommandTrace trace = CommandTrace.begin(correlation, start);
+        try {
+            // The player places the card, returns the id of the placed card. Throws an
+            // exception if the card cannot be placed,
+            // or if the player does not have enough resources, or if it's not the player's
+            // turn, or if the game is not in the correct phase.
+            int cardId = Controller.getInstance().placeCard(nickname, indexHand, position, side);
+            // Broadcast the placed card information
+            NetworkHandler.getInstance().sendPlacedCardBroadcast(nickname, cardId, position, side);
 
-        // The player places the card, returns the id of the placed card. Throws an
-        // exception if the card cannot be placed,
-        // or if the player does not have enough resources, or if it's not the player's
-        // turn, or if the game is not in the correct phase.
-        int cardId = Controller.getInstance().placeCard(nickname, indexHand, position, side);
-        // Broadcast the placed card information
-        NetworkHandler.getInstance().sendPlacedCardBroadcast(nickname, cardId, position, side);
-
-        // Check if the game has ended
-        if (Controller.getInstance().isEndGame()) {
-            // Broadcast the end game information
-            NetworkHandler.getInstance().sendEndGameBroadcast();
+            // Check if the game has ended
+            if (Controller.getInstance().isEndGame()) {
+                // Broadcast the end game information
+                NetworkHandler.getInstance().sendEndGameBroadcast();
+            }
+        } finally {
+            CommandMetrics.getInstance().record(CommandMetrics.Command.PLACE_CARD, transport,
+                    start);
+            int size = received(nickname, "placeCard", nickname, indexHand, position, side, correlation);
+            event.finish(Controller.getInstance().getGameId(), nickname, "placeCard", transport.getName(), size);
+            sendTimings(nickname, trace, "placeCard");
         }
     }
 
@@ -349,6 +614,8 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * @param gold          A boolean indicating whether the card is a gold card.
      * @param onTableOrDeck An integer indicating whether the card is on the table
      *                      or deck.
+     * @param correlation   The correlation id of the command, when it is traced,
+     *                      or null.
      * @return The id of the drawn card.
      * @throws WrongGamePhaseException If the game is not in the correct phase for
      *                                 this action.
@@ -358,29 +625,93 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      *                                 exist.
      */
     @Override
-    public Integer[] drawCard(String nickname, boolean gold, int onTableOrDeck)
+    public Integer[] drawCard(String nickname, boolean gold, int onTableOrDeck, Correlation correlation)
             throws WrongGamePhaseException, NoTurnException, NoNameException, CardPositionException, RemoteException {
-        // The player draws the card, returns the id of the drawn card. Throws an
-        // exception if the card cannot be drawn,
-        // or if it's not the player's turn, or if the game is not in the correct phase.
-        Controller.getInstance().drawCard(nickname, gold, onTableOrDeck);
-        // Get the id of the new card on the table
-        Integer newCardId = Controller.getInstance().newCardOnTable(gold, onTableOrDeck);
-        // Get the head of the deck, the new card is drawn from. It is used to update
-        // the head of the deck on the client side.
-        Kingdom headDeck = Controller.getInstance().getHeadDeck(gold);
+        clientSeen(nickname);
+        long start = System.nanoTime();
+        CommandEvent event = CommandEvent.start();
+        CommandTrace trace = CommandTrace.begin(correlation, start);
+        try {
+            // The player draws the card, returns the id of the drawn card. Throws an
+            // exception if the card cannot be drawn,
+            // or if it's not the player's turn, or if the game is not in the correct phase.
+            Controller.getInstance().drawCard(nickname, gold, onTableOrDeck);
+            // Get the id of the new card on the table
+            Integer newCardId = Controller.getInstance().newCardOnTable(gold, onTableOrDeck);
+            // Get the head of the deck, the new card is drawn from. It is used to update
+            // the head of the deck on the client side.
+            Kingdom headDeck = Controller.getInstance().getHeadDeck(gold);
 
-        // Broadcast the drawn card information
-        NetworkHandler.getInstance().sendDrawnCardBroadcast(nickname, newCardId, headDeck, gold, onTableOrDeck);
+            // Broadcast the drawn card information
+            NetworkHandler.getInstance().sendDrawnCardBroadcast(nickname, newCardId, headDeck, gold, onTableOrDeck);
 
-        // Check if the game has ended
-        if (Controller.getInstance().isEndGame()) {
-            // Broadcast the end game information
-            NetworkHandler.getInstance().sendEndGameBroadcast();
+            // Check if the game has ended
+            if (Controller.getInstance().isEndGame()) {
+                // Broadcast the end game information
+                NetworkHandler.getInstance().sendEndGameBroadcast();
+            }
+            // Return the id of the drawn card, used to update the client side.
+            // It is unicast call. Other players are not able to see the drawn card.
+            return Controller.getInstance().getHand(nickname);
+        } finally {
+            CommandMetrics.getInstance().record(CommandMetrics.Command.DRAW_CARD, transport,
+                    start);
+            int size = received(nickname, "drawCard", nickname, gold, onTableOrDeck, correlation);
+            event.finish(Controller.getInstance().getGameId(), nickname, "drawCard", transport.getName(), size);
+            sendTimings(nickname, trace, "drawCard");
+        }
+    }
+
+    /**
+     * This method is used to count a call received from a client in the traffic
+     * metrics. The call is counted in the connection of the client only if a
+     * client is logged in with the nickname: the other calls, such as the refused
+     * logins or the ones naming a player that does not exist, share the
+     * connection "unidentified", so they cannot add a counter each.
+     *
+     * @param nickname  The nickname of the client, or null if it is not known.
+     * @param type      The name of the method called.
+     * @param arguments The arguments of the call.
+     * @return The size of the call, 0 if the size of the RMI calls is not
+     *         measured.
+     */
+    private int received(String nickname, String type, Object... arguments) {
+        TrafficMetrics metrics = TrafficMetrics.getInstance();
+        int size = metrics.sizeOf(arguments);
+        TrafficCounter connection = nickname != null && connections.containsKey(nickname)
+                ? metrics.findConnection(transport, nickname)
+                : null;
+        if (connection == null) {
+            connection = metrics.openConnection(transport, UNIDENTIFIED);
+        }
+        metrics.received(transport, Controller.getInstance().getGameId(), connection, type, size);
+        return size;
+    }
+
+    /**
+     * This method is used to send the timings of a traced command back to the
+     * player who sent it, after its broadcasts. The RMI runtime does not tell when
+     * a call arrived, so the time it waited in the server is not measured.
+     *
+     * @param nickname The nickname of the player who sent the command.
+     * @param trace    The trace of the command, or null if it is not traced.
+     * @param command  The name of the command.
+     */
+    private void sendTimings(String nickname, CommandTrace trace, String command) {
+        if (trace == null) {
+            return;
+        }
+        RoundTrip roundTrip = trace.end(command);
+        RMIClientInterface connection = connections.get(nickname);
+        if (connection != null) {
+            callbacks.submit(nickname, () -> {
+                try {
+                    connection.commandTimed(roundTrip);
+                } catch (RemoteException e) {
+                    clientLost(nickname);
+                }
+            });
         }
-        // Return the id of the drawn card, used to update the client side.
-        // It is unicast call. Other players are not able to see the drawn card.
-        return Controller.getInstance().getHand(nickname);
     }
 
     /**
@@ -398,15 +729,18 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
     @Override
     public void refreshUsers() {
         HashMap<String, Color> playersAndPins = Controller.getInstance().getPlayersAndPins();
-        for (RMIClientInterface connection : connections.values()) {
-            // send the updated user list to the client
-            new Thread(() -> {
-                try {
-                    connection.refreshUsers(playersAndPins);
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-            }).start();
+        synchronized (broadcasts) {
+            for (String nickname : connections.keySet()) {
+                RMIClientInterface connection = connections.get(nickname);
+                // send the updated user list to the client
+                callbacks.submit(nickname, () -> {
+                    try {
+                        connection.refreshUsers(playersAndPins);
+                    } catch (RemoteException e) {
+                        clientLost(nickname);
+                    }
+                });
+            }
         }
     }
 
@@ -433,65 +767,52 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
         Kingdom goldCardOnDeck = Controller.getInstance().getHeadDeck(true);
         Kingdom resourceCardOnDeck = Controller.getInstance().getHeadDeck(false);
 
-        for (String nicknameRefresh : connections.keySet()) {
-            new Thread(() -> {
-                try {
-                    // send the resource cards and gold card to the client
-                    connections.get(nicknameRefresh).sendInfoOnTable(resourceCards, goldCard, resourceCardOnDeck,
-                            goldCardOnDeck);
-                    // send the starting card to the client, based on the player's nickname. It is
-                    // unicast method call.
-                    connections.get(nicknameRefresh)
-                            .showStartingCard(Controller.getInstance().getStartingCard(nicknameRefresh));
-
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                } catch (NoNameException e) {
-                    System.out.println("NoNameException. Debugging error, this error should never occur");
-                }
-            }).start();
-        }
-    }
+        synchronized (broadcasts) {
+            for (String nicknameRefresh : connections.keySet()) {
+                callbacks.submit(nicknameRefresh, () -> {
+                    try {
+                        // send the resource cards and gold card to the client
+                        connections.get(nicknameRefresh).sendInfoOnTable(resourceCards, goldCard, resourceCardOnDeck,
+                                goldCardOnDeck);
+                        // send the starting card to the client, based on the player's nickname. It is
+                        // unicast method call.
+                        connections.get(nicknameRefresh)
+                                .showStartingCard(Controller.getInstance().getStartingCard(nicknameRefresh));
 
-    @Override
-    public ArrayList<String> fetchReceivers(String message) {
-        ArrayList<String> receivers = new ArrayList<>();
-        for (String nickname : connections.keySet()) {
-            // see how connections work. It is a map with the address of the client as key
-            // and the ClientHandler as value.
-            // client handler has the nickname of the client.
-            if (message.toLowerCase().contains("@" + nickname.toLowerCase())) {
-                receivers.add(nickname.toLowerCase());// to avoid mistake for capslock
+                    } catch (RemoteException e) {
+                        clientLost(nicknameRefresh);
+                    } catch (NoNameException e) {
+                        Log.error("NoNameException. Debugging error, this error should never occur");
+                    }
+                });
             }
         }
-        return receivers;
     }
 
     /**
-     * It sends a message to all the clients, if they are tagged in the message like
-     * in this format "@player1 hi!",
-     * the message will be sent only to the player with "player1" nickname.
-     * Nickname are searched from the connection so all the given fake nicknames
-     * won't be sent
-     * and from other connections will be sent from that connection.
+     * It sends a message to the clients it is for, found by the
+     * {@link ChatRouter}: to the players tagged in the
+     * message like in this format "@player1 hi!" and to the sender, or to all the
+     * clients if no player is tagged.
      *
-     * @param sender  nicknames of the sender
-     * @param message message to be sent
+     * @param sender    nicknames of the sender
+     * @param message   message to be sent
+     * @param receivers nicknames of the receivers, empty if the message is for all the players
      */
-    public void sendingChatMessage(String sender, String message, ArrayList<String> receivers) {
-        for (String nickname : connections.keySet()) {
-            // receivers is empty means that the message is for all the players. Otherwise,
-            // is a single message to a specific client.
-            if (receivers.contains(nickname.toLowerCase()) || nickname.equalsIgnoreCase(sender)
-                    || receivers.isEmpty()) {
-                new Thread(() -> {
-                    try {
-                        connections.get(nickname).receiveChatMessage(sender, message, receivers.isEmpty());
-                    } catch (RemoteException e) {
-                        connections.remove(nickname);
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                    }
-                }).start();
+    public void sendingChatMessage(String sender, String message, Set<String> receivers) {
+        synchronized (broadcasts) {
+            for (String nickname : connections.keySet()) {
+                // receivers is empty means that the message is for all the players. Otherwise,
+                // is a single message to a specific client.
+                if (receivers.isEmpty() || receivers.contains(nickname)) {
+                    callbacks.submit(nickname, () -> {
+                        try {
+                            connections.get(nickname).receiveChatMessage(sender, message, receivers.isEmpty());
+                        } catch (RemoteException e) {
+                            clientLost(nickname);
+                        }
+                    });
+                }
             }
         }
     }
@@ -507,27 +828,33 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      */
     @Override
     public void finalizingNumberOfPlayers() {
-        for (String nickname : connections.keySet()) {
-            new Thread(() -> {
-                if (Controller.getInstance().isAdmitted(nickname)) {
-                    try {
-                        connections.get(nickname).stopWaiting();
-                    } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                    }
-                } else {
-                    try {
-                        connections.get(nickname).disconnect();
-                    } catch (RemoteException e) {
-                        System.out.println("Cannot notify the client to not play. The client is already disconnected.");
+        synchronized (broadcasts) {
+            for (String nickname : connections.keySet()) {
+                callbacks.submit(nickname, () -> {
+                    if (Controller.getInstance().isAdmitted(nickname)) {
+                        try {
+                            connections.get(nickname).stopWaiting();
+                        } catch (RemoteException e) {
+                            clientLost(nickname);
+                        }
+                    } else {
+                        try {
+                            connections.get(nickname).disconnect();
+                        } catch (RemoteException e) {
+                            Log.warn("Cannot notify the client to not play. The client is already disconnected.");
+                        }
+                        connections.remove(nickname);
+                        ChatRouter.getInstance().leave(nickname);
+                        TrafficMetrics.getInstance().closeConnection(transport, nickname);
+                        callbacks.remove(nickname);
+                        stopHeartbeat(nickname);
                     }
-                    connections.remove(nickname);
-                }
-            }).start();
+                });
 
+            }
         }
-        // start connection
-        new Thread(this::startClientConnectionCheck).start();
+        // start checking the connections
+        startClientConnectionCheck();
     }
 
     /**
@@ -551,51 +878,58 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
     @Override
     public void sendingHandsAndWhenSecretObjectiveCardsCompleteStartGameFlow(String nickname,
             boolean allWithSecretObjectiveCardChosen) {
-        for (String nicknameRefresh : connections.keySet()) {
-            // if is the connection of the player, we send the secret cards
-            if (nickname.equals(nicknameRefresh)) {
-                new Thread(() -> {
-                    try {
-                        // Send the player's hand to the client. It is an unicast call, only the player
-                        // can see their hand.
-                        connections.get(nicknameRefresh).showHand(nickname, Controller.getInstance().getHand(nickname));
-                    } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                    } catch (NoNameException e) {
-                        System.out.println("NoNameException. Debugging error, this error should never occur");
-                    }
-                }).start();
-            } else {
-                new Thread(() -> {
-                    try {
-                        // Send the hidden hand of the player to all other clients.
-                        // It is a broadcast call, all other players can see the hidden hand of the
-                        // player.
-                        connections.get(nicknameRefresh).showHiddenHand(nickname,
-                                Controller.getInstance().getHiddenHand(nickname));
-                    } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                    } catch (NoNameException e) {
-                        System.out.println("NoNameException. Debugging error, this error should never occur");
-                    }
-                }).start();
-            }
-            // If all players have chosen their secret objective card, broadcast the game
-            // start signal
-            if (allWithSecretObjectiveCardChosen) {
-                new Thread(() -> {
-                    try {
-                        // Send the game start signal to the client. It is a broadcast call, all players
-                        // can see the game start signal.
-                        // The game start signal includes the information of the first player.
-                        connections.get(nicknameRefresh)
-                                .getIsFirstAndStartGame(Controller.getInstance().getFirstPlayer());
-                    } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                    }
-                }).start();
-            } else {
-                NetworkHandler.getInstance().notifyTurnBroadcast();
+        // the arguments are the same for every client, so they are built only once.
+        Integer[] hand;
+        Pair<Kingdom, Boolean>[] hiddenHand;
+        try {
+            hand = Controller.getInstance().getHand(nickname);
+            hiddenHand = Controller.getInstance().getHiddenHand(nickname);
+        } catch (NoNameException e) {
+            Log.error("NoNameException. Debugging error, this error should never occur");
+            return;
+        }
+        synchronized (broadcasts) {
+            String firstPlayer = allWithSecretObjectiveCardChosen ? Controller.getInstance().getFirstPlayer() : null;
+            for (String nicknameRefresh : connections.keySet()) {
+                // if is the connection of the player, we send the secret cards
+                if (nickname.equals(nicknameRefresh)) {
+                    callbacks.submit(nicknameRefresh, () -> {
+                        try {
+                            // Send the player's hand to the client. It is an unicast call, only the player
+                            // can see their hand.
+                            connections.get(nicknameRefresh).showHand(nickname, hand);
+                        } catch (RemoteException e) {
+                            clientLost(nicknameRefresh);
+                        }
+                    });
+                } else {
+                    callbacks.submit(nicknameRefresh, () -> {
+                        try {
+                            // Send the hidden hand of the player to all other clients.
+                            // It is a broadcast call, all other players can see the hidden hand of the
+                            // player.
+                            connections.get(nicknameRefresh).showHiddenHand(nickname, hiddenHand);
+                        } catch (RemoteException e) {
+                            clientLost(nicknameRefresh);
+                        }
+                    });
+                }
+                // If all players have chosen their secret objective card, broadcast the game
+                // start signal
+                if (allWithSecretObjectiveCardChosen) {
+                    callbacks.submit(nicknameRefresh, () -> {
+                        try {
+                            // Send the game start signal to the client. It is a broadcast call, all players
+                            // can see the game start signal.
+                            // The game start signal includes the information of the first player.
+                            connections.get(nicknameRefresh).getIsFirstAndStartGame(firstPlayer);
+                        } catch (RemoteException e) {
+                            clientLost(nicknameRefresh);
+                        }
+                    });
+                } else {
+                    NetworkHandler.getInstance().notifyTurnBroadcast();
+                }
             }
         }
     }
@@ -620,53 +954,64 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
     public void sendingPlacedRootCardAndWhenCompleteObjectiveCards(String nickname, boolean side, int cardId,
             boolean allWithRootCardPlaced) {
         // Get the player's resources and points from nickname, so it is the same
-        // information for all players.
-        for (String nicknameRefresh : connections.keySet()) {
-            new Thread(() -> {
-                try {
-                    // Broadcast the information of the side of Starting Card as a normal PlacedCard
-                    // Turn is always zero since starting card is the first card to be positioned.
-                    connections.get(nicknameRefresh).placeCard(nickname, cardId, new Point(0, 0), side, 0,
-                            Controller.getInstance().getPlayerResources(nickname),
-                            Controller.getInstance().getPlayerPoints(nickname));
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                } catch (NoNameException e) {
-                    System.out.println("NoNameException. Debugging error, this error should never occur");
-                }
-
-                try {
-                    // Refresh the turn information
-                    connections.get(nicknameRefresh).refreshTurnInfo(Controller.getInstance().getCurrentPlayer(),
-                            Controller.getInstance().getGameState());
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-            }).start();
-
-            // If all players have placed their root card, broadcast the common objective
-            // cards and the secret objective cards to choose
-            if (allWithRootCardPlaced) {
-                new Thread(() -> {
+        // information for all players: it is read once, before the fan-out.
+        HashMap<Sign, Integer> resources;
+        int points;
+        try {
+            resources = new HashMap<>(Controller.getInstance().getPlayerResources(nickname));
+            points = Controller.getInstance().getPlayerPoints(nickname);
+        } catch (NoNameException e) {
+            Log.error("NoNameException. Debugging error, this error should never occur");
+            return;
+        }
+        synchronized (broadcasts) {
+            String currentPlayer = Controller.getInstance().getCurrentPlayer();
+            GameState gameState = Controller.getInstance().getGameState();
+            Integer[] commonObjectiveCards = allWithRootCardPlaced
+                    ? Controller.getInstance().getCommonObjectiveCards()
+                    : null;
+            for (String nicknameRefresh : connections.keySet()) {
+                callbacks.submit(nicknameRefresh, () -> {
                     try {
-                        // Broadcast the common objective cards to all clients
-                        connections.get(nicknameRefresh)
-                                .sendCommonObjectiveCards(Controller.getInstance().getCommonObjectiveCards());
+                        // Broadcast the information of the side of Starting Card as a normal PlacedCard
+                        // Turn is always zero since starting card is the first card to be positioned.
+                        connections.get(nicknameRefresh).placeCard(nickname, cardId, new Point(0, 0), side, 0,
+                                resources, points);
                     } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
+                        clientLost(nicknameRefresh);
                     }
+
                     try {
-                        // Broadcast the secret objective cards to choose to the player
-                        try {
-                            connections.get(nicknameRefresh).sendSecretObjectiveCardsToChoose(
-                                    Controller.getInstance().getSecretObjectiveCardsToChoose(nicknameRefresh));
-                        } catch (NoNameException e) {
-                            System.out.println("NoNameException. Debugging error, this error should never occur");
-                        }
+                        // Refresh the turn information
+                        connections.get(nicknameRefresh).refreshTurnInfo(currentPlayer, gameState);
                     } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
+                        clientLost(nicknameRefresh);
                     }
-                }).start();
+                });
+
+                // If all players have placed their root card, broadcast the common objective
+                // cards and the secret objective cards to choose
+                if (allWithRootCardPlaced) {
+                    callbacks.submit(nicknameRefresh, () -> {
+                        try {
+                            // Broadcast the common objective cards to all clients
+                            connections.get(nicknameRefresh).sendCommonObjectiveCards(commonObjectiveCards);
+                        } catch (RemoteException e) {
+                            clientLost(nicknameRefresh);
+                        }
+                        try {
+                            // Broadcast the secret objective cards to choose to the player
+                            try {
+                                connections.get(nicknameRefresh).sendSecretObjectiveCardsToChoose(
+                                        Controller.getInstance().getSecretObjectiveCardsToChoose(nicknameRefresh));
+                            } catch (NoNameException e) {
+                                Log.error("NoNameException. Debugging error, this error should never occur");
+                            }
+                        } catch (RemoteException e) {
+                            clientLost(nicknameRefresh);
+                        }
+                    });
+                }
             }
         }
     }
@@ -678,7 +1023,8 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * card.
      * It is called when a player draws a card successfully.
      * It broadcasts the information of the new card on the table and the head of
-     * the deck.
+     * the deck, together with the hidden hand of the player and the next turn, in
+     * a single call.
      *
      * @param nickname      The nickname of the player who has drawn the card.
      * @param newCardId     The id of the new card on the table.
@@ -689,43 +1035,35 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      */
     @Override
     public void sendDrawnCard(String nickname, Integer newCardId, Kingdom headDeck, boolean gold, int onTableOrDeck) {
-        for (String nicknameRefresh : connections.keySet()) {
-            // if is not the player who has drawn the card, send the hidden hand of the
-            // player.
-            if (!nickname.equals(nicknameRefresh)) {
-                new Thread(() -> {
+        // the arguments are the same for every client, so they are built only once.
+        Pair<Kingdom, Boolean>[] hiddenHand;
+        try {
+            hiddenHand = Controller.getInstance().getHiddenHand(nickname);
+        } catch (NoNameException e) {
+            Log.error("NoNameException. This error should never occur. Debugging purpose only");
+            return;
+        }
+        synchronized (broadcasts) {
+            String currentPlayer = Controller.getInstance().getCurrentPlayer();
+            GameState gameState = Controller.getInstance().getGameState();
+            // the player who has drawn the card receives the new hand as the return value
+            // of drawCard, the others receive its hidden hand.
+            TurnChange forPlayer = new TurnChange(nickname, newCardId, gold, onTableOrDeck, headDeck, null,
+                    currentPlayer, gameState);
+            TurnChange forOthers = new TurnChange(nickname, newCardId, gold, onTableOrDeck, headDeck, hiddenHand,
+                    currentPlayer, gameState);
+            for (String nicknameRefresh : connections.keySet()) {
+                TurnChange delta = nickname.equals(nicknameRefresh) ? forPlayer : forOthers;
+                callbacks.submit(nicknameRefresh, () -> {
                     try {
-                        connections.get(nicknameRefresh).showHiddenHand(nickname,
-                                Controller.getInstance().getHiddenHand(nickname));
-                    } catch (NoNameException e) {
-                        System.out.println("NoNameException. This error should never occur. Debugging purpose only");
+                        // send the new table, the hidden hand and the turn information in a single
+                        // call.
+                        connections.get(nicknameRefresh).applyTurnDelta(delta);
                     } catch (RemoteException e) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
+                        clientLost(nicknameRefresh);
                     }
-                }).start();
+                });
             }
-
-            // send the information of the drawn card to the client. Broadcast call, all
-            // players can see the drawn card.
-            new Thread(() -> {
-                try {
-                    // send the information of the drawn card to the client. It is a card on the
-                    // table and the new on deck.
-                    // if a player draws a onDeck card, the headDeckParameter is -1, and a client
-                    // doesn't update that information.
-                    connections.get(nicknameRefresh).moveCard(newCardId, headDeck, gold, onTableOrDeck);
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-                try {
-                    // send the updated turn information to the client. It is a broadcast call, all
-                    // players can see the updated turn information.
-                    connections.get(nicknameRefresh).refreshTurnInfo(Controller.getInstance().getCurrentPlayer(),
-                            Controller.getInstance().getGameState());
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-            }).start();
         }
     }
 
@@ -735,8 +1073,8 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      * This method is responsible for broadcasting the information of the placed
      * card.
      * It is called when a player places a card successfully.
-     * It broadcasts the information of the placed card, the player's resources and
-     * points.
+     * It broadcasts the information of the placed card, the resources changed by
+     * the card, the points gained and the next turn, in a single call.
      *
      * @param nickname The nickname of the player who has placed the card.
      * @param cardId   The id of the card that has been placed.
@@ -746,30 +1084,21 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      */
     @Override
     public void sendPlacedCard(String nickname, int cardId, Point position, boolean side) {
-        for (String nicknameRefresh : connections.keySet()) {
-            new Thread(() -> {
-                try {
-                    // Broadcast the placed card information, the player's resources and points
-                    // get the turn of position, the player's resources and points from nickname
-                    connections.get(nicknameRefresh).placeCard(nickname, cardId, position, side,
-                            Controller.getInstance().getTurn(),
-                            Controller.getInstance().getPlayerResources(nickname),
-                            Controller.getInstance().getPlayerPoints(nickname));
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                } catch (NoNameException e) {
-                    System.out.println("NonameException. Debugging purpose only");
-                }
-
-                try {
-                    // Refresh the turn information
-                    connections.get(nicknameRefresh).refreshTurnInfo(Controller.getInstance().getCurrentPlayer(),
-                            Controller.getInstance().getGameState());
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-
-            }).start();
+        synchronized (broadcasts) {
+            // the delta is the same for every client, so it is built only once.
+            TurnChange delta = new TurnChange(nickname, cardId, position, side, Controller.getInstance().getTurn(),
+                    new HashMap<>(Controller.getInstance().getLastChangedResources()),
+                    Controller.getInstance().getLastPointsDelta(), Controller.getInstance().getCurrentPlayer(),
+                    Controller.getInstance().getGameState());
+            for (String nicknameRefresh : connections.keySet()) {
+                callbacks.submit(nicknameRefresh, () -> {
+                    try {
+                        connections.get(nicknameRefresh).applyTurnDelta(delta);
+                    } catch (RemoteException e) {
+                        clientLost(nicknameRefresh);
+                    }
+                });
+            }
         }
     }
 
@@ -786,18 +1115,21 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
     @Override
     public void sendEndGame() {
         HashMap<String, Integer> extraPoints = Controller.getInstance().getExtraPoints();
-        ArrayList<Player> ranking = Controller.getInstance().getRanking();
+        ArrayList<RankingEntry> ranking = Controller.getInstance().getRanking();
+        gameEnded = true;
 
-        for (String playerConnection : connections.keySet()) {
-            new Thread(() -> {
-                try {
-                    // send the end game information to the client. It sends the extra points and
-                    // the final ranking.
-                    connections.get(playerConnection).showEndGame(extraPoints, ranking);
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-            }).start();
+        synchronized (broadcasts) {
+            for (String playerConnection : connections.keySet()) {
+                callbacks.submit(playerConnection, () -> {
+                    try {
+                        // send the end game information to the client. It sends the extra points and
+                        // the final ranking.
+                        connections.get(playerConnection).showEndGame(extraPoints, ranking);
+                    } catch (RemoteException e) {
+                        clientLost(playerConnection);
+                    }
+                });
+            }
         }
     }
 
@@ -812,13 +1144,69 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
             try {
                 connections.get(nickname).stopGaming();
             } catch (RemoteException e) {
-                System.out.println("RMI : Cannot communicate with " + nickname + " Already disconnected");
+                Log.warn("RMI : Cannot communicate with {} Already disconnected", nickname);
+            }
+        }
+        for (String nickname : heartbeats.keySet()) {
+            stopHeartbeat(nickname);
+        }
+        // discard the callbacks not yet sent, and reset the connections
+        callbacks.clear();
+        gameEnded = false;
+        for (String nickname : connections.keySet()) {
+            TrafficMetrics.getInstance().closeConnection(transport, nickname);
+        }
+        connections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Implements the stopAccepting method of the NetworkPlug interface.
+     * The server is unbound from the registry, so no new client can find it, and
+     * unexported once the calls being executed have finished, so no new command
+     * is received.
+     *
+     * @param timeoutMillis The longest time to wait for the calls, in
+     *                      milliseconds.
+     */
+    @Override
+    public void stopAccepting(long timeoutMillis) {
+        if (registry == null) {
+            return;
+        }
+        try {
+            registry.unbind("Loggable");
+        } catch (RemoteException | NotBoundException e) {
+            Log.warn("RMI: cannot unbind the server: {}", e.getMessage());
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            // the server is not unexported while a call is being executed
+            while (!UnicastRemoteObject.unexportObject(this, false)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    Log.warn("RMI: some calls are still running, the game is saved without them.");
+                    UnicastRemoteObject.unexportObject(this, true);
+                    break;
+                }
+                Thread.sleep(50);
             }
+            UnicastRemoteObject.unexportObject(registry, true);
+        } catch (NoSuchObjectException e) {
+            Log.warn("RMI: the server is already unexported.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        scheduler.shutdownNow();
-        scheduler = Executors.newScheduledThreadPool(1);
-        // reset the connections
-        connections = new HashMap<>();
+        Log.info("RMI: no longer accepting connections and commands.");
+    }
+
+    /**
+     * Implements the awaitDisconnection method of the NetworkPlug interface.
+     * The clients are notified by {@link #disconnectAll()} synchronously, so
+     * there is nothing left to wait for.
+     *
+     * @param timeoutMillis The longest time to wait, in milliseconds.
+     */
+    @Override
+    public void awaitDisconnection(long timeoutMillis) {
     }
 
     /**
@@ -830,53 +1218,204 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      */
     @Override
     public void notifyTurn() {
-        for (String nickname : connections.keySet()) {
-            new Thread(() -> {
-                try {
-                    connections.get(nickname).refreshTurnInfo(Controller.getInstance().getCurrentPlayer(),
-                            Controller.getInstance().getGameState());
-                } catch (RemoteException e) {
-                    NetworkHandler.getInstance().disconnectBroadcast();
-                }
-            }).start();
+        synchronized (broadcasts) {
+            String currentPlayer = Controller.getInstance().getCurrentPlayer();
+            GameState gameState = Controller.getInstance().getGameState();
+            for (String nickname : connections.keySet()) {
+                callbacks.submit(nickname, () -> {
+                    try {
+                        connections.get(nickname).refreshTurnInfo(currentPlayer, gameState);
+                    } catch (RemoteException e) {
+                        clientLost(nickname);
+                    }
+                });
+            }
         }
     }
 
     /**
-     * This method is used to start the periodic check of client connections.
+     * This method is used to start checking if the clients are still connected to
+     * the server.
      *
-     * It creates a Runnable that calls the isClientConnected method and schedules
-     * it to run at a fixed rate.
-     * The Runnable is scheduled to run every 30 seconds.
+     * Every client is registered on the HeartbeatMonitor: it is pinged only when it
+     * has been silent for a whole heartbeat interval, and the pings of the clients
+     * run in parallel. Clients already checked are not registered again.
      */
     public void startClientConnectionCheck() {
-        final Runnable checker = new Runnable() {
-            public void run() {
-                isClientConnected();
-            }
-        };
-        scheduler.scheduleAtFixedRate(checker, 30, 30, TimeUnit.SECONDS);
+        for (String nickname : connections.keySet()) {
+            SessionManager.getInstance().arm(nickname);
+            startHeartbeat(nickname);
+        }
     }
 
     /**
-     * This method is used to check if the clients are still connected to the
-     * server.
+     * This method is used to start checking if a client is still connected to the
+     * server. A client already checked is not registered again.
      *
-     * It iterates over all the connections and calls the isConnected method on each
-     * client.
-     * If a RemoteException is thrown, it means that the client is not connected, so
-     * broadcasts a disconnect signal.
+     * @param nickname the nickname of the client
      */
-    public void isClientConnected() {
-        for (String nickname : connections.keySet()) {
+    private void startHeartbeat(String nickname) {
+        heartbeats.computeIfAbsent(nickname, name -> HeartbeatMonitor.getInstance().register("RMI " + name,
+                () -> pingClient(name),
+                () -> clientLost(name)));
+    }
+
+    /**
+     * This method is used to check if a client is still connected to the server.
+     *
+     * It calls the isConnected method on the client. If a RemoteException is thrown,
+     * it means that the client is not connected, so its connection is lost.
+     *
+     * @param nickname the nickname of the client
+     */
+    private void pingClient(String nickname) {
+        RMIClientInterface client = connections.get(nickname);
+        if (client == null) {
+            return;
+        }
+        try {
+            client.isConnected();
+            clientSeen(nickname);
+        } catch (RemoteException e) {
+            clientLost(nickname);
+        }
+    }
+
+    /**
+     * This method is used to handle the loss of the connection with a client.
+     * If the game has started, the client can come back with its session token
+     * during the grace period; otherwise, or when the grace period ends, all the
+     * clients are disconnected.
+     *
+     * Since the callbacks run in parallel, a callback to the old stub of a client
+     * can fail after the client has come back: when the grace period ends, the
+     * client is pinged once more before the game is ended. If it answers, it has
+     * missed the updates whose callbacks failed, so it receives the whole game as
+     * after a reconnection.
+     *
+     * @param nickname the nickname of the client
+     */
+    private void clientLost(String nickname) {
+        stopHeartbeat(nickname);
+        boolean waiting = SessionManager.getInstance().lost(nickname, () -> {
+            RMIClientInterface client = connections.get(nickname);
             try {
-                connections.get(nickname).isConnected();
+                if (client != null) {
+                    client.isConnected();
+                    GameMaster game = Controller.getInstance().getGameMaster();
+                    if (game != null) {
+                        Log.info("RMI: {} is still there, sending the game.", nickname);
+                        resync(nickname, client, game);
+                    }
+                    startHeartbeat(nickname);
+                    return;
+                }
             } catch (RemoteException e) {
-                NetworkHandler.getInstance().disconnectBroadcast();
+                // the client did not come back
             }
+            NetworkHandler.getInstance().disconnectBroadcast();
+        });
+        if (!waiting) {
+            // disconnect all the clients connected to the server RMI and Socket
+            NetworkHandler.getInstance().disconnectBroadcast();
         }
     }
 
+    /**
+     * This method is used when a client of the same JVM leaves the server, so its
+     * departure is handled at once instead of at the next heartbeat. Nothing
+     * happens if the client is not the one connected with the nickname, or if
+     * it is not a player of the lobby.
+     *
+     * Once the game has ended, the other clients may still be receiving its
+     * end, so the client is only forgotten, and the clients are disconnected
+     * when the last one leaves.
+     *
+     * @param nickname the nickname of the client
+     * @param client   the client leaving
+     */
+    protected void clientLeft(String nickname, RMIClientInterface client) {
+        RMIClientInterface connection = nickname == null ? null : connections.get(nickname);
+        // the stubs counting the calls compare as the clients they wrap
+        if (connection == null || !connection.equals(client) || !Controller.getInstance().isAdmitted(nickname)) {
+            return;
+        }
+        if (!gameEnded) {
+            clientLost(nickname);
+            return;
+        }
+        stopHeartbeat(nickname);
+        callbacks.remove(nickname);
+        boolean last;
+        // the last clients can leave together, but only one of them ends the game: a second end would reset
+        // the controller of the next game
+        synchronized (broadcasts) {
+            last = connections.remove(nickname) != null && connections.isEmpty();
+        }
+        TrafficMetrics.getInstance().closeConnection(transport, nickname);
+        if (last) {
+            NetworkHandler.getInstance().disconnectBroadcast();
+        }
+    }
+
+    /**
+     * This method is used to notify that a call has been received from a client.
+     *
+     * @param nickname the nickname of the client
+     */
+    private void clientSeen(String nickname) {
+        if (nickname == null) {
+            return;
+        }
+        HeartbeatMonitor.Peer peer = heartbeats.get(nickname);
+        if (peer != null) {
+            peer.touch();
+        }
+    }
+
+    /**
+     * This method is used to stop checking if a client is still connected.
+     *
+     * @param nickname the nickname of the client
+     */
+    private void stopHeartbeat(String nickname) {
+        HeartbeatMonitor.Peer peer = heartbeats.remove(nickname);
+        if (peer != null) {
+            peer.cancel();
+        }
+    }
+
+    /**
+     * Getter of the number of callbacks waiting to be sent to the clients.
+     *
+     * @return the sum of the depths of the queues of all the clients
+     */
+    public int getCallbackQueueDepth() {
+        return callbacks.getTotalQueueDepth();
+    }
+
+    /**
+     * Implements the getConnectionCount method of the NetworkPlug interface.
+     *
+     * @return the number of clients connected through RMI
+     */
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Implements the getQueueDepths method of the NetworkPlug interface: the
+     * messages waiting for each client are its callbacks not yet sent.
+     *
+     * @return a map from the nickname of each client to the number of its
+     *         callbacks not yet sent
+     */
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        return callbacks.getQueueDepths();
+    }
+
     /**
      * This method is used to know if a client is connected to the server.
      * The client will call this method to check if the connection is still active.
@@ -897,17 +1436,30 @@ public class ServerRMI implements RMIServerInterface, NetworkPlug {
      */
     @Override
     public void loadGame(GameMaster game) {
-        for (String nickname : connections.keySet()) {
-            new Thread(() -> {
+        synchronized (broadcasts) {
+            for (String nickname : connections.keySet()) {
+                RMIClientInterface client = connections.get(nickname);
+                if (client == null) {
+                    continue;
+                }
+                // every client receives the projection of the game built for its player, as it is now
+                ResumeSnapshot snapshot;
                 try {
-                    connections.get(nickname).loadSavedGame(game);
-                } catch (RemoteException e) {
-                    connections.remove(nickname);
-                    NetworkHandler.getInstance().disconnectBroadcast();
+                    snapshot = new ResumeSnapshot(game, nickname);
+                } catch (NoNameException e) {
+                    Log.error("NoNameException. Debugging error, this error should never occur");
+                    continue;
                 }
-            }).start();
+                callbacks.submit(nickname, () -> {
+                    try {
+                        client.loadSavedGame(snapshot);
+                    } catch (RemoteException e) {
+                        clientLost(nickname);
+                    }
+                });
+            }
         }
         //check after if clients are connected
-        new Thread(this::startClientConnectionCheck).start();
+        startClientConnectionCheck();
     }
 }
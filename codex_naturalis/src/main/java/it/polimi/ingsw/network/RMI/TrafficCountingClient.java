@@ -0,0 +1,85 @@
+package it.polimi.ingsw.network.RMI;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.TrafficCounter;
+import it.polimi.ingsw.monitoring.TrafficMetrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * The TrafficCountingClient counts the calls made by the server to the stub of a client, by method, in the
+ * {@link TrafficMetrics}.
+ *
+ * It wraps the stub in a proxy implementing {@link RMIClientInterface}, so every callback is counted, whichever
+ * method of the ServerRMI sends it. A call is counted once it has returned. Its size, and the time spent
+ * serializing it, are known only if the RMI calls are measured (see {@link TrafficMetrics#sizeOf}).
+ */
+class TrafficCountingClient implements InvocationHandler {
+    /**
+     * The stub of the client.
+     */
+    private final RMIClientInterface client;
+    /**
+     * The traffic of the connection of the client.
+     */
+    private final TrafficCounter traffic;
+    /**
+     * The transport of the client.
+     */
+    private final CommandMetrics.Transport transport;
+
+    /**
+     * Creates a new TrafficCountingClient.
+     *
+     * @param client    the stub of the client
+     * @param traffic   the traffic of the connection of the client
+     * @param transport the transport of the client
+     */
+    private TrafficCountingClient(RMIClientInterface client, TrafficCounter traffic,
+            CommandMetrics.Transport transport) {
+        this.client = client;
+        this.traffic = traffic;
+        this.transport = transport;
+    }
+
+    /**
+     * Wraps the stub of a client, so the calls made to it are counted.
+     *
+     * @param client    the stub of the client
+     * @param nickname  the nickname of the player, which names the connection
+     * @param transport the transport of the client
+     * @return the stub that counts the calls
+     */
+    static RMIClientInterface wrap(RMIClientInterface client, String nickname, CommandMetrics.Transport transport) {
+        TrafficCounter traffic = TrafficMetrics.getInstance().openConnection(transport, nickname);
+        return (RMIClientInterface) Proxy.newProxyInstance(RMIClientInterface.class.getClassLoader(),
+                new Class<?>[]{RMIClientInterface.class}, new TrafficCountingClient(client, traffic, transport));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(client, args);
+        }
+        TrafficMetrics metrics = TrafficMetrics.getInstance();
+        int bytes = 0;
+        if (args != null && metrics.isMeasuringRmiSizes()) {
+            long start = System.nanoTime();
+            bytes = metrics.sizeOf(args);
+            metrics.serialized(transport, method.getName(), System.nanoTime() - start);
+        }
+        Object result;
+        try {
+            result = method.invoke(client, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        metrics.sent(transport, Controller.getInstance().getGameId(), traffic, method.getName(),
+                bytes);
+        return result;
+    }
+}
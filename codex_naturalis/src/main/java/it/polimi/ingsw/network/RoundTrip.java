@@ -0,0 +1,145 @@
+package it.polimi.ingsw.network;
+
+import java.io.Serializable;
+
+/**
+ * The RoundTrip is the timing of a traced command, reported by the server to the client that sent it once the
+ * command has been handled and its answers have been handed to the transports.
+ *
+ * The server fills the time the command waited before being handled, the time spent by the game on it and the time
+ * spent handing its answers to the clients. The client adds the times it has seen on its own clock: when the first
+ * answer arrived and when the report arrived, so the whole round trip can be split between the server and the
+ * network.
+ */
+public class RoundTrip implements Serializable {
+    /**
+     * The correlation of the command.
+     */
+    private final Correlation correlation;
+    /**
+     * The type of the command.
+     */
+    private final String command;
+    /**
+     * The time between the command being received and being handled, in nanoseconds.
+     */
+    private final long queueNanos;
+    /**
+     * The time spent by the server on the command, without its broadcasts, in nanoseconds.
+     */
+    private final long processingNanos;
+    /**
+     * The time spent handing the answers to the transports, in nanoseconds.
+     */
+    private final long fanOutNanos;
+    /**
+     * The time the first answer arrived to the client, on its clock, 0 if not known.
+     */
+    private transient long firstAnswerNanos;
+    /**
+     * The time the report arrived to the client, on its clock.
+     */
+    private transient long receivedNanos;
+
+    /**
+     * Creates a new RoundTrip.
+     *
+     * @param correlation     the correlation of the command
+     * @param command         the type of the command
+     * @param queueNanos      the time between the command being received and being handled, in nanoseconds
+     * @param processingNanos the time spent by the server on the command, without its broadcasts, in nanoseconds
+     * @param fanOutNanos     the time spent handing the answers to the transports, in nanoseconds
+     */
+    public RoundTrip(Correlation correlation, String command, long queueNanos, long processingNanos,
+                     long fanOutNanos) {
+        this.correlation = correlation;
+        this.command = command;
+        this.queueNanos = queueNanos;
+        this.processingNanos = processingNanos;
+        this.fanOutNanos = fanOutNanos;
+    }
+
+    /**
+     * Notes the times seen by the client, when the report arrives.
+     *
+     * @param firstAnswerNanos the time the first answer arrived, 0 if not known
+     * @param receivedNanos    the time the report arrived
+     */
+    public void arrived(long firstAnswerNanos, long receivedNanos) {
+        this.firstAnswerNanos = firstAnswerNanos;
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Getter of the correlation of the command.
+     *
+     * @return the correlation
+     */
+    public Correlation getCorrelation() {
+        return correlation;
+    }
+
+    /**
+     * Getter of the type of the command.
+     *
+     * @return the type of the command
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Getter of the time the command waited on the server.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * Getter of the time spent by the server on the command.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getProcessingNanos() {
+        return processingNanos;
+    }
+
+    /**
+     * Getter of the time spent handing the answers to the transports.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getFanOutNanos() {
+        return fanOutNanos;
+    }
+
+    /**
+     * Getter of the whole round trip, from the command being sent to the report arriving.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return receivedNanos - correlation.getSentAtNanos();
+    }
+
+    /**
+     * Getter of the time the client waited for the first answer.
+     *
+     * @return the time, in nanoseconds, or -1 if no answer has been matched with the command
+     */
+    public long getFirstAnswerNanos() {
+        return firstAnswerNanos == 0 ? -1 : firstAnswerNanos - correlation.getSentAtNanos();
+    }
+
+    /**
+     * Getter of the time spent out of the server: on the network, in the queues of the transports and on the
+     * client.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getNetworkNanos() {
+        return getTotalNanos() - queueNanos - processingNanos - fanOutNanos;
+    }
+}
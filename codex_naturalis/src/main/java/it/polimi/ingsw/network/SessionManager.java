@@ -0,0 +1,268 @@
+package it.polimi.ingsw.network;
+
+import it.polimi.ingsw.monitoring.Log;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SessionManager keeps the sessions of the players, so that a client whose connection drops for a moment can
+ * come back to its game instead of ending it for everyone.
+ *
+ * Every player receives a session token at login. Once the game has started the session is armed: when the
+ * connection of an armed session is lost, the game is not ended at once, but after a grace period, and only if the
+ * client has not come back with its token in the meantime. Before the game starts, a lost connection still ends the
+ * game immediately, since there is nothing to resume.
+ *
+ * The session is shared by both transports. The grace period, in milliseconds, is given by the system property
+ * "codex.session.graceMillis" (60000 by default).
+ */
+public class SessionManager {
+    /**
+     * The instance of the manager.
+     */
+    private static SessionManager instance;
+
+    /**
+     * The grace period of a lost session, in milliseconds.
+     */
+    private final long graceMillis;
+    /**
+     * The timer of the grace periods.
+     */
+    private final HashedWheelTimer timer;
+    /**
+     * The generator of the tokens.
+     */
+    private final SecureRandom random = new SecureRandom();
+    /**
+     * The sessions, by token.
+     */
+    private final HashMap<String, Session> sessions = new HashMap<>();
+    /**
+     * The tokens, by nickname.
+     */
+    private final HashMap<String, String> tokens = new HashMap<>();
+
+    /**
+     * The session of a player.
+     */
+    private static class Session {
+        /**
+         * The nickname of the player.
+         */
+        private final String nickname;
+        /**
+         * True once the game of the player has started.
+         */
+        private boolean armed = false;
+        /**
+         * The end of the grace period, while the connection of the player is lost.
+         */
+        private HashedWheelTimer.Timeout grace;
+        /**
+         * The number of times the connection of the player has been lost, so a late timeout of an old grace
+         * period is ignored.
+         */
+        private int losses = 0;
+
+        /**
+         * Creates a new Session.
+         *
+         * @param nickname the nickname of the player
+         */
+        private Session(String nickname) {
+            this.nickname = nickname;
+        }
+    }
+
+    /**
+     * Creates a new SessionManager.
+     *
+     * @param graceMillis the grace period of a lost session, in milliseconds
+     */
+    public SessionManager(long graceMillis) {
+        this.graceMillis = graceMillis;
+        timer = new HashedWheelTimer("session-timer", Math.max(1, graceMillis / 100), TimeUnit.MILLISECONDS, 128);
+    }
+
+    /**
+     * Getter of the instance of the manager, created on the first call with the grace period given by the system
+     * property.
+     *
+     * @return the instance of the manager
+     */
+    public static synchronized SessionManager getInstance() {
+        if (instance == null) {
+            instance = new SessionManager(Long.getLong("codex.session.graceMillis", 60000));
+        }
+        return instance;
+    }
+
+    /**
+     * Discards the instance of the manager and its sessions, so the next call to {@link #getInstance()} reads the
+     * grace period again.
+     */
+    public static synchronized void reset() {
+        if (instance != null) {
+            instance.clear();
+            instance.timer.stop();
+            instance = null;
+        }
+    }
+
+    /**
+     * Getter of the grace period of a lost session.
+     *
+     * @return the grace period, in milliseconds
+     */
+    public long getGraceMillis() {
+        return graceMillis;
+    }
+
+    /**
+     * Opens the session of a player that has just logged in, replacing its old session if any.
+     *
+     * @param nickname the nickname of the player
+     * @return the token of the session
+     */
+    public synchronized String open(String nickname) {
+        close(nickname);
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        sessions.put(token, new Session(nickname));
+        tokens.put(nickname, token);
+        return token;
+    }
+
+    /**
+     * Arms the session of a player: from now on, a lost connection ends the game only after the grace period.
+     *
+     * @param nickname the nickname of the player
+     */
+    public synchronized void arm(String nickname) {
+        Session session = find(nickname);
+        if (session != null) {
+            session.armed = true;
+        }
+    }
+
+    /**
+     * Notifies that the connection of a player has been lost.
+     *
+     * If the session is armed, the grace period starts and onExpired is run when it ends, unless the player comes
+     * back first. If the grace period has already started, nothing happens: the connection can be reported as lost
+     * by many threads. If the session is not armed, the caller has to end the game at once.
+     *
+     * @param nickname  the nickname of the player
+     * @param onExpired the task run when the session expires, it can block
+     * @return true if the player can still come back, false if the game has to be ended now
+     */
+    public synchronized boolean lost(String nickname, Runnable onExpired) {
+        Session session = find(nickname);
+        if (session == null || !session.armed) {
+            return false;
+        }
+        if (session.grace == null) {
+            Log.info("Session: connection of {} lost, waiting {} ms for it to come back.", nickname, graceMillis);
+            int loss = ++session.losses;
+            session.grace = timer.schedule(() -> expire(session, loss, onExpired), graceMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Resumes the session of a token, ending its grace period.
+     *
+     * @param token the token given at login
+     * @return the nickname of the player, or null if the session does not exist or has expired
+     */
+    public synchronized String resume(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.grace != null) {
+            session.grace.cancel();
+            session.grace = null;
+            Log.info("Session: {} is back.", session.nickname);
+        }
+        return session.nickname;
+    }
+
+    /**
+     * Tells if the connection of a player is lost and the player can still come back.
+     *
+     * @param nickname the nickname of the player
+     * @return true if the session is in its grace period
+     */
+    public synchronized boolean isInGrace(String nickname) {
+        Session session = find(nickname);
+        return session != null && session.grace != null;
+    }
+
+    /**
+     * Closes all the sessions, when the game ends.
+     */
+    public synchronized void clear() {
+        for (Session session : sessions.values()) {
+            if (session.grace != null) {
+                session.grace.cancel();
+            }
+        }
+        sessions.clear();
+        tokens.clear();
+    }
+
+    /**
+     * Closes the session of a player.
+     *
+     * @param nickname the nickname of the player
+     */
+    private void close(String nickname) {
+        String token = tokens.remove(nickname);
+        if (token != null) {
+            Session session = sessions.remove(token);
+            if (session.grace != null) {
+                session.grace.cancel();
+            }
+        }
+    }
+
+    /**
+     * Finds the session of a player.
+     *
+     * @param nickname the nickname of the player
+     * @return the session, or null if the player has no session
+     */
+    private Session find(String nickname) {
+        String token = nickname == null ? null : tokens.get(nickname);
+        return token == null ? null : sessions.get(token);
+    }
+
+    /**
+     * Ends the grace period of a session: it runs on the thread of the timer, so the task that can block runs on a
+     * thread of its own.
+     *
+     * @param session   the expired session
+     * @param loss      the number of the loss of the connection that started the grace period
+     * @param onExpired the task run when the session expires
+     */
+    private void expire(Session session, int loss, Runnable onExpired) {
+        synchronized (this) {
+            if (session.grace == null || session.losses != loss) {
+                // the player has come back in the meantime
+                return;
+            }
+            session.grace = null;
+        }
+        Log.info("Session: {} did not come back in time.", session.nickname);
+        Thread thread = new Thread(onExpired, "session-expired-" + session.nickname);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
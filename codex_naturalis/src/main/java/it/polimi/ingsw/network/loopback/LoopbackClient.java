@@ -0,0 +1,73 @@
+package it.polimi.ingsw.network.loopback;
+
+import it.polimi.ingsw.controller.client.Controller;
+import it.polimi.ingsw.network.RMI.ClientRMI;
+
+import java.rmi.RemoteException;
+
+/**
+ * The LoopbackClient is the client side of the loopback transport: a {@link ClientRMI} that calls a
+ * {@link LoopbackServer} of the same JVM directly.
+ *
+ * The commands run on the thread of the caller, as the RMI calls do, so when a command returns the server has
+ * handled it, and its errors have been given to the controller. The updates of the server arrive on the threads of
+ * its callbacks.
+ */
+public class LoopbackClient extends ClientRMI {
+    /**
+     * The server of the client.
+     */
+    private final LoopbackServer server;
+    /**
+     * The nickname the client logged in with, null before the login.
+     */
+    private volatile String nickname;
+    /**
+     * True once the client has left the server.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new LoopbackClient. It is created by {@link LoopbackServer#connect(Controller)}.
+     *
+     * @param controller the controller of the client
+     * @param server     the server of the client
+     */
+    LoopbackClient(Controller controller, LoopbackServer server) {
+        super(controller, server);
+        this.server = server;
+    }
+
+    @Override
+    public void login(String name) {
+        nickname = name;
+        super.login(name);
+    }
+
+    /**
+     * This method is used by the server to check if the client is still connected: once the client has left, it
+     * fails as the call to a lost RMI client does.
+     *
+     * @throws RemoteException if the client has left the server
+     */
+    @Override
+    public void isConnected() throws RemoteException {
+        if (closed) {
+            throw new RemoteException("The client has left the server.");
+        }
+        super.isConnected();
+    }
+
+    /**
+     * This method is used to leave the server, which learns it at once.
+     */
+    @Override
+    public void leave() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        super.leave();
+        server.left(nickname, this);
+    }
+}
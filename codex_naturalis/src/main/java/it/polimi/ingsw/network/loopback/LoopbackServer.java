@@ -0,0 +1,84 @@
+package it.polimi.ingsw.network.loopback;
+
+import it.polimi.ingsw.controller.client.Controller;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.network.NetworkHandler;
+import it.polimi.ingsw.network.RMI.ServerRMI;
+
+/**
+ * The LoopbackServer is the server side of the loopback transport, which connects the clients and the server of the
+ * same JVM, with no socket and no RMI registry.
+ *
+ * It is a {@link ServerRMI} that is neither exported nor bound: its clients, the {@link LoopbackClient}s, call its
+ * methods directly, and it calls them back through the queues of callbacks of the RMI server, one per client, so
+ * every client receives its updates in order. Nothing is serialized: the arguments of the calls are passed as they
+ * are, and since the server builds them for every update, the clients only read them.
+ *
+ * It lets the end-to-end tests and the benchmarks play whole games in one JVM, without the cost of the network. Its
+ * commands and its traffic are counted under the "loopback" transport.
+ *
+ * By default the callbacks run on the pool of the RMI server, so the clients receive their updates at some point
+ * after the command. A server created with manual delivery keeps them queued until {@link #deliver()} runs them on
+ * the thread of the caller: a test can then send a command, deliver its updates and check them, step by step.
+ */
+public class LoopbackServer extends ServerRMI {
+    /**
+     * The name of the loopback server in the NetworkHandler.
+     */
+    public static final String NAME = "loopback";
+
+    /**
+     * Creates a new LoopbackServer and adds it to the NetworkHandler, so it receives the broadcasts of the game.
+     */
+    public LoopbackServer() {
+        this(false);
+    }
+
+    /**
+     * Creates a new LoopbackServer and adds it to the NetworkHandler, so it receives the broadcasts of the game.
+     *
+     * @param manualDelivery true if the updates wait for {@link #deliver()}, false if they are sent at once
+     */
+    public LoopbackServer(boolean manualDelivery) {
+        super(NAME, CommandMetrics.Transport.LOOPBACK, manualDelivery);
+    }
+
+    /**
+     * Delivers the updates waiting for the clients of a server created with manual delivery, on the thread of the
+     * caller, until none is left. The clients receive them in the order of their nicknames, each one in the order
+     * the updates were sent.
+     *
+     * @return the number of updates delivered
+     * @throws IllegalStateException if the server was not created with manual delivery
+     */
+    public int deliver() {
+        return deliverCallbacks();
+    }
+
+    /**
+     * Connects a new client to the server.
+     *
+     * @param controller the controller of the client
+     * @return the connection of the client
+     */
+    public LoopbackClient connect(Controller controller) {
+        return new LoopbackClient(controller, this);
+    }
+
+    /**
+     * Called when a client leaves the server.
+     *
+     * @param nickname the nickname the client logged in with, or null
+     * @param client   the client
+     */
+    void left(String nickname, LoopbackClient client) {
+        clientLeft(nickname, client);
+    }
+
+    /**
+     * Removes the server from the NetworkHandler, so it no longer receives the broadcasts.
+     */
+    public void close() {
+        NetworkHandler.getInstance().removeNetworkPlug(NAME);
+    }
+}
@@ -2,7 +2,11 @@ package it.polimi.ingsw.network.socket;
 
 import it.polimi.ingsw.controller.client.Controller;
 import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.network.Correlation;
+import it.polimi.ingsw.network.HeartbeatMonitor;
 import it.polimi.ingsw.network.NetworkClient;
+import it.polimi.ingsw.network.RoundTrip;
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
 import it.polimi.ingsw.network.socket.messages.client.ConnectionClient;
 import it.polimi.ingsw.network.socket.messages.client.ConnectionClientForServer;
 import it.polimi.ingsw.network.socket.messages.client.gameflow.SentChatMessage;
@@ -14,15 +18,21 @@ import it.polimi.ingsw.network.socket.messages.client.gamestart.ChosenStartingCa
 import it.polimi.ingsw.network.socket.messages.client.login.ColorChosen;
 import it.polimi.ingsw.network.socket.messages.client.login.LoginMessage;
 import it.polimi.ingsw.network.socket.messages.client.login.NumberOfPlayersMessage;
+import it.polimi.ingsw.network.socket.messages.client.login.ReconnectMessage;
+import it.polimi.ingsw.network.socket.messages.server.CommandTimed;
 import it.polimi.ingsw.network.socket.messages.server.ConnectionServer;
 import it.polimi.ingsw.network.socket.messages.server.ConnectionServerForClient;
 import it.polimi.ingsw.network.socket.messages.server.ServerMessage;
+import it.polimi.ingsw.network.socket.messages.server.StopGaming;
+import it.polimi.ingsw.network.socket.messages.server.login.SessionToken;
 import it.polimi.ingsw.view.model.Phase;
 
 
 import java.awt.*;
 import java.io.*;
 import java.net.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The ClientSocket class implements the NetworkClient interface and provides the functionality for a client to communicate with a server over a socket connection.
@@ -38,27 +48,60 @@ public class ClientSocket implements Runnable, NetworkClient{
     private final Controller controller;
 
     /**
-     * The socket connection to the server.
+     * The address of the server.
      */
-    private final Socket socket;
+    private final String address;
+    /**
+     * The port of the server.
+     */
+    private final int port;
+    /**
+     * The socket connection to the server. It is replaced when the client comes back after a lost connection.
+     */
+    private volatile Socket socket;
     /**
      * The input stream for receiving messages from the server.
      */
-    private final InputStream inputStream;
+    private InputStream inputStream;
     /**
-     * The object input stream for deserializing messages from the server.
+     * The stream for reading framed messages from the server.
      */
-    private final ObjectInputStream objInputStream;
+    private DataInputStream dataInputStream;
     /**
      * The output stream for sending messages to the server.
      */
-    private final OutputStream outputStream;
+    private OutputStream outputStream;
     /**
-     * The object output stream for serializing messages to the server.
+     * The stream for writing framed messages to the server.
      */
-    private final ObjectOutputStream objOutputStream;
+    private volatile DataOutputStream dataOutputStream;
+    /**
+     * The lock of the writes to the server.
+     */
+    private final Object writeLock = new Object();
 
-    private boolean connection;
+    /**
+     * The liveness of the server. Any message received from the server counts as a heartbeat.
+     */
+    private volatile HeartbeatMonitor.Peer heartbeat;
+    /**
+     * The token of the session, received at login. It is used to come back to the game after a lost connection,
+     * and it is null when there is no game to come back to.
+     */
+    private volatile String token;
+    /**
+     * The sequence number of the last event received from the server.
+     */
+    private long lastSequence = 0;
+    /**
+     * True after coming back to the game, until the server tells where the missed events start.
+     */
+    private boolean resuming = false;
+    /**
+     * The traced commands waiting for their timings, by correlation id, with the time their first answer arrived,
+     * 0 until it arrives.
+     */
+    private final Map<Long, Long> traced = new ConcurrentHashMap<>();
 
     /**
      * Creates a new ClientSocket with the given controller, address, and port.
@@ -71,20 +114,46 @@ public class ClientSocket implements Runnable, NetworkClient{
      * @throws IOException if an I/O error occurs while creating the socket or the input/output streams.
      */
     public ClientSocket(Controller controller, String address, int port) throws IOException {
-        socket = new Socket(address, port);
-
-        outputStream = socket.getOutputStream();
-        objOutputStream = new ObjectOutputStream(outputStream);
+        this.address = address;
+        this.port = port;
+        this.controller = controller;
+        open(new Socket(address, port));
 
-        inputStream = socket.getInputStream();
-        objInputStream = new ObjectInputStream(inputStream);
+        //start checking if the client is still connected
+        startHeartbeat();
+    }
 
-        this.controller = controller;
+    /**
+     * Uses a new socket connection to the server.
+     *
+     * @param newSocket The socket connected to the server.
+     * @throws IOException if an I/O error occurs while creating the input/output streams.
+     */
+    private void open(Socket newSocket) throws IOException {
+        synchronized (writeLock) {
+            socket = newSocket;
+            outputStream = socket.getOutputStream();
+            dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
 
-        connection = true;
+            inputStream = socket.getInputStream();
+            dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        }
+    }
 
-        //start the thread to check if the client is still connected
-        new Thread(this::iAmConnected).start();
+    /**
+     * Starts checking if the server is still alive. When the server is silent for too long and the game can be
+     * resumed, the socket is closed, so the reading thread comes back to the game on a new connection.
+     */
+    private void startHeartbeat() {
+        heartbeat = HeartbeatMonitor.getInstance().register("socket server",
+                () -> sendMessage(new ConnectionClient()),
+                () -> {
+                    if (token == null) {
+                        controller.noConnection();
+                    } else {
+                        closeSocket();
+                    }
+                });
     }
 
     //Methods that correspond to the actions a player takes throughout the life of the connection.
@@ -181,6 +250,7 @@ public class ClientSocket implements Runnable, NetworkClient{
         // - the turn is not correct: NO_TURN
         // - the phase is not correct: WRONG_PHASE
         ClientMessage message = new ChosenStartingCardSide(controller.getNickname(), side);
+        trace(message);
         sendMessage(message);
     }
 
@@ -202,6 +272,7 @@ public class ClientSocket implements Runnable, NetworkClient{
         // - the turn is not correct: NO_TURN
         // - the phase is not correct: WRONG_PHASE
         ClientMessage message = new ChosenObjectiveCard(controller.getNickname(), indexCard);
+        trace(message);
         sendMessage(message);
     }
 
@@ -222,6 +293,7 @@ public class ClientSocket implements Runnable, NetworkClient{
     public void playCard(int indexHand, Point position, boolean side) {
         //the FSM controller is in GAME_FLOW, no need to change it
         ClientMessage message = new CardToBePositioned(controller.getNickname(), indexHand, position, side);
+        trace(message);
         sendMessage(message);
     }
 
@@ -242,6 +314,7 @@ public class ClientSocket implements Runnable, NetworkClient{
     public void drawCard(String nickname, boolean gold, int onTableOrDeck) {
         //the FSM controller is in GAME_FLOW, no need to change it
         ClientMessage message = new CardToBeDrawn(nickname, gold, onTableOrDeck);
+        trace(message);
         sendMessage(message);
     }
 
@@ -258,11 +331,15 @@ public class ClientSocket implements Runnable, NetworkClient{
             ServerMessage serverMessage = null;
             try {
                 serverMessage = receiveMessage();
+                heartbeat.touch();
             } catch (IOException e) {
-               connected = false;
+                heartbeat.cancel();
+                //during a game, the client tries to come back on a new connection
+                connected = token != null && reconnect();
             }
             handleResponse(serverMessage);
         }
+        heartbeat.cancel();
 
         try {
             if(socket.getInputStream().read() == -1){
@@ -277,25 +354,6 @@ public class ClientSocket implements Runnable, NetworkClient{
         }
     }
 
-    /**
-     * This method is used to periodically check if the client is still connected to the server.
-     * It runs in a separate thread and pauses for a specified interval (30 seconds in this case) between each check.
-     * If the client is no longer connected, we stop gaming client-side.
-     */
-    private void iAmConnected() {
-        while (connection) {
-            try {
-                connection = false;
-                sendMessage(new ConnectionClient());
-                Thread.sleep(300000); // 30 seconds
-            } catch (InterruptedException e) {
-                System.out.println("Error in sleep");
-            }
-        }
-
-        controller.noConnection();
-    }
-
     /**
      * Handles the response from the server.
      * This method is called by the run method for each received server message.
@@ -304,16 +362,88 @@ public class ClientSocket implements Runnable, NetworkClient{
      * @param message The server message to be handled.
      */
     public void handleResponse(ServerMessage message) {
+        if (message instanceof SessionToken) {
+            //the token is sent at login, and again when the client comes back, before the missed events
+            token = ((SessionToken) message).getToken();
+            resuming = false;
+            return;
+        }
+        if (message != null && message.getSequence() != 0) {
+            //an event already received, or queued before the server resumed the session
+            if (resuming || message.getSequence() <= lastSequence) {
+                return;
+            }
+            lastSequence = message.getSequence();
+        }
+        if (message != null && message.getCorrelationId() != 0) {
+            //the first answer to a traced command
+            traced.replace(message.getCorrelationId(), 0L, System.nanoTime());
+        }
+        if (message instanceof CommandTimed) {
+            RoundTrip roundTrip = ((CommandTimed) message).getRoundTrip();
+            Long firstAnswer = traced.remove(roundTrip.getCorrelation().getId());
+            roundTrip.arrived(firstAnswer == null ? 0 : firstAnswer, System.nanoTime());
+        }
+        if (message instanceof StopGaming) {
+            //the game is over, there is nothing to come back to
+            token = null;
+        }
         if (message instanceof ConnectionServer) {
             sendMessage(new ConnectionClientForServer());
         }
         else if(message instanceof ConnectionServerForClient) {
-            connection = true;
+            // the answer to a ping: the heartbeat has already been updated when the message was received
         }
         else if (message != null) {
             message.callController(controller);
         }
     }
+    /**
+     * Comes back to the game on a new connection, after the connection to the server has been lost.
+     * It tries again until the end of the grace period of the session, given by the "codex.session.graceMillis"
+     * property (60000 by default).
+     *
+     * @return true if the client is connected again, false if the game cannot be resumed.
+     */
+    private boolean reconnect() {
+        long deadline = System.currentTimeMillis() + Long.getLong("codex.session.graceMillis", 60000);
+        closeSocket();
+        while (token != null && System.currentTimeMillis() < deadline) {
+            try {
+                Socket newSocket = new Socket();
+                newSocket.connect(new InetSocketAddress(address, port), 5000);
+                open(newSocket);
+                resuming = true;
+                synchronized (writeLock) {
+                    EncodedMessage.encode(new ReconnectMessage(token, lastSequence)).writeTo(dataOutputStream);
+                    dataOutputStream.flush();
+                }
+                System.out.println("Connection lost, coming back to the game.");
+                startHeartbeat();
+                return true;
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the socket connection, so the reading thread notices that it has been lost.
+     */
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //already closed
+        }
+    }
+
     /**
      * Receives a message from the server.
      * This method is called by the run method to receive a server message.
@@ -326,7 +456,7 @@ public class ClientSocket implements Runnable, NetworkClient{
     public ServerMessage receiveMessage() throws IOException {
         ServerMessage answer;
         try {
-            answer = (ServerMessage) objInputStream.readObject();
+            answer = (ServerMessage) EncodedMessage.readFrom(dataInputStream);
         } catch (ClassNotFoundException e) {
             System.out.println("This error should never happen. The server is sending a message that the client does not know how to handle.");
             return null;
@@ -339,15 +469,30 @@ public class ClientSocket implements Runnable, NetworkClient{
      * If an I/O error occurs while closing the streams or the connection, it calls the `noConnection` method on the controller.
      */
     public void disconnect(){
+        token = null;
+        heartbeat.cancel();
         try {
             inputStream.close();
-            objInputStream.close();
-            objOutputStream.close();
+            dataInputStream.close();
+            dataOutputStream.close();
         } catch (IOException e) {
             controller.noConnection();
         }
     }
 
+    /**
+     * Gives a command a new correlation id, when tracing is on, so its round trip can be measured.
+     *
+     * @param message The command to be sent to the server.
+     */
+    private void trace(ClientMessage message) {
+        Correlation correlation = Correlation.next();
+        if (correlation != null) {
+            message.setCorrelation(correlation);
+            traced.put(correlation.getId(), 0L);
+        }
+    }
+
     /**
      * Sends a message to the server.
      * This method is used to send a message to the server over the socket connection.
@@ -358,9 +503,19 @@ public class ClientSocket implements Runnable, NetworkClient{
      */
     public void sendMessage(ClientMessage message){
         try{
-            objOutputStream.writeObject(message);
+            EncodedMessage encodedMessage = EncodedMessage.encode(message);
+            synchronized (writeLock) {
+                encodedMessage.writeTo(dataOutputStream);
+                dataOutputStream.flush();
+            }
         } catch (IOException e) {
-            controller.noConnection();
+            if (token == null) {
+                controller.noConnection();
+            } else {
+                //the reading thread comes back to the game, the action has to be done again
+                System.out.println("Connection lost, the last action has not been sent.");
+                closeSocket();
+            }
         }
     }
 }
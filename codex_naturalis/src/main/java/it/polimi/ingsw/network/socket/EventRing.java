@@ -0,0 +1,167 @@
+package it.polimi.ingsw.network.socket;
+
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The EventRing keeps the last events sent to the socket clients of a game, so that a client coming back after a
+ * lost connection receives only the events it has missed, instead of the whole game.
+ *
+ * Every event has a sequence number, given by {@link #next()} in the order the events are sent. An event can be sent
+ * to every client, to a single client, or to every client except one. The ring holds a bounded number of events: a
+ * client that has missed more events than the ring holds has to reload the whole game.
+ *
+ * The ring is not thread safe: the caller holds its lock while giving the sequence number, adding the event and
+ * queuing it to the clients, so every client receives the events in the order of their sequence numbers.
+ */
+public class EventRing {
+    /**
+     * The sent events, the oldest in position head.
+     */
+    private final Event[] events;
+    /**
+     * The position of the oldest event.
+     */
+    private int head = 0;
+    /**
+     * The number of events in the ring.
+     */
+    private int size = 0;
+    /**
+     * The sequence number of the last event.
+     */
+    private long lastSequence = 0;
+
+    /**
+     * An event sent to the clients.
+     */
+    private static class Event {
+        /**
+         * The sequence number of the event.
+         */
+        private final long sequence;
+        /**
+         * The only client that receives the event, or null.
+         */
+        private final String only;
+        /**
+         * The only client that does not receive the event, or null.
+         */
+        private final String except;
+        /**
+         * The frame of the event.
+         */
+        private final EncodedMessage message;
+
+        /**
+         * Creates a new Event.
+         *
+         * @param sequence the sequence number of the event
+         * @param only     the only client that receives the event, or null
+         * @param except   the only client that does not receive the event, or null
+         * @param message  the frame of the event
+         */
+        private Event(long sequence, String only, String except, EncodedMessage message) {
+            this.sequence = sequence;
+            this.only = only;
+            this.except = except;
+            this.message = message;
+        }
+
+        /**
+         * Tells if a client has received the event.
+         *
+         * @param nickname the nickname of the client
+         * @return true if the event was sent to the client
+         */
+        private boolean isFor(String nickname) {
+            return (only == null || only.equals(nickname)) && (except == null || !except.equals(nickname));
+        }
+    }
+
+    /**
+     * Creates a new EventRing.
+     *
+     * @param capacity the number of events kept
+     */
+    public EventRing(int capacity) {
+        events = new Event[Math.max(1, capacity)];
+    }
+
+    /**
+     * Gives the sequence number of the next event.
+     *
+     * @return the sequence number
+     */
+    public long next() {
+        return ++lastSequence;
+    }
+
+    /**
+     * Getter of the sequence number of the last event.
+     *
+     * @return the sequence number, 0 if no event has been sent
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Adds an event to the ring, discarding the oldest event if the ring is full.
+     *
+     * @param sequence the sequence number of the event, given by {@link #next()}
+     * @param only     the only client that receives the event, or null
+     * @param except   the only client that does not receive the event, or null
+     * @param message  the frame of the event
+     */
+    public void add(long sequence, String only, String except, EncodedMessage message) {
+        Event event = new Event(sequence, only, except, message);
+        if (size < events.length) {
+            events[(head + size) % events.length] = event;
+            size++;
+        } else {
+            events[head] = event;
+            head = (head + 1) % events.length;
+        }
+    }
+
+    /**
+     * Removes all the events, when the game ends.
+     */
+    public void clear() {
+        Arrays.fill(events, null);
+        head = 0;
+        size = 0;
+        lastSequence = 0;
+    }
+
+    /**
+     * Gives the events received by a client after a sequence number.
+     *
+     * @param after    the sequence number of the last event received by the client
+     * @param nickname the nickname of the client
+     * @return the frames of the missed events in order, or null if some of them are no longer in the ring
+     */
+    public ArrayList<EncodedMessage> since(long after, String nickname) {
+        if (after > lastSequence) {
+            return null;
+        }
+        ArrayList<EncodedMessage> missed = new ArrayList<>();
+        if (after == lastSequence) {
+            return missed;
+        }
+        // the events are added in order: if the first missed event is not in the ring, it has been discarded
+        if (size == 0 || events[head].sequence > after + 1) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            Event event = events[(head + i) % events.length];
+            if (event.sequence > after && event.isFor(nickname)) {
+                missed.add(event.message);
+            }
+        }
+        return missed;
+    }
+}
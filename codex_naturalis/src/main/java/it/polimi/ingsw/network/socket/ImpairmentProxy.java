@@ -0,0 +1,592 @@
+package it.polimi.ingsw.network.socket;
+
+import it.polimi.ingsw.monitoring.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ImpairmentProxy is a TCP proxy that sits between the {@link ClientSocket}s and the
+ * {@link NetworkServerSocket}, and makes the link between them look like a real one: it delays the bytes by a
+ * latency and a random jitter, caps the bandwidth of each direction and resets the connections. Its arguments are
+ * {@code ImpairmentProxy [-l latencyMillis] [-j jitterMillis] [-b bytesPerSecond] [-r resetProbability] port host
+ * serverPort}: the clients connect to the given port and the proxy opens a connection to the server for each of
+ * them.
+ *
+ * The delay and the bandwidth apply to each direction on its own, as on a real link, and the bytes always arrive in
+ * the order they were sent, however large the jitter is. A connection is reset, as if the link was lost, with the
+ * given probability every time a chunk of bytes goes through it, or by {@link #resetConnections()}. All the settings
+ * can be changed while the proxy runs, for the connections already open too.
+ *
+ * Each direction of a connection holds at most {@link #BUFFER_SIZE} bytes on their way, as the buffers of a router:
+ * once they are full the proxy stops reading, and the sender is slowed down by TCP as it would be by a slow link.
+ *
+ * The proxy counts the round trips of its connections, that is the times a client sends something after having
+ * received something, so the round trips a turn costs can be read with the load generator running through it.
+ */
+public class ImpairmentProxy implements Closeable {
+    /**
+     * The largest chunk of bytes read at once.
+     */
+    private static final int CHUNK_SIZE = 8192;
+    /**
+     * The largest number of bytes each direction of a connection holds on their way.
+     */
+    public static final int BUFFER_SIZE = 32 * CHUNK_SIZE;
+    /**
+     * The chunk that stops a writer.
+     */
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    /**
+     * The socket the clients connect to.
+     */
+    private final ServerSocket serverSocket;
+    /**
+     * The address of the server.
+     */
+    private final String host;
+    /**
+     * The port of the server.
+     */
+    private final int port;
+    /**
+     * The open connections.
+     */
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+    /**
+     * The number of connections accepted.
+     */
+    private final LongAdder connections = new LongAdder();
+    /**
+     * The number of connections reset by the proxy.
+     */
+    private final LongAdder resets = new LongAdder();
+    /**
+     * The number of round trips of all the connections.
+     */
+    private final LongAdder roundTrips = new LongAdder();
+    /**
+     * The bytes sent by the clients.
+     */
+    private final LongAdder bytesToServer = new LongAdder();
+    /**
+     * The bytes sent by the server.
+     */
+    private final LongAdder bytesToClients = new LongAdder();
+    /**
+     * The bytes read by the proxy and not written yet.
+     */
+    private final LongAdder queuedBytes = new LongAdder();
+    /**
+     * The delay of every chunk of bytes, in milliseconds.
+     */
+    private volatile long latencyMillis = 0;
+    /**
+     * The largest random delay added to the latency, in milliseconds.
+     */
+    private volatile long jitterMillis = 0;
+    /**
+     * The bandwidth of each direction of a connection, in bytes per second, 0 if it is not capped.
+     */
+    private volatile long bytesPerSecond = 0;
+    /**
+     * The probability that a connection is reset when a chunk of bytes goes through it.
+     */
+    private volatile double resetProbability = 0;
+    /**
+     * False once the proxy is closed.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new ImpairmentProxy and starts accepting the clients. It does not impair the link until it is told
+     * to.
+     *
+     * @param listenPort The port the clients connect to, 0 for any free port.
+     * @param host       The address of the server.
+     * @param port       The port of the server.
+     * @throws IOException If the port cannot be opened.
+     */
+    public ImpairmentProxy(int listenPort, String host, int port) throws IOException {
+        this.serverSocket = new ServerSocket(listenPort);
+        this.host = host;
+        this.port = port;
+        Thread acceptor = new Thread(this::acceptClients, "proxy-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Getter of the port the clients connect to.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Sets the delay of every chunk of bytes.
+     *
+     * @param latencyMillis The latency, in milliseconds.
+     * @param jitterMillis  The largest random delay added to the latency, in milliseconds.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        if (latencyMillis < 0 || jitterMillis < 0) {
+            throw new IllegalArgumentException("The latency cannot be negative");
+        }
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Sets the bandwidth of each direction of a connection.
+     *
+     * @param bytesPerSecond The bandwidth, in bytes per second, 0 to leave it uncapped.
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("The bandwidth cannot be negative");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Sets the probability that a connection is reset when a chunk of bytes goes through it.
+     *
+     * @param resetProbability The probability, between 0 and 1.
+     */
+    public void setResetProbability(double resetProbability) {
+        if (resetProbability < 0 || resetProbability > 1) {
+            throw new IllegalArgumentException("The probability must be between 0 and 1");
+        }
+        this.resetProbability = resetProbability;
+    }
+
+    /**
+     * Resets all the open connections, as if the link was lost.
+     */
+    public void resetConnections() {
+        for (Link link : links) {
+            link.reset();
+        }
+    }
+
+    /**
+     * Getter of the number of connections accepted.
+     *
+     * @return The number of connections.
+     */
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    /**
+     * Getter of the number of connections reset by the proxy.
+     *
+     * @return The number of resets.
+     */
+    public long getResets() {
+        return resets.sum();
+    }
+
+    /**
+     * Getter of the number of round trips of all the connections.
+     *
+     * @return The number of round trips.
+     */
+    public long getRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    /**
+     * Getter of the bytes sent by the clients.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesToServer() {
+        return bytesToServer.sum();
+    }
+
+    /**
+     * Getter of the bytes sent by the server.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesToClients() {
+        return bytesToClients.sum();
+    }
+
+    /**
+     * Getter of the bytes read by the proxy and not written yet, in all the connections.
+     *
+     * @return The number of bytes.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.sum();
+    }
+
+    /**
+     * Stops accepting the clients and closes all the connections.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Link link : links) {
+            link.close();
+        }
+    }
+
+    /**
+     * Accepts the clients and connects each of them to the server.
+     */
+    private void acceptClients() {
+        while (running) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    Log.warn("Proxy: cannot accept a client: {}", e.getMessage());
+                }
+                return;
+            }
+            connections.increment();
+            try {
+                Socket server = new Socket(host, port);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                Link link = new Link(client, server);
+                links.add(link);
+                link.start();
+            } catch (IOException e) {
+                Log.warn("Proxy: cannot reach the server at {}:{}: {}", host, port, e.getMessage());
+                closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring its errors.
+     *
+     * @param socket The socket.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+
+    /**
+     * A chunk of bytes on its way.
+     */
+    private static class Chunk {
+        /**
+         * The bytes.
+         */
+        private final byte[] bytes;
+        /**
+         * The time the bytes are written, as given by System.nanoTime().
+         */
+        private final long dueNanos;
+
+        /**
+         * Creates a new Chunk.
+         *
+         * @param bytes    The bytes.
+         * @param dueNanos The time the bytes are written.
+         */
+        private Chunk(byte[] bytes, long dueNanos) {
+            this.bytes = bytes;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    /**
+     * The Link class is a connection of a client through the proxy: a reader and a writer for each direction.
+     */
+    private class Link {
+        /**
+         * The socket of the client.
+         */
+        private final Socket client;
+        /**
+         * The socket of the server.
+         */
+        private final Socket server;
+        /**
+         * True if the last bytes went from the client to the server.
+         */
+        private volatile boolean lastToServer = false;
+        /**
+         * False once the link is closed.
+         */
+        private volatile boolean open = true;
+
+        /**
+         * Creates a new Link.
+         *
+         * @param client The socket of the client.
+         * @param server The socket of the server.
+         */
+        private Link(Socket client, Socket server) {
+            this.client = client;
+            this.server = server;
+        }
+
+        /**
+         * Starts forwarding the bytes in both directions.
+         *
+         * @throws IOException If the streams of the sockets cannot be opened.
+         */
+        private void start() throws IOException {
+            String name = client.getRemoteSocketAddress().toString();
+            forward(client.getInputStream(), server.getOutputStream(), true, "proxy-up-" + name);
+            forward(server.getInputStream(), client.getOutputStream(), false, "proxy-down-" + name);
+        }
+
+        /**
+         * Starts forwarding the bytes in one direction.
+         *
+         * @param in       The stream the bytes are read from.
+         * @param out      The stream the bytes are written to.
+         * @param toServer True if the bytes go from the client to the server.
+         * @param name     The name of the threads.
+         */
+        private void forward(InputStream in, OutputStream out, boolean toServer, String name) {
+            BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+            Semaphore space = new Semaphore(BUFFER_SIZE);
+            Thread reader = new Thread(() -> read(in, queue, space, toServer), name + "-reader");
+            Thread writer = new Thread(() -> write(out, queue, space, toServer), name + "-writer");
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        /**
+         * Reads the bytes of a direction and queues them with the time they are due. A chunk is read only when the
+         * queue has room for it, so a full queue leaves the bytes in the socket and slows the sender down.
+         *
+         * @param in       The stream the bytes are read from.
+         * @param queue    The queue of the writer.
+         * @param space    The bytes the queue has room for.
+         * @param toServer True if the bytes go from the client to the server.
+         */
+        private void read(InputStream in, BlockingQueue<Chunk> queue, Semaphore space, boolean toServer) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            long lastDue = 0;
+            try {
+                int read;
+                while (reserve(space) && (read = in.read(buffer)) != -1) {
+                    space.release(CHUNK_SIZE - read);
+                    if (toServer) {
+                        if (!lastToServer) {
+                            roundTrips.increment();
+                        }
+                        lastToServer = true;
+                        bytesToServer.add(read);
+                    } else {
+                        lastToServer = false;
+                        bytesToClients.add(read);
+                    }
+                    if (resetProbability > 0 && ThreadLocalRandom.current().nextDouble() < resetProbability) {
+                        reset();
+                        break;
+                    }
+                    long jitter = jitterMillis;
+                    long delay = latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+                    // a chunk never overtakes the one before it, as the bytes of a TCP stream
+                    lastDue = Math.max(lastDue, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+                    queuedBytes.add(read);
+                    queue.add(new Chunk(Arrays.copyOf(buffer, read), lastDue));
+                }
+            } catch (IOException e) {
+                // the link is closed below
+            }
+            queue.add(END);
+        }
+
+        /**
+         * Waits until the queue of a direction has room for a whole chunk, and takes it.
+         *
+         * @param space The bytes the queue has room for.
+         * @return False if the link has been closed meanwhile.
+         */
+        private boolean reserve(Semaphore space) {
+            try {
+                while (open) {
+                    if (space.tryAcquire(CHUNK_SIZE, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        /**
+         * Writes the bytes of a direction when they are due, at the bandwidth of the link.
+         *
+         * @param out      The stream the bytes are written to.
+         * @param queue    The queue of the reader.
+         * @param space    The bytes the queue has room for, given back once they are written.
+         * @param toServer True if the bytes go from the client to the server.
+         */
+        private void write(OutputStream out, BlockingQueue<Chunk> queue, Semaphore space, boolean toServer) {
+            long nextFreeNanos = System.nanoTime();
+            Chunk chunk = null;
+            try {
+                while ((chunk = queue.take()) != END) {
+                    sleepUntil(chunk.dueNanos);
+                    int offset = 0;
+                    while (offset < chunk.bytes.length) {
+                        long bandwidth = bytesPerSecond;
+                        int length = chunk.bytes.length - offset;
+                        if (bandwidth > 0) {
+                            // a tenth of a second of bytes at most, so the bandwidth stays even
+                            length = (int) Math.min(length, Math.max(1, bandwidth / 10));
+                            sleepUntil(nextFreeNanos);
+                            nextFreeNanos = Math.max(nextFreeNanos, System.nanoTime())
+                                    + length * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+                        }
+                        out.write(chunk.bytes, offset, length);
+                        offset += length;
+                    }
+                    out.flush();
+                    queuedBytes.add(-chunk.bytes.length);
+                    space.release(chunk.bytes.length);
+                }
+                // the other side has finished sending: the close goes through after the bytes
+                if (toServer) {
+                    server.shutdownOutput();
+                } else {
+                    client.shutdownOutput();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+                // the bytes left are lost with the link
+                while (chunk != null && chunk != END) {
+                    queuedBytes.add(-chunk.bytes.length);
+                    try {
+                        chunk = queue.take();
+                    } catch (InterruptedException interrupted) {
+                        chunk = queue.poll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits until the given time.
+         *
+         * @param nanos The time, as given by System.nanoTime().
+         * @throws InterruptedException If the thread is interrupted.
+         */
+        private void sleepUntil(long nanos) throws InterruptedException {
+            long left = nanos - System.nanoTime();
+            if (left > 0) {
+                TimeUnit.NANOSECONDS.sleep(left);
+            }
+        }
+
+        /**
+         * Resets both sides of the link, so they see the connection lost instead of closed.
+         */
+        private synchronized void reset() {
+            if (!open) {
+                return;
+            }
+            resets.increment();
+            try {
+                client.setSoLinger(true, 0);
+                server.setSoLinger(true, 0);
+            } catch (IOException e) {
+                // the sockets are closed anyway
+            }
+            close();
+        }
+
+        /**
+         * Closes both sides of the link.
+         */
+        private void close() {
+            open = false;
+            links.remove(this);
+            closeQuietly(client);
+            closeQuietly(server);
+        }
+    }
+
+    /**
+     * The main method of the proxy.
+     *
+     * @param args The options, the port of the proxy and the address and port of the server.
+     * @throws IOException          If the port of the proxy cannot be opened.
+     * @throws InterruptedException If the proxy is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long latency = 0;
+        long jitter = 0;
+        long bandwidth = 0;
+        double reset = 0;
+        String[] positional = new String[3];
+        int count = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-l" -> latency = Long.parseLong(args[++i]);
+                    case "-j" -> jitter = Long.parseLong(args[++i]);
+                    case "-b" -> bandwidth = Long.parseLong(args[++i]);
+                    case "-r" -> reset = Double.parseDouble(args[++i]);
+                    default -> positional[count++] = args[i];
+                }
+            }
+            if (count != 3) {
+                throw new IllegalArgumentException();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: ImpairmentProxy [-l latencyMillis] [-j jitterMillis] [-b bytesPerSecond] "
+                    + "[-r resetProbability] port host serverPort");
+            System.exit(2);
+            return;
+        }
+        ImpairmentProxy proxy = new ImpairmentProxy(Integer.parseInt(positional[0]), positional[1],
+                Integer.parseInt(positional[2]));
+        proxy.setLatency(latency, jitter);
+        proxy.setBandwidth(bandwidth);
+        proxy.setResetProbability(reset);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            proxy.close();
+            System.out.println("connections: " + proxy.getConnections() + ", resets: " + proxy.getResets()
+                    + ", round trips: " + proxy.getRoundTrips() + ", bytes to the server: "
+                    + proxy.getBytesToServer() + ", bytes to the clients: " + proxy.getBytesToClients());
+        }, "proxy-shutdown"));
+        System.out.println("Proxy on port " + proxy.getPort() + " to " + positional[1] + ":" + positional[2]);
+        // the proxy runs until the process is stopped
+        new CountDownLatch(1).await();
+    }
+}
@@ -9,8 +9,11 @@ import java.awt.Point;
 import it.polimi.ingsw.controller.server.Controller;
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.GameMaster;
+import it.polimi.ingsw.model.GameState;
 import it.polimi.ingsw.model.Kingdom;
+import it.polimi.ingsw.model.ResumeSnapshot;
 import it.polimi.ingsw.model.Sign;
+import it.polimi.ingsw.model.TurnChange;
 import it.polimi.ingsw.model.exception.CardPositionException;
 import it.polimi.ingsw.model.exception.ClosingLobbyException;
 import it.polimi.ingsw.model.exception.ColorAlreadyTakenException;
@@ -20,9 +23,20 @@ import it.polimi.ingsw.model.exception.NoTurnException;
 import it.polimi.ingsw.model.exception.NotEnoughResourcesException;
 import it.polimi.ingsw.model.exception.SameNameException;
 import it.polimi.ingsw.model.exception.WrongGamePhaseException;
+import it.polimi.ingsw.monitoring.CommandEvent;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.CommandTrace;
+import it.polimi.ingsw.monitoring.Log;
+import it.polimi.ingsw.monitoring.TrafficCounter;
+import it.polimi.ingsw.monitoring.TrafficMetrics;
+import it.polimi.ingsw.network.ChatRouter;
+import it.polimi.ingsw.network.CommandGate;
+import it.polimi.ingsw.network.HeartbeatMonitor;
 import it.polimi.ingsw.network.NetworkHandler;
 import it.polimi.ingsw.network.NetworkPlug;
+import it.polimi.ingsw.network.SessionManager;
 import it.polimi.ingsw.network.socket.messages.client.ConnectionClient;
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
 import it.polimi.ingsw.network.socket.messages.ErrorType;
 import it.polimi.ingsw.network.socket.messages.client.ClientMessage;
 import it.polimi.ingsw.network.socket.messages.client.ConnectionClientForServer;
@@ -34,6 +48,7 @@ import it.polimi.ingsw.network.socket.messages.client.gamestart.ChosenStartingCa
 import it.polimi.ingsw.network.socket.messages.client.login.ColorChosen;
 import it.polimi.ingsw.network.socket.messages.client.login.LoginMessage;
 import it.polimi.ingsw.network.socket.messages.client.login.NumberOfPlayersMessage;
+import it.polimi.ingsw.network.socket.messages.client.login.ReconnectMessage;
 import it.polimi.ingsw.network.socket.messages.server.*;
 import it.polimi.ingsw.network.socket.messages.server.endgame.ShowPointsFromObjectives;
 import it.polimi.ingsw.network.socket.messages.server.endgame.ShowRanking;
@@ -41,13 +56,18 @@ import it.polimi.ingsw.network.socket.messages.server.gameflow.*;
 import it.polimi.ingsw.network.socket.messages.server.gamestart.*;
 import it.polimi.ingsw.network.socket.messages.server.login.LobbyIsReady;
 import it.polimi.ingsw.network.socket.messages.server.login.PlayersAndColorPins;
+import it.polimi.ingsw.network.socket.messages.server.login.SessionToken;
 import it.polimi.ingsw.network.socket.messages.server.login.StatusLogin;
+import javafx.util.Pair;
 
 import java.io.*;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents the server-side socket in the network communication.
@@ -73,16 +93,39 @@ public class NetworkServerSocket implements NetworkPlug {
      * The ServerSocket object used to accept incoming connections from clients.
      */
     private final ServerSocket serverSocket;
+    /**
+     * True once the server socket is closed on purpose, when the server shuts down.
+     */
+    private volatile boolean stopped = false;
     /**
      * The Controller object used to access the game state and perform game actions.
      */
     private Controller controller;
     /**
-     * A HashMap used to store the connections to the clients.
+     * A map used to store the connections to the clients.
      * The key is the address of the client socket, and the value is the
-     * ClientHandler object representing the connection.
+     * ClientHandler object representing the connection. It is concurrent, so the
+     * monitoring can read it while clients connect.
+     */
+    private static ConcurrentHashMap<String, ClientHandler> connections;
+    /**
+     * The last events sent to the clients, so a client that comes back after a
+     * lost connection receives only the events it has missed. Its lock is held
+     * while an event is numbered and queued, so every client receives the events
+     * in order. The number of events kept is given by the "codex.session.ringSize"
+     * property (512 by default).
+     */
+    private static final EventRing events = new EventRing(Integer.getInteger("codex.session.ringSize", 512));
+    /**
+     * The gate of the commands received from the clients, closed when the server
+     * shuts down.
+     */
+    private static final CommandGate commands = new CommandGate();
+    /**
+     * The connections closed by the last disconnection, whose queued messages may
+     * still be being written.
      */
-    private static HashMap<String, ClientHandler> connections;
+    private static ArrayList<ClientHandler> closingConnections = new ArrayList<>();
 
     /**
      * This constructor is used to create a new NetworkServerSocket.
@@ -92,19 +135,19 @@ public class NetworkServerSocket implements NetworkPlug {
      */
     public NetworkServerSocket(int port) throws IOException {
         serverSocket = new ServerSocket(port);
-        System.out.println("Server started on port " + serverSocket.getLocalPort());
+        Log.info("Server started on port {}", serverSocket.getLocalPort());
         // add the network plug to the network handler, who manages the different
         // connections protocols.
         NetworkHandler.getInstance().addNetworkPlug("socket", this);
 
         try {
-            System.out.println("Server Socket" + "is listening on IP: " + InetAddress.getLocalHost().getHostAddress());
-            System.out.println("Server Socket is listening on Port: " + serverSocket.getLocalPort());
+            Log.info("Server Socket is listening on IP: {}", InetAddress.getLocalHost().getHostAddress());
+            Log.info("Server Socket is listening on Port: {}", serverSocket.getLocalPort());
         } catch (Exception e) {
-            System.out.println("Error in getting the IP address and port of the server: " + e.getMessage());
+            Log.warn("Error in getting the IP address and port of the server: {}", e.getMessage());
         }
 
-        connections = new HashMap<>();
+        connections = new ConcurrentHashMap<>();
         controller = Controller.getInstance();
     }
 
@@ -115,7 +158,16 @@ public class NetworkServerSocket implements NetworkPlug {
      */
     public void start() throws IOException {
         while (2 + 2 == 4) {
-            Socket new_connection = serverSocket.accept();
+            Socket new_connection;
+            try {
+                new_connection = serverSocket.accept();
+            } catch (SocketException e) {
+                if (stopped) {
+                    // the server is shutting down
+                    return;
+                }
+                throw e;
+            }
             ClientHandler connection = new ClientHandler(new_connection);
             connections.put(new_connection.getRemoteSocketAddress().toString(), connection);
             // start the thread connection
@@ -125,14 +177,94 @@ public class NetworkServerSocket implements NetworkPlug {
 
     /**
      * This method is used to send a message to all the clients.
+     * The message is serialized only once, and the same frame is written to every
+     * connection.
      *
      * @param message The message to be sent.
      */
     private void sendBroadCastMessage(ServerMessage message) {
-        // all the clients connected to SocketServer
-        for (String client : connections.keySet()) {
-            connections.get(client).sendMessage(message);
+        // chat messages can be dropped for the clients that are not keeping up
+        boolean droppable = message instanceof ReceivedChatMessage;
+        synchronized (events) {
+            EncodedMessage encodedMessage = sequence(message, null, null);
+            if (encodedMessage == null) {
+                return;
+            }
+            // all the clients connected to SocketServer
+            for (String client : connections.keySet()) {
+                connections.get(client).sendEncoded(encodedMessage, droppable);
+            }
+        }
+    }
+
+    /**
+     * This method is used to give the next sequence number to an event, serialize
+     * it and keep it in the ring of the events. The caller holds the lock of the
+     * ring until the frame is queued to its recipients.
+     *
+     * @param message The event to be sent.
+     * @param only    The only client that receives the event, or null.
+     * @param except  The only client that does not receive the event, or null.
+     * @return The frame of the event, or null if it cannot be serialized.
+     */
+    private static EncodedMessage sequence(ServerMessage message, String only, String except) {
+        long sequence = events.next();
+        message.setSequence(sequence);
+        message.setCorrelationId(CommandTrace.currentCorrelationId());
+        EncodedMessage encodedMessage;
+        try {
+            encodedMessage = encode(message);
+        } catch (IOException e) {
+            Log.error("Debugging error: cannot serialize {}", message.getClass().getSimpleName());
+            return null;
+        }
+        events.add(sequence, only, except, encodedMessage);
+        return encodedMessage;
+    }
+
+    /**
+     * This method is used to serialize a message, counting the time it takes in
+     * the traffic of its type.
+     *
+     * @param message The message to be serialized.
+     * @return The frame of the message.
+     * @throws IOException If the message cannot be serialized.
+     */
+    private static EncodedMessage encode(ServerMessage message) throws IOException {
+        long start = System.nanoTime();
+        EncodedMessage encodedMessage = EncodedMessage.encode(message);
+        TrafficMetrics.getInstance().serialized(CommandMetrics.Transport.SOCKET, encodedMessage.getType(),
+                System.nanoTime() - start);
+        return encodedMessage;
+    }
+
+    /**
+     * This method is used to get the number of clients connected through the
+     * sockets.
+     *
+     * @return the number of connections.
+     */
+    @Override
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * This method is used to get the number of messages waiting to be written to
+     * each client.
+     *
+     * @return a map from the nickname of the client (or its address, before the
+     *         login) to the size of its outbound queue.
+     */
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        HashMap<String, Integer> depths = new HashMap<>();
+        for (String address : connections.keySet()) {
+            ClientHandler connection = connections.get(address);
+            String name = connection.getNickname() == null ? address : connection.getNickname();
+            depths.put(name, connection.getOutboundQueueDepth());
         }
+        return depths;
     }
 
     /**
@@ -147,7 +279,11 @@ public class NetworkServerSocket implements NetworkPlug {
         for (ClientHandler connection : connections.values()) {
             connection.sendMessageDisconnection(message);
         }
-        connections = new HashMap<>();
+        closingConnections = new ArrayList<>(connections.values());
+        connections = new ConcurrentHashMap<>();
+        synchronized (events) {
+            events.clear();
+        }
         // set controller to null, and recreate that after the disconnection of all the
         // clients.
         Controller.getInstance().reset();
@@ -167,6 +303,10 @@ public class NetworkServerSocket implements NetworkPlug {
         HashMap<String, ClientHandler> connectionsToDelete = new HashMap<>();
 
         for (String address : connections.keySet()) {
+            // a client still logging in is told by the answer to its login
+            if (connections.get(address).getNickname() == null) {
+                continue;
+            }
             // if the client is admitted to the game, we send a message to stop waiting and
             // start play
             if (controller.isAdmitted(connections.get(address).getNickname())) {
@@ -174,6 +314,7 @@ public class NetworkServerSocket implements NetworkPlug {
             } else {
                 // disconnection of the users isn't admitted
                 connections.get(address).sendMessage(new StopWaitingOrDisconnect(false));
+                ChatRouter.getInstance().leave(connections.get(address).getNickname());
                 // close the connection
                 connections.get(address).hastaLaVistaBaby();
                 // remove from the connection list
@@ -236,55 +377,30 @@ public class NetworkServerSocket implements NetworkPlug {
         sendBroadCastMessage(new PlayersAndColorPins(playersAndPins));
     }
 
-    /**
-     * Implements the fetchReceivers method of the NetworkPlug interface.
-     *
-     * This method is used to fetch the receivers of a chat message.
-     * It iterates over all the connections and checks if the message contains a tag
-     * for a specific client.
-     * If a tag is found, the nickname of the tagged client is added to the list of
-     * receivers.
-     *
-     * @param message The message to be fetched.
-     * @return The list of nicknames of the players across connections who should
-     *         receive the message.
-     */
-    @Override
-    public ArrayList<String> fetchReceivers(String message) {
-        ArrayList<String> receivers = new ArrayList<>();
-        for (ClientHandler connection : connections.values()) {
-            // see how connections work. It is a map with the address of the client as key
-            // and the ClientHandler as value.
-            // client handler has the nickname of the client.
-            if (message.toLowerCase().contains("@" + connection.getNickname().toLowerCase())) {
-                receivers.add(connection.getNickname().toLowerCase());// to avoid mistake for capslock
-            }
-        }
-        return receivers;
-    }
-
     /**
      * Sends a chat message to players checking tags.
      *
      * This method is used to send a chat message from a sender to one or more
      * receivers.
-     * If the message contains a "@nickname" tag, the message will be sent only to
-     * the client associated with that nickname.
+     * The receivers are found by the {@link ChatRouter}:
+     * if the message contains "@nickname" tags, the message will be sent only to
+     * the clients associated with those nicknames and to the sender.
      * If no such tags are found in the message, it will be broadcast to all
      * connected clients.
      *
-     * @param sender  The nickname of the player who sent the message.
-     * @param message The message sent by the player.
+     * @param sender    The nickname of the player who sent the message.
+     * @param message   The message sent by the player.
+     * @param receivers The nicknames of the receivers, empty if the message is for
+     *                  all the clients.
      */
     @Override
-    public void sendingChatMessage(String sender, String message, ArrayList<String> receivers) {
+    public void sendingChatMessage(String sender, String message, Set<String> receivers) {
         if (receivers.isEmpty()) {
             // the message is sent to all the clients
             sendBroadCastMessage(new ReceivedChatMessage(sender, message, true));
         } else {
             for (ClientHandler connection : connections.values()) {
-                if (receivers.contains(connection.getNickname().toLowerCase())
-                        || connection.getNickname().equalsIgnoreCase(sender)) {
+                if (receivers.contains(connection.getNickname())) {
                     connection.sendMessage(new ReceivedChatMessage(sender, message, false));
                 }
             }
@@ -320,8 +436,7 @@ public class NetworkServerSocket implements NetworkPlug {
             sendBroadCastMessage(new RefreshedResources(nickname, resourcesCopy));
         } catch (NoNameException e) {
             // This should never occur
-            System.out
-                    .println("Debugging error: NoNameException in sendingPlacedRootCardAndWhenCompleteObjectiveCards");
+            Log.error("Debugging error: NoNameException in sendingPlacedRootCardAndWhenCompleteObjectiveCards");
         }
 
         // if all the root card are placed, we send the objective cards to all the
@@ -335,8 +450,11 @@ public class NetworkServerSocket implements NetworkPlug {
                 connection.sendSecretObjectives();
             }
         }
-        // notify the new turn to all the clients
-        sendBroadCastMessage(new TurnInfo(controller.getCurrentPlayer(), controller.getGameState()));
+        // notify the new turn to all the clients, read under the lock of the events so
+        // an older turn is never sent after a newer one
+        synchronized (events) {
+            sendBroadCastMessage(new TurnInfo(controller.getCurrentPlayer(), controller.getGameState()));
+        }
     }
 
     /**
@@ -364,7 +482,10 @@ public class NetworkServerSocket implements NetworkPlug {
         // if allWithSecretObjectiveCardChosen sends to all the clients the starting
         // player.
         for (ClientHandler connection : connections.values()) {
-            connection.sendHand(nickname, allWithSecretObjectiveCardChosen);
+            // a connection that has not logged in yet is not in the game
+            if (connection.getNickname() != null) {
+                connection.sendHand(nickname, allWithSecretObjectiveCardChosen);
+            }
         }
     }
 
@@ -385,20 +506,13 @@ public class NetworkServerSocket implements NetworkPlug {
      */
     @Override
     public void sendPlacedCard(String nickname, int cardId, Point position, boolean side) {
-        // send the card placed to all the clients
-        sendBroadCastMessage(new CardIsPositioned(nickname, cardId, position, side, controller.getTurn()));
-
-        try {
-            HashMap<Sign, Integer> resources = controller.getPlayerResources(nickname);
-
-            sendBroadCastMessage(new RefreshedResources(nickname, resources));
-            sendBroadCastMessage(new RefreshedPoints(nickname, controller.getPlayerPoints(nickname)));
-        } catch (NoNameException e) {
-            System.out.println("Debugging error: NoNameException in sendPlacedCard");
+        // send the card placed, the changed resources, the points gained and the new
+        // turn to all the clients, in a single message
+        synchronized (events) {
+            sendBroadCastMessage(new TurnDelta(new TurnChange(nickname, cardId, position, side, controller.getTurn(),
+                    new HashMap<>(controller.getLastChangedResources()), controller.getLastPointsDelta(),
+                    controller.getCurrentPlayer(), controller.getGameState())));
         }
-
-        // notify the new turn to all the clients
-        sendBroadCastMessage(new TurnInfo(controller.getCurrentPlayer(), controller.getGameState()));
     }
 
     /**
@@ -419,12 +533,33 @@ public class NetworkServerSocket implements NetworkPlug {
      */
     @Override
     public void sendDrawnCard(String nickname, Integer newCardId, Kingdom headDeck, boolean gold, int onTableOrDeck) {
-        for (ClientHandler connection : connections.values()) {
-            // send the hiddenHand to the players different from the player that has drawn
-            // the card.
+        Pair<Kingdom, Boolean>[] hiddenHand;
+        try {
+            hiddenHand = controller.getHiddenHand(nickname);
+        } catch (NoNameException e) {
+            Log.error("Debugging error: NoNameException in sendDrawnCard");
+            return;
+        }
+        synchronized (events) {
+            String currentPlayer = controller.getCurrentPlayer();
+            GameState gameState = controller.getGameState();
             // the player that has drawn the card receives the new card in the
-            // hand(different method)
-            connection.sendDrawnCardIfPlayer(nickname, newCardId, headDeck, gold, onTableOrDeck);
+            // hand(different message), the others receive its hidden hand.
+            EncodedMessage forPlayer = sequence(new TurnDelta(
+                    new TurnChange(nickname, newCardId, gold, onTableOrDeck, headDeck, null, currentPlayer, gameState)),
+                    nickname, null);
+            EncodedMessage forOthers = sequence(new TurnDelta(new TurnChange(nickname, newCardId, gold, onTableOrDeck,
+                    headDeck, hiddenHand, currentPlayer, gameState)), null, nickname);
+            if (forPlayer == null || forOthers == null) {
+                return;
+            }
+            for (ClientHandler connection : connections.values()) {
+                if (nickname.equals(connection.getNickname())) {
+                    connection.sendEncoded(forPlayer);
+                } else {
+                    connection.sendEncoded(forOthers);
+                }
+            }
         }
     }
 
@@ -457,6 +592,45 @@ public class NetworkServerSocket implements NetworkPlug {
         sendBroadCastMessageDisconnection(new StopGaming());
     }
 
+    /**
+     * Implements the stopAccepting method of the NetworkPlug interface.
+     * The server socket is closed, and the commands received from now on are
+     * dropped, while the commands being executed are waited for.
+     *
+     * @param timeoutMillis The longest time to wait for the commands, in
+     *                      milliseconds.
+     */
+    @Override
+    public void stopAccepting(long timeoutMillis) {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            Log.warn("SOCKET: cannot close the server socket: {}", e.getMessage());
+        }
+        if (!commands.close(timeoutMillis)) {
+            Log.warn("SOCKET: some commands are still running, the game is saved without them.");
+        }
+        Log.info("SOCKET: no longer accepting connections and commands.");
+    }
+
+    /**
+     * Implements the awaitDisconnection method of the NetworkPlug interface.
+     * It waits for the writers of the closed connections to write their queued
+     * messages.
+     *
+     * @param timeoutMillis The longest time to wait, in milliseconds.
+     */
+    @Override
+    public void awaitDisconnection(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (ClientHandler connection : closingConnections) {
+            if (!connection.awaitClosed(deadline - System.currentTimeMillis())) {
+                Log.warn("SOCKET: {} did not receive all the messages.", connection.getNickname());
+            }
+        }
+    }
+
     /**
      * Notifies all connected clients about the current turn.
      *
@@ -468,8 +642,10 @@ public class NetworkServerSocket implements NetworkPlug {
      */
     @Override
     public void notifyTurn() {
-        for (ClientHandler connection : connections.values()) {
-            connection.sendMessage(new TurnInfo(controller.getCurrentPlayer(), controller.getGameState()));
+        synchronized (events) {
+            for (ClientHandler connection : connections.values()) {
+                connection.sendMessage(new TurnInfo(controller.getCurrentPlayer(), controller.getGameState()));
+            }
         }
     }
 
@@ -491,18 +667,65 @@ public class NetworkServerSocket implements NetworkPlug {
      * This class is used to handle the connection with the client.
      */
     private static class ClientHandler extends Thread {
+        /**
+         * The maximum number of messages waiting to be written to a client. When the
+         * queue is full, the client is considered dead and it is disconnected. It is
+         * read for each connection, from the "codex.socket.outbound.capacity" property
+         * (1024 by default).
+         */
+        private final int outboundCapacity = Integer.getInteger("codex.socket.outbound.capacity", 1024);
+        /**
+         * When the outbound queue of a client reaches this size, the client is
+         * considered slow and the chat messages to it are dropped. It is read from
+         * the "codex.socket.outbound.high" property (256 by default).
+         */
+        private final int outboundHighWatermark = Integer.getInteger("codex.socket.outbound.high", 256);
+        /**
+         * When the outbound queue of a slow client goes back to this size, the client
+         * receives all the messages again. It is read from the
+         * "codex.socket.outbound.low" property (64 by default).
+         */
+        private final int outboundLowWatermark = Integer.getInteger("codex.socket.outbound.low", 64);
         /**
          * The client socket used to communicate with the client.
          */
         private final Socket clientSocket;
         /**
-         * The ObjectOutputStream used to send messages to the client.
+         * The stream used to send framed messages to the client.
+         */
+        private DataOutputStream out;
+        /**
+         * The stream used to receive framed messages from the client.
+         */
+        private DataInputStream in;
+        /**
+         * The messages waiting to be written to the client. They are written by the
+         * writer thread of the connection, so the threads that produce the messages
+         * never block on the socket of a slow client.
          */
-        private ObjectOutputStream out;
+        private final LinkedBlockingQueue<EncodedMessage> outbound = new LinkedBlockingQueue<>(outboundCapacity);
         /**
-         * The ObjectInputStream used to receive messages from the client.
+         * The thread that writes the outbound messages to the client.
          */
-        private ObjectInputStream in;
+        private Thread writer;
+        /**
+         * True when the outbound queue has gone above the high watermark, and not yet
+         * below the low watermark. While it is true, chat messages are not sent to the
+         * client.
+         */
+        private volatile boolean degraded = false;
+        /**
+         * The number of messages dropped because the client was not keeping up.
+         */
+        private final AtomicLong droppedMessages = new AtomicLong();
+        /**
+         * True when the connection must be closed once the outbound queue is empty.
+         */
+        private volatile boolean closing = false;
+        /**
+         * True when the socket has been closed on purpose by the server.
+         */
+        private volatile boolean closed = false;
         /**
          * The Controller object used to access the game state and perform game actions.
          */
@@ -516,14 +739,28 @@ public class NetworkServerSocket implements NetworkPlug {
          */
         private String nickname;
         /**
-         * The connection status of the client.
+         * The liveness of the client, tracked by the HeartbeatMonitor once the game
+         * has started. Any message received from the client counts as a heartbeat.
+         */
+        private volatile HeartbeatMonitor.Peer heartbeat;
+        /**
+         * True when the client has come back on a new connection, which replaces
+         * this one: losing this connection is then expected.
+         */
+        private volatile boolean replaced = false;
+        /**
+         * True once the loss of the connection has been handled.
+         */
+        private final AtomicBoolean lost = new AtomicBoolean(false);
+        /**
+         * The name of the connection in the traffic metrics: the address of the
+         * client.
          */
-        private boolean connection;
+        private final String connectionName;
         /**
-         * The ScheduledExecutorService used to periodically check if the client is
-         * still connected to the server.
+         * The traffic of the connection.
          */
-        private ScheduledExecutorService scheduler;
+        private final TrafficCounter traffic;
 
         /**
          * This constructor is used to create a new ClientHandler.
@@ -534,7 +771,8 @@ public class NetworkServerSocket implements NetworkPlug {
             this.clientSocket = socket;
             controller = Controller.getInstance();
             networkHandler = NetworkHandler.getInstance();
-            connection = true;
+            connectionName = String.valueOf(socket.getRemoteSocketAddress());
+            traffic = TrafficMetrics.getInstance().openConnection(CommandMetrics.Transport.SOCKET, connectionName);
         }
 
         /**
@@ -550,30 +788,108 @@ public class NetworkServerSocket implements NetworkPlug {
         @Override
         public void run() {
             try {
-                out = new ObjectOutputStream(clientSocket.getOutputStream());
-                in = new ObjectInputStream(clientSocket.getInputStream());
-                connection = true;
+                out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+                in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+
+                writer = new Thread(this::writeMessages, "socket-writer-" + clientSocket.getRemoteSocketAddress());
+                writer.setDaemon(true);
+                writer.start();
 
                 ClientMessage message;
 
                 while (clientSocket.isConnected()) {
                     try {
-                        message = (ClientMessage) in.readObject();
-                        handleMessage(message);
+                        EncodedMessage frame = EncodedMessage.read(in);
+                        long received = System.nanoTime();
+                        message = (ClientMessage) frame.decode();
+                        TrafficMetrics.getInstance().received(CommandMetrics.Transport.SOCKET, controller.getGameId(),
+                                traffic, message.getClass().getSimpleName(), frame.size());
+                        Log.debug("SOCKET: {} received from {}", message.getClass().getSimpleName(), connectionName);
+                        HeartbeatMonitor.Peer peer = heartbeat;
+                        if (peer != null) {
+                            peer.touch();
+                        }
+                        if (!commands.enter()) {
+                            // the server is shutting down: the command is dropped
+                            continue;
+                        }
+                        long start = System.nanoTime();
+                        CommandEvent event = CommandEvent.start();
+                        CommandTrace trace = CommandTrace.begin(message.getCorrelation(), received);
+                        try {
+                            handleMessage(message);
+                        } finally {
+                            commands.exit();
+                            CommandMetrics.getInstance().record(commandOf(message), CommandMetrics.Transport.SOCKET,
+                                    start);
+                            event.finish(Controller.getInstance().getGameId(), nickname,
+                                    message.getClass().getSimpleName(), "socket", frame.size());
+                            if (trace != null) {
+                                // the timings go back to the client that traced the command
+                                sendMessage(new CommandTimed(trace.end(message.getClass().getSimpleName())));
+                            }
+                        }
                     } catch (ClassNotFoundException e) {
                         sendErrorMessage(ErrorType.INVALID_MESSAGE);
-                        System.out.println("Invalid message received");
+                        Log.warn("Invalid message received");
                     }
                 }
             } catch (IOException e) {
-                try {
-                    if (controller.getLobby().getPlayerFromName(nickname) != null) {
-                        // disconnect all the clients connected to the server RMI and Socket
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                    }
-                } catch (NoNameException ex) {
-                    System.out.println("Seems this player was not in the lobby.");
+                connectionLost();
+            }
+        }
+
+        /**
+         * This method is used to find the command of a message, whose latency is
+         * recorded.
+         *
+         * @param message The message received from the client.
+         * @return The command of the message, or null if its latency is not recorded.
+         */
+        private static CommandMetrics.Command commandOf(ClientMessage message) {
+            if (message instanceof ChosenStartingCardSide) {
+                return CommandMetrics.Command.PLACE_ROOT_CARD;
+            } else if (message instanceof ChosenObjectiveCard) {
+                return CommandMetrics.Command.CHOOSE_OBJECTIVE_CARD;
+            } else if (message instanceof CardToBePositioned) {
+                return CommandMetrics.Command.PLACE_CARD;
+            } else if (message instanceof CardToBeDrawn) {
+                return CommandMetrics.Command.DRAW_CARD;
+            }
+            return null;
+        }
+
+        /**
+         * This method is used to handle the loss of the connection with the client.
+         * If the game has started, the client can come back with its session token
+         * during the grace period; otherwise, or when the grace period ends, all the
+         * clients are disconnected. It is run once per connection.
+         */
+        private void connectionLost() {
+            stopHeartbeat();
+            if (!lost.compareAndSet(false, true)) {
+                return;
+            }
+            closeNow();
+            try {
+                if (controller.getLobby().getPlayerFromName(nickname) == null) {
+                    return;
+                }
+            } catch (NoNameException ex) {
+                Log.debug("Seems this player was not in the lobby.");
+                return;
+            }
+            Runnable disconnect = () -> NetworkHandler.getInstance().disconnectBroadcast();
+            boolean waiting;
+            synchronized (ClientHandler.class) {
+                if (replaced) {
+                    return;
                 }
+                waiting = SessionManager.getInstance().lost(nickname, disconnect);
+            }
+            if (!waiting) {
+                // disconnect all the clients connected to the server RMI and Socket
+                disconnect.run();
             }
         }
 
@@ -596,6 +912,9 @@ public class NetworkServerSocket implements NetworkPlug {
                     networkHandler.refreshUsersBroadcast();
                     // send the status of the login to the client
                     sendMessage(new StatusLogin(controller.isFirst(parsedMessage.getNickname())));
+                    // the token lets the client come back to the game if its connection drops
+                    sendMessage(new SessionToken(SessionManager.getInstance().open(nickname)));
+                    ChatRouter.getInstance().join(nickname);
 
                     // if is not first, it delivers if the lobby is ready to start
                     if (!controller.isFirst(parsedMessage.getNickname())) {
@@ -644,7 +963,13 @@ public class NetworkServerSocket implements NetworkPlug {
                 }
             } else if (message instanceof SentChatMessage) {
                 SentChatMessage sentChatMessage = (SentChatMessage) message;
-                networkHandler.sendChatMessageBroadcast(sentChatMessage.getSender(), sentChatMessage.getMessage());
+                // the sender is the player logged in on this connection, whatever the message says
+                if (nickname != null && nickname.equals(sentChatMessage.getSender())) {
+                    networkHandler.sendChatMessageBroadcast(nickname, sentChatMessage.getMessage());
+                } else {
+                    Log.warn("SOCKET: chat message of {} dropped, the connection is logged in as {}.",
+                            sentChatMessage.getSender(), nickname);
+                }
             } else if (message instanceof ChosenStartingCardSide) {
                 // this message is used to choose the side of the root card of the player.
                 ChosenStartingCardSide parsedMessage = (ChosenStartingCardSide) message;
@@ -747,53 +1072,203 @@ public class NetworkServerSocket implements NetworkPlug {
                 } catch (CardPositionException e) {
                     sendErrorMessage(ErrorType.CARD_POSITION);
                 }
+            } else if (message instanceof ReconnectMessage) {
+                // the client comes back after losing its connection
+                ReconnectMessage parsedMessage = (ReconnectMessage) message;
+                synchronized (events) {
+                    if (!resumeSession(parsedMessage.getToken())) {
+                        // the game has ended while the client was away
+                        sendErrorMessage(ErrorType.SESSION_EXPIRED);
+                        hastaLaVistaBaby();
+                        return;
+                    }
+                    // the events queued before the session was resumed are sent again in
+                    // order after the token, which tells the client where they start
+                    outbound.clear();
+                    sendMessage(new SessionToken(parsedMessage.getToken()));
+                    sendMissedEvents(parsedMessage.getLastSequence());
+                }
+                startHeartbeat();
             } else if (message instanceof ConnectionClient) {
                 sendMessage(new ConnectionServerForClient());
             } else if (message instanceof ConnectionClientForServer) {
-                connection = true;
+                // the answer to a ping: the heartbeat has already been updated when the
+                // message was received
             } else {
                 throw new ClassNotFoundException();
             }
         }
 
+        /**
+         * This method is used to resume the session of a client that comes back.
+         * The old connections of the player are closed and replaced by this one.
+         *
+         * @param token The token of the session, given at login.
+         * @return true if the session has been resumed, false if it has expired.
+         */
+        private boolean resumeSession(String token) {
+            synchronized (ClientHandler.class) {
+                String name = SessionManager.getInstance().resume(token);
+                if (name == null) {
+                    return false;
+                }
+                nickname = name;
+                ConcurrentHashMap<String, ClientHandler> current = connections;
+                for (String address : new ArrayList<>(current.keySet())) {
+                    ClientHandler connection = current.get(address);
+                    if (connection != this && connection != null && name.equals(connection.getNickname())) {
+                        connection.replaced = true;
+                        connection.closeNow();
+                        current.remove(address);
+                    }
+                }
+                return true;
+            }
+        }
+
+        /**
+         * This method is used to send to a client that comes back the events it has
+         * missed. If some of them are no longer kept, the client receives the whole
+         * game instead. The caller holds the lock of the events.
+         *
+         * @param lastSequence The sequence number of the last event received by the
+         *                     client.
+         */
+        private void sendMissedEvents(long lastSequence) {
+            ArrayList<EncodedMessage> missed = events.since(lastSequence, nickname);
+            if (missed != null) {
+                Log.info("SOCKET: {} is back, {} events sent again.", nickname, missed.size());
+                for (EncodedMessage event : missed) {
+                    sendEncoded(event);
+                }
+                return;
+            }
+            GameMaster game = controller.getGameMaster();
+            if (game == null) {
+                Log.info("SOCKET: {} is back, but its missed events are lost.", nickname);
+                sendErrorMessage(ErrorType.SESSION_EXPIRED);
+                hastaLaVistaBaby();
+                return;
+            }
+            Log.info("SOCKET: {} is back, too many events missed: sending the game.", nickname);
+            sendFullGameState(game);
+        }
+
         /**
          * This method is used to close the connection with the client.
+         * The messages already queued are written before the socket is closed.
          */
         private void hastaLaVistaBaby() {
+            closing = true;
+            if (writer == null) {
+                closeNow();
+            } else {
+                // wake up the writer if it is waiting for messages
+                writer.interrupt();
+            }
+        }
+
+        /**
+         * This method is used to wait until the queued messages have been written and
+         * the socket has been closed.
+         *
+         * @param timeoutMillis The longest time to wait, in milliseconds.
+         * @return true if the socket has been closed in time.
+         */
+        private boolean awaitClosed(long timeoutMillis) {
+            Thread thread = writer;
+            if (thread != null && timeoutMillis > 0) {
+                try {
+                    thread.join(timeoutMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return closed;
+        }
+
+        /**
+         * This method is used to close the socket immediately, discarding the queued
+         * messages.
+         */
+        private void closeNow() {
+            closed = true;
+            stopHeartbeat();
+            outbound.clear();
+            TrafficMetrics.getInstance().closeConnection(CommandMetrics.Transport.SOCKET, connectionName);
             try {
-                in.close();
-                out.close();
                 clientSocket.close();
             } catch (IOException e) {
-                System.out.println("Error closing connection. Connection already closed.");
+                Log.debug("Error closing connection. Connection already closed.");
             }
         }
 
         /**
-         * This method is used to periodically check if the client is still connected to
-         * the server.
-         * It runs in a separate thread and pauses for a specified interval (30 seconds
-         * in this case) between each check.
-         * If the client is no longer connected, it triggers a broadcast to disconnect
-         * all clients.
-         */
-        private void isClientConnected() {
-            scheduler = Executors.newScheduledThreadPool(1);
-
-            final Runnable checker = new Runnable() {
-                public void run() {
-                    if (!connection) {
-                        NetworkHandler.getInstance().disconnectBroadcast();
-                        scheduler.shutdown(); // Stop the scheduler when connection is lost
-                    } else {
-                        connection = false;
-                        sendMessage(new ConnectionServer());
+         * This method is run by the writer thread of the connection.
+         * It writes the queued messages to the client, flushing the stream only when
+         * the queue is empty, so that a burst of messages costs a single write on the
+         * socket.
+         */
+        private void writeMessages() {
+            try {
+                while (true) {
+                    EncodedMessage message = outbound.poll();
+                    if (message == null) {
+                        out.flush();
+                        if (closing) {
+                            break;
+                        }
+                        try {
+                            message = outbound.take();
+                        } catch (InterruptedException e) {
+                            // woken up to close the connection: drain the queue first
+                            continue;
+                        }
+                    }
+                    message.writeTo(out);
+                    TrafficMetrics.getInstance().sent(CommandMetrics.Transport.SOCKET, controller.getGameId(),
+                            traffic, message.getType(), message.size());
+
+                    if (degraded && outbound.size() <= outboundLowWatermark) {
+                        degraded = false;
+                        Log.info("SOCKET: {} is keeping up again, {} chat messages dropped so far.", nickname,
+                                droppedMessages.get());
                     }
                 }
-            };
+                closeNow();
+            } catch (IOException e) {
+                if (!closed) {
+                    connectionLost();
+                }
+            }
+        }
 
-            // Schedule the task to run every 30 seconds
-            scheduler.scheduleAtFixedRate(checker, 30, 30, TimeUnit.SECONDS);
+        /**
+         * This method is used to start checking if the client is still connected to
+         * the server.
+         * The client is pinged only when it has been silent for a whole heartbeat
+         * interval; if it stays silent until the timeout, its connection is lost.
+         * From now on, the client can come back to the game with its session token.
+         * Calling it again has no effect.
+         */
+        private synchronized void startHeartbeat() {
+            if (heartbeat != null) {
+                return;
+            }
+            SessionManager.getInstance().arm(nickname);
+            heartbeat = HeartbeatMonitor.getInstance().register("socket " + nickname,
+                    () -> sendMessage(new ConnectionServer()),
+                    this::connectionLost);
+        }
+
+        /**
+         * This method is used to stop checking if the client is still connected.
+         */
+        private void stopHeartbeat() {
+            HeartbeatMonitor.Peer peer = heartbeat;
+            if (peer != null) {
+                peer.cancel();
+            }
         }
 
         /**
@@ -816,17 +1291,91 @@ public class NetworkServerSocket implements NetworkPlug {
             if (message instanceof StopWaitingOrDisconnect) {
                 // start the thread to check if the client is still connected
                 if (((StopWaitingOrDisconnect) message).isStopWaitingOrDisconnect()) {
-                    new Thread(this::isClientConnected).start();
+                    startHeartbeat();
                 }
             }
 
-            try {
-                out.writeObject(message);
-                out.reset();
-            } catch (IOException e) {
-                // disconnect all the clients connected to the server RMI and Socket
-                NetworkHandler.getInstance().disconnectBroadcast();
+            boolean droppable = message instanceof ReceivedChatMessage;
+            message.setCorrelationId(CommandTrace.currentCorrelationId());
+            if (nickname == null || !isEvent(message)) {
+                try {
+                    sendEncoded(encode(message), droppable);
+                } catch (IOException e) {
+                    Log.error("Debugging error: cannot serialize {}", message.getClass().getSimpleName());
+                }
+                return;
             }
+            synchronized (events) {
+                EncodedMessage encodedMessage = sequence(message, nickname, null);
+                if (encodedMessage != null) {
+                    sendEncoded(encodedMessage, droppable);
+                }
+            }
+        }
+
+        /**
+         * This method is used to know if a message is an event of the game, which a
+         * client that comes back must receive if it has missed it. Pings, errors, the
+         * session token and the timings of a traced command are not.
+         *
+         * @param message The message to be sent.
+         * @return true if the message is an event of the game.
+         */
+        private static boolean isEvent(ServerMessage message) {
+            return !(message instanceof ConnectionServer || message instanceof ConnectionServerForClient
+                    || message instanceof ErrorMessage || message instanceof SessionToken
+                    || message instanceof CommandTimed);
+        }
+
+        /**
+         * This method is used to send an already serialized message to the client.
+         * Broadcasts share the same frame across all the connections.
+         *
+         * @param message The frame to be sent.
+         */
+        public void sendEncoded(EncodedMessage message) {
+            sendEncoded(message, false);
+        }
+
+        /**
+         * This method is used to queue an already serialized message for the client.
+         * The message is written by the writer thread of the connection.
+         *
+         * If the client is not keeping up (its queue is above the high watermark),
+         * droppable messages are discarded. If its queue is full, the client is
+         * disconnected.
+         *
+         * @param message   The frame to be sent.
+         * @param droppable True if the message can be discarded for a slow client.
+         */
+        public void sendEncoded(EncodedMessage message, boolean droppable) {
+            if (closing || closed) {
+                return;
+            }
+            if (!degraded && outbound.size() >= outboundHighWatermark) {
+                degraded = true;
+                Log.warn("SOCKET: {} is too slow, {} messages queued. Chat messages to it will be dropped.", nickname,
+                        outbound.size());
+            }
+            if (droppable && degraded) {
+                droppedMessages.incrementAndGet();
+                return;
+            }
+            if (!outbound.offer(message)) {
+                Log.warn("SOCKET: {} is not reading its messages, {} messages queued. Closing the connection.", nickname,
+                        outboundCapacity);
+                // the reader thread will notice the closed socket and disconnect the game
+                closeNow();
+            }
+        }
+
+        /**
+         * Getter of the number of messages waiting to be written to the client.
+         *
+         * @return the size of the outbound queue
+         */
+        public int getOutboundQueueDepth() {
+            return outbound.size();
         }
 
         /**
@@ -835,13 +1384,9 @@ public class NetworkServerSocket implements NetworkPlug {
          * @param message The message to be sent.
          */
         public void sendMessageDisconnection(ServerMessage message) {
-            try {
-                out.writeObject(message);
-                scheduler.shutdownNow();
-                hastaLaVistaBaby();
-            } catch (IOException e) {
-                System.out.println("SOCKET: Error closing connection." + nickname + "Connection already closed.");
-            }
+            sendMessage(message);
+            stopHeartbeat();
+            hastaLaVistaBaby();
         }
 
         /**
@@ -855,38 +1400,8 @@ public class NetworkServerSocket implements NetworkPlug {
                         Arrays.asList(controller.getSecretObjectiveCardsToChoose(nickname)));
                 sendMessage(new GiveSecretObjectiveCards(choices));
             } catch (NoNameException e) {
-                System.out.println("No name exception");
-            }
-        }
-
-        /**
-         * This method is used to send the drawn card to the clients. It is a broadcast
-         * call.
-         *
-         * @param nickname      The nickname of the player.
-         * @param newCardId     The id of the new card.
-         * @param headDeck      The head deck.
-         * @param gold          A boolean indicating whether the card is gold. To know
-         *                      which deck to update.
-         * @param onTableOrDeck An integer indicating whether the card is on the table
-         *                      or
-         *                      the deck.
-         */
-        public void sendDrawnCardIfPlayer(String nickname, Integer newCardId, Kingdom headDeck, boolean gold,
-                int onTableOrDeck) {
-            // if the player is the one that has drawn the card, we send the hidden hand to
-            // the player.
-            if (!this.nickname.equals(nickname)) {
-                try {
-                    sendMessage(new ShowHiddenHand(nickname, controller.getHiddenHand(nickname)));
-                } catch (NoNameException e) {
-                    System.out.println("No name exception");
-                }
+                Log.error("No name exception");
             }
-            // this message has two cards information: the new card drawn and the head deck
-            // onTableOrDeck is used to know if we should update the table.
-            sendMessage(new ShowNewTable(newCardId, gold, onTableOrDeck, headDeck));
-            sendMessage(new TurnInfo(controller.getCurrentPlayer(), controller.getGameState()));
         }
 
         /**
@@ -907,7 +1422,7 @@ public class NetworkServerSocket implements NetworkPlug {
                 try {
                     sendMessage(new ShowHand(nickname, controller.getHand(nickname)));
                 } catch (NoNameException e) {
-                    System.out.println("No name exception");
+                    Log.error("No name exception");
                 }
             } else {
                 // if the player is not the one that has drawn the card, we send the hidden hand
@@ -915,7 +1430,7 @@ public class NetworkServerSocket implements NetworkPlug {
                 try {
                     sendMessage(new ShowHiddenHand(nickname, controller.getHiddenHand(nickname)));
                 } catch (NoNameException e) {
-                    System.out.println("No name exception");
+                    Log.error("No name exception");
                 }
             }
             // if all the players have chosen the secret objective card, we send the
@@ -944,20 +1459,26 @@ public class NetworkServerSocket implements NetworkPlug {
             try {
                 sendMessage(new ShowStartingCard(controller.getStartingCard(nickname)));
             } catch (NoNameException e) {
-                System.out.println("No name exception");
+                Log.error("No name exception");
             }
         }
 
         /**
-         * This method is used to send the full game state to the clients.
+         * This method is used to send the game state to the client.
+         * The client receives a projection of the game built for its player, not the
+         * whole GameMaster.
          * 
          * @param game The game state to be sent.
          */
         public void sendFullGameState(GameMaster game) {
-            sendMessage(new loadSavedGame(game));
+            try {
+                sendMessage(new loadSavedGame(new ResumeSnapshot(game, nickname)));
+            } catch (NoNameException e) {
+                Log.error("Debugging error: NoNameException in sendFullGameState");
+            }
 
-            // start the thread to check if the client is still connected
-            new Thread(this::isClientConnected).start();
+            // start checking if the client is still connected
+            startHeartbeat();
         }
     }
 }
\ No newline at end of file
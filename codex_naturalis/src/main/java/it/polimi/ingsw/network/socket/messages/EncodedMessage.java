@@ -0,0 +1,136 @@
+package it.polimi.ingsw.network.socket.messages;
+
+import java.io.*;
+
+/**
+ * This class represents a message that has already been serialized into a frame ready to be written on a socket.
+ *
+ * A frame is the length of the payload (as an int) followed by the payload itself, which is a standalone
+ * Java serialization stream of a single {@link Message}.
+ * The frame is immutable, so the same instance can be written to the output stream of every recipient of a
+ * broadcast: the message is serialized once, no matter how many clients are connected.
+ *
+ * A frame read from the wire is refused if its length is above the largest frame, given in bytes by the system
+ * property "codex.socket.maxFrame" (8 MiB by default), so a forged length cannot make the reader allocate it.
+ */
+public final class EncodedMessage {
+    /**
+     * The largest payload accepted from the wire, in bytes.
+     */
+    private static final int MAX_FRAME = Integer.getInteger("codex.socket.maxFrame", 8 * 1024 * 1024);
+
+    /**
+     * The serialized message, without the length prefix.
+     */
+    private final byte[] payload;
+    /**
+     * The simple name of the class of the message, or null if the frame has been read and not encoded.
+     */
+    private final String type;
+
+    /**
+     * This constructor is private: instances are created through {@link #encode(Message)} and
+     * {@link #read(DataInputStream)}.
+     *
+     * @param payload The serialized message.
+     * @param type    The simple name of the class of the message, or null if it is not known.
+     */
+    private EncodedMessage(byte[] payload, String type) {
+        this.payload = payload;
+        this.type = type;
+    }
+
+    /**
+     * Serializes the given message into a new frame.
+     *
+     * @param message The message to be serialized.
+     * @return The encoded message.
+     * @throws IOException If the message cannot be serialized.
+     */
+    public static EncodedMessage encode(Message message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(buffer)) {
+            objectOutputStream.writeObject(message);
+        }
+        return new EncodedMessage(buffer.toByteArray(), message.getClass().getSimpleName());
+    }
+
+    /**
+     * Writes the frame on the given stream. The stream is not flushed, so several frames can be written
+     * with a single flush.
+     * The caller is responsible for serializing concurrent writes on the same stream.
+     *
+     * @param out The stream of the recipient.
+     * @throws IOException If the frame cannot be written.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * Reads a frame from the given stream and deserializes the message it contains.
+     * It blocks until a whole frame is received.
+     *
+     * @param in The stream of the sender.
+     * @return The decoded message.
+     * @throws IOException            If the stream is closed or the frame is corrupted.
+     * @throws ClassNotFoundException If the class of the message is unknown.
+     */
+    public static Message readFrom(DataInputStream in) throws IOException, ClassNotFoundException {
+        return read(in).decode();
+    }
+
+    /**
+     * Reads a frame from the given stream, without deserializing it, so its size is known before the message.
+     * It blocks until a whole frame is received.
+     *
+     * @param in The stream of the sender.
+     * @return The frame received.
+     * @throws IOException If the stream is closed or the frame is corrupted or too large.
+     */
+    public static EncodedMessage read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new StreamCorruptedException("Negative frame length: " + length);
+        }
+        // checked before the payload is allocated
+        if (length > MAX_FRAME) {
+            throw new StreamCorruptedException("Frame of " + length + " bytes, above the largest of " + MAX_FRAME);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new EncodedMessage(payload, null);
+    }
+
+    /**
+     * Deserializes the message contained in the frame.
+     *
+     * @return The decoded message.
+     * @throws IOException            If the frame is corrupted.
+     * @throws ClassNotFoundException If the class of the message is unknown.
+     */
+    public Message decode() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (Message) objectInputStream.readObject();
+        }
+    }
+
+    /**
+     * Getter of the size of the frame, length prefix included.
+     *
+     * @return The number of bytes written by {@link #writeTo(DataOutputStream)}.
+     */
+    public int size() {
+        return payload.length + Integer.BYTES;
+    }
+
+    /**
+     * Getter of the type of the message in the frame.
+     *
+     * @return The simple name of the class of the message, or null if the frame has been read and not encoded.
+     */
+    public String getType() {
+        return type;
+    }
+}
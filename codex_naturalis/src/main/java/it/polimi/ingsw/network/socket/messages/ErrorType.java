@@ -60,6 +60,11 @@ public enum ErrorType {
      */
     WRONG_PHASE, // WrongPhaseException
 
+    /**
+     * Represents an error when a client tries to come back to a game with a session that has expired.
+     */
+    SESSION_EXPIRED,
+
     /**
      * Represents an error when the server doesn't recognize the exception type.
      */
@@ -1,5 +1,6 @@
 package it.polimi.ingsw.network.socket.messages.client;
 
+import it.polimi.ingsw.network.Correlation;
 import it.polimi.ingsw.network.socket.messages.Message;
 
 /**
@@ -11,5 +12,24 @@ import it.polimi.ingsw.network.socket.messages.Message;
  * @see Message
  */
 public abstract class ClientMessage extends Message {
+    /**
+     * The correlation of the command, null if the client does not trace it.
+     */
+    private Correlation correlation = null;
 
+    /**
+     * This method is used to get the correlation of the command.
+     * @return The correlation, null if the command is not traced.
+     */
+    public Correlation getCorrelation() {
+        return correlation;
+    }
+
+    /**
+     * This method is used to set the correlation of the command, before it is sent.
+     * @param correlation The correlation, null if the command is not traced.
+     */
+    public void setCorrelation(Correlation correlation) {
+        this.correlation = correlation;
+    }
 }
@@ -0,0 +1,51 @@
+package it.polimi.ingsw.network.socket.messages.client.login;
+
+import it.polimi.ingsw.network.socket.messages.client.ClientMessage;
+
+/**
+ * This class represents a client message that is sent from the client to the server to come back to its game after
+ * the connection has been lost.
+ *
+ * It contains the token of the session received at login and the sequence number of the last event received, so the
+ * server sends only the events the client has missed.
+ * @see ClientMessage
+ */
+public class ReconnectMessage extends ClientMessage {
+    /**
+     * The token of the session of the player.
+     */
+    private final String token;
+    /**
+     * The sequence number of the last event received by the client.
+     */
+    private final long lastSequence;
+
+    /**
+     * Constructor for ReconnectMessage.
+     *
+     * @param token        The token of the session of the player.
+     * @param lastSequence The sequence number of the last event received.
+     */
+    public ReconnectMessage(String token, long lastSequence) {
+        this.token = token;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Gets the token of the session of the player.
+     *
+     * @return The token of the session.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Gets the sequence number of the last event received by the client.
+     *
+     * @return The sequence number.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+}
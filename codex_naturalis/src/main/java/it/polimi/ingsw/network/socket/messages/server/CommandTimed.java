@@ -0,0 +1,43 @@
+package it.polimi.ingsw.network.socket.messages.server;
+
+import it.polimi.ingsw.controller.client.Controller;
+import it.polimi.ingsw.network.RoundTrip;
+
+/**
+ * This message reports to a client the timing of a traced command it has sent, once the server has handled it and
+ * handed its answers to the transports.
+ */
+public class CommandTimed extends ServerMessage {
+    /**
+     * The timing of the command.
+     */
+    private final RoundTrip roundTrip;
+
+    /**
+     * Constructs a new CommandTimed message.
+     *
+     * @param roundTrip The timing of the command, as measured by the server.
+     */
+    public CommandTimed(RoundTrip roundTrip) {
+        this.roundTrip = roundTrip;
+    }
+
+    /**
+     * This method is used to get the timing of the command.
+     *
+     * @return The timing of the command.
+     */
+    public RoundTrip getRoundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * This method is used to invoke the `logRoundTrip` method on the provided controller.
+     *
+     * @param controller The controller on which the `logRoundTrip` method will be invoked.
+     */
+    @Override
+    public void callController(Controller controller) {
+        controller.logRoundTrip(roundTrip);
+    }
+}
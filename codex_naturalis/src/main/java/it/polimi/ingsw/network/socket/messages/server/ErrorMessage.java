@@ -91,6 +91,10 @@ public class ErrorMessage extends ServerMessage {
             case NOT_ENOUGH_RESOURCES:
                 controller.notEnoughResources();
                 break;
+            //the game has ended while the client was away
+            case SESSION_EXPIRED:
+                controller.noConnection();
+                break;
         }
     }
 }
@@ -8,6 +8,47 @@ import it.polimi.ingsw.network.socket.messages.Message;
  * It extends the `Message` class and provides an abstract method `callController` that must be implemented by any specific type of server message.
  */
 public abstract class ServerMessage extends Message {
+    /**
+     * The sequence number of the message in the events of the game, 0 if the message is not part of them.
+     */
+    private long sequence = 0;
+    /**
+     * The correlation id of the traced command that caused the message, 0 if there is none.
+     */
+    private long correlationId = 0;
+
+    /**
+     * This method is used to get the sequence number of the message.
+     * @return The sequence number, 0 if the message is not part of the events of the game.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * This method is used to set the sequence number of the message, before it is sent.
+     * @param sequence The sequence number of the message.
+     */
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * This method is used to get the correlation id of the traced command that caused the message.
+     * @return The correlation id, 0 if the message is not the answer to a traced command.
+     */
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * This method is used to set the correlation id of the traced command that caused the message, before it is sent.
+     * @param correlationId The correlation id, 0 if the message is not the answer to a traced command.
+     */
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
     /**
      *  * The method is used to invoke the appropriate method on the provided controller based on the type of the server message.
      * @param controller The controller(singleton) on which the appropriate method will be invoked.
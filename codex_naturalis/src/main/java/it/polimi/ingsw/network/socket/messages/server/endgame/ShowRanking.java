@@ -1,7 +1,7 @@
 package it.polimi.ingsw.network.socket.messages.server.endgame;
 
 import it.polimi.ingsw.controller.client.Controller;
-import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
 import it.polimi.ingsw.network.socket.messages.server.ServerMessage;
 
 import java.util.ArrayList;
@@ -17,14 +17,14 @@ public class ShowRanking extends ServerMessage {
     /**
      * The ranking of players.
      */
-    private final ArrayList<Player> ranking;
+    private final ArrayList<RankingEntry> ranking;
 
     /**
      * Constructor for ShowRanking.
      *
      * @param ranking The ranking of players.
      */
-    public ShowRanking(ArrayList<Player> ranking) {
+    public ShowRanking(ArrayList<RankingEntry> ranking) {
         this.ranking = ranking;
     }
 
@@ -33,7 +33,7 @@ public class ShowRanking extends ServerMessage {
      *
      * @return The ranking of players.
      */
-    public ArrayList<Player> getRanking() {
+    public ArrayList<RankingEntry> getRanking() {
         return ranking;
     }
     /**
@@ -0,0 +1,49 @@
+package it.polimi.ingsw.network.socket.messages.server.gameflow;
+
+import it.polimi.ingsw.controller.client.Controller;
+import it.polimi.ingsw.model.TurnChange;
+import it.polimi.ingsw.network.socket.messages.server.ServerMessage;
+
+/**
+ * This class represents a server message that carries everything a command of a player has changed in the game.
+ *
+ * It replaces the sequence CardIsPositioned, RefreshedResources, RefreshedPoints and TurnInfo after a placement,
+ * and ShowHiddenHand, ShowNewTable and TurnInfo after a draw: a single message is sent for each command.
+ * The content is a TurnChange, the same object the RMI callback receives.
+ *
+ * @see ServerMessage
+ */
+public class TurnDelta extends ServerMessage {
+    /**
+     * What the command has changed in the game.
+     */
+    private final TurnChange change;
+
+    /**
+     * Constructs a new TurnDelta with the specified change.
+     *
+     * @param change What the command has changed in the game.
+     */
+    public TurnDelta(TurnChange change) {
+        this.change = change;
+    }
+
+    /**
+     * Gets what the command has changed in the game.
+     *
+     * @return The change of the command.
+     */
+    public TurnChange getChange() {
+        return change;
+    }
+
+    /**
+     * Calls the `applyTurnDelta` method on the controller with the change of this message.
+     *
+     * @param controller The controller on which the `applyTurnDelta` method will be invoked.
+     */
+    @Override
+    public void callController(Controller controller) {
+        controller.applyTurnDelta(change);
+    }
+}
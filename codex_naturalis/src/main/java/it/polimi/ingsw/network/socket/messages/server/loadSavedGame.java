@@ -1,6 +1,6 @@
 package it.polimi.ingsw.network.socket.messages.server;
 
-import it.polimi.ingsw.model.GameMaster;
+import it.polimi.ingsw.model.ResumeSnapshot;
 import it.polimi.ingsw.controller.client.Controller;
 
 /**
@@ -10,16 +10,16 @@ import it.polimi.ingsw.controller.client.Controller;
  */
 public class loadSavedGame extends ServerMessage {
     /**
-     * The game that is starting.
+     * The game that is starting, as seen by the recipient.
      */
-    private GameMaster game;
+    private ResumeSnapshot game;
 
     /**
      * Constructs a new loadSavedGame object with the specified game.
      *
-     * @param game The game that is starting.
+     * @param game The game that is starting, as seen by the recipient.
      */
-    public loadSavedGame(GameMaster game) {
+    public loadSavedGame(ResumeSnapshot game) {
         this.game = game;
     }
 
@@ -36,9 +36,9 @@ public class loadSavedGame extends ServerMessage {
     /**
      * Returns the game that is starting.
      *
-     * @return The game that is starting.
+     * @return The game that is starting, as seen by the recipient.
      */
-    public GameMaster getGame() {
+    public ResumeSnapshot getGame() {
         return game;
     }
 }
\ No newline at end of file
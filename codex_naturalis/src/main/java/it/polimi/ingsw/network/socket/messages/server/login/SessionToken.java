@@ -0,0 +1,40 @@
+package it.polimi.ingsw.network.socket.messages.server.login;
+
+import it.polimi.ingsw.controller.client.Controller;
+import it.polimi.ingsw.network.socket.messages.server.ServerMessage;
+/**
+ * This class represents the message sent from the server to a client after a successful login.
+ * It contains the token of the session of the player, which the client sends back to resume the game
+ * when its connection has been lost.
+ *
+ * The token is handled by the network client, not by the controller.
+ *
+ * @see ServerMessage
+ */
+public class SessionToken extends ServerMessage {
+    /**
+     * The token of the session.
+     */
+    private final String token;
+    /**
+     * Class constructor that initializes the token.
+     * @param token The token of the session.
+     */
+    public SessionToken(String token) {
+        this.token = token;
+    }
+    /**
+     * This method is used to get the token of the session.
+     * @return The token of the session.
+     */
+    public String getToken() {
+        return token;
+    }
+    /**
+     * The token is kept by the network client, so nothing has to be shown.
+     * @param controller The controller(singleton), not used.
+     */
+    @Override
+    public void callController(Controller controller) {
+    }
+}
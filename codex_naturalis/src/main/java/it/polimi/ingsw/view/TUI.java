@@ -445,10 +445,10 @@ public class TUI implements ViewInterface {
      * @param ranking The ranking of the players.
      */
     @Override
-    public void showRanking(ArrayList<Player> ranking) {
+    public void showRanking(ArrayList<RankingEntry> ranking) {
         synchronized (syncornizedObject) {
             System.out.println("The ranking is:");
-            for (Player player : ranking) {
+            for (RankingEntry player : ranking) {
                 System.out.println(player.getName() + " - " + player.getPoints() + player.getObjectivePoints());
             }
             System.out.println();
@@ -2,7 +2,7 @@ package it.polimi.ingsw.view;
 
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.GameState;
-import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -93,9 +93,9 @@ public interface ViewInterface {
     void showExtraPoints(HashMap<String, Integer> extraPoints);
     /**
      * This method is responsible for showing the ranking of the players. It should visualize the players sorted by their points, and their full points(normal + objective).
-     * @param ranking A list of players sorted by their points.
+     * @param ranking A list of ranking entries sorted by the points of the players.
      */
-    void showRanking(ArrayList<Player> ranking);
+    void showRanking(ArrayList<RankingEntry> ranking);
     /**
      * This method is responsible for showing the cards placed of the player on the table.
      * @param nickname The name of the player.
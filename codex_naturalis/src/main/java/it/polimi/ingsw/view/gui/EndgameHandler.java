@@ -1,6 +1,6 @@
 package it.polimi.ingsw.view.gui;
 
-import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.value.ObservableValue;
@@ -32,7 +32,7 @@ public class EndgameHandler {
      * It is annotated with @FXML, which means it is injected by the JavaFX FXMLLoader.
      */
     @FXML
-    TableView <Player> table;
+    TableView <RankingEntry> table;
     /**
      * Each TableColumn represents a column in the TableView that displays the ranking of players at the end of the game.
      * 'players' is used to display the names of the players.
@@ -42,7 +42,7 @@ public class EndgameHandler {
      * They are annotated with @FXML, which means they are injected by the JavaFX FXMLLoader.
      */
     @FXML
-    TableColumn <Player,String> players,gamePoints,objectivePoints,total;
+    TableColumn <RankingEntry,String> players,gamePoints,objectivePoints,total;
     /**
      * In the context of the EndgameHandler, it is used to trigger the exit operation of the game.
      * It is annotated with @FXML, which means it is injected by the JavaFX FXMLLoader.
@@ -58,16 +58,16 @@ public class EndgameHandler {
      * The 'total' column is calculated as the sum of game points and objective points for each player.
      * Finally, it sets the text of the label to announce the winner of the game.
      *
-     * @param ranking An ArrayList of Player objects, sorted in the order of their ranking.
+     * @param ranking An ArrayList of RankingEntry objects, sorted in the order of their ranking.
      */
-    public void showRanking(ArrayList<Player> ranking){
-        ObservableList<Player> data = FXCollections.observableArrayList(ranking);
+    public void showRanking(ArrayList<RankingEntry> ranking){
+        ObservableList<RankingEntry> data = FXCollections.observableArrayList(ranking);
         table.setItems(data);
         players.setCellValueFactory(new PropertyValueFactory<>("name"));
         gamePoints.setCellValueFactory(new PropertyValueFactory<>("points"));
         objectivePoints.setCellValueFactory(new PropertyValueFactory<>("objectivePoints"));
         total.setCellValueFactory(param -> {
-            Player player = param.getValue();
+            RankingEntry player = param.getValue();
             Integer totalPoints = player.getPoints() + player.getObjectivePoints();
             return new SimpleIntegerProperty(totalPoints).asString();
         });
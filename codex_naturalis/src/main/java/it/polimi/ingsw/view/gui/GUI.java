@@ -2,7 +2,7 @@ package it.polimi.ingsw.view.gui;
 
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.GameState;
-import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
 import it.polimi.ingsw.view.model.CardClient;
 import it.polimi.ingsw.view.model.LittleModel;
 import it.polimi.ingsw.view.ViewInterface;
@@ -411,15 +411,15 @@ public class GUI extends Application implements ViewInterface {
     /**
      * This method is part of the ViewInterface implemented by the GUI class.
      * It is used to display the final ranking of players at the end of the game in the GUI.
-     * The method receives an ArrayList of Player objects representing the final ranking of players.
+     * The method receives an ArrayList of RankingEntry objects representing the final ranking of players.
      * The actual task is delegated to the EndgameHandler's showRanking method.
      * The task is wrapped inside Platform.runLater to ensure that it runs on the JavaFX Application Thread,
      * as it involves a GUI operation which needs to be thread-safe.
      *
-     * @param ranking An ArrayList of Player objects representing the final ranking of players.
+     * @param ranking An ArrayList of RankingEntry objects representing the final ranking of players.
      */
     @Override
-    public void showRanking(ArrayList<Player> ranking) {
+    public void showRanking(ArrayList<RankingEntry> ranking) {
         Platform.runLater(() -> {
             Scene scene1 = new Scene(end,500,400);
             endgameHandler.showRanking(ranking);
@@ -3,7 +3,8 @@
  * It specifies the dependencies of this module and the packages it exports.
  * It also opens the it.polimi.ingsw.view.gui package to javafx.fxml.
  *
- * The module requires javafx.graphics, javafx.controls, javafx.fxml, json.simple, java.desktop, and java.rmi.
+ * The module requires javafx.graphics, javafx.controls, javafx.fxml, json.simple, java.desktop, java.rmi,
+ * java.management, jdk.jfr and jdk.httpserver.
  *
  * It exports the following packages:
  * - it.polimi.ingsw
@@ -16,6 +17,7 @@
  * - it.polimi.ingsw.view
  * - it.polimi.ingsw.view.model
  * - it.polimi.ingsw.network.socket.messages.server
+ * - it.polimi.ingsw.monitoring
  */
 module it.polimi.ingsw {
     requires javafx.graphics;
@@ -24,6 +26,9 @@ module it.polimi.ingsw {
     requires json.simple;
     requires java.desktop;
     requires java.rmi;
+    requires java.management;
+    requires jdk.jfr;
+    requires jdk.httpserver;
 
     opens it.polimi.ingsw.view.gui to javafx.fxml;
 
@@ -37,4 +42,5 @@ module it.polimi.ingsw {
     exports it.polimi.ingsw.view;
     exports it.polimi.ingsw.view.model;
     exports it.polimi.ingsw.network.socket.messages.server;
+    exports it.polimi.ingsw.monitoring;
 }
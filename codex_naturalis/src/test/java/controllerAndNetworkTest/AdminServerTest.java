@@ -0,0 +1,46 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.AdminServer;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class AdminServerTest {
+
+    @Test
+    @DisplayName("The status of the server is reported as JSON on localhost")
+    public void statusIsReported() throws Exception {
+        AdminServer server = AdminServer.start("127.0.0.1", 0);
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getPort() + "/status");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            Assertions.assertEquals(200, connection.getResponseCode());
+            Assertions.assertTrue(connection.getContentType().startsWith("application/json"));
+            JSONObject status;
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                status = (JSONObject) new JSONParser().parse(reader);
+            }
+            for (String key : new String[]{"uptimeMillis", "game", "transports", "latency", "saves", "heap"}) {
+                Assertions.assertTrue(status.containsKey(key), key);
+            }
+            JSONObject game = (JSONObject) status.get("game");
+            Assertions.assertNotNull(game.get("state"));
+            JSONObject heap = (JSONObject) status.get("heap");
+            Assertions.assertTrue((Long) heap.get("usedBytes") > 0);
+
+            HttpURLConnection post = (HttpURLConnection) url.openConnection();
+            post.setRequestMethod("POST");
+            Assertions.assertEquals(405, post.getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.RMI.CallbackExecutor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class CallbackExecutorTest {
+
+    @Test
+    @DisplayName("Callbacks to the same client are executed in order")
+    public void callbacksAreOrderedPerClient() throws InterruptedException {
+        CallbackExecutor executor = new CallbackExecutor(4, 10000, client -> { });
+        List<Integer> pippo = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> pluto = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2000);
+
+        for (int i = 0; i < 1000; i++) {
+            int value = i;
+            executor.submit("pippo", () -> {
+                pippo.add(value);
+                done.countDown();
+            });
+            executor.submit("pluto", () -> {
+                pluto.add(value);
+                done.countDown();
+            });
+        }
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i, pippo.get(i));
+            Assertions.assertEquals(i, pluto.get(i));
+        }
+        Assertions.assertEquals(0, executor.getTotalQueueDepth());
+    }
+
+    @Test
+    @DisplayName("A failing callback does not block the queue of the client")
+    public void failingCallbackDoesNotBlock() throws InterruptedException {
+        CallbackExecutor executor = new CallbackExecutor(1, 10000, client -> { });
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.submit("pippo", () -> {
+            throw new IllegalStateException("test");
+        });
+        executor.submit("pippo", done::countDown);
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("A client that does not answer is evicted, and its thread is replaced until the call returns")
+    public void stuckClientIsEvicted() throws InterruptedException {
+        BlockingQueue<String> lost = new ArrayBlockingQueue<>(2);
+        CallbackExecutor executor = new CallbackExecutor(1, 200, lost::add);
+        AtomicBoolean dropped = new AtomicBoolean(true);
+        // a stub that never answers, until the end of the test
+        CountDownLatch answer = new CountDownLatch(1);
+        CountDownLatch called = new CountDownLatch(1);
+        executor.submit("pippo", () -> {
+            called.countDown();
+            try {
+                answer.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertTrue(called.await(10, TimeUnit.SECONDS));
+        executor.submit("pippo", () -> dropped.set(false));
+
+        // the only thread of the pool is stuck, but the other clients are still served
+        CountDownLatch served = new CountDownLatch(1);
+        executor.submit("pluto", served::countDown);
+        Assertions.assertTrue(served.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals("pippo", lost.poll(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, executor.getThreads());
+
+        // the callbacks to the evicted client are dropped until its queue is removed
+        executor.submit("pippo", () -> dropped.set(false));
+        Assertions.assertEquals(0, executor.getQueueDepth("pippo"));
+
+        answer.countDown();
+        long end = System.currentTimeMillis() + 10000;
+        while (executor.getThreads() != 1 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, executor.getThreads());
+
+        executor.remove("pippo");
+        CountDownLatch back = new CountDownLatch(1);
+        executor.submit("pippo", back::countDown);
+        Assertions.assertTrue(back.await(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(lost.isEmpty());
+        Assertions.assertTrue(dropped.get());
+    }
+
+    @Test
+    @DisplayName("A manual executor runs nothing until it is drained, then runs everything on the caller's thread")
+    public void manualExecutorIsDrained() {
+        CallbackExecutor executor = CallbackExecutor.manual();
+        List<String> order = new ArrayList<>();
+        executor.submit("pluto", () -> order.add("pluto 1"));
+        executor.submit("pippo", () -> {
+            order.add("pippo 1");
+            // a callback submitted while draining is run by the same drain
+            executor.submit("pippo", () -> order.add("pippo 3"));
+        });
+        executor.submit("pippo", () -> order.add("pippo 2"));
+        executor.submit("pluto", () -> {
+            throw new IllegalStateException("test");
+        });
+        executor.submit("pluto", () -> order.add("pluto 2"));
+
+        Assertions.assertTrue(order.isEmpty());
+        Assertions.assertEquals(5, executor.getTotalQueueDepth());
+        Assertions.assertEquals(6, executor.drain());
+        Assertions.assertEquals(List.of("pippo 1", "pippo 2", "pippo 3", "pluto 1", "pluto 2"), order);
+        Assertions.assertEquals(0, executor.getTotalQueueDepth());
+        Assertions.assertEquals(0, executor.drain());
+        Assertions.assertEquals(0, executor.getThreads());
+
+        CallbackExecutor pooled = new CallbackExecutor(1, 10000, client -> { });
+        Assertions.assertThrows(IllegalStateException.class, pooled::drain);
+    }
+}
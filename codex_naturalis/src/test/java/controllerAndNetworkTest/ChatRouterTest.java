@@ -0,0 +1,66 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.ChatRouter;
+import org.junit.jupiter.api.*;
+
+import java.util.Set;
+
+public class ChatRouterTest {
+
+    @Test
+    @DisplayName("The mentions are found in the index of the game, whatever their case and punctuation")
+    public void mentionsAreResolved() {
+        ChatRouter router = new ChatRouter(5, 1);
+        router.join("Pietro");
+        router.join("marco");
+        router.join("anna");
+
+        Assertions.assertEquals(Set.of(), router.receivers("marco", "hi everyone"));
+        Assertions.assertEquals(Set.of("Pietro", "marco"), router.receivers("marco", "@pietro, your turn!"));
+        Assertions.assertEquals(Set.of("Pietro", "anna", "marco"), router.receivers("marco", "@PIETRO @anna hi"));
+        // a longer name or an unknown player is not a mention
+        Assertions.assertEquals(Set.of(), router.receivers("marco", "@pietros @luca hi"));
+        Assertions.assertEquals(Set.of(), router.receivers("marco", "mail me at marco@anna"));
+
+        router.clear();
+        Assertions.assertEquals(Set.of(), router.receivers("marco", "@pietro hi"));
+    }
+
+    @Test
+    @DisplayName("A sender cannot go beyond its burst, and the others are not slowed down by it")
+    public void sendersAreRateLimited() throws InterruptedException {
+        ChatRouter router = new ChatRouter(3, 20);
+        router.join("pietro");
+        router.join("marco");
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(router.tryAcquire("pietro"));
+        }
+        Assertions.assertFalse(router.tryAcquire("pietro"));
+        Assertions.assertTrue(router.tryAcquire("marco"));
+        Assertions.assertFalse(router.tryAcquire(null));
+
+        // a message is earned every 50 ms
+        Thread.sleep(120);
+        Assertions.assertTrue(router.tryAcquire("pietro"));
+    }
+
+    @Test
+    @DisplayName("Only the players of the game can send, and a player that leaves cannot send any more")
+    public void onlyPlayersCanSend() {
+        ChatRouter router = new ChatRouter(3, 20);
+        router.join("Pietro");
+        Assertions.assertTrue(router.tryAcquire("Pietro"));
+        // a name that is not a player, even one differing only in its case
+        Assertions.assertFalse(router.tryAcquire("marco"));
+        Assertions.assertFalse(router.tryAcquire("pietro"));
+
+        router.leave("Pietro");
+        Assertions.assertFalse(router.tryAcquire("Pietro"));
+        Assertions.assertEquals(Set.of(), router.receivers("marco", "@pietro hi"));
+        // a player coming back starts with a full bucket
+        router.join("Pietro");
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(router.tryAcquire("Pietro"));
+        }
+    }
+}
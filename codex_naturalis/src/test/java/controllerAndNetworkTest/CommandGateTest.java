@@ -0,0 +1,48 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.CommandGate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CommandGateTest {
+
+    @Test
+    @DisplayName("Closing the gate waits for the running commands and refuses the new ones")
+    public void closeWaitsForRunningCommands() throws InterruptedException {
+        CommandGate gate = new CommandGate();
+        CountDownLatch entered = new CountDownLatch(1);
+        Thread command = new Thread(() -> {
+            Assertions.assertTrue(gate.enter());
+            entered.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                gate.exit();
+            }
+        });
+        command.start();
+        Assertions.assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        Assertions.assertTrue(gate.close(5000));
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertFalse(gate.enter());
+        command.join();
+    }
+
+    @Test
+    @DisplayName("Closing the gate gives up when a command takes too long")
+    public void closeTimesOut() {
+        CommandGate gate = new CommandGate();
+        Assertions.assertTrue(gate.enter());
+        Assertions.assertFalse(gate.close(100));
+        gate.exit();
+        Assertions.assertTrue(gate.close(100));
+    }
+}
@@ -0,0 +1,105 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.CommandLog;
+import it.polimi.ingsw.model.*;
+import it.polimi.ingsw.model.exception.*;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.*;
+
+import java.awt.*;
+import java.io.*;
+
+public class CommandLogTest {
+    static String basePath = "src/main/java/it/polimi/ingsw/model/decks/";
+    GameMaster game;
+    File logFile;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.addPlayer("pietro");
+        lobby.addPlayer("marco");
+        try {
+            game = new GameMaster(lobby,
+                    basePath + "resourceCardsDeck.json",
+                    basePath + "goldCardsDeck.json",
+                    basePath + "objectiveCardsDeck.json",
+                    basePath + "startingCardsDeck.json");
+        } catch (IOException | ParseException e) {
+            Assertions.fail("Cannot create the game");
+        }
+        for (Player player : lobby.getPlayers()) {
+            game.placeRootCard(player.getName(), false);
+        }
+        for (Player player : lobby.getPlayers()) {
+            game.chooseObjectiveCard(player.getName(), 0);
+        }
+        logFile = File.createTempFile("commands", ".log");
+        logFile.delete();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        logFile.delete();
+    }
+
+    private GameMaster copy(GameMaster game) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(game);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+            return (GameMaster) in.readObject();
+        }
+    }
+
+    @Test
+    @DisplayName("The logged commands replayed on the snapshot give the same game")
+    public void replayGivesSameGame() throws Exception {
+        GameMaster snapshot = copy(game);
+        CommandLog log = new CommandLog(logFile.getPath());
+
+        game.placeCard("pietro", 0, new Point(1, 0), false);
+        log.appendPlace("pietro", 0, new Point(1, 0), false);
+        game.drawCard("pietro", false, 0);
+        log.appendDraw("pietro", false, 0);
+        game.placeCard("marco", 1, new Point(0, 1), false);
+        log.appendPlace("marco", 1, new Point(0, 1), false);
+        log.close();
+
+        CommandLog reopened = new CommandLog(logFile.getPath());
+        Assertions.assertEquals(3, reopened.replay(snapshot, 0));
+        Assertions.assertEquals(3, reopened.getLastSequence());
+        Assertions.assertEquals(game.getCurrentPlayer().getName(), snapshot.getCurrentPlayer().getName());
+        Assertions.assertEquals(game.getGameState(), snapshot.getGameState());
+        for (String name : new String[]{"pietro", "marco"}) {
+            Assertions.assertEquals(game.getPlayerPoints(name), snapshot.getPlayerPoints(name));
+            Assertions.assertEquals(game.getPlayerResources(name), snapshot.getPlayerResources(name));
+        }
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("A record cut by a crash is dropped")
+    public void cutRecordIsDropped() throws Exception {
+        GameMaster snapshot = copy(game);
+        GameMaster secondSnapshot = copy(game);
+        CommandLog log = new CommandLog(logFile.getPath());
+        log.appendPlace("pietro", 0, new Point(1, 0), false);
+        log.appendDraw("pietro", false, 0);
+        log.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        CommandLog reopened = new CommandLog(logFile.getPath());
+        Assertions.assertEquals(1, reopened.replay(snapshot, 0));
+        reopened.appendDraw("pietro", false, 0);
+        reopened.close();
+
+        CommandLog again = new CommandLog(logFile.getPath());
+        Assertions.assertEquals(2, again.replay(secondSnapshot, 0));
+        again.close();
+    }
+}
@@ -0,0 +1,43 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.monitoring.BroadcastEvent;
+import it.polimi.ingsw.monitoring.CommandTrace;
+import it.polimi.ingsw.network.Correlation;
+import it.polimi.ingsw.network.RoundTrip;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class CommandTraceTest {
+
+    @Test
+    @DisplayName("A traced command reports its queue, processing and fan-out times")
+    public void tracedCommandIsTimed() throws InterruptedException {
+        Correlation correlation = new Correlation(42, System.nanoTime());
+        CommandTrace trace = CommandTrace.begin(correlation, correlation.getSentAtNanos());
+        Assertions.assertNotNull(trace);
+        Assertions.assertEquals(42, CommandTrace.currentCorrelationId());
+
+        BroadcastEvent event = BroadcastEvent.start();
+        Thread.sleep(20);
+        event.finish(0, "test", 1);
+        RoundTrip roundTrip = trace.end("test");
+
+        Assertions.assertEquals(0, CommandTrace.currentCorrelationId());
+        Assertions.assertSame(correlation, roundTrip.getCorrelation());
+        Assertions.assertTrue(roundTrip.getFanOutNanos() >= 20_000_000L);
+        Assertions.assertTrue(roundTrip.getQueueNanos() >= 0);
+        Assertions.assertTrue(roundTrip.getProcessingNanos() >= 0);
+
+        roundTrip.arrived(0, System.nanoTime());
+        Assertions.assertEquals(-1, roundTrip.getFirstAnswerNanos());
+        Assertions.assertTrue(roundTrip.getTotalNanos() >= roundTrip.getFanOutNanos());
+    }
+
+    @Test
+    @DisplayName("A command without a correlation is not traced")
+    public void untracedCommand() {
+        Assertions.assertNull(CommandTrace.begin(null, System.nanoTime()));
+        Assertions.assertEquals(0, CommandTrace.currentCorrelationId());
+    }
+}
@@ -3,20 +3,33 @@ package controllerAndNetworkTest;
 import it.polimi.ingsw.controller.server.Controller;
 import it.polimi.ingsw.model.Color;
 import it.polimi.ingsw.model.exception.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 
+import java.io.IOException;
+
 
 public class ControllerServerTest {
         //il base path è differente per entrambi(test e non test) quindi non c'è bisogno di fare il controllo
         static String basePath = "src/main/java/it/polimi/ingsw/model/decks/";
 
+        private TemporaryStore store;
+
         @BeforeEach
-        public void setUp() {
+        public void setUp() throws IOException {
+            store = new TemporaryStore();
+            Controller.getInstance().reset();
+        }
+
+        @AfterEach
+        public void tearDown() {
+            Controller.getInstance().cancelFile();
             Controller.getInstance().reset();
+            store.delete();
         }
 
         @Test
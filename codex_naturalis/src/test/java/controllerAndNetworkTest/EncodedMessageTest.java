@@ -0,0 +1,37 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
+import it.polimi.ingsw.network.socket.messages.server.StopGaming;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+public class EncodedMessageTest {
+
+    @Test
+    @DisplayName("A frame is read back as it was written")
+    public void frameRoundTrip() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        EncodedMessage frame = EncodedMessage.encode(new StopGaming());
+        frame.writeTo(new DataOutputStream(buffer));
+        Assertions.assertEquals(frame.size(), buffer.size());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        Assertions.assertInstanceOf(StopGaming.class, EncodedMessage.readFrom(in));
+    }
+
+    @Test
+    @DisplayName("A length above the largest frame is refused before its payload is read")
+    public void oversizedFrameIsRefused() {
+        // only the header of a frame of almost 2 GB
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        buffer.writeBytes(new byte[] { 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xf0 });
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        Assertions.assertThrows(StreamCorruptedException.class, () -> EncodedMessage.read(in));
+
+        DataInputStream negative = new DataInputStream(new ByteArrayInputStream(new byte[] { -1, -1, -1, -1 }));
+        Assertions.assertThrows(StreamCorruptedException.class, () -> EncodedMessage.read(negative));
+    }
+}
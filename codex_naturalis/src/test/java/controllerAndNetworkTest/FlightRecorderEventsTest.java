@@ -0,0 +1,53 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.monitoring.CommandEvent;
+import it.polimi.ingsw.monitoring.SaveEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class FlightRecorderEventsTest {
+
+    @Test
+    @DisplayName("The events of the commands and of the saves reach the recording with their fields")
+    public void eventsAreRecorded() throws Exception {
+        Path file = Files.createTempFile("codex", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("it.polimi.ingsw.Command");
+            recording.enable("it.polimi.ingsw.Save");
+            recording.start();
+
+            CommandEvent command = CommandEvent.start();
+            command.finish(42, "pietro", "CardToBePositioned", "socket", 128);
+            SaveEvent save = SaveEvent.start();
+            save.finish(42, "saves/game.data", true, 4096);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        RecordedEvent command = events.stream()
+                .filter(event -> event.getEventType().getName().equals("it.polimi.ingsw.Command"))
+                .findFirst().orElseThrow();
+        Assertions.assertEquals(42, command.getLong("gameId"));
+        Assertions.assertEquals("pietro", command.getString("player"));
+        Assertions.assertEquals("CardToBePositioned", command.getString("messageType"));
+        Assertions.assertEquals("socket", command.getString("transport"));
+        Assertions.assertEquals(128, command.getInt("payloadSize"));
+
+        RecordedEvent save = events.stream()
+                .filter(event -> event.getEventType().getName().equals("it.polimi.ingsw.Save"))
+                .findFirst().orElseThrow();
+        Assertions.assertTrue(save.getBoolean("diskWrite"));
+        Assertions.assertEquals(4096, save.getInt("payloadSize"));
+    }
+}
@@ -0,0 +1,81 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameState;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+
+public class GameLifecycleTest {
+    private TemporaryStore store;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        store = new TemporaryStore();
+        Controller.getInstance().reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Controller.getInstance().cancelFile();
+        Controller.getInstance().reset();
+        store.delete();
+    }
+
+    @Test
+    @DisplayName("An idle game is released from memory and comes back unchanged on the next access")
+    public void idleGameIsPassivatedAndReactivated() throws Exception {
+        Controller controller = Controller.getInstance();
+        controller.addPlayer("pietro");
+        controller.addPlayer("marco");
+        controller.initializeLobby(2);
+        controller.setColourAndGameIsReadyToStart("pietro", Color.RED);
+        controller.setColourAndGameIsReadyToStart("marco", Color.BLUE);
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.placeRootCard(name, false);
+        }
+        controller.chooseObjectiveCard("pietro", 1);
+
+        String current = controller.getCurrentPlayer();
+        Integer[] objectives = controller.getCommonObjectiveCards();
+        GameState state = controller.getGameState();
+
+        // the game has just been used
+        Assertions.assertFalse(controller.passivateIfIdle(60000));
+        Assertions.assertTrue(controller.passivateIfIdle(0));
+        Assertions.assertTrue(controller.isPassivated());
+        Assertions.assertFalse(controller.passivateIfIdle(0));
+
+        Assertions.assertEquals(state, controller.getGameState());
+        Assertions.assertFalse(controller.isPassivated());
+        Assertions.assertEquals(current, controller.getCurrentPlayer());
+        Assertions.assertArrayEquals(objectives, controller.getCommonObjectiveCards());
+
+        // the game goes on after the reactivation
+        controller.chooseObjectiveCard("marco", 1);
+        Assertions.assertEquals(GameState.PLACING_PHASE, controller.getGameState());
+    }
+
+    @Test
+    @DisplayName("A game whose save is lost stays passivated and fails with a clear error")
+    public void lostSaveKeepsTheGamePassivated() throws Exception {
+        Controller controller = Controller.getInstance();
+        controller.addPlayer("pietro");
+        controller.addPlayer("marco");
+        controller.initializeLobby(2);
+        controller.setColourAndGameIsReadyToStart("pietro", Color.RED);
+        controller.setColourAndGameIsReadyToStart("marco", Color.BLUE);
+        Assertions.assertTrue(controller.passivateIfIdle(0));
+
+        File[] saves = store.getSaves().listFiles();
+        Assertions.assertNotNull(saves);
+        for (File save : saves) {
+            Assertions.assertTrue(save.delete());
+        }
+        Assertions.assertThrows(IllegalStateException.class, controller::getCurrentPlayer);
+        Assertions.assertThrows(IllegalStateException.class, () -> controller.placeRootCard("pietro", false));
+        Assertions.assertTrue(controller.isPassivated());
+    }
+}
@@ -0,0 +1,39 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.HeartbeatMonitor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HeartbeatMonitorTest {
+
+    @Test
+    @DisplayName("A silent peer is pinged, then considered dead")
+    public void silentPeerIsDead() throws InterruptedException {
+        HeartbeatMonitor monitor = new HeartbeatMonitor(50, 200);
+        AtomicInteger pings = new AtomicInteger();
+        CountDownLatch dead = new CountDownLatch(1);
+
+        monitor.register("pippo", pings::incrementAndGet, dead::countDown);
+
+        Assertions.assertTrue(dead.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(pings.get() > 0);
+    }
+
+    @Test
+    @DisplayName("A peer answering the pings stays alive")
+    public void answeringPeerIsAlive() throws InterruptedException {
+        HeartbeatMonitor monitor = new HeartbeatMonitor(50, 200);
+        CountDownLatch dead = new CountDownLatch(1);
+        HeartbeatMonitor.Peer[] peer = new HeartbeatMonitor.Peer[1];
+
+        peer[0] = monitor.register("pippo", () -> peer[0].touch(), dead::countDown);
+
+        Assertions.assertFalse(dead.await(600, TimeUnit.MILLISECONDS));
+        peer[0].cancel();
+    }
+}
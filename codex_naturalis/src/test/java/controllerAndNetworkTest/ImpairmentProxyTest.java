@@ -0,0 +1,151 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.network.socket.ImpairmentProxy;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ImpairmentProxyTest {
+    private ServerSocket echo;
+    private ImpairmentProxy proxy;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        // a server sending back every byte it receives
+        echo = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = echo.accept();
+                    Thread thread = new Thread(() -> {
+                        try (socket) {
+                            socket.getInputStream().transferTo(socket.getOutputStream());
+                        } catch (IOException e) {
+                            // the connection is over
+                        }
+                    });
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // the server is closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        proxy = new ImpairmentProxy(0, "127.0.0.1", echo.getLocalPort());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        proxy.close();
+        echo.close();
+    }
+
+    @Test
+    @DisplayName("The bytes are delayed in each direction and arrive in order, whatever the jitter")
+    public void latencyKeepsTheOrder() throws IOException {
+        proxy.setLatency(100, 50);
+        try (Socket socket = new Socket("127.0.0.1", proxy.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            long start = System.nanoTime();
+            for (int i = 0; i < 50; i++) {
+                out.write(i);
+                out.flush();
+            }
+            for (int i = 0; i < 50; i++) {
+                Assertions.assertEquals(i, in.read());
+            }
+            // the latency of the way to the server and of the way back
+            Assertions.assertTrue(System.nanoTime() - start >= 200_000_000L);
+        }
+        Assertions.assertEquals(1, proxy.getConnections());
+        Assertions.assertEquals(50, proxy.getBytesToServer());
+        Assertions.assertTrue(proxy.getRoundTrips() >= 1);
+    }
+
+    @Test
+    @DisplayName("The bandwidth is capped and a reset breaks the connection")
+    public void bandwidthAndReset() throws IOException {
+        proxy.setBandwidth(10_000);
+        try (Socket socket = new Socket("127.0.0.1", proxy.getPort())) {
+            long start = System.nanoTime();
+            socket.getOutputStream().write(new byte[5000]);
+            socket.getInputStream().readNBytes(5000);
+            // half a second of bytes, less the first tenth of a second sent at once
+            Assertions.assertTrue(System.nanoTime() - start >= 400_000_000L);
+
+            proxy.resetConnections();
+            Assertions.assertEquals(1, proxy.getResets());
+            Assertions.assertThrows(IOException.class, () -> {
+                for (int i = 0; i < 100; i++) {
+                    socket.getOutputStream().write(new byte[1000]);
+                    if (socket.getInputStream().read() == -1) {
+                        throw new IOException("closed");
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    @DisplayName("A server that does not read fills the buffer of the proxy, then the sender blocks")
+    public void fullBufferBlocksTheSender() throws Exception {
+        // a server that accepts the connection and never reads from it
+        try (ServerSocket sink = new ServerSocket(0); ImpairmentProxy slow = new ImpairmentProxy(0, "127.0.0.1",
+                sink.getLocalPort()); Socket socket = new Socket("127.0.0.1", slow.getPort())) {
+            Socket accepted = sink.accept();
+            long total = 256L * 1024 * 1024;
+            AtomicLong written = new AtomicLong();
+            Thread sender = new Thread(() -> {
+                byte[] bytes = new byte[64 * 1024];
+                try {
+                    while (written.get() < total) {
+                        socket.getOutputStream().write(bytes);
+                        written.addAndGet(bytes.length);
+                    }
+                } catch (IOException e) {
+                    // the connection is closed at the end of the test
+                }
+            });
+            sender.setDaemon(true);
+            sender.start();
+
+            // wait until the sender stops making progress
+            long last = -1;
+            long end = System.currentTimeMillis() + 10000;
+            while (written.get() != last) {
+                Assertions.assertTrue(System.currentTimeMillis() < end, "The sender is never blocked");
+                last = written.get();
+                Thread.sleep(500);
+            }
+            Assertions.assertTrue(sender.isAlive());
+            Assertions.assertTrue(written.get() < total);
+            Assertions.assertTrue(slow.getQueuedBytes() > 0);
+            Assertions.assertTrue(slow.getQueuedBytes() <= ImpairmentProxy.BUFFER_SIZE);
+
+            // the server reads again: the bytes flow and the sender writes again
+            Thread reader = new Thread(() -> {
+                try {
+                    accepted.getInputStream().transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    // the connection is closed at the end of the test
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+            end = System.currentTimeMillis() + 10000;
+            while (written.get() <= last) {
+                Assertions.assertTrue(System.currentTimeMillis() < end, "The sender is never unblocked");
+                Thread.sleep(10);
+            }
+            accepted.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.LatencyHistogram;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("The percentiles are close to the latencies recorded")
+    public void percentilesAreAccurate() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertEquals(0, histogram.percentile(0.5));
+        // one latency for every microsecond from 1 to 1000
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+        Assertions.assertEquals(500, histogram.getP50Micros(), 500 * 0.07);
+        Assertions.assertEquals(990, histogram.getP99Micros(), 990 * 0.07);
+        Assertions.assertEquals(999, histogram.getP999Micros(), 999 * 0.07);
+        Assertions.assertEquals(1000, histogram.getMaxMicros());
+        // never above the highest latency
+        Assertions.assertEquals(1000000, histogram.percentile(1));
+
+        // small latencies are exact
+        histogram.reset();
+        histogram.record(7);
+        Assertions.assertEquals(7, histogram.percentile(0.5));
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+    }
+
+    @Test
+    @DisplayName("The latency of a command is published over JMX")
+    public void latencyIsPublished() throws Exception {
+        CommandMetrics metrics = CommandMetrics.getInstance();
+        LatencyHistogram histogram = metrics.histogram(CommandMetrics.Command.DRAW_CARD,
+                CommandMetrics.Transport.SOCKET);
+        long before = histogram.getCount();
+        metrics.record(CommandMetrics.Command.DRAW_CARD, CommandMetrics.Transport.SOCKET, System.nanoTime());
+        metrics.record(null, CommandMetrics.Transport.SOCKET, System.nanoTime());
+
+        ObjectName name = new ObjectName("it.polimi.ingsw:type=CommandLatency,transport=socket,command=drawCard");
+        Assertions.assertEquals(before + 1,
+                ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+    }
+}
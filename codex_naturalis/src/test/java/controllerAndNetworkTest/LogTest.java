@@ -0,0 +1,85 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.monitoring.Log;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LogTest {
+
+    @Test
+    @DisplayName("The messages are formatted by the writer, and only from the level set")
+    public void messagesAreFilteredAndFormatted() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Log log = new Log(new PrintStream(buffer, true), 64, Log.Level.INFO);
+        log.log(Log.Level.DEBUG, "hidden {}", 1, "debug", null, null);
+        log.log(Log.Level.INFO, "{} is back after {} ms", 2, "alice", 1500, null);
+        log.log(Log.Level.WARN, "{} {} {}", 3, null, null, new Object[]{"a", "b", "c"});
+        log.log(Log.Level.ERROR, "no placeholder", 1, "extra", null, null);
+        Assertions.assertTrue(log.flush(5000));
+
+        String written = buffer.toString();
+        Assertions.assertFalse(written.contains("hidden"));
+        Assertions.assertTrue(written.contains("INFO  [" + Thread.currentThread().getName() + "] alice is back after 1500 ms"));
+        Assertions.assertTrue(written.contains("WARN  ["));
+        Assertions.assertTrue(written.contains("a b c"));
+        Assertions.assertTrue(written.contains("no placeholder extra"));
+
+        log.setLevel("DEBUG");
+        Assertions.assertEquals("DEBUG", log.getLevel());
+        Assertions.assertTrue(log.enabled(Log.Level.DEBUG));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.setLevel("LOUD"));
+        log.setLevel(Log.Level.OFF);
+        Assertions.assertFalse(log.enabled(Log.Level.ERROR));
+    }
+
+    @Test
+    @DisplayName("A full buffer drops the messages instead of waiting for the console")
+    public void fullBufferDrops() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        // a console that hangs on the first write
+        OutputStream console = new OutputStream() {
+            @Override
+            public synchronized void write(int b) {
+                written.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (this) {
+                    written.write(bytes, offset, length);
+                }
+            }
+        };
+        Log log = new Log(new PrintStream(console, true), 4, Log.Level.INFO);
+        Assertions.assertEquals(4, log.getCapacity());
+        log.log(Log.Level.INFO, "first", 0, null, null, null);
+        Assertions.assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            log.log(Log.Level.INFO, "line {}", 1, i, null, null);
+        }
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        Assertions.assertEquals(96, log.getDroppedCount());
+        Assertions.assertEquals(4, log.getBacklog());
+
+        release.countDown();
+        Assertions.assertTrue(log.flush(5000));
+        Assertions.assertEquals(0, log.getBacklog());
+    }
+}
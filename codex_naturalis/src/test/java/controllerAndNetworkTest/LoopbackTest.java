@@ -0,0 +1,303 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.client.LoadGenerator;
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameState;
+import it.polimi.ingsw.model.ResumeSnapshot;
+import it.polimi.ingsw.model.TurnChange;
+import it.polimi.ingsw.model.Sign;
+import it.polimi.ingsw.network.ChatRouter;
+import it.polimi.ingsw.network.RMI.RMIClientInterface;
+import it.polimi.ingsw.network.SessionManager;
+import it.polimi.ingsw.network.loopback.LoopbackServer;
+import org.junit.jupiter.api.*;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public class LoopbackTest {
+    private TemporaryStore store;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        store = new TemporaryStore();
+        Controller.getInstance().reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        // the bots stopped in the middle of a game must not end another test when their grace period expires
+        SessionManager.getInstance().clear();
+        ChatRouter.getInstance().clear();
+        Controller.getInstance().cancelFile();
+        Controller.getInstance().reset();
+        System.clearProperty("codex.game.seed");
+        store.delete();
+    }
+
+    @Test
+    @DisplayName("Bots on the loopback play whole games, one after the other, without any socket")
+    public void botsPlayOverTheLoopback() throws InterruptedException {
+        LoopbackServer server = new LoopbackServer();
+        LoadGenerator generator = new LoadGenerator(server, 2, 0);
+        try {
+            generator.start(2);
+            long deadline = System.currentTimeMillis() + 30000;
+            while (generator.getStatistics().getGames() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Assertions.assertTrue(generator.getStatistics().getGames() >= 2);
+        } finally {
+            generator.stop();
+            server.close();
+        }
+    }
+
+    @Test
+    @DisplayName("With manual delivery a game is scripted command by command, checking the updates of each one")
+    public void scriptedGameOnManualDelivery() throws Exception {
+        System.setProperty("codex.game.seed", "42");
+        Controller.getInstance().reset();
+        Controller controller = Controller.getInstance();
+        LoopbackServer server = new LoopbackServer(true);
+        Client pippo = new Client("pippo");
+        Client pluto = new Client("pluto");
+        try {
+            Assertions.assertTrue(server.loginAndIsFirst(pippo.stub, "pippo"));
+            Assertions.assertTrue(pippo.calls.isEmpty());
+            Assertions.assertEquals(3, server.deliver());
+            Assertions.assertEquals(List.of("setSessionToken", "refreshUsers", "refreshUsers"), pippo.take());
+
+            server.insertNumberOfPlayers(2);
+            Assertions.assertEquals(1, server.deliver());
+            Assertions.assertEquals(List.of("refreshUsers"), pippo.take());
+
+            Assertions.assertFalse(server.loginAndIsFirst(pluto.stub, "pluto"));
+            Assertions.assertEquals(7, server.deliver());
+            Assertions.assertEquals(List.of("refreshUsers", "refreshUsers", "stopWaiting"), pippo.take());
+            Assertions.assertEquals(List.of("setSessionToken", "refreshUsers", "refreshUsers", "stopWaiting"),
+                    pluto.take());
+
+            server.chooseColor("pippo", Color.RED);
+            server.deliver();
+            pippo.take();
+            pluto.take();
+            server.chooseColor("pluto", Color.BLUE);
+            Assertions.assertTrue(pippo.calls.isEmpty() && pluto.calls.isEmpty());
+            Assertions.assertEquals(6, server.deliver());
+            for (Client client : new Client[]{pippo, pluto}) {
+                Assertions.assertEquals(List.of("refreshUsers", "sendInfoOnTable", "showStartingCard",
+                        "refreshTurnInfo"), client.take());
+                client.assertTurn(controller.getCurrentPlayer(), GameState.CHOOSING_ROOT_CARD);
+            }
+
+            // the starting cards and the objectives, in the order of the turns
+            for (int i = 0; i < 2; i++) {
+                String player = controller.getCurrentPlayer();
+                server.chooseSideStartingCard(player, false, null);
+                server.deliver();
+                for (Client client : new Client[]{pippo, pluto}) {
+                    Assertions.assertEquals("placeCard", client.take().get(0));
+                    client.assertTurn(controller.getCurrentPlayer(), controller.getGameState());
+                }
+            }
+            Assertions.assertEquals(GameState.CHOOSING_OBJECTIVE_CARD, controller.getGameState());
+            for (int i = 0; i < 2; i++) {
+                server.chooseSecretObjectiveCard(controller.getCurrentPlayer(), 0, null);
+                server.deliver();
+            }
+            for (Client client : new Client[]{pippo, pluto}) {
+                List<String> calls = client.take();
+                Assertions.assertEquals("getIsFirstAndStartGame", calls.get(calls.size() - 1));
+                Assertions.assertEquals(controller.getCurrentPlayer(), client.last[0]);
+                Assertions.assertTrue(calls.contains("showHand"));
+                Assertions.assertTrue(calls.contains("showHiddenHand"));
+            }
+
+            // a turn of the game: each command sends a single delta to each client
+            String player = controller.getCurrentPlayer();
+            HashMap<Sign, Integer> resources = new HashMap<>(controller.getPlayerResources(player));
+            int points = controller.getPlayerPoints(player);
+            server.placeCard(player, 0, new Point(1, 0), false, null);
+            Assertions.assertTrue(pippo.calls.isEmpty() && pluto.calls.isEmpty());
+            Assertions.assertEquals(2, server.deliver());
+            for (Client client : new Client[]{pippo, pluto}) {
+                Assertions.assertEquals(List.of("applyTurnDelta"), client.take());
+                TurnChange placed = (TurnChange) client.last[0];
+                Assertions.assertTrue(placed.isPlacement());
+                Assertions.assertEquals(player, placed.getNickname());
+                Assertions.assertEquals(new Point(1, 0), placed.getPosition());
+                // what the client knew before the turn, with the changes of the delta
+                HashMap<Sign, Integer> known = new HashMap<>(resources);
+                known.putAll(placed.getChangedResources());
+                Assertions.assertEquals(controller.getPlayerResources(player), known);
+                Assertions.assertEquals(controller.getPlayerPoints(player), points + placed.getPointsDelta());
+                Assertions.assertEquals(GameState.DRAWING_PHASE, placed.getState());
+            }
+
+            Integer[] hand = server.drawCard(player, false, -1, null);
+            Assertions.assertEquals(3, hand.length);
+            Assertions.assertEquals(2, server.deliver());
+            for (Client client : new Client[]{pippo, pluto}) {
+                Assertions.assertEquals(List.of("applyTurnDelta"), client.take());
+                TurnChange drawn = (TurnChange) client.last[0];
+                Assertions.assertFalse(drawn.isPlacement());
+                if (client.nickname.equals(player)) {
+                    // the player knows its hand from the answer to the command
+                    Assertions.assertNull(drawn.getHiddenHand());
+                } else {
+                    Assertions.assertArrayEquals(controller.getHiddenHand(player), drawn.getHiddenHand());
+                }
+                Assertions.assertEquals(controller.getCurrentPlayer(), drawn.getCurrentPlayer());
+                Assertions.assertNotEquals(player, drawn.getCurrentPlayer());
+                Assertions.assertEquals(controller.getGameState(), drawn.getState());
+            }
+            Assertions.assertEquals(0, server.deliver());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    @DisplayName("A chat message is sent only under the name the client logged in with")
+    public void chatSenderMustBeLoggedIn() throws Exception {
+        LoopbackServer server = new LoopbackServer(true);
+        Client pippo = new Client("pippo");
+        try {
+            server.loginAndIsFirst(pippo.stub, "pippo");
+            server.deliver();
+            pippo.take();
+
+            server.sendChatMessage("pluto", "hi");
+            server.sendChatMessage(null, "hi");
+            Assertions.assertEquals(0, server.deliver());
+            server.sendChatMessage("pippo", "hi");
+            Assertions.assertEquals(1, server.deliver());
+            Assertions.assertEquals(List.of("receiveChatMessage"), pippo.take());
+            Assertions.assertEquals("pippo", pippo.last[0]);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    @DisplayName("A client coming back receives the game as it was, and then the updates sent after it")
+    public void reconnectedClientDoesNotApplyUpdatesTwice() throws Exception {
+        System.setProperty("codex.game.seed", "42");
+        Controller.getInstance().reset();
+        Controller controller = Controller.getInstance();
+        LoopbackServer server = new LoopbackServer(true);
+        Client pippo = new Client("pippo");
+        Client pluto = new Client("pluto");
+        try {
+            startGame(server, pippo, pluto);
+            String player = controller.getCurrentPlayer();
+            int points = controller.getPlayerPoints(player);
+
+            Client back = new Client("pluto");
+            Assertions.assertTrue(server.reconnect(back.stub, pluto.token));
+            // an update sent before the snapshot is delivered must not be part of it
+            server.placeCard(player, 0, new Point(1, 0), false, null);
+            server.deliver();
+
+            Assertions.assertEquals(List.of("loadSavedGame", "applyTurnDelta"), back.calls);
+            Assertions.assertTrue(pluto.take().isEmpty());
+            ResumeSnapshot snapshot = (ResumeSnapshot) back.arguments.get(0)[0];
+            TurnChange placed = (TurnChange) back.arguments.get(1)[0];
+            Assertions.assertEquals(points, snapshot.getPoints().get(player));
+            for (ResumeSnapshot.BoardCard card : snapshot.getBoards().get(player)) {
+                Assertions.assertNotEquals(new Point(1, 0), card.getPosition());
+            }
+            Assertions.assertEquals(controller.getPlayerPoints(player),
+                    snapshot.getPoints().get(player) + placed.getPointsDelta());
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Plays the game up to its first turn, delivering the updates of every command.
+     */
+    private static void startGame(LoopbackServer server, Client first, Client second) throws Exception {
+        Controller controller = Controller.getInstance();
+        server.loginAndIsFirst(first.stub, first.nickname);
+        server.insertNumberOfPlayers(2);
+        server.loginAndIsFirst(second.stub, second.nickname);
+        server.chooseColor(first.nickname, Color.RED);
+        server.chooseColor(second.nickname, Color.BLUE);
+        for (int i = 0; i < 2; i++) {
+            server.chooseSideStartingCard(controller.getCurrentPlayer(), false, null);
+        }
+        for (int i = 0; i < 2; i++) {
+            server.chooseSecretObjectiveCard(controller.getCurrentPlayer(), 0, null);
+        }
+        server.deliver();
+        first.take();
+        second.take();
+    }
+
+    /**
+     * A client of the loopback recording the names of the callbacks it receives, and the arguments of the last one.
+     */
+    private static class Client {
+        private final String nickname;
+        private final List<String> calls = new ArrayList<>();
+        private final List<Object[]> arguments = new ArrayList<>();
+        private final RMIClientInterface stub;
+        private Object[] last;
+        private String token;
+        private String currentPlayer;
+        private GameState state;
+
+        private Client(String nickname) {
+            this.nickname = nickname;
+            stub = (RMIClientInterface) Proxy.newProxyInstance(RMIClientInterface.class.getClassLoader(),
+                    new Class<?>[]{RMIClientInterface.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return nickname;
+                            case "isConnected":
+                                // the pings of the heartbeat come from their own thread
+                                return null;
+                            default:
+                                calls.add(method.getName());
+                                arguments.add(args);
+                                last = args;
+                                if (method.getName().equals("setSessionToken")) {
+                                    token = (String) args[0];
+                                }
+                                if (method.getName().equals("refreshTurnInfo")) {
+                                    currentPlayer = (String) args[0];
+                                    state = (GameState) args[1];
+                                }
+                                return null;
+                        }
+                    });
+        }
+
+        /**
+         * Gets the callbacks received since the last call, and forgets them.
+         */
+        private List<String> take() {
+            List<String> taken = new ArrayList<>(calls);
+            calls.clear();
+            arguments.clear();
+            return taken;
+        }
+
+        private void assertTurn(String currentPlayer, GameState state) {
+            Assertions.assertEquals(currentPlayer, this.currentPlayer, Arrays.toString(last));
+            Assertions.assertEquals(state, this.state);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.network.NetworkHandler;
+import it.polimi.ingsw.network.socket.NetworkServerSocket;
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
+import it.polimi.ingsw.network.socket.messages.server.gameflow.ReceivedChatMessage;
+import org.junit.jupiter.api.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class OutboundQueueTest {
+    private static final int CAPACITY = 32;
+    private static final int HIGH = 16;
+    private static final int LOW = 4;
+    /**
+     * The padding of the chat messages, so the buffers of the sockets are full after a few of them.
+     */
+    private static final String PADDING = "x".repeat(64 * 1024);
+
+    private TemporaryStore store;
+    private NetworkServerSocket server;
+    private Socket client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        store = new TemporaryStore();
+        System.setProperty("codex.socket.outbound.capacity", String.valueOf(CAPACITY));
+        System.setProperty("codex.socket.outbound.high", String.valueOf(HIGH));
+        System.setProperty("codex.socket.outbound.low", String.valueOf(LOW));
+        Controller.getInstance().reset();
+        Controller.getInstance().addPlayer("pippo");
+
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        server = new NetworkServerSocket(port);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                // the server is closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        // a client that does not read its messages, with a small buffer
+        client = new Socket();
+        client.setReceiveBufferSize(4096);
+        client.connect(new InetSocketAddress("127.0.0.1", port));
+        waitUntil(() -> server.getConnectionCount() == 1);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        server.disconnectAll();
+        NetworkHandler.getInstance().removeNetworkPlug("socket");
+        System.clearProperty("codex.socket.outbound.capacity");
+        System.clearProperty("codex.socket.outbound.high");
+        System.clearProperty("codex.socket.outbound.low");
+        Controller.getInstance().reset();
+        store.delete();
+    }
+
+    @Test
+    @DisplayName("The chat to a slow client is dropped above the high watermark, and sent again below the low one")
+    public void chatIsDroppedForSlowClient() throws Exception {
+        fillUpTo(HIGH);
+
+        // above the high watermark the chat is dropped, while the other messages are still queued
+        chat("dropped");
+        Assertions.assertEquals(HIGH, depth());
+        server.refreshUsers();
+        Assertions.assertEquals(HIGH + 1, depth());
+
+        // the client reads again: its queue goes below the low watermark and it receives the chat again
+        List<String> chats = new CopyOnWriteArrayList<>();
+        Thread reader = new Thread(() -> {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+                while (true) {
+                    Object message = EncodedMessage.read(in).decode();
+                    if (message instanceof ReceivedChatMessage) {
+                        chats.add(((ReceivedChatMessage) message).getMessage().replace(PADDING, ""));
+                    }
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                // the connection is closed
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        waitUntil(() -> depth() == 0);
+        chat("after");
+        waitUntil(() -> chats.contains("after"));
+
+        Assertions.assertFalse(chats.contains("dropped"));
+        Assertions.assertEquals("after", chats.get(chats.size() - 1));
+    }
+
+    @Test
+    @DisplayName("A client whose queue is full is disconnected")
+    public void fullQueueClosesTheConnection() throws Exception {
+        fillUpTo(HIGH);
+        // the chat is dropped from now on, but not the other messages
+        while (depth() < CAPACITY) {
+            server.refreshUsers();
+        }
+        server.refreshUsers();
+        Assertions.assertEquals(0, depth());
+        // a closed connection does not queue anything
+        server.refreshUsers();
+        Assertions.assertEquals(0, depth());
+
+        // the client reads what was already written, then the end of the stream
+        client.setSoTimeout(10000);
+        InputStream in = client.getInputStream();
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            while (in.read(buffer) != -1) {
+                // skip the messages written before the connection was closed
+            }
+        } catch (IOException e) {
+            // a reset is an end of the connection too
+            Assertions.assertFalse(e instanceof SocketTimeoutException);
+        }
+    }
+
+    /**
+     * Sends chat messages to the client until its queue holds the given number of messages. The first messages
+     * fill the buffers of the sockets, the next ones stay in the queue.
+     */
+    private void fillUpTo(int size) throws Exception {
+        for (int i = 0; depth() != size; i++) {
+            Assertions.assertTrue(i < 10000, "The queue of the client never grows");
+            while (depth() < size) {
+                chat("fill");
+            }
+            // let the writer of the connection block on the full socket
+            Thread.sleep(50);
+        }
+    }
+
+    private void chat(String text) {
+        server.sendingChatMessage("pippo", text + PADDING, Collections.emptySet());
+    }
+
+    private int depth() {
+        int depth = 0;
+        for (int queue : server.getQueueDepths().values()) {
+            depth += queue;
+        }
+        return depth;
+    }
+
+    private static void waitUntil(Condition condition) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.holds()) {
+            Assertions.assertTrue(System.currentTimeMillis() < end, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean holds() throws Exception;
+    }
+}
@@ -0,0 +1,134 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameState;
+import it.polimi.ingsw.model.Player;
+import it.polimi.ingsw.model.RankingEntry;
+import it.polimi.ingsw.model.exception.CardPositionException;
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
+import it.polimi.ingsw.network.socket.messages.server.endgame.ShowRanking;
+import org.junit.jupiter.api.*;
+
+import java.awt.Point;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class RankingTest {
+    private TemporaryStore store;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        store = new TemporaryStore();
+        System.setProperty("codex.game.seed", "7");
+        Controller.getInstance().reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Controller.getInstance().cancelFile();
+        Controller.getInstance().reset();
+        System.clearProperty("codex.game.seed");
+        store.delete();
+    }
+
+    @Test
+    @DisplayName("The final ranking reaches the clients of both transports with the names and the points of the game")
+    public void rankingRoundTrip() throws Exception {
+        Controller controller = Controller.getInstance();
+        playUntilTheEnd(controller);
+
+        ArrayList<RankingEntry> ranking = controller.getRanking();
+        List<Player> players = controller.getGameMaster().getRanking();
+        HashMap<String, Integer> extraPoints = controller.getExtraPoints();
+        // a game played to its end, so the points are not all zero
+        Assertions.assertTrue(players.stream().mapToInt(player -> player.getPoints() + player.getObjectivePoints())
+                .sum() > 0);
+
+        // the socket sends it in a ShowRanking frame
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        EncodedMessage.encode(new ShowRanking(ranking)).writeTo(new DataOutputStream(buffer));
+        ShowRanking frame = (ShowRanking) EncodedMessage.readFrom(
+                new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+        // RMI serializes the argument of showEndGame
+        ArrayList<RankingEntry> argument = serialized(ranking);
+
+        for (ArrayList<RankingEntry> received : List.of(frame.getRanking(), argument)) {
+            Assertions.assertEquals(players.size(), received.size());
+            for (int i = 0; i < players.size(); i++) {
+                Player player = players.get(i);
+                RankingEntry entry = received.get(i);
+                Assertions.assertEquals(player.getName(), entry.getName());
+                Assertions.assertEquals(player.getColor(), entry.getColor());
+                Assertions.assertEquals(player.getPoints(), entry.getPoints());
+                Assertions.assertEquals(player.getObjectivePoints(), entry.getObjectivePoints());
+                Assertions.assertEquals(extraPoints.get(entry.getName()), entry.getObjectivePoints());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<RankingEntry> serialized(ArrayList<RankingEntry> ranking)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(ranking);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+            return (ArrayList<RankingEntry>) in.readObject();
+        }
+    }
+
+    /**
+     * Plays a game of two players, placing and drawing the first cards that fit, until it ends.
+     */
+    private static void playUntilTheEnd(Controller controller) throws Exception {
+        controller.addPlayer("pietro");
+        controller.addPlayer("marco");
+        controller.initializeLobby(2);
+        controller.setColourAndGameIsReadyToStart("pietro", Color.RED);
+        controller.setColourAndGameIsReadyToStart("marco", Color.BLUE);
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.placeRootCard(name, false);
+        }
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.chooseObjectiveCard(name, 1);
+        }
+        HashMap<String, Integer> next = new HashMap<>();
+        while (controller.getGameState() != GameState.END) {
+            String player = controller.getCurrentPlayer();
+            place(controller, player, new Point(next.merge(player, 1, Integer::sum), 0));
+            if (controller.getGameState() == GameState.DRAWING_PHASE) {
+                draw(controller, player);
+            }
+        }
+    }
+
+    private static void place(Controller controller, String player, Point position) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                controller.placeCard(player, i, position, false);
+                return;
+            } catch (NullPointerException | IndexOutOfBoundsException | CardPositionException e) {
+                // no card in this position of the hand
+            }
+        }
+        Assertions.fail("No card can be placed");
+    }
+
+    private static void draw(Controller controller, String player) throws Exception {
+        for (boolean gold : new boolean[]{false, true}) {
+            for (int position : new int[]{-1, 0, 1}) {
+                try {
+                    controller.drawCard(player, gold, position);
+                    return;
+                } catch (CardPositionException e) {
+                    // no card here, try the next place
+                }
+            }
+        }
+        Assertions.fail("No card can be drawn");
+    }
+}
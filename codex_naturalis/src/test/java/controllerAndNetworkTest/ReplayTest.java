@@ -0,0 +1,130 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.controller.server.ReplayPlayer;
+import it.polimi.ingsw.controller.server.ReplayRecorder;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameState;
+import it.polimi.ingsw.model.Lobby;
+import it.polimi.ingsw.model.exception.*;
+import org.junit.jupiter.api.*;
+
+import java.awt.Point;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+public class ReplayTest {
+    File directory;
+    private TemporaryStore store;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        store = new TemporaryStore();
+        directory = Files.createTempDirectory("replays").toFile();
+        System.setProperty("codex.replay.dir", directory.getPath());
+        System.setProperty("codex.game.seed", "42");
+        Controller.getInstance().reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Controller.getInstance().cancelFile();
+        Controller.getInstance().reset();
+        System.clearProperty("codex.replay.dir");
+        System.clearProperty("codex.game.seed");
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        store.delete();
+    }
+
+    @Test
+    @DisplayName("A recorded game played again gives the same ranking")
+    public void replayGivesSameRanking() throws Exception {
+        Controller controller = Controller.getInstance();
+        controller.addPlayer("pietro");
+        controller.addPlayer("marco");
+        controller.initializeLobby(2);
+        controller.setColourAndGameIsReadyToStart("pietro", Color.RED);
+        controller.setColourAndGameIsReadyToStart("marco", Color.BLUE);
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.placeRootCard(name, false);
+        }
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.chooseObjectiveCard(name, 1);
+        }
+
+        // every player places its cards face down on a diagonal, until the decks are finished
+        int commands = 4;
+        HashMap<String, Integer> next = new HashMap<>();
+        while (controller.getGameState() != GameState.END) {
+            String player = controller.getCurrentPlayer();
+            int x = next.merge(player, 1, Integer::sum);
+            commands += place(controller, player, new Point(x, 0));
+            if (controller.getGameState() == GameState.DRAWING_PHASE) {
+                commands += draw(controller, player);
+            }
+        }
+
+        ReplayPlayer.Result result = ReplayPlayer.play(ReplayRecorder.pathOf(42));
+        Assertions.assertTrue(result.isComplete());
+        Assertions.assertNull(result.getError());
+        Assertions.assertEquals(commands, result.getCommands());
+        Assertions.assertEquals(controller.getRanking().get(0).getName(),
+                result.getGame().getRanking().get(0).getName());
+    }
+
+    @Test
+    @DisplayName("Only the last replays are kept, and none is recorded when none is kept")
+    public void oldReplaysAreDeleted() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.addPlayer("pietro");
+        System.setProperty("codex.replay.keep", "2");
+        try {
+            for (long seed = 1; seed <= 3; seed++) {
+                ReplayRecorder.create(ReplayRecorder.pathOf(seed), seed, lobby).close();
+                // the oldest replay is the one modified first
+                new File(ReplayRecorder.pathOf(seed)).setLastModified(seed * 10000);
+            }
+            Assertions.assertFalse(new File(ReplayRecorder.pathOf(1)).exists());
+            Assertions.assertTrue(new File(ReplayRecorder.pathOf(2)).exists());
+            Assertions.assertTrue(new File(ReplayRecorder.pathOf(3)).exists());
+
+            System.setProperty("codex.replay.keep", "0");
+            Assertions.assertNull(ReplayRecorder.create(ReplayRecorder.pathOf(4), 4, lobby));
+            Assertions.assertFalse(new File(ReplayRecorder.pathOf(4)).exists());
+        } finally {
+            System.clearProperty("codex.replay.keep");
+        }
+    }
+
+    private int place(Controller controller, String player, Point position) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                controller.placeCard(player, i, position, false);
+                return 1;
+            } catch (NullPointerException | IndexOutOfBoundsException | CardPositionException e) {
+                // no card in this position of the hand
+            }
+        }
+        Assertions.fail("No card can be placed");
+        return 0;
+    }
+
+    private int draw(Controller controller, String player) throws Exception {
+        for (boolean gold : new boolean[]{false, true}) {
+            for (int position : new int[]{-1, 0, 1}) {
+                try {
+                    controller.drawCard(player, gold, position);
+                    return 1;
+                } catch (CardPositionException e) {
+                    // no card here, try the next place
+                }
+            }
+        }
+        Assertions.fail("No card can be drawn");
+        return 0;
+    }
+}
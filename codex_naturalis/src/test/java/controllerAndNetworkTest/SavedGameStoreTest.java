@@ -0,0 +1,50 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.SavedGameStore;
+import it.polimi.ingsw.model.Lobby;
+import it.polimi.ingsw.model.exception.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class SavedGameStoreTest {
+
+    @Test
+    @DisplayName("Games are found by their players, in any order, after the store is reopened")
+    public void gamesAreIndexedByPlayers() throws IOException, SameNameException, LobbyCompleteException {
+        File directory = Files.createTempDirectory("saves").toFile();
+        Lobby lobby = new Lobby();
+        lobby.addPlayer("pietro");
+        lobby.addPlayer("marco");
+        Lobby sameLobby = new Lobby();
+        sameLobby.addPlayer("marco");
+        sameLobby.addPlayer("pietro");
+        Lobby otherLobby = new Lobby();
+        otherLobby.addPlayer("pietro");
+        otherLobby.addPlayer("daniele");
+
+        SavedGameStore store = new SavedGameStore(directory.getPath());
+        String name = store.register(SavedGameStore.keyOf(lobby));
+        String otherName = store.register(SavedGameStore.keyOf(otherLobby));
+        Assertions.assertNotEquals(name, otherName);
+        Assertions.assertEquals(name, store.register(SavedGameStore.keyOf(sameLobby)));
+        // a game is found only once its snapshot exists
+        Assertions.assertNull(store.lookup(SavedGameStore.keyOf(sameLobby)));
+        Files.write(new File(store.getSavePath(name)).toPath(), new byte[]{1});
+
+        SavedGameStore reopened = new SavedGameStore(directory.getPath());
+        Assertions.assertEquals(2, reopened.size());
+        Assertions.assertEquals(name, reopened.lookup(SavedGameStore.keyOf(sameLobby)));
+        reopened.remove(SavedGameStore.keyOf(lobby));
+        Assertions.assertNull(new SavedGameStore(directory.getPath()).lookup(SavedGameStore.keyOf(lobby)));
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,159 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.network.RMI.RMIClientInterface;
+import it.polimi.ingsw.network.SessionManager;
+import it.polimi.ingsw.network.loopback.LoopbackServer;
+import it.polimi.ingsw.network.socket.EventRing;
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
+import it.polimi.ingsw.network.socket.messages.server.StopGaming;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionTest {
+
+    @Test
+    @DisplayName("A client receives only the missed events sent to it, or nothing if they are gone")
+    public void missedEventsAreSentAgain() throws IOException {
+        EventRing events = new EventRing(4);
+        EncodedMessage[] frames = new EncodedMessage[6];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = EncodedMessage.encode(new StopGaming());
+        }
+        events.add(events.next(), null, null, frames[0]);
+        events.add(events.next(), "pietro", null, frames[1]);
+        events.add(events.next(), null, "pietro", frames[2]);
+        events.add(events.next(), null, null, frames[3]);
+
+        Assertions.assertEquals(List.of(frames[1], frames[3]), events.since(1, "pietro"));
+        Assertions.assertEquals(List.of(frames[2], frames[3]), events.since(1, "marco"));
+        Assertions.assertEquals(new ArrayList<>(), events.since(4, "pietro"));
+        // a sequence number from the future, for example of an old game
+        Assertions.assertNull(events.since(5, "pietro"));
+
+        // the first two events are discarded
+        events.add(events.next(), null, null, frames[4]);
+        events.add(events.next(), null, null, frames[5]);
+        Assertions.assertNull(events.since(0, "pietro"));
+        Assertions.assertNull(events.since(1, "pietro"));
+        Assertions.assertEquals(List.of(frames[2], frames[3], frames[4], frames[5]), events.since(2, "marco"));
+    }
+
+    @Test
+    @DisplayName("A lost session ends the game only if the player does not come back in time")
+    public void lostSessionHasGracePeriod() throws InterruptedException {
+        SessionManager sessions = new SessionManager(200);
+        String token = sessions.open("pietro");
+        AtomicInteger expired = new AtomicInteger();
+
+        // before the game starts, there is nothing to come back to
+        Assertions.assertFalse(sessions.lost("pietro", expired::incrementAndGet));
+
+        sessions.arm("pietro");
+        Assertions.assertTrue(sessions.lost("pietro", expired::incrementAndGet));
+        Assertions.assertTrue(sessions.isInGrace("pietro"));
+        Assertions.assertEquals("pietro", sessions.resume(token));
+        Assertions.assertFalse(sessions.isInGrace("pietro"));
+        Thread.sleep(400);
+        Assertions.assertEquals(0, expired.get());
+
+        CountDownLatch gone = new CountDownLatch(1);
+        Assertions.assertTrue(sessions.lost("pietro", gone::countDown));
+        Assertions.assertTrue(gone.await(2, TimeUnit.SECONDS));
+
+        sessions.clear();
+        Assertions.assertNull(sessions.resume(token));
+        Assertions.assertNull(sessions.resume("not a token"));
+    }
+
+    @Test
+    @DisplayName("A client answering the ping at the end of its grace period receives the whole game")
+    public void clientStillThereIsResynced() throws Exception {
+        TemporaryStore store = new TemporaryStore();
+        System.setProperty("codex.session.graceMillis", "300");
+        SessionManager.reset();
+        Controller.getInstance().reset();
+        LoopbackServer server = new LoopbackServer();
+        try {
+            AtomicBoolean failing = new AtomicBoolean(false);
+            CountDownLatch failed = new CountDownLatch(1);
+            CountDownLatch resynced = new CountDownLatch(1);
+            AtomicInteger stopped = new AtomicInteger();
+            RMIClientInterface pietro = stub(method -> {
+                if (failing.get()) {
+                    failed.countDown();
+                    throw new RemoteException("the connection is down");
+                }
+                if (method.equals("loadSavedGame")) {
+                    resynced.countDown();
+                }
+            });
+            RMIClientInterface marco = stub(method -> {
+                if (method.equals("stopGaming") || method.equals("disconnect")) {
+                    stopped.incrementAndGet();
+                }
+            });
+
+            Assertions.assertTrue(server.loginAndIsFirst(pietro, "pietro"));
+            server.insertNumberOfPlayers(2);
+            server.loginAndIsFirst(marco, "marco");
+            server.chooseColor("pietro", Color.RED);
+            server.chooseColor("marco", Color.BLUE);
+            Assertions.assertNotNull(Controller.getInstance().getGameMaster());
+            server.startClientConnectionCheck();
+
+            // an update does not reach pietro, who is still connected when the grace period ends
+            failing.set(true);
+            server.sendChatMessage("marco", "hello");
+            Assertions.assertTrue(failed.await(10, TimeUnit.SECONDS));
+            failing.set(false);
+
+            Assertions.assertTrue(resynced.await(10, TimeUnit.SECONDS));
+            Assertions.assertFalse(SessionManager.getInstance().isInGrace("pietro"));
+            Assertions.assertEquals(0, stopped.get());
+        } finally {
+            server.close();
+            System.clearProperty("codex.session.graceMillis");
+            SessionManager.reset();
+            Controller.getInstance().cancelFile();
+            Controller.getInstance().reset();
+            store.delete();
+        }
+    }
+
+    /**
+     * Creates a client that answers every callback, after handing its name to the given check.
+     */
+    private static RMIClientInterface stub(Callback check) {
+        return (RMIClientInterface) Proxy.newProxyInstance(RMIClientInterface.class.getClassLoader(),
+                new Class<?>[]{RMIClientInterface.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "stub";
+                        default:
+                            check.called(method.getName());
+                            return null;
+                    }
+                });
+    }
+
+    private interface Callback {
+        void called(String method) throws RemoteException;
+    }
+}
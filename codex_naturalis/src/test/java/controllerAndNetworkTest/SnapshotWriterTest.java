@@ -0,0 +1,34 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.SnapshotWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SnapshotWriterTest {
+
+    @Test
+    @DisplayName("The newest snapshot replaces the file, and no temporary file is left")
+    public void newestSnapshotIsWritten() throws IOException {
+        File file = File.createTempFile("snapshot", ".data");
+        SnapshotWriter writer = new SnapshotWriter();
+        AtomicInteger callbacks = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            writer.submit(file.getPath(), new byte[]{(byte) i}, callbacks::incrementAndGet);
+        }
+
+        Assertions.assertTrue(writer.flush(10000));
+        Assertions.assertArrayEquals(new byte[]{19}, Files.readAllBytes(file.toPath()));
+        Assertions.assertFalse(new File(file.getPath() + ".tmp").exists());
+        Assertions.assertEquals(20, writer.getWrittenCount() + writer.getCoalescedCount());
+        Assertions.assertEquals(writer.getWrittenCount(), callbacks.get());
+        Assertions.assertEquals(0, writer.getPendingCount());
+        file.delete();
+    }
+}
@@ -0,0 +1,55 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.SavedGameStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * The directories of the tests playing games, so that their saved games and replays are not left in the working
+ * directory.
+ */
+class TemporaryStore {
+    private final File saves;
+    private final File replays;
+
+    /**
+     * Creates the directories and points the saved games and the replays at them.
+     */
+    TemporaryStore() throws IOException {
+        saves = Files.createTempDirectory("saves").toFile();
+        replays = Files.createTempDirectory("replays").toFile();
+        System.setProperty("codex.save.dir", saves.getPath());
+        System.setProperty("codex.replay.dir", replays.getPath());
+        SavedGameStore.reset();
+    }
+
+    /**
+     * Getter of the directory of the saved games.
+     */
+    File getSaves() {
+        return saves;
+    }
+
+    /**
+     * Deletes the directories and gives back the default store.
+     */
+    void delete() {
+        System.clearProperty("codex.save.dir");
+        System.clearProperty("codex.replay.dir");
+        SavedGameStore.reset();
+        delete(saves);
+        delete(replays);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
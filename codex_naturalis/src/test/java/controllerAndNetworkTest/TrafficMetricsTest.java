@@ -0,0 +1,148 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.exception.SameNameException;
+import it.polimi.ingsw.monitoring.CommandMetrics;
+import it.polimi.ingsw.monitoring.TrafficCounter;
+import it.polimi.ingsw.monitoring.TrafficMetrics;
+import it.polimi.ingsw.network.ChatRouter;
+import it.polimi.ingsw.network.RMI.RMIClientInterface;
+import it.polimi.ingsw.network.SessionManager;
+import it.polimi.ingsw.network.loopback.LoopbackServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+
+public class TrafficMetricsTest {
+
+    @Test
+    @DisplayName("The traffic is counted by message type, connection and game, and published over JMX")
+    public void trafficIsCounted() throws Exception {
+        TrafficMetrics metrics = TrafficMetrics.getInstance();
+        TrafficCounter connection = metrics.openConnection(CommandMetrics.Transport.SOCKET, "/10.0.0.1:4242");
+        TrafficCounter type = metrics.messageType(CommandMetrics.Transport.SOCKET, "TrafficTestMessage");
+        TrafficCounter game = metrics.game(-42);
+
+        metrics.received(CommandMetrics.Transport.SOCKET, -42, connection, "TrafficTestMessage", 100);
+        metrics.sent(CommandMetrics.Transport.SOCKET, -42, connection, "TrafficTestMessage", 250);
+        metrics.sent(CommandMetrics.Transport.SOCKET, -42, connection, "TrafficTestMessage", 250);
+        metrics.serialized(CommandMetrics.Transport.SOCKET, "TrafficTestMessage", 3000);
+
+        for (TrafficCounter counter : new TrafficCounter[]{connection, type, game}) {
+            Assertions.assertEquals(1, counter.getMessagesIn());
+            Assertions.assertEquals(100, counter.getBytesIn());
+            Assertions.assertEquals(2, counter.getMessagesOut());
+            Assertions.assertEquals(500, counter.getBytesOut());
+        }
+        Assertions.assertEquals(1, type.getSerializations());
+        Assertions.assertEquals(3.0, type.getSerializationMicros(), 0.001);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName typeName = new ObjectName("it.polimi.ingsw:type=Traffic,transport=socket,message=TrafficTestMessage");
+        Assertions.assertEquals(500L, server.getAttribute(typeName, "BytesOut"));
+        ObjectName connectionName = new ObjectName("it.polimi.ingsw:type=ConnectionTraffic,transport=socket,connection="
+                + ObjectName.quote("/10.0.0.1:4242"));
+        Assertions.assertTrue(server.isRegistered(connectionName));
+        metrics.closeConnection(CommandMetrics.Transport.SOCKET, "/10.0.0.1:4242");
+        Assertions.assertFalse(server.isRegistered(connectionName));
+    }
+
+    @Test
+    @DisplayName("The counter of a game is removed from JMX when the game ends")
+    public void gameCounterIsRemoved() throws Exception {
+        TrafficMetrics metrics = TrafficMetrics.getInstance();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("it.polimi.ingsw:type=GameTraffic,game=-43");
+        TrafficCounter game = metrics.game(-43);
+        Assertions.assertTrue(server.isRegistered(name));
+        metrics.closeGame(-43);
+        Assertions.assertFalse(server.isRegistered(name));
+        // a game counted again starts from a new counter
+        Assertions.assertNotSame(game, metrics.game(-43));
+        metrics.closeGame(-43);
+
+        TemporaryStore store = new TemporaryStore();
+        try {
+            Controller controller = Controller.getInstance();
+            controller.reset();
+            controller = Controller.getInstance();
+            controller.addPlayer("pietro");
+            controller.addPlayer("marco");
+            controller.initializeLobby(2);
+            controller.setColourAndGameIsReadyToStart("pietro", Color.RED);
+            controller.setColourAndGameIsReadyToStart("marco", Color.BLUE);
+            long gameId = controller.getGameId();
+            metrics.game(gameId).sent(10);
+            ObjectName played = new ObjectName("it.polimi.ingsw:type=GameTraffic,game=" + gameId);
+            Assertions.assertTrue(server.isRegistered(played));
+
+            controller.cancelFile();
+            controller.reset();
+            Assertions.assertFalse(server.isRegistered(played));
+        } finally {
+            Controller.getInstance().reset();
+            store.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("The calls of the clients that are not logged in share a single counter")
+    public void unknownCallersShareACounter() throws Exception {
+        TrafficMetrics metrics = TrafficMetrics.getInstance();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        TemporaryStore store = new TemporaryStore();
+        Controller.getInstance().reset();
+        LoopbackServer loopback = new LoopbackServer(true);
+        try {
+            loopback.loginAndIsFirst(stub(), "pippo");
+            TrafficCounter pippo = metrics.findConnection(CommandMetrics.Transport.LOOPBACK, "pippo");
+            TrafficCounter unidentified = metrics.openConnection(CommandMetrics.Transport.LOOPBACK, "unidentified");
+            long unknown = unidentified.getMessagesIn();
+            Assertions.assertEquals(1, pippo.getMessagesIn());
+
+            // a login refused for its nickname is not counted in the connection of the player
+            Assertions.assertThrows(SameNameException.class, () -> loopback.loginAndIsFirst(stub(), "pippo"));
+            // a made up sender does not get a counter
+            loopback.sendChatMessage("ghost", "hi");
+            loopback.sendChatMessage("pippo", "hi");
+
+            Assertions.assertEquals(2, pippo.getMessagesIn());
+            Assertions.assertEquals(unknown + 2, unidentified.getMessagesIn());
+            Assertions.assertNull(metrics.findConnection(CommandMetrics.Transport.LOOPBACK, "ghost"));
+            Assertions.assertFalse(server.isRegistered(new ObjectName(
+                    "it.polimi.ingsw:type=ConnectionTraffic,transport=loopback,connection=" + ObjectName.quote("ghost"))));
+        } finally {
+            loopback.close();
+            metrics.closeConnection(CommandMetrics.Transport.LOOPBACK, "pippo");
+            SessionManager.getInstance().clear();
+            ChatRouter.getInstance().clear();
+            Controller.getInstance().reset();
+            store.delete();
+        }
+    }
+
+    /**
+     * A stub of a client that does nothing.
+     */
+    private static RMIClientInterface stub() {
+        return (RMIClientInterface) Proxy.newProxyInstance(RMIClientInterface.class.getClassLoader(),
+                new Class<?>[]{RMIClientInterface.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "stub";
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
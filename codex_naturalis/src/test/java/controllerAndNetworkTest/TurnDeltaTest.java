@@ -0,0 +1,140 @@
+package controllerAndNetworkTest;
+
+import it.polimi.ingsw.controller.server.Controller;
+import it.polimi.ingsw.model.Color;
+import it.polimi.ingsw.model.GameState;
+import it.polimi.ingsw.model.Sign;
+import it.polimi.ingsw.model.TurnChange;
+import it.polimi.ingsw.model.exception.*;
+import it.polimi.ingsw.network.socket.messages.EncodedMessage;
+import it.polimi.ingsw.network.socket.messages.server.gameflow.TurnDelta;
+import org.junit.jupiter.api.*;
+
+import java.awt.Point;
+import java.io.*;
+import java.util.HashMap;
+
+public class TurnDeltaTest {
+    private TemporaryStore store;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        store = new TemporaryStore();
+        System.setProperty("codex.game.seed", "7");
+        Controller.getInstance().reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Controller.getInstance().cancelFile();
+        Controller.getInstance().reset();
+        System.clearProperty("codex.game.seed");
+        store.delete();
+    }
+
+    @Test
+    @DisplayName("The deltas sent over the socket give the clients the same resources, points and hands as the server")
+    public void deltasRebuildTheGame() throws Exception {
+        Controller controller = Controller.getInstance();
+        controller.addPlayer("pietro");
+        controller.addPlayer("marco");
+        controller.initializeLobby(2);
+        controller.setColourAndGameIsReadyToStart("pietro", Color.RED);
+        controller.setColourAndGameIsReadyToStart("marco", Color.BLUE);
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.placeRootCard(name, false);
+        }
+        for (String name : new String[]{"pietro", "marco"}) {
+            controller.chooseObjectiveCard(name, 1);
+        }
+
+        // what a client knows before the game flow, then only through the deltas
+        HashMap<String, HashMap<Sign, Integer>> resources = new HashMap<>();
+        HashMap<String, Integer> points = new HashMap<>();
+        for (String name : new String[]{"pietro", "marco"}) {
+            resources.put(name, new HashMap<>(controller.getPlayerResources(name)));
+            points.put(name, controller.getPlayerPoints(name));
+        }
+
+        HashMap<String, Integer> next = new HashMap<>();
+        int changes = 0;
+        while (controller.getGameState() != GameState.END) {
+            String player = controller.getCurrentPlayer();
+            int x = next.merge(player, 1, Integer::sum);
+            int cardId = place(controller, player, new Point(x, 0));
+            // built as the servers build it
+            TurnChange placed = roundTrip(new TurnChange(player, cardId, new Point(x, 0), false, controller.getTurn(),
+                    new HashMap<>(controller.getLastChangedResources()), controller.getLastPointsDelta(),
+                    controller.getCurrentPlayer(), controller.getGameState()));
+            if (!placed.getChangedResources().isEmpty()) {
+                changes++;
+            }
+
+            Assertions.assertTrue(placed.isPlacement());
+            Assertions.assertEquals(cardId, placed.getPlacedCardId());
+            Assertions.assertEquals(new Point(x, 0), placed.getPosition());
+            resources.get(player).putAll(placed.getChangedResources());
+            points.merge(player, placed.getPointsDelta(), Integer::sum);
+            Assertions.assertEquals(controller.getPlayerResources(player), resources.get(player));
+            Assertions.assertEquals(controller.getPlayerPoints(player), points.get(player));
+            Assertions.assertEquals(controller.getCurrentPlayer(), placed.getCurrentPlayer());
+            Assertions.assertEquals(controller.getGameState(), placed.getState());
+
+            if (controller.getGameState() == GameState.DRAWING_PHASE) {
+                int[] drawnFrom = draw(controller, player);
+                boolean gold = drawnFrom[0] == 1;
+                int onTableOrDeck = drawnFrom[1];
+                TurnChange drawn = roundTrip(new TurnChange(player, controller.newCardOnTable(gold, onTableOrDeck),
+                        gold, onTableOrDeck, controller.getHeadDeck(gold), controller.getHiddenHand(player),
+                        controller.getCurrentPlayer(), controller.getGameState()));
+
+                Assertions.assertFalse(drawn.isPlacement());
+                Assertions.assertEquals(gold, drawn.isGold());
+                Assertions.assertEquals(onTableOrDeck, drawn.getOnTableOrDeck());
+                Assertions.assertEquals(controller.newCardOnTable(gold, onTableOrDeck), drawn.getNewCardId());
+                Assertions.assertEquals(controller.getHeadDeck(gold), drawn.getHeadDeck());
+                Assertions.assertArrayEquals(controller.getHiddenHand(player), drawn.getHiddenHand());
+                Assertions.assertEquals(controller.getCurrentPlayer(), drawn.getCurrentPlayer());
+                Assertions.assertEquals(controller.getGameState(), drawn.getState());
+            }
+        }
+        Assertions.assertTrue(changes > 0);
+    }
+
+    private TurnChange roundTrip(TurnChange change) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        EncodedMessage.encode(new TurnDelta(change)).writeTo(new DataOutputStream(buffer));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        return ((TurnDelta) EncodedMessage.readFrom(in)).getChange();
+    }
+
+    private int place(Controller controller, String player, Point position) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                return controller.placeCard(player, i, position, false);
+            } catch (NullPointerException | IndexOutOfBoundsException | CardPositionException e) {
+                // no card in this position of the hand
+            }
+        }
+        Assertions.fail("No card can be placed");
+        return 0;
+    }
+
+    /**
+     * Draws the first card that can be drawn, and returns where it was: 1 for gold and 0 otherwise, then the place.
+     */
+    private int[] draw(Controller controller, String player) throws Exception {
+        for (boolean gold : new boolean[]{false, true}) {
+            for (int position : new int[]{-1, 0, 1}) {
+                try {
+                    controller.drawCard(player, gold, position);
+                    return new int[]{gold ? 1 : 0, position};
+                } catch (CardPositionException e) {
+                    // no card here, try the next place
+                }
+            }
+        }
+        Assertions.fail("No card can be drawn");
+        return null;
+    }
+}
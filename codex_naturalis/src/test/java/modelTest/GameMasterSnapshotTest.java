@@ -0,0 +1,164 @@
+package modelTest;
+
+import it.polimi.ingsw.model.*;
+import it.polimi.ingsw.model.exception.*;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+public class GameMasterSnapshotTest {
+    static String basePath = "src/main/java/it/polimi/ingsw/model/decks/";
+    GameMaster game;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.addPlayer("pietro");
+        lobby.addPlayer("marco");
+        try {
+            game = new GameMaster(lobby,
+                    basePath + "resourceCardsDeck.json",
+                    basePath + "goldCardsDeck.json",
+                    basePath + "objectiveCardsDeck.json",
+                    basePath + "startingCardsDeck.json");
+        } catch (IOException | ParseException e) {
+            Assertions.fail("Cannot create the game");
+        }
+        for (Player player : lobby.getPlayers()) {
+            game.placeRootCard(player.getName(), false);
+        }
+        for (Player player : lobby.getPlayers()) {
+            game.chooseObjectiveCard(player.getName(), 0);
+        }
+        for (int i = 1; i <= 3; i++) {
+            game.placeCard("pietro", 0, new Point(i, 0), false);
+            game.drawCard("pietro", false, 0);
+            game.placeCard("marco", 0, new Point(0, i), false);
+            game.drawCard("marco", true, -1);
+        }
+    }
+
+    private byte[] save(GameMaster game) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            game.writeSnapshot(out);
+        }
+        return buffer.toByteArray();
+    }
+
+    private GameMaster load(byte[] data) throws IOException {
+        return GameMaster.readSnapshot(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    @DisplayName("A loaded snapshot has the same boards, hands, decks and counters")
+    public void snapshotRoundTrip() throws Exception {
+        GameMaster loaded = load(save(game));
+
+        Assertions.assertEquals(game.getTurn(), loaded.getTurn());
+        Assertions.assertEquals(game.getTurnType(), loaded.getTurnType());
+        Assertions.assertEquals(game.getGameState(), loaded.getGameState());
+        Assertions.assertEquals(game.getCurrentPlayer().getName(), loaded.getCurrentPlayer().getName());
+        Assertions.assertEquals(game.getHeadDeck(false), loaded.getHeadDeck(false));
+        Assertions.assertEquals(game.getHeadDeck(true), loaded.getHeadDeck(true));
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(game.getResourceCard(i).getId(), loaded.getResourceCard(i).getId());
+            Assertions.assertEquals(game.getGoldCard(i).getId(), loaded.getGoldCard(i).getId());
+            Assertions.assertEquals(game.getObjectiveCard(i).getId(), loaded.getObjectiveCard(i).getId());
+        }
+
+        for (String name : new String[]{"pietro", "marco"}) {
+            Player player = game.getLobby().getPlayerFromName(name);
+            Player loadedPlayer = loaded.getLobby().getPlayerFromName(name);
+            Assertions.assertEquals(player.getColor(), loadedPlayer.getColor());
+            Assertions.assertEquals(game.getPlayerPoints(name), loaded.getPlayerPoints(name));
+            Assertions.assertEquals(game.getPlayerResources(name), loaded.getPlayerResources(name));
+            Assertions.assertEquals(player.getSecretObjective().getId(), loadedPlayer.getSecretObjective().getId());
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertEquals(player.getHand()[i].getId(), loadedPlayer.getHand()[i].getId());
+            }
+
+            ArrayList<PlayedCard> board = sorted(game.getPlayersCards(player));
+            ArrayList<PlayedCard> loadedBoard = sorted(loaded.getPlayersCards(loadedPlayer));
+            Assertions.assertEquals(board.size(), loadedBoard.size());
+            for (int i = 0; i < board.size(); i++) {
+                Assertions.assertEquals(board.get(i).getCard().getId(), loadedBoard.get(i).getCard().getId());
+                Assertions.assertEquals(board.get(i).getPosition(), loadedBoard.get(i).getPosition());
+                Assertions.assertEquals(board.get(i).isFacingUp(), loadedBoard.get(i).isFacingUp());
+                Assertions.assertEquals(board.get(i).getAttachmentCorners().keySet(),
+                        loadedBoard.get(i).getAttachmentCorners().keySet());
+            }
+        }
+
+        // the loaded game can be played, and stays equal to the original one
+        game.placeCard("pietro", 0, new Point(4, 0), false);
+        loaded.placeCard("pietro", 0, new Point(4, 0), false);
+        game.drawCard("pietro", false, -1);
+        loaded.drawCard("pietro", false, -1);
+        Assertions.assertArrayEquals(save(game), save(loaded));
+    }
+
+    @Test
+    @DisplayName("The snapshot is more than ten times smaller than the serialized game")
+    public void snapshotIsCompact() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(game);
+        }
+        Assertions.assertTrue(save(game).length * 10 < buffer.size());
+    }
+
+    @Test
+    @DisplayName("A snapshot of an unknown version is refused")
+    public void unknownVersionIsRefused() throws IOException {
+        byte[] data = save(game);
+        data[5]++;
+        Assertions.assertThrows(IOException.class, () -> load(data));
+    }
+
+    @Test
+    @DisplayName("A damaged snapshot is refused as a corrupted stream")
+    public void damagedSnapshotIsRefused() throws IOException {
+        // the magic number, the version, the seed and the turn come before the type of the turn
+        byte[] ordinal = save(game);
+        ordinal[18] = 99;
+        Assertions.assertThrows(StreamCorruptedException.class, () -> load(ordinal));
+
+        // then the size of the resource deck, and the id of its first card
+        byte[] count = save(game);
+        count[20] = (byte) 0xff;
+        Assertions.assertThrows(StreamCorruptedException.class, () -> load(count));
+
+        byte[] unknown = save(game);
+        unknown[22] = 0x7f;
+        Assertions.assertThrows(StreamCorruptedException.class, () -> load(unknown));
+
+        // an objective card where the snapshot expects a resource card
+        int objective = game.getObjectiveCard(0).getId();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        byte[] data = save(game);
+        int onTable = 20;
+        // skip the four decks to reach the resource cards on the table
+        for (int deck = 0; deck < 4; deck++) {
+            onTable += 2 + 2 * (((data[onTable] & 0xff) << 8) | (data[onTable + 1] & 0xff));
+        }
+        out.write(data, 0, onTable + 1);
+        out.writeShort(objective);
+        out.write(data, onTable + 3, data.length - onTable - 3);
+        Assertions.assertThrows(StreamCorruptedException.class, () -> load(buffer.toByteArray()));
+    }
+
+    private ArrayList<PlayedCard> sorted(ArrayList<PlayedCard> board) {
+        board.sort(Comparator.comparingInt((PlayedCard card) -> card.getPosition().x)
+                .thenComparingInt(card -> card.getPosition().y));
+        return board;
+    }
+}
@@ -103,6 +103,25 @@ public class LobbyTest {
         assertTrue(lobby.isReady());
     }
 
+    @Test
+    @DisplayName("The players are shuffled once, and the first player is still the one who opened the lobby")
+    public void shuffledOnceTest() throws SameNameException, LobbyCompleteException, ClosingLobbyException {
+        Lobby lobby = new Lobby();
+        lobby.addPlayer("pietro");
+        lobby.setMaxSize(4);
+        lobby.addPlayer("marco");
+        lobby.addPlayer("daniel");
+        lobby.addPlayer("arturo");
+        assertTrue(lobby.isReady());
+        Player[] order = lobby.getPlayers();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(lobby.isReady());
+            assertArrayEquals(order, lobby.getPlayers());
+        }
+        assertTrue(lobby.isFirst("pietro"));
+        assertFalse(lobby.isFirst("marco"));
+    }
+
     @Test
     @DisplayName("Test kickOut from lobby")
     public void kickOutTest() throws ClosingLobbyException, SameNameException, LobbyCompleteException {
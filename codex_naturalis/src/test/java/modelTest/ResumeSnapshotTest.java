@@ -0,0 +1,81 @@
+package modelTest;
+
+import it.polimi.ingsw.model.*;
+import it.polimi.ingsw.model.exception.*;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class ResumeSnapshotTest {
+    static GameMaster game;
+    static Lobby lobby;
+    static String basePath = "src/main/java/it/polimi/ingsw/model/decks/";
+
+    @BeforeEach
+    public void setUp() throws SameNameException, LobbyCompleteException, WrongGamePhaseException, NoTurnException,
+            NoNameException, NotEnoughResourcesException, CardPositionException {
+        lobby = new Lobby();
+        lobby.addPlayer("pietro");
+        lobby.addPlayer("marco");
+
+        try {
+            game = new GameMaster(lobby,
+                    basePath + "resourceCardsDeck.json",
+                    basePath + "goldCardsDeck.json",
+                    basePath + "objectiveCardsDeck.json",
+                    basePath + "startingCardsDeck.json");
+        } catch (IOException e) {
+            System.out.println("File not found");
+        } catch (ParseException e) {
+            System.out.println("Error in parsing");
+        }
+
+        for (Player player : lobby.getPlayers()) {
+            game.placeRootCard(player.getName(), false);
+        }
+        for (Player player : lobby.getPlayers()) {
+            game.chooseObjectiveCard(player.getName(), 0);
+        }
+        game.placeCard("pietro", 1, new Point(1, 0), false);
+        game.drawCard("pietro", true, 0);
+    }
+
+    @Test
+    @DisplayName("The boards are flattened and sorted by turn")
+    public void boardsAreFlattened() throws NoNameException {
+        ResumeSnapshot snapshot = new ResumeSnapshot(game, "marco");
+
+        ArrayList<ResumeSnapshot.BoardCard> board = snapshot.getBoards().get("pietro");
+        Assertions.assertEquals(2, board.size());
+        Assertions.assertEquals(new Point(0, 0), board.get(0).getPosition());
+        Assertions.assertEquals(lobby.getPlayerFromName("pietro").getRootCard().getCard().getId(),
+                board.get(0).getCardId());
+        Assertions.assertEquals(new Point(1, 0), board.get(1).getPosition());
+        Assertions.assertFalse(board.get(1).isFacingUp());
+        Assertions.assertEquals(1, snapshot.getBoards().get("marco").size());
+    }
+
+    @Test
+    @DisplayName("Only the hand and the secret objective of the recipient are visible")
+    public void otherHandsAreHidden() throws NoNameException {
+        ResumeSnapshot snapshot = new ResumeSnapshot(game, "marco");
+        Player marco = lobby.getPlayerFromName("marco");
+        Player pietro = lobby.getPlayerFromName("pietro");
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(marco.getHand()[i].getId(), snapshot.getHand()[i]);
+            Assertions.assertEquals(pietro.getHand()[i].getKingdom(),
+                    snapshot.getOtherPlayersCards().get("pietro")[i].getKey());
+        }
+        Assertions.assertFalse(snapshot.getOtherPlayersCards().containsKey("marco"));
+        Assertions.assertEquals(marco.getSecretObjective().getId(), snapshot.getSecretObjectiveCard());
+        Assertions.assertEquals("marco", snapshot.getCurrentPlayer());
+        Assertions.assertEquals(game.getPlayerPoints("pietro"), snapshot.getPoints().get("pietro"));
+    }
+}
@@ -0,0 +1,109 @@
+package modelTest;
+
+import it.polimi.ingsw.model.GameMaster;
+import it.polimi.ingsw.model.Lobby;
+import it.polimi.ingsw.model.Player;
+
+import java.awt.*;
+import java.io.*;
+
+/**
+ * Compares the size and the save/load times of the compact snapshot of a game with the Java serialization of the
+ * same game. It is not a unit test: run its main method.
+ */
+public class SnapshotBenchmark {
+    static String basePath = "src/main/java/it/polimi/ingsw/model/decks/";
+    static final int ROUNDS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        GameMaster game = createGame();
+
+        byte[] serialized = serialize(game);
+        byte[] compact = snapshot(game);
+        System.out.println("Serialized: " + serialized.length + " bytes");
+        System.out.println("Snapshot:   " + compact.length + " bytes ("
+                + String.format("%.1f", (double) serialized.length / compact.length) + "x smaller)");
+
+        // warm up, then measure
+        for (int i = 0; i < ROUNDS; i++) {
+            serialize(game);
+            snapshot(game);
+            deserialize(serialized);
+            GameMaster.readSnapshot(new DataInputStream(new ByteArrayInputStream(compact)));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            serialize(game);
+        }
+        print("Serialized save", start);
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            snapshot(game);
+        }
+        print("Snapshot save  ", start);
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            deserialize(serialized);
+        }
+        print("Serialized load", start);
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            GameMaster.readSnapshot(new DataInputStream(new ByteArrayInputStream(compact)));
+        }
+        print("Snapshot load  ", start);
+    }
+
+    private static GameMaster createGame() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setMaxSize(4);
+        for (String name : new String[]{"pietro", "marco", "daniele", "lorenzo"}) {
+            lobby.addPlayer(name);
+        }
+        GameMaster game = new GameMaster(lobby,
+                basePath + "resourceCardsDeck.json",
+                basePath + "goldCardsDeck.json",
+                basePath + "objectiveCardsDeck.json",
+                basePath + "startingCardsDeck.json");
+        for (Player player : lobby.getPlayers()) {
+            game.placeRootCard(player.getName(), false);
+        }
+        for (Player player : lobby.getPlayers()) {
+            game.chooseObjectiveCard(player.getName(), 0);
+        }
+        // every player places a diagonal of cards, face down so no resource is needed
+        for (int i = 1; i <= 8; i++) {
+            for (Player player : lobby.getPlayers()) {
+                game.placeCard(player.getName(), 0, new Point(i, 0), false);
+                game.drawCard(player.getName(), i % 2 == 0, -1);
+            }
+        }
+        return game;
+    }
+
+    private static byte[] serialize(GameMaster game) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(game);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static GameMaster deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (GameMaster) in.readObject();
+        }
+    }
+
+    private static byte[] snapshot(GameMaster game) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            game.writeSnapshot(out);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void print(String label, long start) {
+        System.out.println(label + ": " + String.format("%.1f", (System.nanoTime() - start) / 1e3 / ROUNDS) + " us");
+    }
+}